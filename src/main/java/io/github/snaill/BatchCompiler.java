@@ -0,0 +1,141 @@
+package io.github.snaill;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+
+/**
+ * Пакетная компиляция нескольких исходных файлов в одном процессе.
+ * Файлы компилируются параллельно в ForkJoinPool; вывод ошибок каждого файла
+ * собирается отдельно, чтобы сводный отчёт не перемешивался между потоками.
+ */
+public class BatchCompiler {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchCompiler.class);
+
+    /**
+     * Расширение исходных файлов Snail, которые берутся из директорий
+     */
+    public static final String SOURCE_EXTENSION = ".sn";
+
+    /**
+     * Компиляция одного файла: исходный файл, файл байткода, поток для ошибок → код возврата
+     */
+    @FunctionalInterface
+    public interface FileCompiler {
+        int compile(String sourceFile, String outputFile, PrintStream err);
+    }
+
+    /**
+     * Результат компиляции одного файла
+     *
+     * @param source      исходный файл
+     * @param exitCode    код возврата (0 = успех)
+     * @param diagnostics всё, что компилятор вывел в поток ошибок для этого файла
+     */
+    public record FileResult(Path source, int exitCode, String diagnostics) {
+        public boolean isSuccess() {
+            return exitCode == 0;
+        }
+    }
+
+    private final int parallelism;
+    private final FileCompiler compiler;
+
+    public BatchCompiler(int parallelism, FileCompiler compiler) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.compiler = compiler;
+    }
+
+    /**
+     * Раскрывает список путей: файлы берутся как есть, директории обходятся рекурсивно
+     * в поиске файлов с расширением {@value #SOURCE_EXTENSION}. Порядок детерминирован, дубликаты удаляются.
+     */
+    public static List<Path> collectSources(List<String> inputs) throws IOException {
+        Set<Path> sources = new LinkedHashSet<>();
+        for (String input : inputs) {
+            Path path = Paths.get(input);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    walk.filter(Files::isRegularFile)
+                            .filter(p -> p.getFileName().toString().endsWith(SOURCE_EXTENSION))
+                            .sorted()
+                            .forEach(sources::add);
+                }
+            } else {
+                sources.add(path);
+            }
+        }
+        return new ArrayList<>(sources);
+    }
+
+    /**
+     * Компилирует все файлы параллельно. Байткод каждого файла пишется рядом с исходником.
+     *
+     * @return результаты в том же порядке, что и {@code sources}
+     */
+    public List<FileResult> compileAll(List<Path> sources) {
+        logger.debug("Batch compilation of {} files with parallelism {}", sources.size(), parallelism);
+        try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+            List<ForkJoinTask<FileResult>> tasks = new ArrayList<>(sources.size());
+            for (Path source : sources) {
+                tasks.add(pool.submit(() -> compileOne(source)));
+            }
+            List<FileResult> results = new ArrayList<>(tasks.size());
+            for (ForkJoinTask<FileResult> task : tasks) {
+                results.add(task.join());
+            }
+            return results;
+        }
+    }
+
+    private FileResult compileOne(Path source) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int exitCode;
+        try (PrintStream err = new PrintStream(buffer, true, StandardCharsets.UTF_8)) {
+            try {
+                String sourceFile = source.toString();
+                exitCode = compiler.compile(sourceFile, Trail.defaultOutputFile(sourceFile), err);
+            } catch (RuntimeException e) {
+                logger.error("Unexpected error while compiling {}: {}", source, e.getMessage());
+                err.println("Compiler Error: " + e.getMessage());
+                exitCode = 1;
+            }
+        }
+        return new FileResult(source, exitCode, buffer.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Печатает статус каждого файла в {@code out} и сводный отчёт об ошибках в {@code err}.
+     */
+    public static void printReport(List<FileResult> results, PrintStream out, PrintStream err) {
+        long failed = results.stream().filter(r -> !r.isSuccess()).count();
+        for (FileResult result : results) {
+            out.println((result.isSuccess() ? "OK     " : "FAILED ") + result.source());
+        }
+        out.println("Compiled " + results.size() + " files: " + (results.size() - failed) + " succeeded, " + failed + " failed");
+        for (FileResult result : results) {
+            if (!result.isSuccess() || !result.diagnostics().isEmpty()) {
+                err.println("=== " + result.source() + " (exit code " + result.exitCode() + ") ===");
+                err.print(result.diagnostics());
+            }
+        }
+    }
+}
@@ -2,6 +2,9 @@
 
 import io.github.snaill.ast.*;
 import io.github.snaill.exception.FailedCheckException;
+import io.github.snaill.jfr.CompilerEvents;
+import io.github.snaill.jfr.CompilerTrace;
+import io.github.snaill.jfr.FunctionCheckEvent;
 import io.github.snaill.result.CompilationError;
 import io.github.snaill.result.ErrorType;
 
@@ -17,6 +20,18 @@ public class Check implements ASTVisitor<Void> {
     private static final Logger logger = LoggerFactory.getLogger(Check.class);
     private Scope currentScope;
     private final List<CompilationError> errors = new ArrayList<>();
+    /**
+     * Name of the checked source, reported in JFR events
+     */
+    private final String sourceName;
+
+    public Check() {
+        this(null);
+    }
+
+    public Check(String sourceName) {
+        this.sourceName = sourceName;
+    }
 
     /**
      * Checks the AST for type correctness and other static errors.
@@ -25,7 +40,9 @@ public class Check implements ASTVisitor<Void> {
      * @return the list of found compilation errors
      */
     public List<CompilationError> check(Node node) {
-        logger.debug("ENTERING Check.check() with node: {} | initial currentScope: {}", (node != null ? node.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(node)) + " " + node.getSourceInfo() : "null"), this.currentScope);
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("Check", "check " + CompilerTrace.id(node) + ", initial scope " + CompilerTrace.id(this.currentScope));
+        }
         this.errors.clear();
         if (this.currentScope == null) { // Only set initial scope if not already set by a wrapping call
             if (node instanceof AST) {
@@ -59,8 +76,31 @@ public class Check implements ASTVisitor<Void> {
 
     @Override
     public Void visit(FunctionDeclaration node) {
+        if (!CompilerEvents.isRecording()) {
+            return visitFunction(node);
+        }
+        FunctionCheckEvent event = new FunctionCheckEvent();
+        event.begin();
+        int errorsBefore = errors.size();
+        try {
+            return visitFunction(node);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = sourceName;
+                event.function = node.getName();
+                event.nodeCount = CompilerEvents.countNodes(node);
+                event.errorCount = errors.size() - errorsBefore;
+                event.commit();
+            }
+        }
+    }
+
+    private Void visitFunction(FunctionDeclaration node) {
         Scope previousScope = this.currentScope;
-        logger.debug("ENTERING FunctionDeclaration.visit for function '{}'. Old scope: {}. New scope (function body): {}", node.getName(), (previousScope != null ? previousScope.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(previousScope)) : "null"), (node.getBody() != null ? node.getBody().getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(node.getBody())) : "null"));
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("Check", "enter function '" + node.getName() + "': " + CompilerTrace.id(previousScope) + " -> " + CompilerTrace.id(node.getBody()));
+        }
 
         this.currentScope = node.getBody(); // The function's body is its scope
 
@@ -77,7 +117,9 @@ public class Check implements ASTVisitor<Void> {
             node.getBody().accept(this);
         }
 
-        logger.debug("EXITING FunctionDeclaration.visit for function '{}'. Restoring old scope: {}", node.getName(), (previousScope != null ? previousScope.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(previousScope)) : "null"));
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("Check", "exit function '" + node.getName() + "', back to " + CompilerTrace.id(previousScope));
+        }
         this.currentScope = previousScope; // Restore the outer scope
         return null;
     }
@@ -92,13 +134,13 @@ public class Check implements ASTVisitor<Void> {
                 if (e.getErrors() != null) {
                     this.errors.addAll(e.getErrors());
                 } else {
-                    this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, (node.getSource() != null ? SourceBuilder.toSourceLine(node.getSource(), node.getLine(), node.getCharPosition(), 1) : "<source not available>"), e.getMessage() != null ? e.getMessage() : "Failed to add variable declaration", ""));
+                    this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, sourceLine(node, 1), e.getMessage() != null ? e.getMessage() : "Failed to add variable declaration", ""));
                 }
                 // Potentially return early if declaration fails, as further checks might be invalid
                 return null; 
             }
         } else {
-            this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, (node.getSource() != null ? SourceBuilder.toSourceLine(node.getSource(), node.getLine(), node.getCharPosition(), 1) : "<source not available>"), "Compiler error: current scope not set for variable declaration.", ""));
+            this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, sourceLine(node, 1), "Compiler error: current scope not set for variable declaration.", ""));
             return null; // Cannot proceed without a scope
         }
 
@@ -113,7 +155,7 @@ public class Check implements ASTVisitor<Void> {
                     tempScope = ((AbstractNode)node).getEnclosingScope();
                 }
                 if (tempScope == null) {
-                    this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, (node.getSource() != null ? SourceBuilder.toSourceLine(node.getSource(), node.getLine(), node.getCharPosition(), 1) : "<source not available>"), "Cannot determine scope for variable '" + node.getName() + "' type checking.", ""));
+                    this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, sourceLine(node, 1), "Cannot determine scope for variable '" + node.getName() + "' type checking.", ""));
                     return null;
                 }
                 Type actualType = value.getType(tempScope);
@@ -121,21 +163,19 @@ public class Check implements ASTVisitor<Void> {
                 boolean typesCompatible = false;
                 if (declaredType.equals(actualType)) {
                     typesCompatible = true;
-                } else if (declaredType instanceof PrimitiveType dt && dt.getName().equals("usize") && 
+                } else if (Types.USIZE.equals(declaredType) && 
                            value instanceof NumberLiteral nl && nl.isNonNegative() && 
-                           actualType instanceof PrimitiveType at && at.getName().equals("i32")) {
+                           Types.I32.equals(actualType)) {
                     typesCompatible = true;
-                } else if (declaredType instanceof ArrayType dtArray && dtArray.getSize().getValue() == 0 &&
-                           actualType instanceof ArrayType atArray && atArray.getSize().getValue() == 0 &&
+                } else if (declaredType instanceof ArrayType dtArray && dtArray.getSize() == 0 &&
+                           actualType instanceof ArrayType atArray && atArray.getSize() == 0 &&
                            atArray.getElementType() instanceof PrimitiveType ptElem && "i32".equals(ptElem.getName())) {
                     // Allow assigning [] (which is [i32;0]) to any [SomeType;0]
                     typesCompatible = true;
                 }
 
                 if (!typesCompatible) {
-                    String sourceLine = node.getSource() != null ? 
-                                        SourceBuilder.toSourceLine(node.getSource(), node.getLine(), node.getCharPosition(), node.getName().length()) :
-                                        "<source not available>";
+                    CharSequence sourceLine = sourceLine(node, node.getName().length());
                     errors.add(new CompilationError(
                         ErrorType.TYPE_MISMATCH,
                         sourceLine,
@@ -147,10 +187,10 @@ public class Check implements ASTVisitor<Void> {
                 if (e.getErrors() != null) {
                     this.errors.addAll(e.getErrors());
                 } else {
-                    this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, (node.getSource() != null ? SourceBuilder.toSourceLine(node.getSource(), node.getLine(), node.getCharPosition(), 1) : "<source not available>"), e.getMessage() != null ? e.getMessage() : "Type resolution failed for variable '" + node.getName() + "'", ""));
+                    this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, sourceLine(node, 1), e.getMessage() != null ? e.getMessage() : "Type resolution failed for variable '" + node.getName() + "'", ""));
                 }
             } catch (Exception e) {
-                this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, (node.getSource() != null ? SourceBuilder.toSourceLine(node.getSource(), node.getLine(), node.getCharPosition(), 1) : "<source not available>"), "Error resolving type for variable '" + node.getName() + "' initializer: " + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()), ""));
+                this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, sourceLine(node, 1), "Error resolving type for variable '" + node.getName() + "' initializer: " + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()), ""));
             }
         }
         return null;
@@ -171,7 +211,7 @@ public class Check implements ASTVisitor<Void> {
                     tempScope = ((AbstractNode)node).getEnclosingScope();
                 }
                 if (tempScope == null) {
-                    this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, (node.getSource() != null ? SourceBuilder.toSourceLine(node.getSource(), node.getLine(), node.getCharPosition(), 1) : "<source not available>"), "Cannot determine scope for assignment type checking.", ""));
+                    this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, sourceLine(node, 1), "Cannot determine scope for assignment type checking.", ""));
                     return null;
                 }
                 Type leftType = left.getType(tempScope);
@@ -180,21 +220,19 @@ public class Check implements ASTVisitor<Void> {
                 boolean typesCompatible = false;
                 if (leftType.equals(rightType)) {
                     typesCompatible = true;
-                } else if (leftType instanceof PrimitiveType dt && dt.getName().equals("usize") && 
+                } else if (Types.USIZE.equals(leftType) && 
                            right instanceof NumberLiteral nl && nl.isNonNegative() && 
-                           rightType instanceof PrimitiveType at && at.getName().equals("i32")) {
+                           Types.I32.equals(rightType)) {
                     typesCompatible = true;
-                } else if (leftType instanceof ArrayType ltArray && ltArray.getSize().getValue() == 0 &&
-                           rightType instanceof ArrayType rtArray && rtArray.getSize().getValue() == 0 &&
+                } else if (leftType instanceof ArrayType ltArray && ltArray.getSize() == 0 &&
+                           rightType instanceof ArrayType rtArray && rtArray.getSize() == 0 &&
                            rtArray.getElementType() instanceof PrimitiveType ptElem && "i32".equals(ptElem.getName())) {
                     // Allow assigning [] (which is [i32;0]) to any [SomeType;0]
                     typesCompatible = true;
                 }
 
                 if (!typesCompatible) {
-                    String sourceLine = node.getSource() != null ? 
-                                        SourceBuilder.toSourceLine(node.getSource(), node.getLine(), node.getCharPosition(), 1) : // Assignment operator '=' has length 1
-                                        "<source not available>";
+                    CharSequence sourceLine = sourceLine(node, 1); // Assignment operator '=' has length 1
                     errors.add(new CompilationError(
                         ErrorType.TYPE_MISMATCH,
                         sourceLine,
@@ -206,10 +244,10 @@ public class Check implements ASTVisitor<Void> {
                 if (e.getErrors() != null) {
                     this.errors.addAll(e.getErrors());
                 } else {
-                    this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, (node.getSource() != null ? SourceBuilder.toSourceLine(node.getSource(), node.getLine(), node.getCharPosition(), 1) : "<source not available>"), e.getMessage() != null ? e.getMessage() : "Type resolution failed during assignment", ""));
+                    this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, sourceLine(node, 1), e.getMessage() != null ? e.getMessage() : "Type resolution failed during assignment", ""));
                 }
             } catch (Exception e) {
-                this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, (node.getSource() != null ? SourceBuilder.toSourceLine(node.getSource(), node.getLine(), node.getCharPosition(), 1) : "<source not available>"), "Error during assignment type checking: " + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()), ""));
+                this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, sourceLine(node, 1), "Error during assignment type checking: " + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()), ""));
             }
         }
         return null;
@@ -217,7 +255,9 @@ public class Check implements ASTVisitor<Void> {
 
     @Override
     public Void visit(Scope scope) {
-        logger.debug("ENTERING Check.visit(Scope): {} | children: {}", (scope != null ? scope.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(scope)) + " " + scope.getSourceInfo() : "null"), (scope != null ? scope.getChildren().stream().map(ch -> ch != null ? ch.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(ch)) + " " + ch.getSourceInfo() : "null").toList() : "N/A"));
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("Check", "enter " + CompilerTrace.id(scope) + " " + scope.getSourceInfo() + " with " + scope.getChildren().size() + " children");
+        }
         Scope previousScope = this.currentScope;
         this.currentScope = scope;
         for (Node child : scope.getChildren()) {
@@ -279,7 +319,9 @@ public class Check implements ASTVisitor<Void> {
 
     @Override
     public Void visit(ForLoop node) {
-        logger.debug("ENTERING ForLoop.visit for loop at {}:{}. Current scope: {}", node.getLine(), node.getCharPosition(), (this.currentScope != null ? this.currentScope.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this.currentScope)) : "null"));
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("Check", "enter for loop at " + node.getLine() + ":" + node.getCharPosition() + " in " + CompilerTrace.id(this.currentScope));
+        }
         try {
             // ForLoop.check() handles its own internal scope creation and checking of its components.
             // It needs the current (enclosing) scope to establish its parent.
@@ -293,7 +335,7 @@ public class Check implements ASTVisitor<Void> {
             } else {
                 // Fallback if FailedCheckException has a general message but no structured errors
                 String errorMsg = "Error during for-loop checking at " + node.getLine() + ":" + node.getCharPosition() + ": " + e.getMessage();
-                this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, SourceBuilder.toSourceLine(node.getSource(), node.getLine(), node.getCharPosition(), 1), errorMsg, ""));
+                this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, SourceBuilder.toSourceLine(node.getSourceFile(), node.getLine(), node.getCharPosition(), 1), errorMsg, ""));
                 logger.error(errorMsg, e);
             }
         }
@@ -352,21 +394,23 @@ public class Check implements ASTVisitor<Void> {
     public Void visit(Identifier node) {
         // Simplified logging for scope details as getDeclarations() is not directly available for general logging here.
         // Specific declarations can be inspected via localDeclarations if currentScope is an instance of Scope.
-        logger.debug("Visiting Identifier: '{}' in scope: {}", node.getName(), (this.currentScope != null ? this.currentScope.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this.currentScope)) : "null"));
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("Check", "identifier '" + node.getName() + "' in " + CompilerTrace.id(this.currentScope));
+        }
         if (this.currentScope == null) {
             String errorMsg = String.format("Compiler error: current scope not set when checking identifier '%s'.", node.getName());
-            this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, SourceBuilder.toSourceLine(node.getSource(), node.getLine(), node.getCharPosition(), node.getName().length()), errorMsg, ""));
+            this.errors.add(new CompilationError(ErrorType.INTERNAL_ERROR, SourceBuilder.toSourceLine(node.getSourceFile(), node.getLine(), node.getCharPosition(), node.getName().length()), errorMsg, ""));
             logger.error(errorMsg);
             return null;
         }
 
         // Assuming Identifier node here refers to a variable. Function calls are handled by FunctionCall visitor.
-        VariableDeclaration decl = this.currentScope.resolveVariable(node.getName(), node);
+        VariableDeclaration decl = node.getDeclaration(this.currentScope);
 
         if (decl == null) {
             String errorMsg = String.format("Identifier '%s' (variable) not found in the current scope.", node.getName());
             // Using UNKNOWN_VARIABLE instead of UNDECLARED_VARIABLE
-            this.errors.add(new CompilationError(ErrorType.UNKNOWN_VARIABLE, SourceBuilder.toSourceLine(node.getSource(), node.getLine(), node.getCharPosition(), node.getName().length()), errorMsg, ""));
+            this.errors.add(new CompilationError(ErrorType.UNKNOWN_VARIABLE, SourceBuilder.toSourceLine(node.getSourceFile(), node.getLine(), node.getCharPosition(), node.getName().length()), errorMsg, ""));
             // Simplified logging for scope details
             logger.warn("{} Scope: {}@{}", errorMsg, this.currentScope.getClass().getSimpleName(), Integer.toHexString(System.identityHashCode(this.currentScope)));
         } else {
@@ -424,4 +468,15 @@ public class Check implements ASTVisitor<Void> {
         }
         return null;
     }
+
+    /**
+     * Фрагмент исходника для диагностики. Если текст исходника в узлах не сохраняется (потоковый
+     * разбор), вместо строки с указателем выводятся позиция и восстановленный текст узла.
+     */
+    private static CharSequence sourceLine(Node node, int length) {
+        if (node.getSourceFile() != null) {
+            return SourceBuilder.toSourceLine(node.getSourceFile(), node.getLine(), node.getCharPosition(), length);
+        }
+        return node.getSourceInfo() + ": " + SourceBuilder.toSourceCode(node);
+    }
 }
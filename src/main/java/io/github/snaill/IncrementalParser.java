@@ -0,0 +1,347 @@
+package io.github.snaill;
+
+import io.github.snaill.ast.FunctionDeclaration;
+import io.github.snaill.ast.Node;
+import io.github.snaill.ast.Scope;
+import io.github.snaill.ast.Statement;
+import io.github.snaill.ast.VariableDeclaration;
+import io.github.snaill.exception.FailedCheckException;
+import io.github.snaill.parser.SnailLexer;
+import org.antlr.v4.runtime.CharStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Инкрементальный разбор для инструментов, реагирующих на каждое нажатие клавиши.
+ * <p>
+ * Хранит текст программы, её AST и положение каждого объявления верхнего уровня. После правки,
+ * которая целиком попадает в одно или несколько соседних объявлений, заново разбираются
+ * только эти объявления ({@code fn} или {@code let}). Их узлы заменяются в корневой области
+ * видимости, а узлы остальных объявлений используются повторно; у объявлений после правки
+ * сдвигаются номера строк. Полный разбор выполняется при правке между объявлениями,
+ * при нарушении порядка объявлений и при ошибке во фрагменте, чтобы диагностики совпадали
+ * с полным разбором.
+ * <p>
+ * AST изменяется на месте. Как и при потоковом разборе ({@link StreamingParser}), текст
+ * исходника в узлах не сохраняется. Позиции правок задаются в символах {@link String}.
+ * <pre>{@code
+ * IncrementalParser parser = IncrementalParser.parse(source, "main.sn");
+ * Scope root = parser.apply(new IncrementalParser.TextEdit(offset, removed, inserted));
+ * }</pre>
+ */
+public final class IncrementalParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(IncrementalParser.class);
+
+    /**
+     * Замена {@code length} символов начиная с {@code offset} на {@code text}
+     */
+    public record TextEdit(int offset, int length, String text) {
+        public TextEdit {
+            if (offset < 0 || length < 0) {
+                throw new IllegalArgumentException("Invalid edit range: offset " + offset + ", length " + length);
+            }
+            Objects.requireNonNull(text);
+        }
+    }
+
+    /**
+     * Объявление верхнего уровня и занимаемые им символы {@code [start, end)} текущего текста
+     */
+    private record Span(Statement node, int start, int end, int line, int column, int stopLine) {
+        Span shift(int chars, int lines) {
+            return new Span(node, start + chars, end + chars, line + lines, column, stopLine + lines);
+        }
+    }
+
+    private final String sourceName;
+    private String text;
+    private Scope root;
+    /**
+     * Объявления в порядке следования; null, если последний разбор завершился ошибкой
+     */
+    private List<Span> spans;
+    private int lastReparsed;
+
+    private IncrementalParser(String text, String sourceName) {
+        this.text = text;
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * Полностью разбирает исходный код
+     *
+     * @param source     Исходный код
+     * @param sourceName Имя источника для сообщений
+     * @throws FailedCheckException при синтаксических ошибках и ошибках построения AST
+     */
+    public static IncrementalParser parse(String source, String sourceName) throws FailedCheckException {
+        IncrementalParser parser = new IncrementalParser(Objects.requireNonNull(source), Objects.requireNonNull(sourceName));
+        parser.parseAll();
+        return parser;
+    }
+
+    /**
+     * Применяет правку и обновляет AST. При ошибке текст всё равно обновляется, а следующая
+     * правка разбирает программу полностью.
+     *
+     * @return Корневая область видимости программы после правки
+     * @throws FailedCheckException при синтаксических ошибках и ошибках построения AST
+     */
+    public Scope apply(TextEdit edit) throws FailedCheckException {
+        Objects.checkFromIndexSize(edit.offset(), edit.length(), text.length());
+        String previous = text;
+        text = previous.substring(0, edit.offset()) + edit.text() + previous.substring(edit.offset() + edit.length());
+        if (spans != null && reparseRegion(previous, edit)) {
+            return root;
+        }
+        parseAll();
+        return root;
+    }
+
+    /**
+     * Корневая область видимости последнего успешного разбора
+     */
+    public Scope root() {
+        return root;
+    }
+
+    public String text() {
+        return text;
+    }
+
+    /**
+     * Число объявлений верхнего уровня, построенных заново последним разбором
+     */
+    public int getLastReparsed() {
+        return lastReparsed;
+    }
+
+    private void parseAll() throws FailedCheckException {
+        spans = null;
+        SyntaxErrorCollector errors = new SyntaxErrorCollector();
+        SnailLexer lexer = new SnailLexer(CharStreams.fromString(text, sourceName));
+        StreamingParser parser = new StreamingParser(lexer, errors);
+        OffsetConverter offsets = new OffsetConverter(text);
+        List<Span> parsed = new ArrayList<>();
+        Scope parsedRoot;
+        try {
+            parsedRoot = parser.parse(declaration -> parsed.add(span(declaration, offsets, 0)));
+        } catch (FailedCheckException e) {
+            // Ошибка построения после синтаксической ошибки - её следствие, сообщаем исходную причину
+            throw errors.getErrors().isEmpty() ? e : new FailedCheckException(errors.getErrors());
+        }
+        if (!errors.getErrors().isEmpty()) {
+            throw new FailedCheckException(errors.getErrors());
+        }
+        root = parsedRoot;
+        spans = parsed;
+        lastReparsed = parsed.size();
+    }
+
+    /**
+     * Разбирает заново только объявления, затронутые правкой
+     *
+     * @param previous Текст до правки
+     * @return false, если нужен полный разбор
+     */
+    private boolean reparseRegion(String previous, TextEdit edit) {
+        int editStart = edit.offset();
+        int editEnd = edit.offset() + edit.length();
+        int first = enclosing(editStart);
+        int last = enclosing(editEnd);
+        if (first < 0 || last < 0) {
+            return false;
+        }
+        // Объявления, начинающиеся на последней строке фрагмента, разбираются вместе с ним:
+        // правка сдвигает их позиции в строке
+        while (last + 1 < spans.size() && spans.get(last + 1).line() == spans.get(last).stopLine()) {
+            last++;
+        }
+        Span firstSpan = spans.get(first);
+        int charDelta = edit.text().length() - edit.length();
+        int lineDelta = lineBreaks(edit.text(), 0, edit.text().length()) - lineBreaks(previous, editStart, editEnd);
+        String region = text.substring(firstSpan.start(), spans.get(last).end() + charDelta);
+
+        List<Span> removed = List.copyOf(spans.subList(first, last + 1));
+        for (Span span : removed) {
+            if (span.node() instanceof VariableDeclaration variable) {
+                root.removeDeclaration(variable);
+            }
+        }
+        SyntaxErrorCollector errors = new SyntaxErrorCollector();
+        SnailLexer lexer = new SnailLexer(CharStreams.fromString(region, sourceName));
+        lexer.setLine(firstSpan.line());
+        lexer.setCharPositionInLine(firstSpan.column());
+        StreamingParser parser = new StreamingParser(lexer, errors);
+        if (first > 0 && spans.get(first - 1).node() instanceof FunctionDeclaration) {
+            parser.expectFunctions();
+        }
+        OffsetConverter offsets = new OffsetConverter(region);
+        List<Span> added = new ArrayList<>();
+        boolean failed = false;
+        try {
+            for (StreamingParser.Declaration declaration = parser.next(root); declaration != null; declaration = parser.next(root)) {
+                added.add(span(declaration, offsets, firstSpan.start()));
+            }
+        } catch (FailedCheckException e) {
+            logger.debug("Incremental reparse of {} failed, falling back to full parse: {}", sourceName, e.getMessage());
+            failed = true;
+        }
+        List<Span> updated = new ArrayList<>(spans.subList(0, first));
+        updated.addAll(added);
+        for (Span span : spans.subList(last + 1, spans.size())) {
+            updated.add(span.shift(charDelta, lineDelta));
+        }
+        if (failed || !errors.getErrors().isEmpty() || added.isEmpty() || !isWellOrdered(updated)) {
+            restore(removed, added);
+            return false;
+        }
+
+        if (lineDelta != 0) {
+            Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Span span : spans.subList(last + 1, spans.size())) {
+                shiftLines(span.node(), lineDelta, visited);
+            }
+        }
+        spans = updated;
+        List<Node> children = new ArrayList<>(updated.size());
+        for (Span span : updated) {
+            children.add(span.node());
+        }
+        root.setChildren(children);
+        lastReparsed = added.size();
+        logger.debug("Incrementally reparsed {} of {} declarations in {}", added.size(), updated.size(), sourceName);
+        return true;
+    }
+
+    /**
+     * Индекс объявления, внутри которого (или сразу после последнего символа которого) лежит позиция
+     */
+    private int enclosing(int offset) {
+        int low = 0;
+        int high = spans.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Span span = spans.get(middle);
+            if (offset < span.start()) {
+                high = middle - 1;
+            } else if (offset > span.end()) {
+                low = middle + 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Возвращает таблицу символов корневой области видимости в состояние до неудачного разбора фрагмента
+     */
+    private void restore(List<Span> removed, List<Span> added) {
+        for (Span span : added) {
+            if (span.node() instanceof VariableDeclaration variable) {
+                root.removeDeclaration(variable);
+            }
+        }
+        for (Span span : removed) {
+            if (span.node() instanceof VariableDeclaration variable) {
+                try {
+                    root.addDeclaration(variable);
+                } catch (FailedCheckException e) {
+                    throw new IllegalStateException("Cannot restore global variable '" + variable.getName() + "'", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Глобальные переменные предшествуют функциям, и есть хотя бы одна функция
+     */
+    private static boolean isWellOrdered(List<Span> spans) {
+        boolean functions = false;
+        for (Span span : spans) {
+            if (span.node() instanceof FunctionDeclaration) {
+                functions = true;
+            } else if (functions) {
+                return false;
+            }
+        }
+        return functions;
+    }
+
+    private static Span span(StreamingParser.Declaration declaration, OffsetConverter offsets, int base) {
+        return new Span(declaration.node(),
+                base + offsets.toChars(declaration.startIndex()),
+                base + offsets.toChars(declaration.stopIndex() + 1),
+                declaration.line(), declaration.column(), declaration.stopLine());
+    }
+
+    private static int lineBreaks(String text, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Сдвигает номера строк всех узлов поддерева, включая параметры, типы и объявления областей видимости
+     */
+    private static void shiftLines(Node node, int delta, Set<Node> visited) {
+        if (node == null || !visited.add(node)) {
+            return;
+        }
+        if (node.getLine() >= 0) {
+            node.setSourceInfo(node.getLine() + delta, node.getCharPosition(), node.getSourceFile());
+        }
+        for (Node child : node.getChildren()) {
+            shiftLines(child, delta, visited);
+        }
+        if (node instanceof FunctionDeclaration function) {
+            function.getParameters().forEach(parameter -> shiftLines(parameter, delta, visited));
+            shiftLines(function.getReturnType(), delta, visited);
+        }
+        if (node instanceof Scope scope) {
+            scope.getLocalDeclarations().forEach(declaration -> shiftLines(declaration, delta, visited));
+        }
+    }
+
+    /**
+     * Перевод индексов кодовых точек ANTLR в индексы символов строки. Рассчитан на
+     * возрастающие запросы и без суррогатных пар сводится к тождественному отображению.
+     */
+    private static final class OffsetConverter {
+        private final String text;
+        private final boolean identity;
+        private int codePoints;
+        private int chars;
+
+        OffsetConverter(String text) {
+            this.text = text;
+            this.identity = text.codePoints().count() == text.length();
+        }
+
+        int toChars(int codePointIndex) {
+            if (identity) {
+                return codePointIndex;
+            }
+            if (codePointIndex < codePoints) {
+                codePoints = 0;
+                chars = 0;
+            }
+            chars = text.offsetByCodePoints(chars, codePointIndex - codePoints);
+            codePoints = codePointIndex;
+            return chars;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package io.github.snaill;
+
+import io.github.snaill.ast.AST;
+import io.github.snaill.ast.NameResolver;
+import io.github.snaill.ast.TypeAttribution;
+import io.github.snaill.bytecode.BytecodeEmitter;
+import io.github.snaill.bytecode.BytecodeEmitter.BytecodeEmitterException;
+import io.github.snaill.bytecode.FunctionCodeCache;
+import io.github.snaill.exception.FailedCheckException;
+import io.github.snaill.result.CompilationError;
+import io.github.snaill.result.CompilationResult;
+import io.github.snaill.result.ErrorType;
+import io.github.snaill.result.Result;
+import io.github.snaill.result.Warning;
+import io.github.snaill.stats.PhaseTimer;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Компиляция в памяти для встраивания компилятора в другие процессы.
+ * <p>
+ * Исходный код передаётся строкой, результат - байткод и структурированные диагностики;
+ * файлы не читаются и не пишутся, а диагностики не печатаются. Тот же конвейер компилирует файлы
+ * из командной строки ({@code Trail}). Каждый вызов строит собственные лексер, парсер, AST
+ * и контекст генерации, поэтому метод можно вызывать одновременно из многих потоков,
+ * в том числе виртуальных. Общим может быть только {@link Options#functionCodeCache()},
+ * который потокобезопасен.
+ * <pre>{@code
+ * CompilationResult result = SnailCompiler.compile(source, SnailCompiler.Options.named("request.sn"));
+ * if (result.isSuccess()) {
+ *     send(result.bytecode());
+ * }
+ * }</pre>
+ */
+public final class SnailCompiler {
+
+    /**
+     * Параметры компиляции
+     *
+     * @param sourceName        имя источника в диагностиках и событиях JFR
+     * @param functionCodeCache кэш байткода функций между вызовами (null = без кэша)
+     * @param fastLexer         использовать рукописный лексер вместо сгенерированного
+     */
+    public record Options(String sourceName, FunctionCodeCache functionCodeCache, boolean fastLexer) {
+
+        public static final String DEFAULT_SOURCE_NAME = "<input>";
+
+        public Options {
+            Objects.requireNonNull(sourceName);
+        }
+
+        public static Options defaults() {
+            return new Options(DEFAULT_SOURCE_NAME, null, false);
+        }
+
+        public static Options named(String sourceName) {
+            return new Options(sourceName, null, false);
+        }
+
+        public Options withFunctionCodeCache(FunctionCodeCache cache) {
+            return new Options(sourceName, cache, fastLexer);
+        }
+
+        public Options withFastLexer(boolean enabled) {
+            return new Options(sourceName, functionCodeCache, enabled);
+        }
+    }
+
+    /**
+     * Построение AST из источника: чтение, лексический и синтаксический анализ
+     */
+    @FunctionalInterface
+    interface Frontend {
+        /**
+         * @param timer        Замер фаз компиляции
+         * @param syntaxErrors Получатель синтаксических ошибок
+         * @return Построенное, но не проверенное AST
+         */
+        AST parse(PhaseTimer timer, ANTLRErrorListener syntaxErrors) throws FailedCheckException, IOException;
+    }
+
+    /**
+     * Этап, на котором компиляция завершилась ошибкой
+     */
+    enum Stage {
+        /** Чтение исходника */
+        READ,
+        /** Синтаксический анализ и построение AST */
+        PARSE,
+        /** Семантические проверки */
+        CHECK,
+        /** Поиск мёртвого кода */
+        DEAD_CODE,
+        /** Генерация байткода */
+        EMIT
+    }
+
+    /**
+     * Результат компиляции вместе с проверенным AST и генератором байткода для статистики
+     * и сериализации AST; при ошибке компиляции оба равны null, а {@code failedStage} и
+     * {@code cause} (если ошибку описывает исключение) позволяют командной строке вывести её
+     * в прежнем виде
+     */
+    record Compilation(CompilationResult result, AST ast, BytecodeEmitter emitter, Stage failedStage, Exception cause) {
+
+        static Compilation failure(Stage stage, Exception cause, List<CompilationError> errors, List<Warning> warnings) {
+            return new Compilation(CompilationResult.failure(errors, warnings), null, null, stage, cause);
+        }
+    }
+
+    private SnailCompiler() {
+    }
+
+    /**
+     * Компилирует исходный код в байткод SnailVM.
+     * Ошибки компиляции не выбрасываются, а возвращаются в результате.
+     *
+     * @param source  Исходный код
+     * @param options Параметры компиляции
+     * @return Байткод или ошибки, а также предупреждения
+     */
+    public static CompilationResult compile(CharSequence source, Options options) {
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(options);
+        String sourceName = options.sourceName();
+        Frontend frontend = (timer, syntaxErrors) -> Trail.parse(
+                CharStreams.fromString(source.toString(), sourceName), sourceName, timer, syntaxErrors, options.fastLexer());
+        return compile(frontend, options, PhaseTimer.untimed(sourceName)).result();
+    }
+
+    /**
+     * Конвейер компиляции: построение AST, семантические проверки, анализ мёртвого кода
+     * и неиспользуемых символов, генерация байткода. Используется и для строк, и для файлов
+     * ({@code Trail}), которые отличаются только построением AST.
+     *
+     * @param frontend Построение AST
+     * @param options  Параметры компиляции
+     * @param timer    Замер фаз компиляции
+     * @return Результат компиляции
+     */
+    static Compilation compile(Frontend frontend, Options options, PhaseTimer timer) {
+        return compile(frontend, options, timer, null);
+    }
+
+    /**
+     * Компиляция с выводом командной строки: синтаксические ошибки печатаются в {@code console}
+     * в формате ANTLR ({@code line L:C ...}) и, как и раньше, не прерывают компиляцию, а
+     * предупреждения генерации байткода печатаются туда же.
+     *
+     * @param console Поток ошибок командной строки; null - диагностики только собираются в результат
+     */
+    static Compilation compile(Frontend frontend, Options options, PhaseTimer timer, PrintStream console) {
+        String sourceName = options.sourceName();
+
+        // 1. Синтаксический анализ и построение AST
+        SyntaxErrorCollector syntaxErrors = new SyntaxErrorCollector();
+        AST ast;
+        try {
+            ast = frontend.parse(timer, console != null ? new ConsoleSyntaxErrors(console) : syntaxErrors);
+        } catch (FailedCheckException e) {
+            List<CompilationError> errors = new ArrayList<>(syntaxErrors.getErrors());
+            errors.addAll(toErrors(e));
+            return Compilation.failure(Stage.PARSE, e, errors, List.of());
+        } catch (IOException e) {
+            return Compilation.failure(Stage.READ, e, List.of(new CompilationError(
+                    ErrorType.INTERNAL_ERROR, sourceName + ": ", "Cannot read source file: " + e.getMessage(),
+                    "Ensure the file exists and is readable.")), List.of());
+        }
+        if (!syntaxErrors.getErrors().isEmpty()) {
+            return Compilation.failure(Stage.PARSE, null, syntaxErrors.getErrors(), List.of());
+        }
+
+        // 2. Семантические проверки
+        List<CompilationError> errors = new ArrayList<>(analyze(ast, sourceName, timer));
+        if (!errors.isEmpty()) {
+            return Compilation.failure(Stage.CHECK, null, errors, List.of());
+        }
+
+        // 3. Мёртвый код и неиспользуемые символы
+        for (Result result : timer.time("dead-code", ast.root()::checkDeadCode)) {
+            if (result instanceof CompilationError error) {
+                errors.add(error);
+            }
+        }
+        if (!errors.isEmpty()) {
+            return Compilation.failure(Stage.DEAD_CODE, null, errors, List.of());
+        }
+        List<Warning> warnings = timer.time("unused-symbols", ast.root()::getUnusedSymbolWarnings);
+
+        // 4. Генерация байткода
+        BytecodeEmitter emitter = new BytecodeEmitter(ast.root(), options.functionCodeCache());
+        emitter.setSourceName(sourceName);
+        emitter.setConsole(console);
+        try {
+            return new Compilation(CompilationResult.success(timer.time("emit", emitter::emit), warnings), ast, emitter, null, null);
+        } catch (BytecodeEmitterException e) {
+            return Compilation.failure(Stage.EMIT, e, List.of(new CompilationError(
+                    ErrorType.INTERNAL_ERROR, sourceName + ": ", "Bytecode emitter error: " + e.getMessage(), "")), warnings);
+        }
+    }
+
+    /**
+     * Семантические проверки построенного AST: связывание имён, вычисление типов и проверка
+     *
+     * @return Найденные ошибки
+     */
+    static List<CompilationError> analyze(AST ast, String sourceName, PhaseTimer timer) {
+        timer.run("resolve", () -> NameResolver.resolve(ast.root()));
+        timer.run("types", () -> TypeAttribution.attribute(ast.root()));
+        return timer.time("check", () -> new Check(sourceName).check(ast));
+    }
+
+    /**
+     * Вывод синтаксических ошибок в том же виде, что и {@link org.antlr.v4.runtime.ConsoleErrorListener},
+     * но в заданный поток
+     */
+    private static final class ConsoleSyntaxErrors extends BaseErrorListener {
+        private final PrintStream console;
+
+        ConsoleSyntaxErrors(PrintStream console) {
+            this.console = console;
+        }
+
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine,
+                                String msg, RecognitionException e) {
+            console.println("line " + line + ":" + charPositionInLine + " " + msg);
+        }
+    }
+
+    /**
+     * Ошибки исключения; сообщение без структурированных ошибок становится одной ошибкой
+     */
+    private static List<CompilationError> toErrors(FailedCheckException e) {
+        if (!e.getErrors().isEmpty()) {
+            return e.getErrors();
+        }
+        if (e.getError() != null) {
+            return List.of(e.getError());
+        }
+        String message = e.getMessage() != null ? e.getMessage() : "Check failed";
+        // Сообщение могло быть получено из уже отформатированной ошибки; не дублируем префикс CompilationError
+        if (message.startsWith("ERROR:")) {
+            message = message.substring("ERROR:".length());
+        }
+        return List.of(new CompilationError(ErrorType.SYNTAX_ERROR, "", message, ""));
+    }
+}
@@ -0,0 +1,228 @@
+package io.github.snaill;
+
+import io.github.snaill.ast.ASTReflectionBuilder;
+import io.github.snaill.ast.Scope;
+import io.github.snaill.ast.Statement;
+import io.github.snaill.exception.FailedCheckException;
+import io.github.snaill.parser.SnailLexer;
+import io.github.snaill.parser.SnailParser;
+import io.github.snaill.result.CompilationError;
+import io.github.snaill.result.ErrorType;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Потоковый разбор больших исходных файлов.
+ * <p>
+ * Обычный разбор держит в памяти одновременно весь текст файла, все токены и полное дерево
+ * разбора программы. Здесь файл читается небуферизованными потоками символов и токенов,
+ * а объявления верхнего уровня ({@code let} и {@code fn}) разбираются по одному: для каждого
+ * сразу строятся узлы AST, после чего его дерево разбора и токены освобождаются. Поэтому
+ * помимо самого AST память ограничена размером крупнейшего объявления, а не файла.
+ * <p>
+ * Текст исходника в узлах не сохраняется, поэтому диагностики вместо строки исходного кода
+ * показывают позицию и восстановленный текст узла.
+ */
+public final class StreamingParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingParser.class);
+
+    /**
+     * Размер начального буфера символов; буфер растёт только на время разбора одного токена
+     */
+    private static final int CHAR_BUFFER_SIZE = 64 * 1024;
+
+    private static final int LET = literalType("let");
+    private static final int FN = literalType("fn");
+
+    private final SnailParser parser;
+    private final UnbufferedTokenStream<Token> tokens;
+    private final ASTReflectionBuilder builder = new ASTReflectionBuilder(false);
+    private boolean functionsSeen;
+
+    /**
+     * Построенное объявление верхнего уровня и его положение в исходнике
+     *
+     * @param node       Узел глобальной переменной или функции
+     * @param startIndex Индекс первого символа объявления (в кодовых точках)
+     * @param stopIndex  Индекс последнего символа объявления
+     * @param line       Строка начала объявления
+     * @param column     Позиция начала в строке
+     * @param stopLine   Строка последнего символа объявления
+     */
+    public record Declaration(Statement node, int startIndex, int stopIndex, int line, int column, int stopLine) {
+    }
+
+    /**
+     * @param stream        Небуферизованный поток символов исходника
+     * @param errorListener Получатель синтаксических ошибок вместо вывода в консоль (null = стандартный вывод ANTLR)
+     */
+    public StreamingParser(CharStream stream, ANTLRErrorListener errorListener) {
+        this(new SnailLexer(stream), errorListener);
+    }
+
+    /**
+     * @param lexer         Лексер исходника; для фрагмента файла его строка и позиция
+     *                      заранее выставляются на начало фрагмента
+     * @param errorListener Получатель синтаксических ошибок вместо вывода в консоль (null = стандартный вывод ANTLR)
+     */
+    public StreamingParser(SnailLexer lexer, ANTLRErrorListener errorListener) {
+        // Токены должны хранить свой текст: символы позади текущей позиции уже освобождены
+        lexer.setTokenFactory(new CommonTokenFactory(true));
+        tokens = new UnbufferedTokenStream<>(lexer);
+        parser = new SnailParser(tokens);
+        if (errorListener != null) {
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(errorListener);
+            parser.removeErrorListeners();
+            parser.addErrorListener(errorListener);
+        }
+    }
+
+    /**
+     * Потоково разбирает файл. Файл читается и декодируется из UTF-8 по частям.
+     *
+     * @param file          Исходный файл
+     * @param sourceName    Имя источника для сообщений
+     * @param errorListener Получатель синтаксических ошибок (null = стандартный вывод ANTLR)
+     * @return Корневая область видимости программы
+     */
+    public static Scope parse(Path file, String sourceName, ANTLRErrorListener errorListener) throws IOException, FailedCheckException {
+        try (InputStream input = Files.newInputStream(file)) {
+            UnbufferedCharStream stream = new UnbufferedCharStream(input, CHAR_BUFFER_SIZE, StandardCharsets.UTF_8);
+            stream.name = sourceName;
+            return new StreamingParser(stream, errorListener).parse();
+        }
+    }
+
+    /**
+     * Разбирает программу и строит её AST по одному объявлению верхнего уровня.
+     * Структура проверяется так же, как в {@link ASTReflectionBuilder#build(SnailParser.ProgramContext)}:
+     * сначала глобальные переменные, затем хотя бы одна функция и конец файла.
+     *
+     * @return Корневая область видимости программы
+     */
+    public Scope parse() throws FailedCheckException {
+        return parse(declaration -> {
+        });
+    }
+
+    /**
+     * Разбирает программу, сообщая о каждом построенном объявлении верхнего уровня
+     *
+     * @param consumer Получатель объявлений в порядке следования в исходнике
+     * @return Корневая область видимости программы
+     */
+    public Scope parse(Consumer<Declaration> consumer) throws FailedCheckException {
+        List<Statement> statements = new ArrayList<>();
+        Scope rootScope = new Scope(statements, null);
+        for (Declaration declaration = next(rootScope); declaration != null; declaration = next(rootScope)) {
+            statements.add(declaration.node());
+            consumer.accept(declaration);
+        }
+        if (!functionsSeen) {
+            throw structureError(tokens.LT(1),
+                    "No function declarations found. A Snail program must contain at least one function.",
+                    "Define at least one function, e.g., 'fn main() -> void {}'.");
+        }
+        logger.debug("Streamed {} top-level declarations from {}", statements.size(), tokens.getSourceName());
+
+        rootScope.setChildren(new ArrayList<>(statements));
+        return rootScope;
+    }
+
+    /**
+     * Разбирает следующее объявление верхнего уровня и строит его узел в {@code rootScope}.
+     * Глобальная переменная сразу добавляется в таблицу символов корневой области видимости.
+     *
+     * @return Объявление или null в конце файла
+     * @throws FailedCheckException если объявление нарушает порядок программы или не строится
+     */
+    public Declaration next(Scope rootScope) throws FailedCheckException {
+        Token start = tokens.LT(1);
+        int type = start.getType();
+        if (type == Token.EOF) {
+            return null;
+        }
+        if (type == LET && !functionsSeen) {
+            SnailParser.VariableDeclarationContext ctx = parseDeclaration(SnailParser::variableDeclaration);
+            return declaration(builder.buildGlobalVariable(ctx, rootScope), start, ctx);
+        }
+        if (type == FN) {
+            functionsSeen = true;
+            SnailParser.FuncDeclarationContext ctx = parseDeclaration(SnailParser::funcDeclaration);
+            return declaration(builder.buildFunction(ctx, rootScope), start, ctx);
+        }
+        if (functionsSeen) {
+            throw structureError(start,
+                    "Unexpected token after function declarations. Expected EOF.",
+                    "Ensure all global variable declarations are before function declarations, and no statements follow the last function declaration.");
+        }
+        throw structureError(start,
+                "Unexpected token at global scope. Expected variable or function declaration.",
+                "Ensure all global variable declarations are before any function declarations.");
+    }
+
+    /**
+     * Разбор продолжается после функций: глобальные переменные дальше не допускаются.
+     * Нужно при разборе фрагмента, который в файле следует за функцией.
+     */
+    public void expectFunctions() {
+        functionsSeen = true;
+    }
+
+    private static Declaration declaration(Statement node, Token start, ParserRuleContext ctx) {
+        Token stop = ctx.getStop() != null ? ctx.getStop() : start;
+        return new Declaration(node, start.getStartIndex(), Math.max(start.getStartIndex(), stop.getStopIndex()),
+                start.getLine(), start.getCharPositionInLine(), stop.getLine());
+    }
+
+    /**
+     * Разбирает одно объявление верхнего уровня двухэтапно (SLL, затем LL). Токены объявления
+     * удерживаются в потоке до конца разбора, чтобы к ним можно было вернуться для второго этапа.
+     */
+    private <T extends ParserRuleContext> T parseDeclaration(Function<SnailParser, T> rule) {
+        int marker = tokens.mark();
+        int start = tokens.index();
+        try {
+            return Trail.parseTwoStage(parser, rule, () -> tokens.seek(start));
+        } finally {
+            tokens.release(marker);
+        }
+    }
+
+    private static int literalType(String literal) {
+        for (int type = 1; type <= SnailLexer.VOCABULARY.getMaxTokenType(); type++) {
+            if (("'" + literal + "'").equals(SnailLexer.VOCABULARY.getLiteralName(type))) {
+                return type;
+            }
+        }
+        throw new IllegalStateException("Token '" + literal + "' is not defined in Snail grammar");
+    }
+
+    private static FailedCheckException structureError(Token token, String message, String suggestion) {
+        return new FailedCheckException(new CompilationError(
+                ErrorType.SYNTAX_ERROR,
+                token.getLine() + ":" + token.getCharPositionInLine() + " " + token.getText(),
+                message,
+                suggestion
+        ));
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.snaill;
+
+import io.github.snaill.result.CompilationError;
+import io.github.snaill.result.ErrorType;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Собирает синтаксические ошибки лексера и парсера вместо вывода в консоль
+ */
+final class SyntaxErrorCollector extends BaseErrorListener {
+    private final List<CompilationError> errors = new ArrayList<>();
+
+    @Override
+    public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine,
+                            String msg, RecognitionException e) {
+        errors.add(new CompilationError(
+                ErrorType.SYNTAX_ERROR,
+                line + "," + charPositionInLine + ": ",
+                "Syntax error: " + msg,
+                ""));
+    }
+
+    List<CompilationError> getErrors() {
+        return errors;
+    }
+}
@@ -1,30 +1,55 @@
 package io.github.snaill;
 
 import io.github.snaill.ast.*;
-import io.github.snaill.bytecode.BytecodeEmitter;
-import io.github.snaill.bytecode.BytecodeEmitter.BytecodeEmitterException;
+import io.github.snaill.bytecode.BytecodeConstants;
+import io.github.snaill.bytecode.BytecodeUtils;
 import io.github.snaill.bytecode.DebugBytecodeViewer;
+import io.github.snaill.bytecode.FunctionCodeCache;
+import io.github.snaill.cache.CompilationCache;
+import io.github.snaill.daemon.CompileDaemon;
+import io.github.snaill.daemon.DaemonProtocol;
 import io.github.snaill.exception.FailedCheckException;
+import io.github.snaill.jfr.CompilerTrace;
+import io.github.snaill.lexer.FastLexer;
+import io.github.snaill.lexer.FastTokenSource;
+import io.github.snaill.lexer.MappedCharStream;
 import io.github.snaill.parser.SnailLexer;
 import io.github.snaill.parser.SnailParser;
 import io.github.snaill.result.CompilationError;
+import io.github.snaill.result.CompilationResult;
 import io.github.snaill.result.ErrorType;
 import io.github.snaill.result.Result;
+import io.github.snaill.stats.CompilationStats;
+import io.github.snaill.stats.PhaseTimer;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.ANTLRErrorStrategy;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * Trail - компилятор для языка Snail.
@@ -32,7 +57,7 @@ import java.util.concurrent.Callable;
  */
 @Command(
         name = "trail",
-        version = "1.0",
+        version = Trail.VERSION,
         description = "Trail - компилятор для языка Snail",
         mixinStandardHelpOptions = true,
         requiredOptionMarker = '*'  // Маркер для обязательных опций в справке
@@ -41,6 +66,11 @@ public class Trail implements Callable<Integer> {
 
     private static final Logger logger = LoggerFactory.getLogger(Trail.class);
 
+    /**
+     * Версия компилятора
+     */
+    public static final String VERSION = "1.0";
+
     /**
      * Исходный файл для компиляции
      */
@@ -65,12 +95,182 @@ public class Trail implements Callable<Integer> {
     @Option(names = {"--emit-bytecode", "-o"}, description = "Записать байткод в указанный файл", paramLabel = "<output-file>")
     private String emitBytecodeFile;
 
+    /**
+     * Файлы или директории для компиляции
+     */
+    @Parameters(paramLabel = "<path>", arity = "0..*", description = "Файлы или директории для компиляции (несколько путей компилируются параллельно)")
+    private List<String> inputs = new ArrayList<>();
+
+    /**
+     * Число потоков пакетной компиляции
+     */
+    @Option(names = {"-j", "--jobs"}, description = "Число потоков для пакетной компиляции (по умолчанию: число ядер)", paramLabel = "<n>")
+    private int jobs = Runtime.getRuntime().availableProcessors();
+
     /**
      * Включить отладочный вывод
      */
     @Option(names = {"-d", "--debug"}, description = "Включить отладочные сообщения")
     private boolean debug = false;
 
+    /**
+     * Формат отчёта о времени фаз компиляции (null = отчёт не нужен)
+     */
+    @Option(names = "--time-phases", arity = "0..1", fallbackValue = "text", paramLabel = "<format>",
+            description = "Вывести время, процессорное время и выделенную память по фазам компиляции (text или json)")
+    private String timePhases;
+
+    /**
+     * Использовать рукописный лексер
+     */
+    @Option(names = "--fast-lexer", description = "Использовать рукописный табличный лексер вместо сгенерированного ANTLR")
+    private boolean fastLexer = false;
+
+    /**
+     * Потоковый разбор больших файлов
+     */
+    @Option(names = "--streaming", description = "Потоковый разбор: файл не загружается целиком, дерево разбора строится по одной функции")
+    private boolean streaming = false;
+
+    /**
+     * Файл для машиночитаемой статистики компиляции
+     */
+    @Option(names = "--emit-stats", description = "Записать статистику компиляции (AST, пул констант, размеры функций, время фаз) в JSON-файл", paramLabel = "<file.json>")
+    private String emitStatsFile;
+
+    /**
+     * Записать проверенное AST рядом с байткодом
+     */
+    @Option(names = "--emit-ast", description = "Записать проверенное AST в двоичном формате рядом с байткодом (<выходной файл>.ast)")
+    private boolean emitAst = false;
+
+    /**
+     * Директория кэша результатов компиляции
+     */
+    @Option(names = "--cache-dir", description = "Директория кэша результатов компиляции", paramLabel = "<dir>")
+    private String cacheDir;
+
+    /**
+     * Максимальный размер кэша компиляции в мегабайтах
+     */
+    @Option(names = "--cache-size", description = "Максимальный размер кэша в мегабайтах (по умолчанию: ${DEFAULT-VALUE})", paramLabel = "<MB>")
+    private long cacheSizeMb = 256;
+
+    /**
+     * Директория для режима наблюдения
+     */
+    @Option(names = "--watch", description = "Следить за директорией и перекомпилировать изменённые файлы", paramLabel = "<dir>")
+    private String watchDir;
+
+    /**
+     * Запустить сервер компиляции
+     */
+    @Option(names = "--daemon", description = "Запустить сервер компиляции на Unix-сокете")
+    private boolean daemon = false;
+
+    /**
+     * Путь к Unix-сокету сервера компиляции
+     */
+    @Option(names = "--socket", description = "Путь к Unix-сокету сервера компиляции", paramLabel = "<socket>")
+    private String socketPath;
+
+    /**
+     * Директория, относительно которой разрешаются пути (null = текущая директория процесса)
+     */
+    private final Path workingDirectory;
+    private final PrintStream out;
+    private final PrintStream err;
+    /**
+     * Кэш байткода функций, общий для всех компиляций долгоживущего процесса (null = без кэша).
+     * Режим наблюдения создаёт его сам, если кэш не передан.
+     */
+    private FunctionCodeCache functionCodeCache;
+    /**
+     * Статистика успешно скомпилированных файлов при {@code --emit-stats}, по пути исходного файла
+     */
+    private final Map<String, CompilationStats> compilationStats = new ConcurrentHashMap<>();
+
+    public Trail() {
+        this(null, null, null, null);
+    }
+
+    /**
+     * Создаёт компилятор, работающий от имени клиента сервера компиляции.
+     *
+     * @param workingDirectory  Рабочая директория клиента
+     * @param out               Поток стандартного вывода клиента
+     * @param err               Поток ошибок клиента
+     * @param functionCodeCache Кэш байткода функций, переживающий отдельные запросы
+     */
+    public Trail(Path workingDirectory, PrintStream out, PrintStream err, FunctionCodeCache functionCodeCache) {
+        this.workingDirectory = workingDirectory;
+        this.out = out;
+        this.err = err;
+        this.functionCodeCache = functionCodeCache;
+    }
+
+    private PrintStream out() {
+        return out != null ? out : System.out;
+    }
+
+    private PrintStream err() {
+        return err != null ? err : System.err;
+    }
+
+    /**
+     * Работает ли компилятор в долгоживущем процессе: сервер компиляции или режим наблюдения
+     */
+    private boolean isLongLived() {
+        return workingDirectory != null || watchDir != null;
+    }
+
+    private String resolvePath(String path) {
+        if (path == null || workingDirectory == null) {
+            return path;
+        }
+        return workingDirectory.resolve(path).toString();
+    }
+
+    /**
+     * Запускает режим наблюдения и блокируется до прерывания процесса.
+     */
+    private int runWatch() {
+        if (jobs < 1) {
+            err().println("Option --jobs must be positive, got " + jobs);
+            return 1;
+        }
+        if (emitStatsFile != null) {
+            err().println("Option --emit-stats cannot be used with --watch");
+            return 1;
+        }
+        if (functionCodeCache == null) {
+            functionCodeCache = new FunctionCodeCache();
+        }
+        BatchCompiler batch = new BatchCompiler(jobs, this::compileFile);
+        try (WatchCompiler watcher = new WatchCompiler(Paths.get(watchDir), batch, WatchCompiler.DEFAULT_DEBOUNCE_MILLIS, out(), err())) {
+            return watcher.run();
+        } catch (IOException e) {
+            logger.error("Ошибка режима наблюдения: {}", e.getMessage());
+            err().println("Watch Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Запускает сервер компиляции и блокируется до его остановки.
+     */
+    private int runDaemon() {
+        Path socket = socketPath != null ? Paths.get(socketPath) : DaemonProtocol.defaultSocketPath();
+        try (CompileDaemon compileDaemon = new CompileDaemon(socket)) {
+            compileDaemon.serve();
+            return 0;
+        } catch (IOException e) {
+            logger.error("Ошибка сервера компиляции: {}", e.getMessage());
+            err().println("Daemon Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
     /**
      * Отладочный просмотр байткода
      *
@@ -82,12 +282,12 @@ public class Trail implements Callable<Integer> {
             logger.info("Starting bytecode debug for file: {}", bytecodeFile);
             byte[] bytecode = Files.readAllBytes(Paths.get(bytecodeFile));
             String disassembly = DebugBytecodeViewer.disassemble(bytecode);
-            System.out.println(disassembly); // Используем System.out.println для вывода результатов дизассемблера
+            out().println(disassembly); // Используем out().println для вывода результатов дизассемблера
             return 0;
         } catch (Exception e) {
             logger.error("Error debugging bytecode: {}", e.getMessage());
             if (debug) {
-                e.printStackTrace();
+                e.printStackTrace(err());
             }
             return 1;
         }
@@ -126,6 +326,11 @@ public class Trail implements Callable<Integer> {
             return root.getChildren();
         }
 
+        @Override
+        public int structuralHash() {
+            return root.structuralHash();
+        }
+
         @Override
         public void setChildren(Collection<Node> children) {
             root.setChildren(children);
@@ -146,14 +351,19 @@ public class Trail implements Callable<Integer> {
             return root.getSource();
         }
 
+        @Override
+        public SourceFile getSourceFile() {
+            return root.getSourceFile();
+        }
+
         @Override
         public String getSourceInfo() {
             return root.getSourceInfo();
         }
 
         @Override
-        public void setSourceInfo(int line, int charPosition, String source) {
-            root.setSourceInfo(line, charPosition, source);
+        public void setSourceInfo(int line, int charPosition, SourceFile sourceFile) {
+            root.setSourceInfo(line, charPosition, sourceFile);
         }
 
         @Override
@@ -180,12 +390,99 @@ public class Trail implements Callable<Integer> {
      * @return Собранное AST
      */
     public static AST build(String filename) throws FailedCheckException, UncheckedIOException {
+        return build(filename, PhaseTimer.untimed(filename));
+    }
+
+    /**
+     * Собирает AST из исходного файла, замеряя фазы чтения, лексического анализа, парсинга,
+     * построения AST и семантических проверок.
+     *
+     * @param filename Путь к исходному файлу
+     * @param timer    Замер фаз компиляции
+     * @return Собранное AST
+     */
+    public static AST build(String filename, PhaseTimer timer) throws FailedCheckException, UncheckedIOException {
+        return build(filename, timer, false);
+    }
+
+    /**
+     * Собирает AST из исходного файла.
+     *
+     * @param filename  Путь к исходному файлу
+     * @param timer     Замер фаз компиляции
+     * @param fastLexer Использовать рукописный лексер {@link FastLexer} вместо сгенерированного
+     * @return Собранное AST
+     */
+    public static AST build(String filename, PhaseTimer timer, boolean fastLexer) throws FailedCheckException, UncheckedIOException {
         logger.debug("Starting build process for file: {}", filename);
         Objects.requireNonNull(filename);
-        final CharStream stream;
+        AST astNode = parseFile(fileFrontend(filename, fastLexer, true), filename, timer);
+        checkSemantics(astNode, filename, timer);
+        return astNode; // Return the fully checked AST
+    }
+
+    /**
+     * Собирает AST из исходного файла потоковым разбором {@link StreamingParser}: файл не
+     * загружается в память целиком, а дерево разбора строится только для текущего объявления
+     * верхнего уровня. Подходит для очень больших сгенерированных программ.
+     *
+     * @param filename Путь к исходному файлу
+     * @param timer    Замер фаз компиляции
+     * @return Собранное AST
+     */
+    public static AST buildStreaming(String filename, PhaseTimer timer) throws FailedCheckException, UncheckedIOException {
+        logger.debug("Starting streaming build process for file: {}", filename);
+        Objects.requireNonNull(filename);
+        AST astNode = parseFile(streamingFrontend(filename), filename, timer);
+        checkSemantics(astNode, filename, timer);
+        return astNode;
+    }
+
+    /**
+     * Построение AST из файла, отображённого в память или прочитанного в кучу ({@link MappedCharStream})
+     *
+     * @param mapSource Отображать файл в память. Долгоживущие процессы читают файл в кучу: отображение
+     *                  не освобождается явно, а файлы в них переписываются во время компиляции.
+     *                  Если отображённый файл изменился во время разбора, чтение завершается {@link IOException}
+     */
+    private static SnailCompiler.Frontend fileFrontend(String filename, boolean fastLexer, boolean mapSource) {
+        return (timer, syntaxErrors) -> {
+            Path file = Paths.get(filename);
+            if (!mapSource) {
+                CharStream stream = timer.time("read", () -> MappedCharStream.read(file, filename));
+                return parse(stream, filename, timer, syntaxErrors, fastLexer);
+            }
+            CharStream stream = timer.time("read", () -> MappedCharStream.open(file, filename));
+            AST ast = parse(stream, filename, timer, syntaxErrors, fastLexer);
+            if (stream instanceof MappedCharStream mapped) {
+                mapped.checkUnchanged();
+            }
+            return ast;
+        };
+    }
+
+    /**
+     * Построение AST потоковым разбором; чтение, лексический и синтаксический анализ и построение AST
+     * чередуются и замеряются одной фазой
+     */
+    private static SnailCompiler.Frontend streamingFrontend(String filename) {
+        return (timer, syntaxErrors) -> {
+            // Разбор бросает и IOException, и FailedCheckException, поэтому фаза закрывается явно
+            PhaseTimer.Phase phase = timer.start("parse");
+            try {
+                return new ASTImpl(StreamingParser.parse(Paths.get(filename), filename, syntaxErrors));
+            } finally {
+                phase.close();
+            }
+        };
+    }
+
+    /**
+     * AST файла без семантических проверок; синтаксические ошибки выводит ANTLR
+     */
+    private static AST parseFile(SnailCompiler.Frontend frontend, String filename, PhaseTimer timer) throws FailedCheckException {
         try {
-            stream = CharStreams.fromFileName(filename);
-            logger.debug("Successfully read file: {}", filename);
+            return frontend.parse(timer, null);
         } catch (IOException e) {
             logger.error("Failed to read file {}: {}", filename, e.getMessage());
             CompilationError error = new CompilationError(
@@ -194,47 +491,145 @@ public class Trail implements Callable<Integer> {
                     "Cannot read source file: " + e.getMessage(),
                     "Ensure the file exists and is readable."
             );
-            throw new FailedCheckException(error.toString());
-        }
-        SnailParser parser = new SnailParser(
-                new CommonTokenStream(
-                        new SnailLexer(stream)
-                )
-        );
-        SnailParser.ProgramContext tree = parser.program();
-        logger.debug("Parsed program context for: {}", filename);
+            throw new FailedCheckException(error);
+        }
+    }
+
+    /**
+     * Семантические проверки построенного AST
+     *
+     * @throws FailedCheckException если найдены ошибки
+     */
+    private static void checkSemantics(AST astNode, String filename, PhaseTimer timer) throws FailedCheckException {
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("Trail", "semantic checks of " + filename + " for " + CompilerTrace.id(astNode));
+        }
+        List<CompilationError> semanticErrors = SnailCompiler.analyze(astNode, filename, timer);
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("Trail", "semantic checks of " + filename + " found " + semanticErrors.size() + " errors");
+        }
+
+        if (!semanticErrors.isEmpty()) {
+            throw new FailedCheckException(logSemanticErrors(filename, semanticErrors)); // Throw if errors are present
+        }
+
+        logger.debug("Semantic checks passed for: {}", filename);
+    }
+
+    /**
+     * Журналирует семантические ошибки файла
+     *
+     * @return Текст ошибок для исключения
+     */
+    private static String logSemanticErrors(String filename, List<CompilationError> semanticErrors) {
+        StringBuilder errorMessages = new StringBuilder("Semantic errors found during build process for file '" + filename + "':\n");
+        for (CompilationError error : semanticErrors) {
+            errorMessages.append("- ").append(error.toString()).append("\n");
+        }
+        logger.error(errorMessages.toString()); // Log the errors
+        logger.error("!!! Trail.build for {}: Preparing to throw FailedCheckException due to {} semantic errors. First error: {}", filename, semanticErrors.size(), semanticErrors.getFirst());
+        return errorMessages.toString().trim();
+    }
+
+    /**
+     * Лексический и синтаксический анализ и построение AST без семантических проверок.
+     *
+     * @param stream        Исходный код
+     * @param sourceName    Имя источника для сообщений
+     * @param timer         Замер фаз компиляции
+     * @param errorListener Получатель синтаксических ошибок вместо вывода в консоль (null = стандартный вывод ANTLR)
+     * @param fastLexer     Использовать рукописный лексер {@link FastLexer} вместо сгенерированного
+     * @return Построенное AST
+     */
+    static AST parse(CharStream stream, String sourceName, PhaseTimer timer, ANTLRErrorListener errorListener, boolean fastLexer) throws FailedCheckException {
+        TokenSource lexer;
+        if (fastLexer) {
+            FastTokenSource fastTokenSource = new FastTokenSource(stream);
+            if (errorListener != null) {
+                fastTokenSource.removeErrorListeners();
+                fastTokenSource.addErrorListener(errorListener);
+            }
+            lexer = fastTokenSource;
+        } else {
+            SnailLexer snailLexer = new SnailLexer(stream);
+            if (errorListener != null) {
+                snailLexer.removeErrorListeners();
+                snailLexer.addErrorListener(errorListener);
+            }
+            lexer = snailLexer;
+        }
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        SnailParser parser = new SnailParser(tokens);
+        if (errorListener != null) {
+            parser.removeErrorListeners();
+            parser.addErrorListener(errorListener);
+        }
+        if (timer.isEnabled()) {
+            // Лексер ленивый: при замере заполняем поток токенов заранее, чтобы отделить лексический анализ от парсинга
+            timer.run("lex", tokens::fill);
+        }
+        SnailParser.ProgramContext tree = timer.time("parse", () -> parseProgram(parser));
+        logger.debug("Parsed program context for: {}", sourceName);
         final ASTBuilder builder = new ASTReflectionBuilder();
-        Node initialAstNode = builder.build(tree); // Can throw FailedCheckException for critical parsing/AST building errors
-        logger.debug("Successfully built initial AST structure for: {}", filename);
+        // Can throw FailedCheckException for critical parsing/AST building errors
+        Node initialAstNode = timer.time("ast", () -> builder.build(tree));
+        logger.debug("Successfully built initial AST structure for: {}", sourceName);
 
-        AST astNode;
         if (initialAstNode instanceof Scope) {
-            astNode = new ASTImpl((Scope) initialAstNode);
+            return new ASTImpl((Scope) initialAstNode);
         } else if (initialAstNode instanceof AST) {
-            astNode = (AST) initialAstNode;
-        } else {
-            logger.error("Unexpected AST node type after initial build: {}", initialAstNode.getClass().getName());
-            throw new RuntimeException("Unexpected AST node type: " + initialAstNode.getClass().getName());
+            return (AST) initialAstNode;
         }
+        logger.error("Unexpected AST node type after initial build: {}", initialAstNode.getClass().getName());
+        throw new RuntimeException("Unexpected AST node type: " + initialAstNode.getClass().getName());
+    }
 
-        // Perform semantic checks
-        Check semanticChecker = new Check(); // Assuming Check is in the same package or imported
-        logger.debug("Trail.build for {}: BEFORE semanticChecker.check() for AST node: {}", filename, (astNode != null ? astNode.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(astNode)) : "null"));
-        List<CompilationError> semanticErrors = semanticChecker.check(astNode);
-        logger.debug("Trail.build for {}: AFTER semanticChecker.check(). Errors found: {} {}", filename, (semanticErrors != null ? semanticErrors.size() : "null list"), (semanticErrors != null && !semanticErrors.isEmpty() ? "-> " + semanticErrors : ""));
+    /**
+     * Двухэтапный разбор программы: сначала быстрый режим предсказания SLL, который при первой
+     * ошибке прерывается без сообщений, и только при неудаче - повторный разбор в полном режиме LL
+     * с исходными слушателями ошибок и стратегией восстановления. Для корректного входа SLL почти
+     * всегда достаточно; для некорректного диагностики совпадают с разбором в режиме LL,
+     * так как сообщения выдаёт только второй этап. Ошибки лексера выдаются один раз:
+     * токены, прочитанные на первом этапе, остаются в буфере потока.
+     *
+     * @param parser Парсер, созданный над {@link CommonTokenStream}
+     * @return Дерево разбора программы
+     */
+    public static SnailParser.ProgramContext parseProgram(SnailParser parser) {
+        return parseTwoStage(parser, SnailParser::program, parser::reset);
+    }
 
-        if (!semanticErrors.isEmpty()) {
-            StringBuilder errorMessages = new StringBuilder("Semantic errors found during build process for file '" + filename + "':\n");
-            for (CompilationError error : semanticErrors) {
-                errorMessages.append("- ").append(error.toString()).append("\n");
+    /**
+     * Двухэтапный разбор одного правила грамматики (см. {@link #parseProgram(SnailParser)}).
+     *
+     * @param parser Парсер
+     * @param rule   Разбираемое правило, например {@code SnailParser::funcDeclaration}
+     * @param rewind Возврат потока токенов к началу правила перед повторным разбором в режиме LL
+     * @return Дерево разбора правила
+     */
+    public static <T extends ParserRuleContext> T parseTwoStage(SnailParser parser, Function<SnailParser, T> rule, Runnable rewind) {
+        List<? extends ANTLRErrorListener> listeners = List.copyOf(parser.getErrorListeners());
+        ANTLRErrorStrategy errorStrategy = parser.getErrorHandler();
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        try {
+            return rule.apply(parser);
+        } catch (ParseCancellationException e) {
+            logger.debug("SLL parse failed, retrying with full LL prediction");
+            rewind.run();
+            listeners.forEach(parser::addErrorListener);
+            parser.setErrorHandler(errorStrategy);
+            errorStrategy.reset(parser);
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return rule.apply(parser);
+        } finally {
+            if (parser.getErrorListeners().isEmpty()) {
+                listeners.forEach(parser::addErrorListener);
             }
-            logger.error(errorMessages.toString()); // Log the errors
-            logger.error("!!! Trail.build for {}: Preparing to throw FailedCheckException due to {} semantic errors. First error: {}", filename, semanticErrors.size(), semanticErrors.isEmpty() ? "N/A" : semanticErrors.getFirst().toString());
-            throw new FailedCheckException(errorMessages.toString().trim()); // Throw if errors are present
+            parser.setErrorHandler(errorStrategy);
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
         }
-
-        logger.debug("Semantic checks passed for: {}", filename);
-        return astNode; // Return the fully checked AST
     }
 
     public static void main(String[] args) {
@@ -249,151 +644,311 @@ public class Trail implements Callable<Integer> {
      */
     @Override
     public Integer call() {
-        try {
-            // Если указан файл для отладочного просмотра байткода
-            if (debugBytecodeFile != null) {
-                // Для отладочного просмотра байткода исходный файл не требуется
-                return debugBytecode(debugBytecodeFile);
-            }
+        if (daemon) {
+            return runDaemon();
+        }
 
-            // Начать отладочный вывод, если включен режим отладки
-            if (debug) {
-                logger.debug("Starting compiler with source file: {}", sourceFile);
-            }
+        // Пути клиента сервера компиляции разрешаются относительно его рабочей директории
+        sourceFile = resolvePath(sourceFile);
+        emitBytecodeFile = resolvePath(emitBytecodeFile);
+        debugBytecodeFile = resolvePath(debugBytecodeFile);
+        cacheDir = resolvePath(cacheDir);
+        emitStatsFile = resolvePath(emitStatsFile);
+        watchDir = resolvePath(watchDir);
+        inputs.replaceAll(this::resolvePath);
 
-            // Проверяем наличие исходного файла
-            if (sourceFile == null) {
-                logger.error("Не указан исходный файл для компиляции");
-                return 1;
-            }
+        // Если указан файл для отладочного просмотра байткода
+        if (debugBytecodeFile != null) {
+            // Для отладочного просмотра байткода исходный файл не требуется
+            return debugBytecode(debugBytecodeFile);
+        }
+
+        if (streaming && fastLexer) {
+            err().println("Options --streaming and --fast-lexer cannot be used together");
+            return 1;
+        }
 
-            boolean hasErrors = false; // Флаг для отслеживания возникновения ошибок
-            AST astNode = null; // Инициализировать astNode как null
+        if (watchDir != null) {
+            return runWatch();
+        }
 
-            // 1. Построение AST (включая семантические проверки)
-            if (debug) {
-                logger.debug("Starting AST build process (including semantic checks) for source: {}", sourceFile);
+        // Позиционные аргументы: один файл компилируется как -f, иначе пакетный режим
+        String source = sourceFile;
+        if (!inputs.isEmpty()) {
+            if (source == null && inputs.size() == 1 && !Files.isDirectory(Paths.get(inputs.getFirst()))) {
+                source = inputs.getFirst();
+            } else {
+                return compileBatch();
             }
-            try {
-                astNode = build(sourceFile); // build теперь выбрасывает FailedCheckException при ошибках парсинга или семантических ошибках, или UncheckedIOException
+        }
 
-                // Если build() завершается без исключений, AST валидно и семантические проверки пройдены.
-                logger.info("AST build and semantic checks completed successfully.");
+        // Проверяем наличие исходного файла
+        if (source == null) {
+            logger.error("Не указан исходный файл для компиляции");
+            return 1;
+        }
 
-                if (emitSource) {
-                    // System.out.println(SourceBuilder.toSourceCode(astNode));
-                }
+        String outputFile = emitBytecodeFile != null ? emitBytecodeFile : defaultOutputFile(source);
+        int exitCode = compileFile(source, outputFile, err());
+        CompilationStats stats = compilationStats.get(source);
+        if (exitCode == 0 && stats != null) {
+            exitCode = writeStats(stats.toJson());
+        }
+        return exitCode;
+    }
 
-            } catch (FailedCheckException e) {
-                if (e.getErrors() != null) {
-                    for (CompilationError error : e.getErrors()) {
-                        System.err.println(error.toString()); // Print to System.err for test compatibility
-                    }
-                } else {
-                    // Запасной вариант, если getErrors() возвращает null, хотя наши изменения нацелены на предотвращение этого
-                    System.err.println(e.getMessage());
-                }
-                hasErrors = true; // Errors occurred, astNode might be null or partially built
-            } catch (UncheckedIOException e) { // Перехват специфичного IO исключения из build()
-                logger.error("Ошибка чтения файла: {} - {}", sourceFile, e.getMessage());
-                System.err.println("File Read Error: " + e.getCause().getMessage()); // Вывести сообщение о причине для ясности
-                if (debug) {
-                    e.printStackTrace();
+    /**
+     * Пакетная компиляция: все файлы из позиционных аргументов (директории обходятся рекурсивно)
+     * компилируются параллельно, после чего печатается сводный отчёт.
+     *
+     * @return 0, если все файлы скомпилированы успешно, иначе 1
+     */
+    private int compileBatch() {
+        if (emitBytecodeFile != null) {
+            err().println("Option --emit-bytecode cannot be used with several input files");
+            return 1;
+        }
+        if (jobs < 1) {
+            err().println("Option --jobs must be positive, got " + jobs);
+            return 1;
+        }
+        final List<Path> sources;
+        try {
+            List<String> paths = new ArrayList<>();
+            if (sourceFile != null) {
+                paths.add(sourceFile);
+            }
+            paths.addAll(inputs);
+            sources = BatchCompiler.collectSources(paths);
+        } catch (IOException e) {
+            logger.error("Ошибка обхода входных путей: {}", e.getMessage());
+            err().println("File Read Error: " + e.getMessage());
+            return 1;
+        }
+        if (sources.isEmpty()) {
+            logger.error("Не найдено ни одного исходного файла для компиляции");
+            return 1;
+        }
+        BatchCompiler batch = new BatchCompiler(jobs, this::compileFile);
+        List<BatchCompiler.FileResult> results = batch.compileAll(sources);
+        BatchCompiler.printReport(results, out(), err());
+        int exitCode = results.stream().allMatch(BatchCompiler.FileResult::isSuccess) ? 0 : 1;
+        if (emitStatsFile != null) {
+            // Массив в порядке исходных файлов; не скомпилированные файлы в него не попадают
+            StringJoiner json = new StringJoiner(",", "[", "]");
+            for (Path source : sources) {
+                CompilationStats stats = compilationStats.get(source.toString());
+                if (stats != null) {
+                    json.add(stats.toJson());
                 }
-                return 1; // Завершить досрочно при ошибках ввода-вывода
             }
+            exitCode = Math.max(exitCode, writeStats(json.toString()));
+        }
+        return exitCode;
+    }
 
-            // 2. Проверка мертвого кода (Dead Code Analysis)
-            if (astNode != null && !hasErrors) { // Проверить astNode и отсутствие предыдущих ошибок
-                if (debug) {
-                    logger.debug("Starting dead code analysis for source: {}", sourceFile);
-                }
-                List<Result> deadCodeResults = astNode.root().checkDeadCode();
-                if (deadCodeResults != null && !deadCodeResults.isEmpty()) {
-                    boolean foundDeadCodeErrorThisPass = false;
-                    for (Result deadCodeResult : deadCodeResults) {
-                        if (deadCodeResult instanceof CompilationError) {
-                            System.err.println(deadCodeResult); // Print errors to System.err
-                            foundDeadCodeErrorThisPass = true;
-                        }
-                        // TODO: Обработать предупреждения из deadCodeResults, если применимо (вывести в System.out)
-                    }
-                    if (foundDeadCodeErrorThisPass) {
-                        hasErrors = true;
-                    }
-                }
-            } // Закрывает 'if (astNode != null && !hasErrors)' для анализа мертвого кода
+    /**
+     * Записывает статистику компиляции в файл {@code --emit-stats}
+     *
+     * @return 0 при успехе, 1 при ошибке записи
+     */
+    private int writeStats(String json) {
+        try {
+            BytecodeUtils.writeFileAtomically(Paths.get(emitStatsFile),
+                    (json + System.lineSeparator()).getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            return 0;
+        } catch (IOException e) {
+            logger.error("Ошибка записи статистики компиляции: {}", e.getMessage());
+            err().println("File Write Error: " + e.getMessage());
+            return 1;
+        }
+    }
 
-            // 3. Проверка неиспользуемых переменных и функций (Unused Symbol Checks)
-            if (astNode != null && !hasErrors) { // Проверить astNode и отсутствие предыдущих ошибок
-                if (debug) {
-                    logger.debug("Starting unused symbol checks for source: {}", sourceFile);
-                }
-                List<io.github.snaill.result.Warning> unusedSymbolWarnings = astNode.root().getUnusedSymbolWarnings();
-                if (unusedSymbolWarnings != null && !unusedSymbolWarnings.isEmpty()) {
-                    for (io.github.snaill.result.Warning warning : unusedSymbolWarnings) {
-                        // System.out.println(warning.toString()); // Вывести предупреждения в System.out
-                    }
-                    // Примечание: Предупреждения о неиспользуемых символах обычно не приводят к сбою компиляции (код выхода 1)
-                    // если не установлены специальные флаги компилятора. Текущие тесты ожидают код выхода 0, если присутствуют только предупреждения.
-                }
-            } // Закрывающая скобка для 'if (astNode != null && !hasErrors)' для проверки неиспользуемых символов
+    /**
+     * Отпечаток сборки компилятора для ключей кэша: версия, версия формата байткода
+     * и время изменения файла, из которого загружен компилятор.
+     */
+    static String compilerFingerprint() {
+        long buildTime = 0;
+        try {
+            java.net.URL location = Trail.class.getProtectionDomain().getCodeSource().getLocation();
+            Path codeSource = Paths.get(location.toURI());
+            Path classFile = Files.isDirectory(codeSource)
+                    ? codeSource.resolve(Trail.class.getName().replace('.', '/') + ".class")
+                    : codeSource;
+            buildTime = Files.getLastModifiedTime(classFile).toMillis();
+        } catch (Exception e) {
+            logger.debug("Cannot determine compiler build time: {}", e.getMessage());
+        }
+        return VERSION + "/" + BytecodeConstants.CURRENT_VERSION + "/" + buildTime;
+    }
 
-            // Если были ошибки мертвого кода или семантические ошибки, выходим с кодом 1
-            if (hasErrors) {
-                return 1;
+    /**
+     * Опции, влияющие на результат компиляции (часть ключа кэша)
+     */
+    private String emitOptions() {
+        return "emit-source=" + emitSource;
+    }
+
+    /**
+     * Путь к байткоду по умолчанию: имя исходного файла с расширением .snail.
+     */
+    static String defaultOutputFile(String sourceFile) {
+        return sourceFile.replaceFirst("\\.[^.]+$", "") + ".snail";
+    }
+
+    /**
+     * Компилирует один исходный файл в байткод.
+     * Метод может вызываться из нескольких потоков одновременно; единственное изменяемое
+     * состояние - потокобезопасная таблица статистики для {@code --emit-stats}.
+     *
+     * @param sourceFile Исходный файл
+     * @param outputFile Файл для записи байткода
+     * @param err        Поток для вывода ошибок компиляции
+     * @return Код возврата (0 = успех, 1 = ошибка)
+     */
+    int compileFile(String sourceFile, String outputFile, PrintStream err) {
+        if (timePhases == null && emitStatsFile == null) {
+            return compileFile(sourceFile, outputFile, err, PhaseTimer.untimed(sourceFile));
+        }
+        PhaseTimer timer = PhaseTimer.create(sourceFile);
+        try {
+            return compileFile(sourceFile, outputFile, err, timer);
+        } finally {
+            if (timePhases != null) {
+                err.print("json".equalsIgnoreCase(timePhases)
+                        ? timer.toJson() + System.lineSeparator()
+                        : timer.toText());
             }
+        }
+    }
 
-            // Если ошибок не было, продолжаем генерацию байткода
-            // Эта проверка уже неявно обрабатывается блоком 'if (hasErrors) { return 1; }' перед этим блоком
-            String outputFile;
-            if (emitBytecodeFile != null) {
-                outputFile = emitBytecodeFile;
-            } else {
-                String baseName = sourceFile.replaceFirst("\\.[^.]+$", "");
-                outputFile = baseName + ".snail";
+    private int compileFile(String sourceFile, String outputFile, PrintStream err, PhaseTimer timer) {
+        try {
+            // Начать отладочный вывод, если включен режим отладки
+            if (debug) {
+                logger.debug("Starting compiler with source file: {}", sourceFile);
             }
 
-            // Генерируем байткод
-            try {
-                // Убедитесь, что astNode не равен null перед попыткой его использования для генерации байткода
-                if (astNode == null) {
-                    // Этот случай в идеале должен быть перехвачен флагом 'hasErrors' ранее,
-                    // но в качестве меры предосторожности:
-                    logger.error("AST node is null, cannot proceed to bytecode emission. This indicates an earlier error.");
-                    return 1;
+            // 0. Поиск готового результата в кэше компиляции
+            CompilationCache cache = null;
+            String cacheKey = null;
+            if (cacheDir != null) {
+                cache = new CompilationCache(Paths.get(cacheDir), cacheSizeMb * 1024 * 1024, compilerFingerprint());
+                try {
+                    cacheKey = cache.key(Files.readAllBytes(Paths.get(sourceFile)), emitOptions());
+                } catch (IOException e) {
+                    // Ошибку чтения сообщит обычный путь компиляции
+                    cache = null;
                 }
-                BytecodeEmitter emitter = new BytecodeEmitter();
-                // Логика ASTImpl обрабатывается в методе build(), astNode должен быть AST (который реализует ASTImpl)
-                emitter.emitBytecode(astNode, outputFile);
-                logger.info("Bytecode emission completed successfully to {}", outputFile);
-                return 0; // Успешное выполнение
-            } catch (BytecodeEmitterException e) {
-                logger.error("Ошибка генерации байткода: {}", e.getMessage());
-                System.err.println("Bytecode Emitter Error: " + e.getMessage()); // Для видимости в тестах
-                if (debug) {
-                    e.printStackTrace();
+            }
+            // Статистика и сериализованное AST требуют AST, поэтому готовый результат не подходит
+            if (cache != null && emitStatsFile == null && !emitAst) {
+                Optional<CompilationCache.Entry> cached = cache.get(cacheKey);
+                if (cached.isPresent()) {
+                    timer.run("write", () -> BytecodeUtils.writeFileAtomically(Paths.get(outputFile), cached.get().bytecode()));
+                    logger.info("Bytecode for {} served from compilation cache ({} warnings)", sourceFile, cached.get().warnings().size());
+                    // Попадание выводит те же предупреждения, что и компиляция, сохранившая запись
+                    for (String warning : cached.get().warnings()) {
+                        err.println(warning);
+                    }
+                    return 0;
                 }
+            }
+
+            // 1. Компиляция: тот же конвейер, что и для компиляции в памяти
+            SnailCompiler.Options options = SnailCompiler.Options.named(sourceFile)
+                    .withFunctionCodeCache(functionCodeCache)
+                    .withFastLexer(fastLexer);
+            // Вывод компиляции (синтаксические ошибки, предупреждения генерации) запоминается для записи в кэш
+            ByteArrayOutputStream console = new ByteArrayOutputStream();
+            SnailCompiler.Compilation compilation;
+            try (PrintStream consoleOut = new PrintStream(console, true, StandardCharsets.UTF_8)) {
+                compilation = SnailCompiler.compile(
+                        streaming ? streamingFrontend(sourceFile) : fileFrontend(sourceFile, fastLexer, !isLongLived()), options, timer, consoleOut);
+            } finally {
+                err.print(console.toString(StandardCharsets.UTF_8));
+            }
+            CompilationResult result = compilation.result();
+            if (!result.isSuccess()) {
+                reportFailure(sourceFile, compilation, err);
                 return 1;
-            } catch (Exception e) { // Это теперь для действительно непредвиденных ошибок во время генерации байткода
-                logger.error("Непредвиденная ошибка во время генерации байткода: {}", e.getMessage());
-                System.err.println("Unexpected Bytecode Generation Error: " + e.getMessage()); // Для видимости в тестах
-                if (debug) {
-                    e.printStackTrace();
+            }
+            logger.info("AST build and semantic checks completed successfully.");
+            byte[] bytecode = result.bytecode();
+
+            // 2. Запись результатов
+            if (emitAst) {
+                try {
+                    timer.run("emit-ast", () -> {
+                        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+                        SerializedAST.of(compilation.ast().root()).write(serialized);
+                        BytecodeUtils.writeFileAtomically(Paths.get(outputFile + ".ast"), serialized.toByteArray());
+                    });
+                } catch (IOException e) {
+                    err.println("Bytecode Emitter Error: Ошибка записи AST в файл: " + e.getMessage());
+                    return 1;
                 }
+            }
+            try {
+                timer.run("write", () -> BytecodeUtils.writeFileAtomically(Paths.get(outputFile), bytecode));
+            } catch (IOException e) {
+                logger.error("Ошибка записи байткода: {}", e.getMessage());
+                err.println("Bytecode Emitter Error: Ошибка записи байткода в файл: " + e.getMessage());
                 return 1;
             }
-        } catch (
-                Exception e) { // Этот внешний блок catch обрабатывает действительно непредвиденные ошибки, не перехваченные более специфичными обработчиками выше.
+            logger.info("Bytecode emission completed successfully to {}", outputFile);
+            if (cache != null) {
+                cache.put(cacheKey, new CompilationCache.Entry(bytecode, console.toString(StandardCharsets.UTF_8).lines().toList()));
+            }
+            if (emitStatsFile != null) {
+                compilationStats.put(sourceFile, CompilationStats.collect(sourceFile, compilation.ast().root(), compilation.emitter(), bytecode.length, timer));
+            }
+            return 0; // Успешное выполнение
+        } catch (Exception e) { // Непредвиденные ошибки, не ставшие диагностиками компиляции
             logger.error("Общая ошибка компиляции: {}", e.getMessage());
-            System.err.println("Compiler Error: " + e.getMessage()); // Для видимости в тестах
+            err.println("Compiler Error: " + e.getMessage()); // Для видимости в тестах
             if (debug) {
-                e.printStackTrace();
+                e.printStackTrace(err);
             }
             return 1;
         }
     }
 
+    /**
+     * Выводит ошибки компиляции файла так же, как командная строка выводила их всегда: ошибки
+     * построения AST и мёртвого кода - в поток ошибок, семантические ошибки - в журнал,
+     * ошибки генерации - с префиксом {@code Bytecode Emitter Error}
+     */
+    private void reportFailure(String sourceFile, SnailCompiler.Compilation compilation, PrintStream err) {
+        List<CompilationError> errors = compilation.result().errors();
+        switch (compilation.failedStage()) {
+            case READ -> logger.error("Failed to read file {}: {}", sourceFile, compilation.cause().getMessage());
+            case PARSE -> {
+                if (compilation.cause() instanceof FailedCheckException e) {
+                    for (CompilationError error : e.getErrors()) {
+                        err.println(error);
+                    }
+                }
+            }
+            case CHECK -> logSemanticErrors(sourceFile, errors);
+            case DEAD_CODE -> {
+                logger.info("AST build and semantic checks completed successfully.");
+                for (CompilationError error : errors) {
+                    err.println(error);
+                }
+            }
+            case EMIT -> {
+                logger.info("AST build and semantic checks completed successfully.");
+                logger.error("Ошибка генерации байткода: {}", compilation.cause().getMessage());
+                err.println("Bytecode Emitter Error: " + compilation.cause().getMessage());
+                if (debug) {
+                    compilation.cause().printStackTrace(err);
+                }
+            }
+        }
+    }
+
     /**
      * Проверяет исходный код на синтаксические ошибки.
      *
@@ -402,7 +957,9 @@ public class Trail implements Callable<Integer> {
      * @return Список обнаруженных ошибок компиляции.
      */
     public static List<CompilationError> check(String sourceCode, String sourceName) {
-        logger.error("DEBUG: Starting check process for source: {}", sourceName);
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("Trail", "syntax check of " + sourceName);
+        }
         List<CompilationError> errors = new ArrayList<>();
         try {
             // Создаем поток из исходного кода
@@ -449,7 +1006,7 @@ public class Trail implements Callable<Integer> {
             parser.addErrorListener(errorCollector);
 
             // Парсим программу
-            parser.program();
+            parseProgram(parser);
 
             // Собираем ошибки
             errors.addAll(errorCollector.getErrors());
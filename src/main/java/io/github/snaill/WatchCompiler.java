@@ -0,0 +1,141 @@
+package io.github.snaill;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Режим наблюдения: следит за директорией через {@link WatchService} и перекомпилирует
+ * только изменившиеся исходные файлы в том же процессе.
+ * <p>
+ * События собираются, пока не наступит пауза длиной {@code debounceMillis}, поэтому серия
+ * сохранений одного файла приводит к одной перекомпиляции. Компиляция идёт через
+ * {@link BatchCompiler}, байткод записывается атомарно.
+ */
+public class WatchCompiler implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WatchCompiler.class);
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 100;
+
+    private final Path root;
+    private final BatchCompiler batch;
+    private final long debounceMillis;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    public WatchCompiler(Path root, BatchCompiler batch, long debounceMillis, PrintStream out, PrintStream err) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IOException("Not a directory: " + root);
+        }
+        this.root = root;
+        this.batch = batch;
+        this.debounceMillis = debounceMillis;
+        this.out = out;
+        this.err = err;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Компилирует все файлы директории, затем перекомпилирует изменённые до вызова {@link #close()}.
+     *
+     * @return код возврата последней перекомпиляции (0 = успех)
+     */
+    public int run() throws IOException {
+        registerRecursively(root);
+        int exitCode = compile(BatchCompiler.collectSources(List.of(root.toString())));
+        out.println("Watching " + root + " for changes...");
+        try {
+            while (true) {
+                Set<Path> changed = new TreeSet<>();
+                // Блокируемся до первого события, затем собираем всё, что пришло в окне debounce
+                WatchKey key = watchService.take();
+                collectChanges(key, changed);
+                while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    collectChanges(key, changed);
+                }
+                List<Path> sources = new ArrayList<>();
+                for (Path path : changed) {
+                    if (Files.isRegularFile(path)) {
+                        sources.add(path);
+                    }
+                }
+                if (!sources.isEmpty()) {
+                    exitCode = compile(sources);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            logger.debug("Watch service closed, leaving watch mode");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return exitCode;
+    }
+
+    private int compile(List<Path> sources) {
+        if (sources.isEmpty()) {
+            return 0;
+        }
+        List<BatchCompiler.FileResult> results = batch.compileAll(sources);
+        BatchCompiler.printReport(results, out, err);
+        return results.stream().allMatch(BatchCompiler.FileResult::isSuccess) ? 0 : 1;
+    }
+
+    private void collectChanges(WatchKey key, Set<Path> changed) throws IOException {
+        Path directory = watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                // События потеряны - перекомпилируем всё
+                changed.addAll(BatchCompiler.collectSources(List.of(root.toString())));
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                registerRecursively(path);
+                changed.addAll(BatchCompiler.collectSources(List.of(path.toString())));
+            } else if (path.getFileName().toString().endsWith(BatchCompiler.SOURCE_EXTENSION)) {
+                changed.add(path);
+            }
+        }
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    private void registerRecursively(Path directory) throws IOException {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (Path dir : walk.filter(Files::isDirectory).toList()) {
+                WatchKey key = dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, dir);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
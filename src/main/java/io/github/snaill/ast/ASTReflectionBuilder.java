@@ -3,12 +3,16 @@ package io.github.snaill.ast;
 // Type is in the same package (io.github.snaill.ast), no import needed.
 // SourceInfo.java was not found, so its import is removed.
 import io.github.snaill.parser.SnailParser;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
+import io.github.snaill.jfr.CompilerTrace;
 import io.github.snaill.result.ErrorType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +24,75 @@ public class ASTReflectionBuilder implements ASTBuilder {
 
     private static final Logger logger = LoggerFactory.getLogger(ASTReflectionBuilder.class);
 
+    /**
+     * Сохранять в узлах ссылку на исходный файл для фрагментов кода в диагностиках
+     */
+    private final boolean retainSource;
+    /**
+     * Исходный файл, общий для всех узлов, и поток символов, из которого он создан
+     */
+    private SourceFile sourceFile;
+    private CharStream sourceStream;
+
+    public ASTReflectionBuilder() {
+        this(true);
+    }
+
+    /**
+     * @param retainSource сохранять в узлах ссылку на текст исходника. Без него диагностики
+     *                     показывают позицию и восстановленный текст узла; нужно для потокового
+     *                     разбора, где весь текст файла в памяти не хранится
+     */
+    public ASTReflectionBuilder(boolean retainSource) {
+        this.retainSource = retainSource;
+    }
+
+    /**
+     * Исходный файл токена или null, если текст не сохраняется. Текст файла извлекается из
+     * потока символов один раз и разделяется всеми узлами.
+     */
+    private SourceFile sourceFile(Token token) {
+        if (!retainSource) {
+            return null;
+        }
+        CharStream stream = token.getInputStream();
+        if (sourceFile == null || sourceStream != stream) {
+            sourceStream = stream;
+            sourceFile = SourceFile.of(stream);
+        }
+        return sourceFile;
+    }
+
+    /**
+     * Фрагмент исходника для диагностики о конструкции {@code ctx}: строка с указателем, а если
+     * текст исходника не сохраняется - позиция и текст конструкции
+     */
+    private CharSequence sourceLine(ParserRuleContext ctx, int length) {
+        Token start = ctx.getStart();
+        SourceFile file = sourceFile(start);
+        return file != null
+                ? SourceBuilder.toSourceLine(file, start.getLine(), start.getCharPositionInLine(), length)
+                : SourceBuilder.toSourceCode(ctx);
+    }
+
+    /**
+     * Строит глобальную переменную и добавляет её в корневую область видимости.
+     * Используется при потоковом разборе, когда объявления верхнего уровня разбираются по одному.
+     */
+    public VariableDeclaration buildGlobalVariable(SnailParser.VariableDeclarationContext ctx, Scope rootScope) throws io.github.snaill.exception.FailedCheckException {
+        VariableDeclaration globalVar = parseVariableDeclaration(ctx, rootScope);
+        rootScope.addDeclaration(globalVar);
+        return globalVar;
+    }
+
+    /**
+     * Строит функцию верхнего уровня в корневой области видимости.
+     * Используется при потоковом разборе, когда объявления верхнего уровня разбираются по одному.
+     */
+    public Statement buildFunction(SnailParser.FuncDeclarationContext ctx, Scope rootScope) throws io.github.snaill.exception.FailedCheckException {
+        return (Statement) parseFuncDeclaration(ctx, rootScope);
+    }
+
     @Override
     public Node build(SnailParser.ProgramContext ctx) throws io.github.snaill.exception.FailedCheckException {
         List<Statement> statements = new ArrayList<>();
@@ -45,9 +118,9 @@ public class ASTReflectionBuilder implements ASTBuilder {
                     break label; // Достигли конца файла раньше, чем нашли функции
                 default:
                     // Неожиданный элемент на верхнем уровне перед функциями
-                    String errorSource = child.getText();
+                    CharSequence errorSource = child.getText();
                     if (child instanceof org.antlr.v4.runtime.ParserRuleContext prc && prc.getStart() != null && prc.getStart().getInputStream() != null) {
-                        errorSource = SourceBuilder.toSourceLine(prc.getStart().getInputStream().toString(), prc.getStart().getLine(), prc.getStart().getCharPositionInLine(), prc.getText().length());
+                        errorSource = sourceLine(prc, prc.getText().length());
                     }
                     throw new io.github.snaill.exception.FailedCheckException(
                             new io.github.snaill.result.CompilationError(
@@ -55,7 +128,7 @@ public class ASTReflectionBuilder implements ASTBuilder {
                                     errorSource,
                                     "Unexpected token at global scope. Expected variable or function declaration.",
                                     "Ensure all global variable declarations are before any function declarations."
-                            ).toString()
+                            )
                     );
             }
         }
@@ -73,9 +146,9 @@ public class ASTReflectionBuilder implements ASTBuilder {
         }
 
         if (!hasFunctions) {
-            String errorSource = "program";
+            CharSequence errorSource = "program";
             if (ctx.getStart() != null && ctx.getStart().getInputStream() != null) {
-                errorSource = SourceBuilder.toSourceLine(ctx.getStart().getInputStream().toString(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getText().length());
+                errorSource = sourceLine(ctx, ctx.getText().length());
             }
              throw new io.github.snaill.exception.FailedCheckException(
                 new io.github.snaill.result.CompilationError(
@@ -83,7 +156,7 @@ public class ASTReflectionBuilder implements ASTBuilder {
                     errorSource,
                     "No function declarations found. A Snail program must contain at least one function.",
                     "Define at least one function, e.g., 'fn main() -> void {}'."
-                ).toString()
+                )
             );
         }
 
@@ -97,9 +170,9 @@ public class ASTReflectionBuilder implements ASTBuilder {
                 break; // Достигли конца файла
             } else {
                 // Если после функций идет что-то, кроме EOF
-                String errorSource = child.getText();
+                CharSequence errorSource = child.getText();
                  if (child instanceof org.antlr.v4.runtime.ParserRuleContext prc && prc.getStart() != null && prc.getStart().getInputStream() != null) {
-                     errorSource = SourceBuilder.toSourceLine(prc.getStart().getInputStream().toString(), prc.getStart().getLine(), prc.getStart().getCharPositionInLine(), prc.getText().length());
+                     errorSource = sourceLine(prc, prc.getText().length());
                  }
                 throw new io.github.snaill.exception.FailedCheckException(
                     new io.github.snaill.result.CompilationError(
@@ -107,7 +180,7 @@ public class ASTReflectionBuilder implements ASTBuilder {
                         errorSource,
                         "Unexpected token after function declarations. Expected EOF.",
                         "Ensure all global variable declarations are before function declarations, and no statements follow the last function declaration."
-                    ).toString()
+                    )
                 );
             }
         }
@@ -115,11 +188,11 @@ public class ASTReflectionBuilder implements ASTBuilder {
         // Проверка, что последний обработанный или следующий элемент - это EOF
         if (i >= ctx.getChildCount() || !(ctx.getChild(i) instanceof TerminalNode && ((TerminalNode) ctx.getChild(i)).getSymbol().getType() == SnailParser.EOF)) {
             ParseTree problematicChild = (i < ctx.getChildCount()) ? ctx.getChild(i) : (ctx.getChildCount() > 0 ? ctx.getChild(ctx.getChildCount() -1) : ctx) ;
-            String errorSource = problematicChild.getText();
+            CharSequence errorSource = problematicChild.getText();
             if (problematicChild instanceof org.antlr.v4.runtime.ParserRuleContext prc && prc.getStart() != null && prc.getStart().getInputStream() != null) {
-                 errorSource = SourceBuilder.toSourceLine(prc.getStart().getInputStream().toString(), prc.getStart().getLine(), prc.getStart().getCharPositionInLine(), prc.getText().length());
+                 errorSource = sourceLine(prc, prc.getText().length());
             } else if (ctx.getStart() != null && ctx.getStart().getInputStream() != null) {
-                 errorSource = SourceBuilder.toSourceLine(ctx.getStart().getInputStream().toString(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getText().length());
+                 errorSource = sourceLine(ctx, ctx.getText().length());
             }
             throw new io.github.snaill.exception.FailedCheckException(
                 new io.github.snaill.result.CompilationError(
@@ -127,7 +200,7 @@ public class ASTReflectionBuilder implements ASTBuilder {
                     errorSource,
                     "Program must end with EOF after all declarations.",
                     "Remove any trailing tokens after the last function declaration."
-                ).toString()
+                )
             );
         }
 
@@ -161,8 +234,8 @@ public class ASTReflectionBuilder implements ASTBuilder {
         if (ctx.expression() != null) {
             Expression expr = (Expression) parseExpression(ctx.expression(), parent);
             if (expr == null) {
-                String before = ctx.getStart() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(ctx.getStart().getInputStream().toString(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getText().length()) :
+                CharSequence before = ctx.getStart() != null ?
+                    sourceLine(ctx, ctx.getText().length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(ctx);
                 throw new io.github.snaill.exception.FailedCheckException(
                     new io.github.snaill.result.CompilationError(
@@ -170,18 +243,18 @@ public class ASTReflectionBuilder implements ASTBuilder {
                         before,
                         "Empty expression",
                         ""
-                    ).toString()
+                    )
                 );
             }
             ExpressionStatement stmt = new ExpressionStatement(expr);
             if (ctx.getStart() != null) {
-                stmt.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getStart().getInputStream().toString());
+                stmt.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), sourceFile(ctx.getStart()));
             }
             return stmt;
         }
         // Если оператор не распознан — выбрасываем ошибку
-        String before = ctx.getStart() != null ?
-            io.github.snaill.ast.SourceBuilder.toSourceLine(ctx.getStart().getInputStream().toString(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getText().length()) :
+        CharSequence before = ctx.getStart() != null ?
+            sourceLine(ctx, ctx.getText().length()) :
             io.github.snaill.ast.SourceBuilder.toSourceCode(ctx);
         throw new io.github.snaill.exception.FailedCheckException(
             new io.github.snaill.result.CompilationError(
@@ -189,7 +262,7 @@ public class ASTReflectionBuilder implements ASTBuilder {
                 before,
                 "Unknown or empty statement",
                 ""
-            ).toString()
+            )
         );
     }
 
@@ -202,18 +275,18 @@ public class ASTReflectionBuilder implements ASTBuilder {
         // Установка окружающей области видимости и добавление в localDeclarations будет обработано методом addDeclaration вызывающей области видимости.
         // Информация об источнике устанавливается здесь, так как она напрямую связана с контекстом парсинга самого объявления.
         if (ctx.IDENTIFIER() != null && ctx.IDENTIFIER().getSymbol() != null && ctx.start != null && ctx.start.getInputStream() != null) {
-            varDecl.setSourceInfo(ctx.IDENTIFIER().getSymbol().getLine(), ctx.IDENTIFIER().getSymbol().getCharPositionInLine(), ctx.start.getInputStream().toString());
+            varDecl.setSourceInfo(ctx.IDENTIFIER().getSymbol().getLine(), ctx.IDENTIFIER().getSymbol().getCharPositionInLine(), sourceFile(ctx.start));
         } else if (ctx.getStart() != null && ctx.start.getInputStream() != null) { // Запасной вариант, если символ IDENTIFIER по какой-то причине равен null
-            varDecl.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.start.getInputStream().toString());
+            varDecl.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), sourceFile(ctx.start));
         }
         return varDecl;
     }
 
     private Node parseFuncDeclaration(SnailParser.FuncDeclarationContext ctx, Scope parent) throws io.github.snaill.exception.FailedCheckException {
         if (ctx.IDENTIFIER() == null) {
-            String errorSource = "function declaration";
+            CharSequence errorSource = "function declaration";
             if (ctx.getStart() != null && ctx.getStart().getInputStream() != null) {
-                errorSource = SourceBuilder.toSourceLine(ctx.getStart().getInputStream().toString(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getText().length());
+                errorSource = sourceLine(ctx, ctx.getText().length());
             }
             throw new io.github.snaill.exception.FailedCheckException(
                 new io.github.snaill.result.CompilationError(
@@ -221,7 +294,7 @@ public class ASTReflectionBuilder implements ASTBuilder {
                     errorSource,
                     "Function declaration is missing an identifier.",
                     "Provide a name for the function, e.g., 'fn myFunction() ...'."
-                ).toString()
+                )
             );
         }
         String name = ctx.IDENTIFIER().getText();
@@ -237,9 +310,9 @@ public class ASTReflectionBuilder implements ASTBuilder {
             if (returnType instanceof AbstractNode rn) {
                  rn.setEnclosingScope(parent); 
                  if (ctx.IDENTIFIER() != null && ctx.IDENTIFIER().getSymbol() != null) {
-                    rn.setSourceInfo(ctx.IDENTIFIER().getSymbol().getLine(), ctx.IDENTIFIER().getSymbol().getCharPositionInLine(), parent.getSource());
+                    rn.setSourceInfo(ctx.IDENTIFIER().getSymbol().getLine(), ctx.IDENTIFIER().getSymbol().getCharPositionInLine(), parent.getSourceFile());
                  } else if (ctx.getStart() != null) {
-                    rn.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), parent.getSource());
+                    rn.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), parent.getSourceFile());
                  }
             }
         }
@@ -257,7 +330,7 @@ public class ASTReflectionBuilder implements ASTBuilder {
             for (Parameter param : params) {
                 VariableDeclaration paramVarDecl = new VariableDeclaration(param.getName(), param.getType(), null /* no initial value for param */);
                 if (param instanceof AbstractNode paramAbstractNode) { // Use pattern variable
-                    paramVarDecl.setSourceInfo(paramAbstractNode.getLine(), paramAbstractNode.getCharPosition(), paramAbstractNode.getSource());
+                    paramVarDecl.setSourceInfo(paramAbstractNode.getLine(), paramAbstractNode.getCharPosition(), paramAbstractNode.getSourceFile());
                 }
                 paramVarDecl.setEnclosingScope(funcBodyScope); // Parameter's scope is the function body
                 try {
@@ -278,18 +351,16 @@ public class ASTReflectionBuilder implements ASTBuilder {
         funcBodyScope.setChildren(parsedBodyStatementsContainer.getChildren()); // Populate funcBodyScope with actual statements.
 
         // Set source information for the FunctionDeclaration node itself
-        if (ctx.IDENTIFIER() != null && ctx.IDENTIFIER().getSymbol() != null && parent != null && parent.getSource() != null) {
-            funcDecl.setSourceInfo(ctx.IDENTIFIER().getSymbol().getLine(), ctx.IDENTIFIER().getSymbol().getCharPositionInLine(), parent.getSource());
-        } else if (ctx.getStart() != null && parent != null && parent.getSource() != null) {
-            funcDecl.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), parent.getSource());
+        if (ctx.IDENTIFIER() != null && ctx.IDENTIFIER().getSymbol() != null) {
+            funcDecl.setSourceInfo(ctx.IDENTIFIER().getSymbol().getLine(), ctx.IDENTIFIER().getSymbol().getCharPositionInLine(), sourceFile(ctx.IDENTIFIER().getSymbol()));
+        } else if (ctx.getStart() != null) {
+            funcDecl.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), sourceFile(ctx.getStart()));
         }
 
-        logger.debug("Parsed function '{}' with {} parameters. Body scope ID: {}. Parent scope ID: {}", 
-            name, 
-            (params != null ? params.size() : 0), 
-            System.identityHashCode(funcBodyScope),
-            (parent != null ? System.identityHashCode(parent) : "null")
-        );
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("ASTReflectionBuilder", "function '" + name + "' with " + (params != null ? params.size() : 0)
+                    + " parameters, body " + CompilerTrace.id(funcBodyScope) + ", parent " + CompilerTrace.id(parent));
+        }
 
         return funcDecl;
     }
@@ -303,14 +374,14 @@ public class ASTReflectionBuilder implements ASTBuilder {
                 parameters.add((Parameter) paramNode);
             } else {
                 // This case should ideally not happen if parseParam is correct
-                String errorSource = SourceBuilder.toSourceLine(paramCtx.getStart().getInputStream().toString(), paramCtx.getStart().getLine(), paramCtx.getStart().getCharPositionInLine(), paramCtx.getText().length());
+                CharSequence errorSource = sourceLine(paramCtx, paramCtx.getText().length());
                 throw new io.github.snaill.exception.FailedCheckException(
                     new io.github.snaill.result.CompilationError(
                         ErrorType.INTERNAL_ERROR,
                         errorSource,
                         "Expected a Parameter node but got " + (paramNode != null ? paramNode.getClass().getSimpleName() : "null") + ".",
                         "Please check the grammar and AST builder logic for parameter parsing."
-                    ).toString()
+                    )
                 );
             }
         }
@@ -332,9 +403,9 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
         // Окружающая область видимости для узла Parameter (как объявления) будет установлена при его добавлении в область видимости FunctionDeclaration.
         // Пока что убедимся, что узел Parameter имеет информацию об источнике.
         if (ctx.IDENTIFIER() != null && ctx.IDENTIFIER().getSymbol() != null) {
-            paramNode.setSourceInfo(ctx.IDENTIFIER().getSymbol().getLine(), ctx.IDENTIFIER().getSymbol().getCharPositionInLine(), containingScope.getSource());
+            paramNode.setSourceInfo(ctx.IDENTIFIER().getSymbol().getLine(), ctx.IDENTIFIER().getSymbol().getCharPositionInLine(), containingScope.getSourceFile());
         } else if (ctx.getStart() != null) {
-            paramNode.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), containingScope.getSource());
+            paramNode.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), containingScope.getSourceFile());
         }
         // Узел 'type' внутри Parameter уже имеет установленную окружающую область видимости благодаря parseType.
         return paramNode;
@@ -350,13 +421,14 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
             String problemLocation = "a code block";
             if (enclosingFunction != null) {
                 problemLocation = "the body of function '" + enclosingFunction.getName() + "'";
-                if (enclosingFunction.getLine() != -1 && enclosingFunction.getSource() != null) {
-                     errorSource = "function '" + enclosingFunction.getName() + "' declared at line " + enclosingFunction.getLine() + " in " + enclosingFunction.getSource();
+                if (enclosingFunction.getLine() != -1) {
+                     errorSource = "function '" + enclosingFunction.getName() + "' declared at line " + enclosingFunction.getLine()
+                             + (enclosingFunction.getSourceFile() != null ? " in " + enclosingFunction.getSourceFile().getName() : "");
                 } else {
                     errorSource = "function '" + enclosingFunction.getName() + "'";
                 }
-            } else if (parent != null && parent.getSource() != null && parent.getLine() != -1) {
-                 errorSource = "a scope starting near line " + parent.getLine() + " in " + parent.getSource();
+            } else if (parent != null && parent.getSourceFile() != null && parent.getLine() != -1) {
+                 errorSource = "a scope starting near line " + parent.getLine() + " in " + parent.getSourceFile().getName();
             }
 
             throw new io.github.snaill.exception.FailedCheckException(
@@ -365,7 +437,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                     errorSource,
                     "Syntax error: Expected " + problemLocation + " (e.g., using '{...}') but it was missing or malformed.",
                     "Ensure the block is correctly defined with '{' and '}' or check for syntax errors preventing its recognition."
-                ).toString()
+                )
             );
         }
         Scope currentScope = new Scope(new ArrayList<>(), parent, enclosingFunction);
@@ -381,8 +453,8 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                     stmt = null; // Не должно произойти, если parseVariableDeclaration выбрасывает ошибку при ошибке
                 }
             } else if (stmtCtx.funcDeclaration() != null) {
-                String errorSourceFuncScope = stmtCtx.funcDeclaration().getStart() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(stmtCtx.funcDeclaration().getStart().getInputStream().toString(), stmtCtx.funcDeclaration().getStart().getLine(), stmtCtx.funcDeclaration().getStart().getCharPositionInLine(), stmtCtx.funcDeclaration().getText().length()) :
+                CharSequence errorSourceFuncScope = stmtCtx.funcDeclaration().getStart() != null ?
+                    sourceLine(stmtCtx.funcDeclaration(), stmtCtx.funcDeclaration().getText().length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(stmtCtx.funcDeclaration());
                 throw new io.github.snaill.exception.FailedCheckException(
                     new io.github.snaill.result.CompilationError(
@@ -390,7 +462,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                         errorSourceFuncScope,
                         "Function declarations are not allowed inside blocks.",
                         "Define functions only at the top level or directly within the global scope."
-                    ).toString()
+                    )
                 );
             } else {
                 stmt = (Statement) parseStatement(stmtCtx, currentScope);
@@ -426,7 +498,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
         
         ForLoop forLoopNode = new ForLoop(loopVarDecl, condition, step, body);
         if (ctx.getStart() != null && ctx.getStart().getInputStream() != null) {
-            forLoopNode.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getStart().getInputStream().toString());
+            forLoopNode.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), sourceFile(ctx.getStart()));
         }
         return forLoopNode;
     }
@@ -435,8 +507,8 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
         // Условие разрешается в родительской области видимости
         Expression condition = (Expression) parseExpression(ctx.expression(), parent);
         if (condition == null) {
-            String before = ctx.getStart() != null ?
-                io.github.snaill.ast.SourceBuilder.toSourceLine(ctx.getStart().getInputStream().toString(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getText().length()) :
+            CharSequence before = ctx.getStart() != null ?
+                sourceLine(ctx, ctx.getText().length()) :
                 io.github.snaill.ast.SourceBuilder.toSourceCode(ctx);
             throw new io.github.snaill.exception.FailedCheckException(
                 new io.github.snaill.result.CompilationError(
@@ -444,7 +516,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                     before,
                     "Empty or invalid while condition",
                     ""
-                ).toString()
+                )
             );
         }
 
@@ -454,7 +526,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
         
         WhileLoop whileLoop = new WhileLoop(condition, body);
         if (ctx.getStart() != null && ctx.getStart().getInputStream() != null) {
-            whileLoop.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getStart().getInputStream().toString());
+            whileLoop.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), sourceFile(ctx.getStart()));
         }
         return whileLoop;
     }
@@ -462,8 +534,8 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
     private Node parseIfCondition(SnailParser.IfConditionContext ctx, Scope parent) throws io.github.snaill.exception.FailedCheckException {
         Expression condition = (Expression) parseExpression(ctx.expression(), parent);
         if (condition == null) {
-            String before = ctx.getStart() != null ?
-                io.github.snaill.ast.SourceBuilder.toSourceLine(ctx.getStart().getInputStream().toString(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getText().length()) :
+            CharSequence before = ctx.getStart() != null ?
+                sourceLine(ctx, ctx.getText().length()) :
                 io.github.snaill.ast.SourceBuilder.toSourceCode(ctx);
             throw new io.github.snaill.exception.FailedCheckException(
                 new io.github.snaill.result.CompilationError(
@@ -471,7 +543,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                     before,
                     "Empty or invalid if condition",
                     ""
-                ).toString()
+                )
             );
         }
 
@@ -479,8 +551,8 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
         Scope thenScopeContext = new Scope(new ArrayList<>(), parent, parent.getEnclosingFunction());
         Scope thenScope = ctx.scope(0) != null ? parseScope(ctx.scope(0), thenScopeContext) : new Scope(new ArrayList<>(), thenScopeContext, parent.getEnclosingFunction());
         if (thenScope == null && ctx.scope(0) != null) { 
-             String before = ctx.getStart() != null ?
-                io.github.snaill.ast.SourceBuilder.toSourceLine(ctx.getStart().getInputStream().toString(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getText().length()) :
+             CharSequence before = ctx.getStart() != null ?
+                sourceLine(ctx, ctx.getText().length()) :
                 io.github.snaill.ast.SourceBuilder.toSourceCode(ctx);
             throw new io.github.snaill.exception.FailedCheckException(
                 new io.github.snaill.result.CompilationError(
@@ -488,7 +560,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                     before,
                     "Empty or invalid then block in if",
                     ""
-                ).toString()
+                )
             );
         }
 
@@ -497,8 +569,8 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
             Scope elseScopeContext = new Scope(new ArrayList<>(), parent, parent.getEnclosingFunction());
             elseScope = parseScope(ctx.scope(1), elseScopeContext);
             if (elseScope == null) { 
-                String before = ctx.getStart() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(ctx.getStart().getInputStream().toString(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getText().length()) :
+                CharSequence before = ctx.getStart() != null ?
+                    sourceLine(ctx, ctx.getText().length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(ctx);
                 throw new io.github.snaill.exception.FailedCheckException(
                     new io.github.snaill.result.CompilationError(
@@ -506,14 +578,14 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                         before,
                         "Empty or invalid else block in if",
                         ""
-                    ).toString()
+                    )
                 );
             }
         }
         
         IfStatement ifStmt = new IfStatement(condition, thenScope, elseScope);
         if (ctx.getStart() != null && ctx.getStart().getInputStream() != null) {
-            ifStmt.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getStart().getInputStream().toString());
+            ifStmt.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), sourceFile(ctx.getStart()));
         }
         return ifStmt;
     }
@@ -526,7 +598,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
         Expression expr = ctx.expression() != null ? (Expression) parseExpression(ctx.expression(), parent) : null;
         ReturnStatement ret = new ReturnStatement(expr);
         if (ctx.getStart() != null) {
-            ret.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getStart().getInputStream().toString());
+            ret.setSourceInfo(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), sourceFile(ctx.getStart()));
         }
         return ret;
     }
@@ -552,7 +624,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
             
             AssignmentExpression assign = new AssignmentExpression(left, op, right);
             if (ctx.assigmentOperator != null && ctx.start != null && ctx.start.getInputStream() != null) {
-                assign.setSourceInfo(ctx.assigmentOperator.getLine(), ctx.assigmentOperator.getCharPositionInLine(), ctx.start.getInputStream().toString());
+                assign.setSourceInfo(ctx.assigmentOperator.getLine(), ctx.assigmentOperator.getCharPositionInLine(), sourceFile(ctx.start));
             }
             if (parent != null) {
                 assign.setEnclosingScope(parent);
@@ -572,7 +644,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
             Expression right = (Expression) parseLogicalAndExpression(ctx.logicalAndExpression(i), parent);
             BinaryExpression binExpr = new BinaryExpression(left, op, right);
             if (ctx.getChild(i * 2 - 1) instanceof TerminalNode opNode && ((TerminalNode)ctx.getChild(i*2-1)).getSymbol() != null) {
-                binExpr.setSourceInfo(opNode.getSymbol().getLine(), opNode.getSymbol().getCharPositionInLine(), opNode.getSymbol().getInputStream().toString());
+                binExpr.setSourceInfo(opNode.getSymbol().getLine(), opNode.getSymbol().getCharPositionInLine(), sourceFile(opNode.getSymbol()));
             }
             if (parent != null) {
                 binExpr.setEnclosingScope(parent);
@@ -591,7 +663,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
             Expression right = (Expression) parseEqualityExpression(ctx.equalityExpression(i), parent);
             BinaryExpression binExpr = new BinaryExpression(left, op, right);
             if (ctx.getChild(i * 2 - 1) instanceof TerminalNode opNode && ((TerminalNode)ctx.getChild(i*2-1)).getSymbol() != null) {
-                binExpr.setSourceInfo(opNode.getSymbol().getLine(), opNode.getSymbol().getCharPositionInLine(), opNode.getSymbol().getInputStream().toString());
+                binExpr.setSourceInfo(opNode.getSymbol().getLine(), opNode.getSymbol().getCharPositionInLine(), sourceFile(opNode.getSymbol()));
             }
             if (parent != null) {
                 binExpr.setEnclosingScope(parent);
@@ -610,7 +682,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
             Expression right = (Expression) parseRelationalExpression(ctx.relationalExpression(i), parent);
             BinaryExpression binExpr = new BinaryExpression(left, op, right);
             if (ctx.getChild(i * 2 - 1) instanceof TerminalNode opNode && ((TerminalNode)ctx.getChild(i*2-1)).getSymbol() != null) {
-                binExpr.setSourceInfo(opNode.getSymbol().getLine(), opNode.getSymbol().getCharPositionInLine(), opNode.getSymbol().getInputStream().toString());
+                binExpr.setSourceInfo(opNode.getSymbol().getLine(), opNode.getSymbol().getCharPositionInLine(), sourceFile(opNode.getSymbol()));
             }
             if (parent != null) {
                 binExpr.setEnclosingScope(parent);
@@ -629,7 +701,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
             Expression right = (Expression) parseAdditiveExpression(ctx.additiveExpression(i), parent);
             BinaryExpression binExpr = new BinaryExpression(left, op, right);
             if (ctx.getChild(i * 2 - 1) instanceof TerminalNode opNode && ((TerminalNode)ctx.getChild(i*2-1)).getSymbol() != null) {
-                binExpr.setSourceInfo(opNode.getSymbol().getLine(), opNode.getSymbol().getCharPositionInLine(), opNode.getSymbol().getInputStream().toString());
+                binExpr.setSourceInfo(opNode.getSymbol().getLine(), opNode.getSymbol().getCharPositionInLine(), sourceFile(opNode.getSymbol()));
             }
             if (parent != null) {
                 binExpr.setEnclosingScope(parent);
@@ -648,7 +720,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
             Expression right = (Expression) parseMultiplicativeExpression(ctx.multiplicativeExpression(i), parent);
             BinaryExpression binExpr = new BinaryExpression(left, op, right);
             if (ctx.getChild(i * 2 - 1) instanceof TerminalNode opNode && ((TerminalNode)ctx.getChild(i*2-1)).getSymbol() != null) {
-                binExpr.setSourceInfo(opNode.getSymbol().getLine(), opNode.getSymbol().getCharPositionInLine(), opNode.getSymbol().getInputStream().toString());
+                binExpr.setSourceInfo(opNode.getSymbol().getLine(), opNode.getSymbol().getCharPositionInLine(), sourceFile(opNode.getSymbol()));
             }
             if (parent != null) {
                 binExpr.setEnclosingScope(parent);
@@ -667,7 +739,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
             Expression right = (Expression) parseUnaryExpression(ctx.unaryExpression(i), parent);
             BinaryExpression binExpr = new BinaryExpression(left, op, right);
             if (ctx.getChild(i * 2 - 1) instanceof TerminalNode opNode && ((TerminalNode)ctx.getChild(i*2-1)).getSymbol() != null) {
-                binExpr.setSourceInfo(opNode.getSymbol().getLine(), opNode.getSymbol().getCharPositionInLine(), opNode.getSymbol().getInputStream().toString());
+                binExpr.setSourceInfo(opNode.getSymbol().getLine(), opNode.getSymbol().getCharPositionInLine(), sourceFile(opNode.getSymbol()));
             }
             if (parent != null) {
                 binExpr.setEnclosingScope(parent);
@@ -689,7 +761,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                 unaryExpr.setEnclosingScope(parent);
             }
             if (ctx.unaryOperator != null && ctx.start != null && ctx.start.getInputStream() != null) {
-                unaryExpr.setSourceInfo(ctx.unaryOperator.getLine(), ctx.unaryOperator.getCharPositionInLine(), ctx.start.getInputStream().toString());
+                unaryExpr.setSourceInfo(ctx.unaryOperator.getLine(), ctx.unaryOperator.getCharPositionInLine(), sourceFile(ctx.start));
             }
             return unaryExpr;
         } else { // Grammar: | primaryExpression
@@ -706,7 +778,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                     "^", // Placeholder for source info
                     "Empty primary expression",
                     ""
-                ).toString()
+                )
             );
         }
         if (ctx.literal() != null) {
@@ -731,7 +803,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                         location, // 'before' string
                         "Parenthesized expression did not yield an Expression node",
                         "" // 'after' string, can be empty or provide more context if needed
-                    ).toString()
+                    )
                 );
             }
         }
@@ -749,7 +821,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                 locationUnhandled, // 'before' string
                 "Unknown or unhandled primary expression type: " + ctx.getText(),
                 "" // 'after' string
-            ).toString()
+            )
         );
     }
 
@@ -767,11 +839,11 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
             new io.github.snaill.result.CompilationError(
                 io.github.snaill.result.ErrorType.UNKNOWN_TYPE,
                 (ctx != null && ctx.getStart() != null) ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(ctx.getStart().getInputStream().toString(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getText().length()) :
+                    sourceLine(ctx, ctx.getText().length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(ctx),
                 "Unknown literal",
                 ""
-            ).toString()
+            )
         );
     }
 
@@ -792,8 +864,8 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
         if (ctx.variableIdentifier() != null) {
             String name = ctx.variableIdentifier().IDENTIFIER().getText();
             if (parent != null && parent.resolveVariable(name) == null) {
-                String before = ctx.getStart() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(ctx.getStart().getInputStream().toString(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), name.length()) :
+                CharSequence before = ctx.getStart() != null ?
+                    sourceLine(ctx, name.length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(ctx);
                 throw new io.github.snaill.exception.FailedCheckException(
                     new io.github.snaill.result.CompilationError(
@@ -801,7 +873,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                         before,
                         "Unknown variable: " + name,
                         ""
-                    ).toString()
+                    )
                 );
             }
             Identifier id = new Identifier(name);
@@ -809,7 +881,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                 id.setEnclosingScope(parent);
             }
             if (ctx.variableIdentifier().IDENTIFIER() != null) {
-                id.setSourceInfo(ctx.variableIdentifier().IDENTIFIER().getSymbol().getLine(), ctx.variableIdentifier().IDENTIFIER().getSymbol().getCharPositionInLine(), ctx.start.getInputStream().toString());
+                id.setSourceInfo(ctx.variableIdentifier().IDENTIFIER().getSymbol().getLine(), ctx.variableIdentifier().IDENTIFIER().getSymbol().getCharPositionInLine(), sourceFile(ctx.start));
             }
             return id;
         } else if (ctx.arrayElement() != null) {
@@ -819,18 +891,18 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
             new io.github.snaill.result.CompilationError(
                 io.github.snaill.result.ErrorType.UNKNOWN_TYPE,
                 (ctx != null && ctx.getStart() != null) ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(ctx.getStart().getInputStream().toString(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getText().length()) :
+                    sourceLine(ctx, ctx.getText().length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(ctx),
                 "Invalid identifier",
                 ""
-            ).toString()
+            )
         );
     }
 
     private Node parseArrayElement(SnailParser.ArrayElementContext ctx, Scope parent) throws io.github.snaill.exception.FailedCheckException {
         Identifier identifierNode = new Identifier(ctx.IDENTIFIER().getText());
         if (ctx.IDENTIFIER() != null && ctx.IDENTIFIER().getSymbol() != null) {
-            identifierNode.setSourceInfo(ctx.IDENTIFIER().getSymbol().getLine(), ctx.IDENTIFIER().getSymbol().getCharPositionInLine(), parent.getSource());
+            identifierNode.setSourceInfo(ctx.IDENTIFIER().getSymbol().getLine(), ctx.IDENTIFIER().getSymbol().getCharPositionInLine(), parent.getSourceFile());
         }
         identifierNode.setEnclosingScope(parent);
 
@@ -842,7 +914,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
         }
 
         ArrayElement arrayElementNode = new ArrayElement(identifierNode, indices);
-        arrayElementNode.setSourceInfo(ctx.start.getLine(), ctx.start.getCharPositionInLine(), parent.getSource());
+        arrayElementNode.setSourceInfo(ctx.start.getLine(), ctx.start.getCharPositionInLine(), parent.getSourceFile());
         arrayElementNode.setEnclosingScope(parent);
         return arrayElementNode;
     }
@@ -853,7 +925,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
                 parseArgumentList(ctx.argumentList(), parent) : List.of();
         FunctionCall call = new FunctionCall(name, args);
         if (ctx.IDENTIFIER() != null && ctx.IDENTIFIER().getSymbol() != null && ctx.start != null && ctx.start.getInputStream() != null) {
-            call.setSourceInfo(ctx.IDENTIFIER().getSymbol().getLine(), ctx.IDENTIFIER().getSymbol().getCharPositionInLine(), ctx.start.getInputStream().toString());
+            call.setSourceInfo(ctx.IDENTIFIER().getSymbol().getLine(), ctx.IDENTIFIER().getSymbol().getCharPositionInLine(), sourceFile(ctx.start));
         }
         if (parent != null) {
             call.setEnclosingScope(parent);
@@ -896,11 +968,11 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
             new io.github.snaill.result.CompilationError(
                 io.github.snaill.result.ErrorType.UNKNOWN_TYPE,
                 (ctx != null && ctx.getStart() != null) ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(ctx.getStart().getInputStream().toString(), ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine(), ctx.getText().length()) :
+                    sourceLine(ctx, ctx.getText().length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(ctx),
                 "Unknown type",
                 ""
-            ).toString()
+            )
         );
     }
 
@@ -909,11 +981,11 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
         NumberLiteral size = new NumberLiteral(Long.parseLong(ctx.numberLiteral().getText()));
         // Устанавливаем информацию об источнике для NumberLiteral, если это AbstractNode и ему это нужно
         if (size instanceof AbstractNode sn) {
-            sn.setSourceInfo(ctx.numberLiteral().start.getLine(), ctx.numberLiteral().start.getCharPositionInLine(), currentScope.getSource());
+            sn.setSourceInfo(ctx.numberLiteral().start.getLine(), ctx.numberLiteral().start.getCharPositionInLine(), currentScope.getSourceFile());
             sn.setEnclosingScope(currentScope);
         }
         ArrayType at = new ArrayType(elementType, size);
-        at.setSourceInfo(ctx.start.getLine(), ctx.start.getCharPositionInLine(), currentScope.getSource());
+        at.setSourceInfo(ctx.start.getLine(), ctx.start.getCharPositionInLine(), currentScope.getSourceFile());
         at.setEnclosingScope(currentScope);
         return at;
     }
@@ -924,7 +996,7 @@ private Node parseParam(SnailParser.ParamContext ctx, Scope containingScope) {
         // Этот метод будет создавать узлы PrimitiveType только для предопределенных ключевых слов.
         // Для поддержки пользовательских типов правило грамматики 'primitiveType' или 'type' должно включать IDENTIFIER.
         PrimitiveType pt = new PrimitiveType(ctx.getText());
-        pt.setSourceInfo(ctx.start.getLine(), ctx.start.getCharPositionInLine(), currentScope.getSource());
+        pt.setSourceInfo(ctx.start.getLine(), ctx.start.getCharPositionInLine(), currentScope.getSourceFile());
         pt.setEnclosingScope(currentScope);
         return pt;
     }
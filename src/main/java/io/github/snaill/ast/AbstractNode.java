@@ -1,5 +1,6 @@
 package io.github.snaill.ast;
 
+import io.github.snaill.jfr.CompilerTrace;
 import io.github.snaill.result.Result;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,12 +13,25 @@ public abstract class AbstractNode implements Node {
     protected List<Node> children;
     protected int line = -1;
     protected int charPosition = -1;
-    protected String source = null;
+    protected SourceFile sourceFile = null;
     protected transient boolean wasDeadCodeReported = false;
     protected Scope enclosingScope; // Added for all nodes
 
+    /**
+     * Узел, среди детей которого находится этот узел; по этой ссылке сбрасываются хеши предков
+     * при замене детей. Для типов не задаётся: канонические типы общие для всех деревьев, а
+     * детей у типов нет.
+     */
+    private transient AbstractNode treeParent;
+    /**
+     * Закэшированный хеш Меркла или 0, если он ещё не вычислен. Хранится в одном поле, поэтому
+     * узел, общий для нескольких потоков, никогда не видит хеш от другой версии структуры
+     */
+    private transient int structuralHash;
+
     protected AbstractNode(List<? extends Node> children) {
         this.children = new ArrayList<>(children);
+        adopt(this.children);
     }
 
     @Override
@@ -33,6 +47,8 @@ public abstract class AbstractNode implements Node {
     @Override
     public void setChildren(Collection<Node> children) {
         this.children = new ArrayList<>(children);
+        adopt(this.children);
+        childrenChanged();
     }
 
     @Override
@@ -43,6 +59,29 @@ public abstract class AbstractNode implements Node {
     @Override
     public void setChild(int index, Node child) {
         this.children.set(index, child);
+        adopt(List.of(child));
+        childrenChanged();
+    }
+
+    private void adopt(List<? extends Node> nodes) {
+        for (Node node : nodes) {
+            if (node instanceof AbstractNode child && !(child instanceof Type)) {
+                child.treeParent = this;
+            }
+        }
+    }
+
+    /**
+     * Вызывается после замены детей: сбрасывает закэшированные хеши узла и его предков и
+     * сообщает об изменении структуры дереву охватывающей области видимости ({@link Scope#structureChanged()})
+     */
+    protected void childrenChanged() {
+        for (AbstractNode node = this; node != null; node = node.treeParent) {
+            node.structuralHash = 0;
+        }
+        if (enclosingScope != null) {
+            enclosingScope.structureChanged();
+        }
     }
 
     @Override
@@ -76,17 +115,42 @@ public abstract class AbstractNode implements Node {
 
     @Override
     public boolean equals(Object obj) {
-        if (obj instanceof AbstractNode other) {
-            return children.equals(other.children);
+        if (obj instanceof AbstractNode other && getClass() == other.getClass()) {
+            return structuralHash() == other.structuralHash() && children.equals(other.children);
         }
         return false;
     }
 
+    /**
+     * Хеш Меркла: класс узла, его собственные поля ({@link #localHash()}) и хеши детей.
+     * Вычисляется при первом обращении и кэшируется до замены детей этого узла или любого
+     * из его потомков через {@link #setChild} или {@link #setChildren}.
+     */
+    @Override
+    public int structuralHash() {
+        int hash = structuralHash;
+        if (hash == 0) {
+            hash = 31 * getClass().getName().hashCode() + localHash();
+            for (Node child : children) {
+                hash = 31 * hash + (child != null ? child.structuralHash() : 0);
+            }
+            structuralHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Хеш полей узла, которые сравнивает {@link #equals(Object)}, кроме детей
+     */
+    protected int localHash() {
+        return 0;
+    }
+
     @Override
-    public void setSourceInfo(int line, int charPosition, String source) {
+    public void setSourceInfo(int line, int charPosition, SourceFile sourceFile) {
         this.line = line;
         this.charPosition = charPosition;
-        this.source = source;
+        this.sourceFile = sourceFile;
     }
 
     @Override
@@ -94,14 +158,16 @@ public abstract class AbstractNode implements Node {
     @Override
     public int getCharPosition() { return charPosition; }
     @Override
-    public String getSource() { return source; }
+    public String getSource() { return sourceFile != null ? sourceFile.getText() : null; }
+    @Override
+    public SourceFile getSourceFile() { return sourceFile; }
 
     @Override
     public String getSourceInfo() {
-        if (source == null && line == -1 && charPosition == -1) {
+        if (sourceFile == null && line == -1 && charPosition == -1) {
             return "<unknown source info>";
         }
-        return String.format("line %d, char %d in %s", line, charPosition, source != null ? source : "<unknown file>");
+        return String.format("line %d, char %d in %s", line, charPosition, sourceFile != null ? sourceFile.getName() : "<unknown file>");
     }
 
     public Scope getEnclosingScope() { // Added for all nodes
@@ -115,12 +181,8 @@ public abstract class AbstractNode implements Node {
                     this.getClass().getSimpleName(),
                     ((Identifier)this).getName(),
                     this.getSourceInfo());
-        } else if (this instanceof Identifier) {
-             LOGGER.trace("SCOPE_SET_FOR_IDENTIFIER: Node type: {}, ID: {}, Scope Hash: {}, Source: {}",
-                    this.getClass().getSimpleName(),
-                    ((Identifier)this).getName(),
-                    System.identityHashCode(enclosingScope),
-                    this.getSourceInfo());
+        } else if (this instanceof Identifier identifier && CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("AbstractNode", "scope of '" + identifier.getName() + "' set to " + CompilerTrace.id(enclosingScope) + " " + getSourceInfo());
         }
     }
 
@@ -22,6 +22,13 @@ public class ArrayElement extends Expression {
         return identifier;
     }
 
+    /**
+     * Объявление массива, если он задан именем (см. {@link Identifier#getDeclaration()}), иначе null
+     */
+    public VariableDeclaration getDeclaration() {
+        return identifier instanceof Identifier id ? id.getDeclaration() : null;
+    }
+
     @SuppressWarnings("unchecked")
     public List<Expression> getDims() {
         // Children (dims) are stored as List<Node>, cast them to List<Expression>
@@ -38,25 +45,8 @@ public class ArrayElement extends Expression {
     }
 
     @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        emitBytecode(out, context, null);
-    }
-
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        if (getIdentifier() == null) {
-            throw new io.github.snaill.exception.FailedCheckException(
-                "ERROR:^UNKNOWN_VARIABLE" +
-                System.lineSeparator() +
-                "================================" +
-                "Unknown variable: <array>" + System.lineSeparator() +
-                "================================"
-            );
-        }
-        getIdentifier().emitBytecode(out, context, currentFunction);
-        for (Expression dim : getDims()) {
-            dim.emitBytecode(out, context, currentFunction);
-            out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.GET_ARRAY);
-        }
+    protected int localHash() {
+        return identifier != null ? identifier.structuralHash() : 0;
     }
 
     @Override
@@ -73,15 +63,15 @@ public class ArrayElement extends Expression {
     }
 
     @Override
-    public Type getType(Scope scope) throws io.github.snaill.exception.FailedCheckException {
+    protected Type computeType(Scope scope) throws io.github.snaill.exception.FailedCheckException {
         Type currentType = identifier.getType(scope);
         List<Expression> dims = getDims();
 
         for (int i = 0; i < dims.size(); i++) {
             Expression dimExpr = dims.get(i);
             if (!(currentType instanceof ArrayType arrayType)) {
-                String before = getSource() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), toString().length()) :
+                CharSequence before = getSourceFile() != null ?
+                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), toString().length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(this);
                 throw new io.github.snaill.exception.FailedCheckException(
                     new io.github.snaill.result.CompilationError(
@@ -89,14 +79,14 @@ public class ArrayElement extends Expression {
                         before,
                         "Expression '" + identifier + "' is not an array or indexed too deeply at dimension " + (i + 1) + ". Expected array, got " + currentType,
                         ""
-                    ).toString()
+                    )
                 );
             }
 
             Type indexType = dimExpr.getType(scope);
             if (!(indexType instanceof PrimitiveType pt) || (!pt.getName().equals("usize") && !pt.getName().equals("i32"))) {
-                String before = dimExpr.getSource() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(dimExpr.getSource(), dimExpr.getLine(), dimExpr.getCharPosition(), dimExpr.toString().length()) :
+                CharSequence before = dimExpr.getSourceFile() != null ?
+                    io.github.snaill.ast.SourceBuilder.toSourceLine(dimExpr.getSourceFile(), dimExpr.getLine(), dimExpr.getCharPosition(), dimExpr.toString().length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(dimExpr);
                 throw new io.github.snaill.exception.FailedCheckException(
                     new io.github.snaill.result.CompilationError(
@@ -104,7 +94,7 @@ public class ArrayElement extends Expression {
                         before,
                         "Array index for dimension " + (i + 1) + " must be of type usize or i32, got " + indexType,
                         ""
-                    ).toString()
+                    )
                 );
             }
             currentType = arrayType.getElementType();
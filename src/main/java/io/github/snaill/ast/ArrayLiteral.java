@@ -31,56 +31,15 @@ public class ArrayLiteral extends PrimaryExpression {
     }
 
     @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        emitBytecode(out, context, null);
-    }
-
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        var elements = getElements();
-        int size = elements.size();
-        byte typeId = getTypeId(elements);
-
-        // 1. Create the new array and push its reference onto the stack
-        out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.NEW_ARRAY);
-        io.github.snaill.bytecode.BytecodeUtils.writeU16(out, size);
-        out.write(typeId);
-
-        // 2. Push all element values onto the stack
-        for (Expression element : elements.reversed()) {
-            element.emitBytecode(out, context, currentFunction);
-        }
-
-
-        // 3. Initialize the array with the elements from the stack
-        out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.INIT_ARRAY);
-        io.github.snaill.bytecode.BytecodeUtils.writeU16(out, size);
-    }
-
-    private static byte getTypeId(List<Expression> elements) {
-        String typeName = "i32";
-        if (!elements.isEmpty()) {
-            var first = elements.getFirst();
-            if (first instanceof NumberLiteral) typeName = "i32";
-            else if (first instanceof StringLiteral) typeName = "string";
-            else if (first instanceof BooleanLiteral) typeName = "i32";
-        }
-        return switch (typeName) {
-            case "i32" -> io.github.snaill.bytecode.BytecodeConstants.TypeId.I32;
-            case "string" -> io.github.snaill.bytecode.BytecodeConstants.TypeId.STRING;
-            default -> io.github.snaill.bytecode.BytecodeConstants.TypeId.I32;
-        };
-    }
-
-    @Override
-    public Type getType(Scope scope) throws io.github.snaill.exception.FailedCheckException {
+    protected Type computeType(Scope scope) throws io.github.snaill.exception.FailedCheckException {
         var elements = getElements();
-        if (elements.isEmpty()) return new ArrayType(new PrimitiveType("i32"), new NumberLiteral(0));
+        if (elements.isEmpty()) return Types.array(Types.I32, 0);
         Type elemType = elements.getFirst().getType(scope);
-        for (Expression e : elements) {
+        for (Expression e : elements.subList(1, elements.size())) {
             Type t = e.getType(scope);
             if (!t.equals(elemType)) {
-                String before = getSource() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), toString().length()) :
+                CharSequence before = getSourceFile() != null ?
+                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), toString().length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(this);
                 throw new io.github.snaill.exception.FailedCheckException(
                     new io.github.snaill.result.CompilationError(
@@ -88,11 +47,11 @@ public class ArrayLiteral extends PrimaryExpression {
                         before,
                         "Array elements must have same type",
                         ""
-                    ).toString()
+                    )
                 );
             }
         }
-        return new ArrayType(elemType, new NumberLiteral(elements.size()));
+        return Types.array(elemType, elements.size());
     }
 
     @Override
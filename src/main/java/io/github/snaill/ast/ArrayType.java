@@ -3,32 +3,48 @@ package io.github.snaill.ast;
 
 public class ArrayType extends Type {
     private final Type elementType;
-    private final NumberLiteral size;
+    private final long size;
+    /**
+     * Литерал размера из исходного кода (null у канонических типов: они общие для всех программ
+     * и потоков, поэтому не ссылаются на изменяемые узлы)
+     */
+    private final NumberLiteral sizeLiteral;
 
     public ArrayType(Type elementType, NumberLiteral size) {
+        this.elementType = elementType;
+        this.size = size.getValue();
+        this.sizeLiteral = size;
+    }
+
+    ArrayType(Type elementType, long size) {
         this.elementType = elementType;
         this.size = size;
+        this.sizeLiteral = null;
     }
 
     public Type getElementType() {
         return elementType;
     }
 
-    public NumberLiteral getSize() {
+    public long getSize() {
         return size;
     }
 
+    /**
+     * Литерал размера с позицией в исходном коде или null, если тип построен не из исходного кода
+     */
+    public NumberLiteral getSizeLiteral() {
+        return sizeLiteral;
+    }
+
     @Override
-    public boolean equals(Object obj) {
-        if (this == obj) return true;
-        if (obj == null || getClass() != obj.getClass()) return false;
-        ArrayType other = (ArrayType) obj;
-        return elementType.equals(other.elementType) && size.equals(other.size);
+    protected Type intern() {
+        return Types.array(elementType, size);
     }
 
     @Override
-    public int hashCode() {
-        return java.util.Objects.hash(elementType, size);
+    protected int computeHash() {
+        return 31 * elementType.hashCode() + Long.hashCode(size);
     }
 
     @Override
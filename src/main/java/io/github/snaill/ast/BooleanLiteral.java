@@ -29,19 +29,13 @@ public class BooleanLiteral extends PrimaryExpression {
     }
 
     @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException {
-        emitBytecode(out, context, null);
-    }
-
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException {
-        int constIndex = context.addConstant(getValue());
-        out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.PUSH_CONST);
-        io.github.snaill.bytecode.BytecodeUtils.writeU16(out, constIndex);
+    protected int localHash() {
+        return Boolean.hashCode(value);
     }
 
     @Override
-    public Type getType(Scope scope) {
-        return new PrimitiveType("bool");
+    protected Type computeType(Scope scope) {
+        return Types.BOOL;
     }
 
     @Override
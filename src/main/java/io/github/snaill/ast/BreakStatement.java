@@ -22,14 +22,4 @@ public class BreakStatement extends AbstractNode implements Statement {
         }
         return false;
     }
-
-    @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException {
-        emitBytecode(out, context, null);
-    }
-
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException {
-        out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.JMP);
-        io.github.snaill.bytecode.BytecodeUtils.writeU16(out, 0); // Placeholder, будет обновлено позже
-    }
 }
@@ -1,18 +1,82 @@
 package io.github.snaill.ast;
 
+import io.github.snaill.exception.FailedCheckException;
+import io.github.snaill.result.CompilationError;
+
 import java.util.List;
 
 /**
  * Базовый класс для выражений в AST.
  */
 public abstract class Expression extends AbstractNode {
+    /**
+     * Последний вычисленный тип или ошибка проверки, а также для какой области видимости
+     * и версии таблиц символов они получены
+     */
+    private Type type;
+    private TypeFailure typeFailure;
+    private Scope typeScope;
+    private long typeVersion = -1;
+
+    /**
+     * Ошибка вычисления типа в том виде, в каком её передало исключение. Хранится сама ошибка, а не
+     * исключение: при каждом обращении бросается новое исключение со своим стеком вызовов.
+     */
+    private record TypeFailure(CompilationError error, List<CompilationError> errors, String message) {
+        static TypeFailure of(FailedCheckException e) {
+            return e.getError() != null || !e.getErrors().isEmpty()
+                    ? new TypeFailure(e.getError(), e.getErrors(), null)
+                    : new TypeFailure(null, List.of(), e.getMessage());
+        }
+
+        FailedCheckException toException() {
+            if (error != null) {
+                return new FailedCheckException(error);
+            }
+            return errors.isEmpty() ? new FailedCheckException(message) : new FailedCheckException(errors);
+        }
+    }
+
     public Expression(List<Node> children) {
         super(children);
     }
 
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        emitBytecode(out, context, currentFunction);
+    /**
+     * Тип выражения.
+     * Выражение типизируется в своей области видимости, а {@code scope} используется, только если
+     * она не задана: имена в выражении связаны из его собственной области ({@link NameResolver}),
+     * поэтому вызов из другой области (например, из временной области цикла в проверках) получает
+     * тот же тип. Тип вычисляется один раз ({@link TypeAttribution}) и хранится в узле вместе
+     * с ошибкой проверки, если она была; заново вычисляется только после изменения таблиц символов
+     * или структуры дерева ({@link Scope#symbolsVersion()}).
+     *
+     * @throws FailedCheckException если выражение некорректно
+     */
+    public final Type getType(Scope scope) throws FailedCheckException {
+        Scope own = getEnclosingScope();
+        if (own != null) {
+            scope = own;
+        }
+        long version = scope != null ? scope.symbolsVersion() : 0;
+        if (typeVersion != version || typeScope != scope) {
+            try {
+                type = computeType(scope);
+                typeFailure = null;
+            } catch (FailedCheckException e) {
+                type = null;
+                typeFailure = TypeFailure.of(e);
+            }
+            typeScope = scope;
+            typeVersion = version;
+        }
+        if (typeFailure != null) {
+            throw typeFailure.toException();
+        }
+        return type;
     }
 
-    public abstract Type getType(Scope scope) throws io.github.snaill.exception.FailedCheckException;
+    /**
+     * Вычисляет тип выражения; типы подвыражений берутся через {@link #getType(Scope)}
+     */
+    protected abstract Type computeType(Scope scope) throws FailedCheckException;
 }
@@ -22,16 +22,6 @@ public class ExpressionStatement extends AbstractNode implements Statement {
         return expr.accept(visitor);
     }
 
-    @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        emitBytecode(out, context, null);
-    }
-
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        Expression expr = getExpression();
-        expr.emitBytecode(out, context, currentFunction);
-    }
-
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof ExpressionStatement other) {
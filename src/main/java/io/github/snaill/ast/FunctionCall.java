@@ -9,6 +9,12 @@ import io.github.snaill.exception.FailedCheckException;
  */
 public class FunctionCall extends Expression {
     private final String name;
+    /**
+     * Объявление, найденное из области видимости узла, и для какой области и версии таблиц символов оно найдено
+     */
+    private FunctionDeclaration declaration;
+    private Scope declarationScope;
+    private long declarationVersion = -1;
 
     public FunctionCall(String name, List<Expression> arguments) {
         super(List.copyOf(arguments));
@@ -24,6 +30,29 @@ public class FunctionCall extends Expression {
         return name;
     }
 
+    /**
+     * Объявление вызываемой функции или null (в том числе для встроенных функций).
+     * Связывается один раз ({@link NameResolver}); заново ищется только после изменения таблиц символов
+     * или области видимости узла.
+     */
+    public FunctionDeclaration getDeclaration() {
+        Scope scope = getEnclosingScope();
+        long version = scope != null ? scope.symbolsVersion() : 0;
+        if (declarationVersion != version || declarationScope != scope) {
+            declaration = scope != null ? scope.resolveFunction(name) : null;
+            declarationScope = scope;
+            declarationVersion = version;
+        }
+        return declaration;
+    }
+
+    /**
+     * Объявление вызываемой функции, видимое из {@code scope}
+     */
+    public FunctionDeclaration getDeclaration(Scope scope) {
+        return scope == getEnclosingScope() ? getDeclaration() : scope.resolveFunction(name);
+    }
+
     public List<Expression> getArguments() {
         return children.stream()
             .map(child -> (Expression) child)
@@ -32,10 +61,9 @@ public class FunctionCall extends Expression {
 
     @Override
     public void checkUnusedFunctions(Set<FunctionDeclaration> unused) {
-        Scope enclosingScope = getEnclosingScope();
-        if (enclosingScope != null) {
+        if (getEnclosingScope() != null) {
             // Attempt to resolve the function declaration
-            FunctionDeclaration resolvedDecl = enclosingScope.resolveFunction(this.name);
+            FunctionDeclaration resolvedDecl = getDeclaration();
             if (resolvedDecl != null) {
                 unused.remove(resolvedDecl); // Remove the specific instance
             }
@@ -57,52 +85,17 @@ public class FunctionCall extends Expression {
     }
 
     @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        emitBytecode(out, context, null);
-    }
-
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        for (Expression arg : getArguments()) {
-            arg.emitBytecode(out, context, currentFunction);
-        }
-        if (isBuiltInFunction(context)) {
-            out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.INTRINSIC_CALL);
-            io.github.snaill.bytecode.BytecodeUtils.writeU16(out, getBuiltInFunctionIndex(context));
-        } else {
-            int funcIndex = context.getFunctionIndex(getName());
-            if (funcIndex == -1) {
-                String before = getSource() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), getName().length()) :
-                    io.github.snaill.ast.SourceBuilder.toSourceCode(this);
-                throw new FailedCheckException(
-                    new io.github.snaill.result.CompilationError(
-                        io.github.snaill.result.ErrorType.UNKNOWN_VARIABLE,
-                        before,
-                        "Function not found: " + getName(),
-                        ""
-                    ).toString()
-                );
-            }
-            out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.CALL);
-            io.github.snaill.bytecode.BytecodeUtils.writeU16(out, funcIndex);
-        }
-    }
-
-    private boolean isBuiltInFunction(io.github.snaill.bytecode.BytecodeContext context) {
-        return getName().equals("println");
-    }
-
-    private int getBuiltInFunctionIndex(io.github.snaill.bytecode.BytecodeContext context) {
-        return 0;
+    protected int localHash() {
+        return name.hashCode();
     }
 
     @Override
-    public Type getType(Scope scope) throws FailedCheckException {
+    protected Type computeType(Scope scope) throws FailedCheckException {
         // Handle built-in println specially
         if (getName().equals("println")) {
             if (getArguments().size() != 1) { // println expects one argument
-                String before = getSource() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), getName().length()) :
+                CharSequence before = getSourceFile() != null ?
+                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), getName().length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(this);
                 throw new FailedCheckException(
                     new io.github.snaill.result.CompilationError(
@@ -110,7 +103,7 @@ public class FunctionCall extends Expression {
                         before,
                         "println expects 1 argument, but got " + getArguments().size(),
                         ""
-                    ).toString()
+                    )
                 );
             }
             // Type-check the argument. This will throw if the argument itself has an issue (e.g., unknown variable)
@@ -121,8 +114,8 @@ public class FunctionCall extends Expression {
             if (argType instanceof PrimitiveType primitiveArgType) {
                 String typeName = primitiveArgType.getName();
                 if (!("i32".equals(typeName) || "string".equals(typeName) || "bool".equals(typeName))) {
-                    String before = getSource() != null ?
-                        io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), getName().length()) :
+                    CharSequence before = getSourceFile() != null ?
+                        io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), getName().length()) :
                         io.github.snaill.ast.SourceBuilder.toSourceCode(this);
                     throw new FailedCheckException(
                         new io.github.snaill.result.CompilationError(
@@ -130,13 +123,13 @@ public class FunctionCall extends Expression {
                             before,
                             "println argument must be i32, string, or bool, but got " + typeName,
                             ""
-                        ).toString()
+                        )
                     );
                 }
             } else {
                 // If it's not a PrimitiveType, it's not printable by println's current definition
-                 String before = getSource() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), getName().length()) :
+                 CharSequence before = getSourceFile() != null ?
+                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), getName().length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(this);
                  throw new FailedCheckException(
                     new io.github.snaill.result.CompilationError(
@@ -144,18 +137,18 @@ public class FunctionCall extends Expression {
                         before,
                         "println argument must be a primitive type (i32, string, or bool), but got " + argType.getClass().getSimpleName(),
                         ""
-                    ).toString()
+                    )
                 );
             }
 
-            return new PrimitiveType("void"); // println effectively returns void
+            return Types.VOID; // println effectively returns void
         }
 
         // Existing logic for user-defined functions
-        FunctionDeclaration decl = scope.resolveFunction(name);
+        FunctionDeclaration decl = getDeclaration(scope);
         if (decl == null) {
-            String before = getSource() != null ?
-                io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), name.length()) :
+            CharSequence before = getSourceFile() != null ?
+                io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), name.length()) :
                 io.github.snaill.ast.SourceBuilder.toSourceCode(this);
             throw new FailedCheckException(
                 new io.github.snaill.result.CompilationError(
@@ -163,15 +156,15 @@ public class FunctionCall extends Expression {
                     before,
                     "Unknown function: " + name,
                     ""
-                ).toString()
+                )
             );
         }
         // Also, check argument count and types against declaration for user-defined functions
         List<Expression> callArgs = getArguments();
         List<Parameter> funcParams = decl.getParameters();
         if (callArgs.size() != funcParams.size()) {
-            String before = getSource() != null ?
-                io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), name.length()) :
+            CharSequence before = getSourceFile() != null ?
+                io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), name.length()) :
                 io.github.snaill.ast.SourceBuilder.toSourceCode(this);
             throw new FailedCheckException(
                 new io.github.snaill.result.CompilationError(
@@ -179,7 +172,7 @@ public class FunctionCall extends Expression {
                     before,
                     "Function '" + name + "' expects " + funcParams.size() + " arguments, but got " + callArgs.size(),
                     ""
-                ).toString()
+                )
             );
         }
 
@@ -187,8 +180,8 @@ public class FunctionCall extends Expression {
             Type argType = callArgs.get(i).getType(scope); // Use current scope
             Type paramType = funcParams.get(i).getType();
             if (!argType.equals(paramType)) {
-                 String before = callArgs.get(i).getSource() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(callArgs.get(i).getSource(), callArgs.get(i).getLine(), callArgs.get(i).getCharPosition(), io.github.snaill.ast.SourceBuilder.toSourceCode(callArgs.get(i)).length()) :
+                 CharSequence before = callArgs.get(i).getSourceFile() != null ?
+                    io.github.snaill.ast.SourceBuilder.toSourceLine(callArgs.get(i).getSourceFile(), callArgs.get(i).getLine(), callArgs.get(i).getCharPosition(), io.github.snaill.ast.SourceBuilder.toSourceCode(callArgs.get(i)).length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(callArgs.get(i));
                 throw new FailedCheckException(
                     new io.github.snaill.result.CompilationError(
@@ -196,7 +189,7 @@ public class FunctionCall extends Expression {
                         before,
                         "Type mismatch for argument " + (i + 1) + " of function '" + name + "'. Expected " + paramType + ", got " + argType,
                         ""
-                    ).toString()
+                    )
                 );
             }
         }
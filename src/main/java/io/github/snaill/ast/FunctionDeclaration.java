@@ -71,55 +71,8 @@ public class FunctionDeclaration extends AbstractNode implements Statement /*, B
     }
 
     @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        emitBytecode(out, context, null);
-    }
-
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        // Register the function in the context
-        context.addFunction(this);
-        
-        // Store arguments from the stack into local variables
-        // Parameters have indices 0..N-1, where N is the number of parameters
-        // When a function is called, arguments are already on the stack, in left-to-right order
-        // Store them in reverse order (last argument is at the top of the stack)
-        if (this.parameters != null && !this.parameters.isEmpty()) {
-            int paramCount = this.parameters.size();
-            // Arguments on the stack are in reverse order (last argument at the top of the stack)
-            // So we store them in local variables starting from the last index
-            for (int i = paramCount - 1; i >= 0; i--) {
-                out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.STORE_LOCAL);
-                io.github.snaill.bytecode.BytecodeUtils.writeU16(out, i);
-            }
-        }
-        
-        // Generate bytecode for the function body
-        getBody().emitBytecode(out, context, this);
-        
-        // Add a return instruction if it's not present
-        if (!hasReturnStatement(getBody())) {
-            out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.RET);
-        }
-    }
-
-    // Helper method to check for the presence of a return statement
-    private boolean hasReturnStatement(Scope scope) {
-        for (Node node : scope.getChildren()) {
-            if (node instanceof ReturnStatement) {
-                return true;
-            } else if (node instanceof Scope) {
-                if (hasReturnStatement((Scope) node)) {
-                    return true;
-                }
-            } else if (node instanceof IfStatement ifStmt) {
-                if (ifStmt.getBody() != null && hasReturnStatement(ifStmt.getBody())) {
-                    if (ifStmt.isHasElse() && ifStmt.getElseBody() != null && hasReturnStatement(ifStmt.getElseBody())) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+    protected int localHash() {
+        return hashCode();
     }
 
     public Scope getParentScope() {
@@ -3,13 +3,18 @@ package io.github.snaill.ast;
 import java.util.List;
 import java.util.Set;
 import io.github.snaill.exception.FailedCheckException;
-import io.github.snaill.bytecode.BytecodeConstants;
-import io.github.snaill.bytecode.BytecodeUtils;
+import io.github.snaill.jfr.CompilerTrace;
 import io.github.snaill.result.CompilationError;
 import io.github.snaill.result.ErrorType;
 
 public class Identifier extends PrimaryExpression {
     final private String name;
+    /**
+     * Объявление, найденное из области видимости узла, и для какой области и версии таблиц символов оно найдено
+     */
+    private VariableDeclaration declaration;
+    private Scope declarationScope;
+    private long declarationVersion = -1;
 
     public Identifier(String name) {
         super(List.of());
@@ -25,20 +30,42 @@ public class Identifier extends PrimaryExpression {
         return name;
     }
 
+    /**
+     * Объявление переменной, на которую ссылается идентификатор, или null.
+     * Связывается один раз ({@link NameResolver}); заново ищется только после изменения таблиц символов
+     * или области видимости узла.
+     */
+    public VariableDeclaration getDeclaration() {
+        Scope scope = getEnclosingScope();
+        long version = scope != null ? scope.symbolsVersion() : 0;
+        if (declarationVersion != version || declarationScope != scope) {
+            declaration = scope != null ? scope.resolveVariable(name, this) : null;
+            declarationScope = scope;
+            declarationVersion = version;
+        }
+        return declaration;
+    }
+
+    /**
+     * Объявление переменной, видимое из {@code scope}
+     */
+    public VariableDeclaration getDeclaration(Scope scope) {
+        return scope == getEnclosingScope() ? getDeclaration() : scope.resolveVariable(name, this);
+    }
+
     @Override
     public void checkUnusedVariables(Set<VariableDeclaration> unused) {
         if (this.getEnclosingScope() == null) {
             LOGGER.warn("DEBUG_UNUSED: Identifier '{}' (Hash: {}) has no enclosing scope during checkUnusedVariables. Source: {}", this.getName(), System.identityHashCode(this), this.getSourceInfo()); // Cannot resolve without a scope
             return; // Cannot resolve without a scope
         }
-        LOGGER.debug("DEBUG_UNUSED: Identifier '{}' checking unused. Current unused set: {}", name, unused);
-        VariableDeclaration resolvedDecl = this.getEnclosingScope().resolveVariable(this.name, this);
-        LOGGER.debug("DEBUG_UNUSED: Identifier '{}' resolved to: {}. (Hash: {})", name, resolvedDecl, resolvedDecl != null ? resolvedDecl.hashCode() : "null");
+        VariableDeclaration resolvedDecl = getDeclaration();
 
         if (resolvedDecl != null) {
-            LOGGER.debug("DEBUG_UNUSED: Resolved variable for identifier '{}': {}. Removing from unused set.", name, resolvedDecl);
             boolean removed = unused.remove(resolvedDecl);
-            LOGGER.debug("DEBUG_UNUSED: Identifier '{}' removal status: {}. Unused set after removal: {}", name, removed, unused);
+            if (CompilerTrace.isEnabled()) {
+                CompilerTrace.trace("Identifier", "'" + name + "' uses " + CompilerTrace.id(resolvedDecl) + (removed ? ", no longer unused" : ""));
+            }
         } else {
             LOGGER.warn("DEBUG_UNUSED: Identifier '{}' could not resolve variable declaration.", name);
         }
@@ -56,89 +83,42 @@ public class Identifier extends PrimaryExpression {
     }
 
     @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException, FailedCheckException {
-        emitBytecode(out, context, null);
+    protected int localHash() {
+        return name.hashCode();
     }
 
     @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException, FailedCheckException {
-        if (currentFunction != null) {
-            int localIndex = context.getLocalVarIndex(currentFunction, getName());
-            if (localIndex != -1) {
-                out.write(BytecodeConstants.Opcode.PUSH_LOCAL);
-                BytecodeUtils.writeU16(out, localIndex);
-                return;
-            }
-        }
-        int globalIndex = context.getGlobalVarIndex(getName());
-        if (globalIndex != -1) {
-            out.write(BytecodeConstants.Opcode.PUSH_GLOBAL);
-            BytecodeUtils.writeU16(out, globalIndex);
-        } else {
-            String before = getSource() != null ?
-                io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), getName().length()) :
-                io.github.snaill.ast.SourceBuilder.toSourceCode(this);
-            throw new FailedCheckException(
-                new CompilationError(
-                    ErrorType.UNKNOWN_VARIABLE,
-                    before,
-                    "Variable not found: " + getName(),
-                    ""
-                ).toString()
-            );
+    protected Type computeType(Scope scope) throws FailedCheckException {
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("Identifier", "type of '" + name + "' in " + CompilerTrace.id(scope) + " " + getSourceInfo());
         }
-    }
-
-    @Override
-    public Type getType(Scope scope) throws FailedCheckException {
-    // System.out.println("[IDENTIFIER_GETTYPE] Entry for: " + name);
-    try {
-        // Optional: Original debug log to file
-        try {
-            java.io.PrintWriter debugLog = new java.io.PrintWriter(new java.io.FileWriter("debug_identifier_log.txt", true));
-            debugLog.println("[IDENTIFIER_GETTYPE] Looking for variable in check phase: " + name + " in scope: " + (scope != null ? System.identityHashCode(scope) : "null"));
-            debugLog.close();
-        } catch (java.io.IOException e) { /* ignore */ }
-
-        // System.out.println("[IDENTIFIER_GETTYPE] DEBUG: Checking variable in getType: " + name);
         if (scope == null) {
-            System.err.println("[IDENTIFIER_GETTYPE] ERROR: Scope is null in Identifier.getType for " + name + ". Source: " + this.getSourceInfo());
-            throw new FailedCheckException(new CompilationError(ErrorType.INTERNAL_ERROR, this.getSourceInfo(), "Scope is null for identifier " + name, "").toString());
+            throw new FailedCheckException(new CompilationError(ErrorType.INTERNAL_ERROR, this.getSourceInfo(), "Scope is null for identifier " + name, ""));
         }
-
-        // System.out.println("[IDENTIFIER_GETTYPE] Before scope.resolveVariable for '" + name + "' in scope@" + (scope != null ? System.identityHashCode(scope) : "null"));
-        VariableDeclaration decl = scope.resolveVariable(name, this);
-        // System.out.println("[IDENTIFIER_GETTYPE] After scope.resolveVariable. Result (decl): " + (decl != null ? decl.toString() + " (typeNode: " + decl.getType() + ")" : "null"));
-
-        if (decl == null) {
-            System.err.println("[IDENTIFIER_GETTYPE] ERROR: Variable not found in scope: " + name + " in scope@" + (scope != null ? System.identityHashCode(scope) : "null") + " during getType. Source: " + this.getSourceInfo());
-            String sourceContext = getSource() != null ?
-                io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), name.length()) :
-                io.github.snaill.ast.SourceBuilder.toSourceCode(this);
-            throw new FailedCheckException(
-                new CompilationError(
-                    ErrorType.UNKNOWN_VARIABLE,
-                    sourceContext, // Use the generated source context
-                    "Variable not found: " + name,
-                    "Ensure '" + name + "' is declared before use within the current scope."
-                ).toString()
-            );
+        try {
+            VariableDeclaration decl = getDeclaration(scope);
+            if (decl == null) {
+                CharSequence sourceContext = getSourceFile() != null ?
+                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), name.length()) :
+                    io.github.snaill.ast.SourceBuilder.toSourceCode(this);
+                throw new FailedCheckException(
+                    new CompilationError(
+                        ErrorType.UNKNOWN_VARIABLE,
+                        sourceContext,
+                        "Variable not found: " + name,
+                        "Ensure '" + name + "' is declared before use within the current scope."
+                    )
+                );
+            }
+            return decl.getType();
+        } catch (FailedCheckException fce) {
+            throw fce;
+        } catch (Exception e) {
+            if (CompilerTrace.isEnabled()) {
+                CompilerTrace.trace("Identifier", "unexpected " + e + " while typing '" + name + "'");
+            }
+            // Wrap in FailedCheckException to propagate as a compilation issue
+            throw new FailedCheckException(new CompilationError(ErrorType.INTERNAL_ERROR, this.getSourceInfo(), "Internal error resolving type for identifier '" + name + "': " + e.getMessage(), ""));
         }
-
-        // System.out.println("[IDENTIFIER_GETTYPE] Before decl.getType() for decl: " + decl.getName());
-        // This is VariableDeclaration.getType()
-        // System.out.println("[IDENTIFIER_GETTYPE] After decl.getType(). Result: " + resultType);
-        return decl.getType();
-
-    } catch (FailedCheckException fce) {
-        System.err.println("[IDENTIFIER_GETTYPE] FailedCheckException in getType for '" + name + "': " + fce.getMessage());
-        throw fce; // Re-throw known exceptions
-    } catch (Exception e) {
-        System.err.println("[IDENTIFIER_GETTYPE] UNEXPECTED EXCEPTION in getType for '" + name + "': " + e);
-        e.printStackTrace(System.err);
-        // Wrap in FailedCheckException to propagate as a compilation issue
-        throw new FailedCheckException(new CompilationError(ErrorType.INTERNAL_ERROR, this.getSourceInfo(), "Internal error resolving type for identifier '" + name + "': " + e.getMessage(), "").toString());
     }
 }
-
-}
@@ -46,45 +46,6 @@ public class IfStatement extends AbstractNode implements Statement /*, BytecodeE
         return false;
     }
 
-    @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        emitBytecode(out, context, null);
-    }
-
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        // Продолжаем с генерацией байткода для if
-        getCondition().emitBytecode(out, context, currentFunction);
-        out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.JMP_IF_FALSE);
-        int jmpIfFalseOffset = out.size();
-        io.github.snaill.bytecode.BytecodeUtils.writeU16(out, 0); // Placeholder for jump offset
-        getBody().emitBytecode(out, context, currentFunction);
-        if (getElseBody() != null) {
-            out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.JMP);
-            int jmpOffset = out.size();
-            io.github.snaill.bytecode.BytecodeUtils.writeU16(out, 0); // Placeholder for jump offset
-            int elseStart = out.size();
-            getElseBody().emitBytecode(out, context, currentFunction);
-            int end = out.size();
-            // Обновляем значение jump offset для JMP
-            final byte[] bytes1 = out.toByteArray();
-            io.github.snaill.bytecode.BytecodeUtils.writeU16(new java.io.ByteArrayOutputStream() { @Override public void write(int b) { bytes1[jmpOffset + (count++)] = (byte)b; } private int count = 0; }, end - jmpOffset - 2);
-            out.reset();
-            out.write(bytes1);
-            // Обновляем значение jump offset для JMP_IF_FALSE
-            final byte[] bytes2 = out.toByteArray();
-            io.github.snaill.bytecode.BytecodeUtils.writeU16(new java.io.ByteArrayOutputStream() { @Override public void write(int b) { bytes2[jmpIfFalseOffset + (count++)] = (byte)b; } private int count = 0; }, elseStart - jmpIfFalseOffset - 2);
-            out.reset();
-            out.write(bytes2);
-        } else {
-            int end = out.size();
-            // Обновляем значение jump offset для JMP_IF_FALSE
-            final byte[] bytes3 = out.toByteArray();
-            io.github.snaill.bytecode.BytecodeUtils.writeU16(new java.io.ByteArrayOutputStream() { @Override public void write(int b) { bytes3[jmpIfFalseOffset + (count++)] = (byte)b; } private int count = 0; }, end - jmpIfFalseOffset - 2);
-            out.reset();
-            out.write(bytes3);
-        }
-    }
-
     private boolean isAlwaysFalseCondition() {
         Expression condition = getCondition();
         if (condition instanceof BooleanLiteral) {
@@ -116,8 +77,8 @@ public class IfStatement extends AbstractNode implements Statement /*, BytecodeE
             if (thenBody != null) {
                 AbstractNode thenAbstractNode = (thenBody instanceof AbstractNode) ? (AbstractNode) thenBody : null;
                 if (thenAbstractNode != null && !thenAbstractNode.wasDeadCodeReported) {
-                    String beforeString = thenAbstractNode.getSource() != null ? 
-                                          SourceBuilder.toSourceLine(thenAbstractNode.getSource(), thenAbstractNode.getLine(), thenAbstractNode.getCharPosition(), SourceBuilder.toSourceCode(thenBody).length()) :
+                    CharSequence beforeString = thenAbstractNode.getSourceFile() != null ? 
+                                          SourceBuilder.toSourceLine(thenAbstractNode.getSourceFile(), thenAbstractNode.getLine(), thenAbstractNode.getCharPosition(), SourceBuilder.toSourceCode(thenBody).length()) :
                                           SourceBuilder.toSourceCode(thenBody);
                     CompilationError err = new CompilationError(
                         ErrorType.DEAD_CODE,
@@ -152,8 +113,8 @@ public class IfStatement extends AbstractNode implements Statement /*, BytecodeE
             if (hasElse && elseBody != null) {
                 AbstractNode elseAbstractNode = (elseBody instanceof AbstractNode) ? (AbstractNode) elseBody : null;
                 if (elseAbstractNode != null && !elseAbstractNode.wasDeadCodeReported) {
-                    String beforeString = elseAbstractNode.getSource() != null ? 
-                                          SourceBuilder.toSourceLine(elseAbstractNode.getSource(), elseAbstractNode.getLine(), elseAbstractNode.getCharPosition(), SourceBuilder.toSourceCode(elseBody).length()) :
+                    CharSequence beforeString = elseAbstractNode.getSourceFile() != null ? 
+                                          SourceBuilder.toSourceLine(elseAbstractNode.getSourceFile(), elseAbstractNode.getLine(), elseAbstractNode.getCharPosition(), SourceBuilder.toSourceCode(elseBody).length()) :
                                           SourceBuilder.toSourceCode(elseBody);
                     CompilationError err = new CompilationError(
                         ErrorType.DEAD_CODE,
@@ -221,9 +182,9 @@ public class IfStatement extends AbstractNode implements Statement /*, BytecodeE
     public void check(Scope scope) throws io.github.snaill.exception.FailedCheckException {
         getCondition().check(scope);
         Type condType = getCondition().getType(scope);
-        if (!(condType instanceof PrimitiveType pt) || !pt.getName().equals("bool")) {
-            String before = getSource() != null ?
-                io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), getCondition().toString().length()) :
+        if (!Types.BOOL.equals(condType)) {
+            CharSequence before = getSourceFile() != null ?
+                io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), getCondition().toString().length()) :
                 io.github.snaill.ast.SourceBuilder.toSourceCode(getCondition());
             throw new io.github.snaill.exception.FailedCheckException(
                 new io.github.snaill.result.CompilationError(
@@ -231,7 +192,7 @@ public class IfStatement extends AbstractNode implements Statement /*, BytecodeE
                     before,
                     "Condition in if statement must be of type bool, got " + condType,
                     ""
-                ).toString()
+                )
             );
         }
         // then-ветка
@@ -0,0 +1,60 @@
+package io.github.snaill.ast;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Связывание имён с объявлениями.
+ * <p>
+ * Один обход дерева после построения: каждый {@link Identifier}, {@link FunctionCall} и
+ * {@link ArrayElement} получает ссылку на своё объявление, найденное по хеш-таблицам символов
+ * областей видимости. Последующие фазы берут объявление из узла ({@code getDeclaration()}) и не
+ * ищут его по имени. Связь остаётся верной, пока в связанных областях не добавляются и не
+ * удаляются объявления и не меняется структура дерева; после такого изменения узел находит
+ * объявление заново при первом обращении.
+ */
+public final class NameResolver {
+
+    private NameResolver() {
+    }
+
+    /**
+     * Связывает все имена в поддереве
+     *
+     * @return Количество имён, объявление которых не найдено (встроенные функции не считаются)
+     */
+    public static int resolve(Node root) {
+        int unresolved = 0;
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            if (node instanceof Identifier identifier) {
+                bind(identifier.getEnclosingScope());
+                if (identifier.getDeclaration() == null) {
+                    unresolved++;
+                }
+            } else if (node instanceof FunctionCall call) {
+                bind(call.getEnclosingScope());
+                if (call.getDeclaration() == null && !call.getName().equals("println")) {
+                    unresolved++;
+                }
+            } else if (node instanceof ArrayElement element && element.getIdentifier() != null) {
+                // Массив не входит в число детей элемента
+                pending.push(element.getIdentifier());
+            }
+            for (Node child : node.getChildren()) {
+                if (child != null) {
+                    pending.push(child);
+                }
+            }
+        }
+        return unresolved;
+    }
+
+    private static void bind(Scope scope) {
+        if (scope != null) {
+            scope.markBound();
+        }
+    }
+}
@@ -43,6 +43,13 @@ public interface Node {
 
     void setChild(int index, Node child);
 
+    /**
+     * Структурный хеш поддерева: равные по {@code equals} поддеревья имеют равный хеш.
+     * В отличие от {@link #hashCode()}, не зависит от идентичности узлов и годится как ключ
+     * для поиска одинаковых поддеревьев.
+     */
+    int structuralHash();
+
     List<Result> checkDeadCode();
 
     void checkUnusedFunctions(Set<FunctionDeclaration> unused);
@@ -52,9 +59,13 @@ public interface Node {
     // Source Information Accessors
     int getLine();
     int getCharPosition();
+    /**
+     * Полный текст исходного файла узла (общий для всех узлов) или null
+     */
     String getSource();
+    SourceFile getSourceFile();
     String getSourceInfo(); // Typically a formatted string of line, char, and source name
-    void setSourceInfo(int line, int charPosition, String source);
+    void setSourceInfo(int line, int charPosition, SourceFile sourceFile);
 
     // void checkTypes();
 
@@ -112,13 +123,4 @@ public interface Node {
                 }
             });
     }
-
-    /**
-     * Генерирует байткод для данного узла AST.
-     * @param out поток для записи байткода
-     * @param context контекст генерации байткода
-     */
-    default void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        throw new UnsupportedOperationException("emitBytecode не реализован для " + getClass().getSimpleName());
-    }
 }
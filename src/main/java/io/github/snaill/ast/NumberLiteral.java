@@ -22,30 +22,6 @@ public class NumberLiteral extends PrimaryExpression {
         return value;
     }
 
-    @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException {
-        emitBytecode(out, context, null);
-    }
-
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException {
-        // Добавляем константу в пул констант и получаем её индекс
-        Long longValue = getValue();
-        int existingIndex = context.getConstantIndex(longValue);
-        int constIndex;
-        
-        if (existingIndex != -1) {
-            // Используем существующий индекс константы
-            constIndex = existingIndex;
-        } else {
-            // Добавляем новую константу
-            constIndex = context.addConstant(longValue);
-        }
-        
-        // Генерируем инструкцию PUSH_CONST с индексом константы
-        out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.PUSH_CONST);
-        io.github.snaill.bytecode.BytecodeUtils.writeU16(out, constIndex);
-    }
-
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof NumberLiteral other) {
@@ -55,10 +31,15 @@ public class NumberLiteral extends PrimaryExpression {
     }
 
     @Override
-    public Type getType(Scope scope) {
+    protected int localHash() {
+        return Long.hashCode(value);
+    }
+
+    @Override
+    protected Type computeType(Scope scope) {
         // Default to i32 for now, as per common language conventions and test expectations.
         // usize would typically be inferred for very large positive numbers or via explicit suffix/cast.
-        return new PrimitiveType("i32");
+        return Types.I32;
     }
 
     @Override
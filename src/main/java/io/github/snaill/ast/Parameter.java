@@ -38,6 +38,11 @@ public class Parameter extends AbstractNode {
         return false;
     }
 
+    @Override
+    protected int localHash() {
+        return name.hashCode();
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(name, type);
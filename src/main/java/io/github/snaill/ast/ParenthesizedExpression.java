@@ -7,16 +7,6 @@ import java.util.List; // For List.of
 
 public class ParenthesizedExpression extends Expression {
 
-    // --- Начало добавленного кода ---
-    @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        if (this.innerExpression != null) {
-            this.innerExpression.emitBytecode(out, context, currentFunction);
-        } else {
-            // Если innerExpression null, getType тоже вызовет исключение, так что это согласуется
-            throw new io.github.snaill.exception.FailedCheckException("Inner expression of ParenthesizedExpression is null during bytecode emission");
-        }
-    }
     // --- Конец добавленного кода ---
     private final Expression innerExpression;
 
@@ -24,7 +14,7 @@ public class ParenthesizedExpression extends Expression {
         super(innerExpression != null ? List.of(innerExpression) : List.of());
         this.innerExpression = innerExpression;
         if (innerExpression instanceof AbstractNode) {
-            this.setSourceInfo(((AbstractNode) innerExpression).getLine(), ((AbstractNode) innerExpression).getCharPosition(), ((AbstractNode) innerExpression).getSource());
+            this.setSourceInfo(((AbstractNode) innerExpression).getLine(), ((AbstractNode) innerExpression).getCharPosition(), ((AbstractNode) innerExpression).getSourceFile());
         } else if (innerExpression != null) {
             // Если innerExpression не AbstractNode, но имеет свои методы для получения информации о позиции,
             // их можно было бы вызвать здесь. Пока оставляем так, или можно установить значения по умолчанию.
@@ -37,7 +27,7 @@ public class ParenthesizedExpression extends Expression {
     }
 
     @Override
-    public Type getType(Scope scope) throws FailedCheckException {
+    protected Type computeType(Scope scope) throws FailedCheckException {
         if (this.innerExpression == null) {
             throw new FailedCheckException("Inner expression of ParenthesizedExpression is null");
         }
@@ -1,7 +1,5 @@
 package io.github.snaill.ast;
 
-import java.util.Objects;
-
 public class PrimitiveType extends Type {
     private final String name;
     private final Identifier identifierNode; // Represents the identifier used for a custom type, null for built-in types.
@@ -47,18 +45,13 @@ public class PrimitiveType extends Type {
     }
 
     @Override
-    public boolean equals(Object obj) {
-        if (this == obj) return true;
-        if (obj == null || getClass() != obj.getClass()) return false;
-        PrimitiveType that = (PrimitiveType) obj;
-        // Type equality is primarily based on the resolved name.
-        return Objects.equals(name, that.name);
+    protected Type intern() {
+        return Types.primitive(name);
     }
 
     @Override
-    public int hashCode() {
-        // Consistent with equals, primarily based on name.
-        return Objects.hash(name);
+    protected int computeHash() {
+        return name.hashCode();
     }
 
     @Override
@@ -27,25 +27,12 @@ public class ReturnStatement extends AbstractNode implements Statement {
         return false;
     }
 
-    @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        emitBytecode(out, context, null);
-    }
-
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        Expression retExpr = getReturnable();
-        if (retExpr != null) {
-            retExpr.emitBytecode(out, context, currentFunction);
-        }
-        out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.RET);
-    }
-
     public void checkType(Type expectedType, Scope scope) throws io.github.snaill.exception.FailedCheckException {
         Expression retExpr = getReturnable();
         if (retExpr == null) {
-            if (!(expectedType instanceof PrimitiveType pt) || !pt.getName().equals("void")) {
-                String before = getSource() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), toString().length()) :
+            if (!Types.VOID.equals(expectedType)) {
+                CharSequence before = getSourceFile() != null ?
+                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), toString().length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(this);
                 throw new io.github.snaill.exception.FailedCheckException(
                     new io.github.snaill.result.CompilationError(
@@ -53,19 +40,19 @@ public class ReturnStatement extends AbstractNode implements Statement {
                         before,
                         "Return statement must return a value of type " + expectedType + ", got void",
                         ""
-                    ).toString()
+                    )
                 );
             }
             return;
         }
         Type actualType = retExpr.getType(scope);
         // Разрешаем возвращать неотрицательный литерал как usize
-        if (expectedType instanceof PrimitiveType et && et.getName().equals("usize") && isUsableAsUsize(retExpr, scope)) {
+        if (Types.USIZE.equals(expectedType) && isUsableAsUsize(retExpr, scope)) {
             return;
         }
         if (!actualType.equals(expectedType)) {
-            String before = getSource() != null ?
-                io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), retExpr.toString().length()) :
+            CharSequence before = getSourceFile() != null ?
+                io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), retExpr.toString().length()) :
                 io.github.snaill.ast.SourceBuilder.toSourceCode(retExpr);
             throw new io.github.snaill.exception.FailedCheckException(
                 new io.github.snaill.result.CompilationError(
@@ -73,7 +60,7 @@ public class ReturnStatement extends AbstractNode implements Statement {
                     before,
                     "Return statement type mismatch: expected " + expectedType + ", got " + actualType,
                     ""
-                ).toString()
+                )
             );
         }
     }
@@ -84,14 +71,14 @@ public class ReturnStatement extends AbstractNode implements Statement {
         }
         if (expr instanceof Identifier id) {
             Type t = id.getType(scope);
-            return t instanceof PrimitiveType pt && pt.getName().equals("usize");
+            return Types.USIZE.equals(t);
         }
         if (expr instanceof BinaryExpression be) {
             return isUsableAsUsize(be.getLeft(), scope) && isUsableAsUsize(be.getRight(), scope);
         }
         try {
             Type t = expr.getType(scope);
-            if (t instanceof PrimitiveType pt && pt.getName().equals("usize")) return true;
+            if (Types.USIZE.equals(t)) return true;
         } catch (Exception ignored) {}
         return false;
     }
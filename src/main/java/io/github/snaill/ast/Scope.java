@@ -1,16 +1,15 @@
 package io.github.snaill.ast;
 
-import io.github.snaill.bytecode.BytecodeContext;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Collection;
+import java.util.Collections;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
+import io.github.snaill.jfr.CompilerTrace;
 import io.github.snaill.result.CompilationError;
 import io.github.snaill.result.ErrorType;
 import io.github.snaill.result.Result;
@@ -22,11 +21,45 @@ import io.github.snaill.result.WarningType;
  * Generates bytecode for all statements in the block.
  */
 public class Scope extends AbstractNode implements Statement /*, BytecodeEmittable */ {
-    private static final Logger logger = LoggerFactory.getLogger(Scope.class);
     private final Scope parent;
+    /**
+     * Корневая область дерева: хранит версию его структуры и таблиц символов
+     */
+    private final Scope root;
+    /**
+     * Версия структуры и таблиц символов дерева ({@link #symbolsVersion()}); ведётся только в корневой области
+     */
+    private long version;
     private final FunctionDeclaration enclosingFunction;
     private FunctionDeclaration enclosingFunctionContext; // Context for the function this scope might directly belong to (e.g. a function body)
     private final List<VariableDeclaration> localDeclarations = new ArrayList<>();
+    /**
+     * Таблица символов области: имя - объявление из {@link #localDeclarations}
+     */
+    private final Map<String, VariableDeclaration> localSymbols = new HashMap<>();
+    /**
+     * Объявления параметров функции, создаются при первом поиске
+     */
+    private Map<String, VariableDeclaration> parameterSymbols;
+    /**
+     * Функции и глобальные переменные среди детей области
+     */
+    private ChildSymbols childSymbols;
+    /**
+     * Есть ли имена, связанные через эту область ({@link NameResolver})
+     */
+    private boolean bound;
+    /**
+     * Имена, которые искали через эту связанную область: только новое объявление одного из них
+     * может изменить уже найденные объявления и типы
+     */
+    private Set<String> lookedUpNames;
+
+    /**
+     * Объявления среди детей области
+     */
+    private record ChildSymbols(Map<String, FunctionDeclaration> functions, Map<String, VariableDeclaration> variables) {
+    }
 
     public Scope(List<Statement> children) {
         this(children, null, null);
@@ -39,6 +72,7 @@ public class Scope extends AbstractNode implements Statement /*, BytecodeEmittab
     public Scope(List<Statement> children, Scope parent, FunctionDeclaration enclosingFunction) {
         super(children);
         this.parent = parent;
+        this.root = parent != null ? parent.root : this;
         this.enclosingFunction = enclosingFunction;
     }
 
@@ -65,32 +99,87 @@ public class Scope extends AbstractNode implements Statement /*, BytecodeEmittab
      * @throws io.github.snaill.exception.FailedCheckException if the variable is already declared in this scope.
      */
     public void addDeclaration(VariableDeclaration decl) throws io.github.snaill.exception.FailedCheckException {
-        logger.debug("[SCOPE_ADD_DECL] Attempting to add var '{}' of type '{}' to scope@{} (Line: {}, Char: {}).", 
-            decl.getName(), 
-            (decl.getType() != null ? decl.getType().toString() : "<null_type>"), 
-            System.identityHashCode(this),
-            decl.getLine(),
-            decl.getCharPosition());
-        for (VariableDeclaration existingDecl : this.localDeclarations) {
-            if (existingDecl.getName().equals(decl.getName())) {
-                String before = decl.getSource() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(decl.getSource(), decl.getLine(), decl.getCharPosition(), decl.getName().length()) :
-                    io.github.snaill.ast.SourceBuilder.toSourceCode(decl);
-                throw new io.github.snaill.exception.FailedCheckException(
-                    new io.github.snaill.result.CompilationError(
-                        io.github.snaill.result.ErrorType.REDECLARED_VARIABLE,
-                        before,
-                        "Variable '" + decl.getName() + "' is already declared in this scope.",
-                        "Previously declared at line " + existingDecl.getLine() 
-                    ).toString()
-                );
-            }
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("Scope", "add '" + decl.getName() + "': " + decl.getType() + " to " + CompilerTrace.id(this) + " at " + decl.getLine() + ":" + decl.getCharPosition());
+        }
+        VariableDeclaration existingDecl = this.localSymbols.get(decl.getName());
+        if (existingDecl != null) {
+            CharSequence before = decl.getSourceFile() != null ?
+                io.github.snaill.ast.SourceBuilder.toSourceLine(decl.getSourceFile(), decl.getLine(), decl.getCharPosition(), decl.getName().length()) :
+                io.github.snaill.ast.SourceBuilder.toSourceCode(decl);
+            throw new io.github.snaill.exception.FailedCheckException(
+                new io.github.snaill.result.CompilationError(
+                    io.github.snaill.result.ErrorType.REDECLARED_VARIABLE,
+                    before,
+                    "Variable '" + decl.getName() + "' is already declared in this scope.",
+                    "Previously declared at line " + existingDecl.getLine() 
+                )
+            );
         }
         this.localDeclarations.add(decl);
-        logger.debug("[SCOPE_ADD_DECL] Successfully added var '{}' to scope@{}. Total local decls: {}.", decl.getName(), System.identityHashCode(this), this.localDeclarations.size());
+        this.localSymbols.put(decl.getName(), decl);
+        if (bound && lookedUpNames != null && lookedUpNames.contains(decl.getName())) {
+            root.version++;
+        }
         decl.setEnclosingScope(this); // Ensure the declaration knows its scope
     }
 
+    /**
+     * Removes a variable declaration from this scope's symbol table.
+     * Used when a top-level declaration is rebuilt after an edit.
+     * @param decl The VariableDeclaration to remove.
+     * @return true if the declaration was present.
+     */
+    public boolean removeDeclaration(VariableDeclaration decl) {
+        if (!this.localDeclarations.removeIf(existing -> existing == decl)) {
+            return false;
+        }
+        this.localSymbols.remove(decl.getName(), decl);
+        if (bound) {
+            root.version++;
+        }
+        return true;
+    }
+
+    /**
+     * Версия таблиц символов и структуры дерева этой области. Пока она не изменилась, имя,
+     * найденное из связанной области видимости, ссылается на то же объявление.
+     * Меняется при замене детей в дереве, при удалении объявлений из связанных областей и при
+     * добавлении объявления с именем, которое уже искали через область; изменения в других
+     * деревьях на неё не влияют.
+     */
+    long symbolsVersion() {
+        return root.version;
+    }
+
+    /**
+     * Отмечает замену детей в дереве этой области
+     */
+    void structureChanged() {
+        root.version++;
+    }
+
+    @Override
+    protected void childrenChanged() {
+        childSymbols = null;
+        super.childrenChanged();
+        structureChanged();
+    }
+
+    /**
+     * Отмечает, что через область и её предков связаны имена: после этого изменение её
+     * объявлений может менять {@link #symbolsVersion()}
+     */
+    void markBound() {
+        for (Scope scope = this; scope != null && !scope.bound; scope = scope.parent) {
+            scope.bound = true;
+        }
+    }
+
+    public List<VariableDeclaration> getLocalDeclarations() {
+        return Collections.unmodifiableList(this.localDeclarations);
+    }
+
     @Override
     public <T> T accept(ASTVisitor<T> visitor) {
         return visitor.visit(this);
@@ -124,24 +213,6 @@ public class Scope extends AbstractNode implements Statement /*, BytecodeEmittab
         return super.getChildren().stream().map(Statement.class::cast).toList();
     }
 
-    @Override
-    public void emitBytecode(ByteArrayOutputStream out, BytecodeContext context) throws IOException, io.github.snaill.exception.FailedCheckException {
-        emitBytecode(out, context, null);
-    }
-
-    public void emitBytecode(ByteArrayOutputStream out, BytecodeContext context, FunctionDeclaration currentFunction) throws IOException, io.github.snaill.exception.FailedCheckException {
-        for (Statement stmt : getStatements()) {
-            try {
-                stmt.getClass().getMethod("emitBytecode", ByteArrayOutputStream.class, BytecodeContext.class, FunctionDeclaration.class)
-                    .invoke(stmt, out, context, currentFunction);
-            } catch (NoSuchMethodException e) {
-                stmt.emitBytecode(out, context);
-            } catch (Exception e) {
-                throw new IOException(e);
-            }
-        }
-    }
-
     @Override
     public void checkUnusedVariables(Set<VariableDeclaration> unused) {
         super.checkUnusedVariables(unused);
@@ -218,8 +289,9 @@ public class Scope extends AbstractNode implements Statement /*, BytecodeEmittab
                     potentiallyUnusedGlobalFunctions.add(fn);
                 }
             }
-            logger.debug("DEBUG_UNUSED: Root scope collected potentiallyUnusedGlobalFunctions: {}", 
-                potentiallyUnusedGlobalFunctions.stream().map(fd -> fd.getName() + "(" + fd.hashCode() + ")").toList());
+            if (CompilerTrace.isEnabled()) {
+                CompilerTrace.trace("Scope", "root collected functions " + traceNames(potentiallyUnusedGlobalFunctions));
+            }
         }
 
         // Traverse children of *this* current scope to mark its locals (potentiallyUnusedLocals)
@@ -227,28 +299,23 @@ public class Scope extends AbstractNode implements Statement /*, BytecodeEmittab
         // If this is not the root scope, potentiallyUnusedGlobalFunctions will be empty but passed along.
         collectUsageInSubtree(this, potentiallyUnusedLocals, potentiallyUnusedGlobalFunctions);
         
-        logger.debug("DEBUG_UNUSED: Scope {} after collectUsageInSubtree. Remaining potentiallyUnusedLocals: {}", 
-            this.hashCode(), 
-            potentiallyUnusedLocals.stream().map(vd -> vd.getName() + "(" + vd.hashCode() + ")").toList());
-        if (this.parent == null) {
-             logger.debug("DEBUG_UNUSED: Root scope after collectUsageInSubtree. Remaining potentiallyUnusedGlobalFunctions: {}", 
-                potentiallyUnusedGlobalFunctions.stream().map(fd -> fd.getName() + "(" + fd.hashCode() + ")").toList());
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("Scope", CompilerTrace.id(this) + " unused locals " + traceNames(potentiallyUnusedLocals));
+            if (this.parent == null) {
+                CompilerTrace.trace("Scope", "root unused functions " + traceNames(potentiallyUnusedGlobalFunctions));
+            }
         }
 
         // Add warnings for unused local variables of *this* scope.
         // If this is the root scope, these are global variables.
         for (VariableDeclaration localVar : potentiallyUnusedLocals) {
             warnings.add(new Warning(WarningType.UNUSED, SourceBuilder.toSourceCode(localVar)));
-            logger.debug("DEBUG_UNUSED: Scope {} reporting UNUSED VAR: {} (Hash: {}) Type: {}", 
-                this.hashCode(), localVar.getName(), localVar.hashCode(), (this.parent == null ? "Global" : "Local"));
         }
 
         // If this is the root scope, add warnings for any remaining unused global functions.
         if (this.parent == null) {
             for (FunctionDeclaration fn : potentiallyUnusedGlobalFunctions) {
                 warnings.add(new Warning(WarningType.UNUSED, SourceBuilder.toSourceCode(fn)));
-                 logger.debug("DEBUG_UNUSED: Root Scope reporting UNUSED FUNCTION: {} (Hash: {})", 
-                    fn.getName(), fn.hashCode());
             }
         }
 
@@ -277,21 +344,15 @@ public class Scope extends AbstractNode implements Statement /*, BytecodeEmittab
     private List<Warning> getUnusedSymbolWarnings(Set<FunctionDeclaration> globalFunctionsToTrack) {
         List<Warning> warnings = new ArrayList<>();
         Set<VariableDeclaration> potentiallyUnusedLocals = new java.util.HashSet<>(this.localDeclarations);
-        logger.debug("DEBUG_UNUSED: Scope {} (Parent: {}) recursive call. Initial potentiallyUnusedLocals for this scope: {}", 
-            this.hashCode(), (this.parent != null ? this.parent.hashCode() : "ERROR_SHOULD_HAVE_PARENT"), 
-            potentiallyUnusedLocals.stream().map(vd -> vd.getName() + "(" + vd.hashCode() + ")").toList());
-
         // Use the passed-in set of global functions for usage marking.
         collectUsageInSubtree(this, potentiallyUnusedLocals, globalFunctionsToTrack);
 
-        logger.debug("DEBUG_UNUSED: Scope {} after collectUsageInSubtree (recursive call). Remaining potentiallyUnusedLocals: {}", 
-            this.hashCode(), 
-            potentiallyUnusedLocals.stream().map(vd -> vd.getName() + "(" + vd.hashCode() + ")").toList());
+        if (CompilerTrace.isEnabled()) {
+            CompilerTrace.trace("Scope", CompilerTrace.id(this) + " unused locals " + traceNames(potentiallyUnusedLocals));
+        }
 
         for (VariableDeclaration localVar : potentiallyUnusedLocals) {
             warnings.add(new Warning(WarningType.UNUSED, SourceBuilder.toSourceCode(localVar)));
-            logger.debug("DEBUG_UNUSED: Scope {} reporting UNUSED VAR: {} (Hash: {}) Type: Local (recursive call)", 
-                this.hashCode(), localVar.getName(), localVar.hashCode());
         }
 
         for (Node childNode : getChildren()) {
@@ -310,6 +371,15 @@ public class Scope extends AbstractNode implements Statement /*, BytecodeEmittab
         return warnings;
     }
 
+    // Names of the declarations still considered unused, for trace messages only.
+    private static String traceNames(Set<? extends Node> declarations) {
+        List<String> names = new ArrayList<>(declarations.size());
+        for (Node declaration : declarations) {
+            names.add(declaration instanceof FunctionDeclaration fn ? fn.getName() : ((VariableDeclaration) declaration).getName());
+        }
+        return names.toString();
+    }
+
     // Traverses the direct children of `scopeNode` to mark usage of variables 
     // in `activeUnusedVarsForScope` and functions in `activeUnusedGlobalFunctions`.
     private void collectUsageInSubtree(Scope scopeNode, Set<VariableDeclaration> activeUnusedVarsForScope, Set<FunctionDeclaration> activeUnusedGlobalFunctions) {
@@ -412,8 +482,8 @@ public class Scope extends AbstractNode implements Statement /*, BytecodeEmittab
 
             if (currentSegmentIsDead) {
                 if (abstractStmt != null && !abstractStmt.wasDeadCodeReported) {
-                    String beforeString = abstractStmt != null && abstractStmt.getSource() != null ? 
-                                          SourceBuilder.toSourceLine(abstractStmt.getSource(), abstractStmt.getLine(), abstractStmt.getCharPosition(), SourceBuilder.toSourceCode(abstractStmt).length()) :
+                    CharSequence beforeString = abstractStmt != null && abstractStmt.getSourceFile() != null ? 
+                                          SourceBuilder.toSourceLine(abstractStmt.getSourceFile(), abstractStmt.getLine(), abstractStmt.getCharPosition(), SourceBuilder.toSourceCode(abstractStmt).length()) :
                                           SourceBuilder.toSourceCode(stmt);
                     CompilationError err = new CompilationError(
                         ErrorType.DEAD_CODE,
@@ -451,83 +521,104 @@ public class Scope extends AbstractNode implements Statement /*, BytecodeEmittab
 
     /**
      * Resolves a variable considering the context of resolution, e.g., to prevent self-reference in initializers.
+     * Each scope is searched by hash: function parameters, local declarations and, in the root scope,
+     * global variables among its children.
      * @param name The name of the variable to resolve.
      * @param resolutionContext The AST Node from where the resolution is being requested.
      * @return The VariableDeclaration if found, otherwise null.
      */
     public VariableDeclaration resolveVariable(String name, Node resolutionContext) {
-        logger.debug("[SCOPE_RESOLVE_VAR] Attempting to resolve var '{}' in scope@{} (Context: {}, Line: {}, Char: {}).", 
-            name, 
-            System.identityHashCode(this), 
-            (resolutionContext != null ? resolutionContext.getClass().getSimpleName() : "null_context"),
-            (resolutionContext != null ? resolutionContext.getLine() : -1),
-            (resolutionContext != null ? resolutionContext.getCharPosition() : -1));
-
-        // Check parameters if in a function scope
-        FunctionDeclaration func = getEnclosingFunction();
-        if (func != null) {
-            for (Parameter param : func.getParameters()) {
-                if (param.getName().equals(name)) {
-                    logger.debug("[SCOPE_RESOLVE_VAR] Found parameter '{}' of type '{}' in function '{}' (scope@{}).", name, (param.getType() != null ? param.getType().toString() : "<null_type>"), func.getName(), System.identityHashCode(this));
-                    // Create a temporary VariableDeclaration for the parameter to match return type
-                    // This is a common pattern when parameters are not directly VariableDeclaration instances
-                    VariableDeclaration paramVarDecl = new VariableDeclaration(param.getName(), param.getType(), null);
-                    if (param instanceof AbstractNode pn) {
-                        paramVarDecl.setSourceInfo(pn.getLine(), pn.getCharPosition(), pn.getSource());
-                    }
-                    return paramVarDecl;
-                }
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            scope.recordLookup(name);
+            VariableDeclaration parameter = scope.resolveParameter(name);
+            if (parameter != null) {
+                return parameter;
+            }
+            VariableDeclaration local = scope.localSymbols.get(name);
+            // A variable is not visible in its own initializer
+            if (local != null && (resolutionContext == null || local.getValue() != resolutionContext)) {
+                return local;
+            }
+            if (scope.parent == null) {
+                return scope.resolveGlobal(name, resolutionContext);
             }
         }
+        return null;
+    }
 
-        // Check local variables in the current scope (this.localDeclarations)
-        for (VariableDeclaration varDecl : this.localDeclarations) {
-            if (varDecl.getName().equals(name)) {
-                logger.debug("[SCOPE_RESOLVE_VAR] Checking local decl '{}' against context '{}' (identity: {} vs {}).", varDecl.getName(), (resolutionContext != null ? resolutionContext.getClass().getSimpleName() : "null"), System.identityHashCode(varDecl), (resolutionContext != null ? System.identityHashCode(resolutionContext) : "null"));
-                // Prevent resolving a variable in its own initializer if resolutionContext is that initializer.
-                if (resolutionContext != null && varDecl.getValue() == resolutionContext) {
-                     logger.debug("[SCOPE_RESOLVE_VAR] Attempt to resolve variable '{}' in its own initializer. Denied for this instance.", name);
-                     continue; // Skip this declaration, look for others or in parent.
-                }
-                logger.debug("[SCOPE_RESOLVE_VAR] Found local var '{}' of type '{}' in scope@{}.", name, (varDecl.getType() != null ? varDecl.getType().toString() : "<null_type>"), System.identityHashCode(this));
-                return varDecl;
+    private void recordLookup(String name) {
+        if (bound) {
+            if (lookedUpNames == null) {
+                lookedUpNames = new HashSet<>();
             }
+            lookedUpNames.add(name);
         }
+    }
 
-        // Recursively check parent scope
-        if (parent != null) {
-            logger.debug("[SCOPE_RESOLVE_VAR] Var '{}' not found locally or as param in scope@{}. Trying parent scope@{}.", name, System.identityHashCode(this), System.identityHashCode(parent));
-            VariableDeclaration foundInParent = parent.resolveVariable(name, resolutionContext);
-            if (foundInParent != null) {
-                logger.debug("[SCOPE_RESOLVE_VAR] Found var '{}' in parent scope@{} (original request in scope@{}).", name, System.identityHashCode(parent), System.identityHashCode(this));
-            }
-            return foundInParent;
-        } else {
-            // This is the root scope (parent is null), check its direct children for global variables
-            // This assumes global variables are VariableDeclaration nodes directly under the root Program/Scope node.
-            logger.debug("[SCOPE_RESOLVE_VAR] Var '{}' not found locally/param in scope@{} and no parent. Checking for globals.", name, System.identityHashCode(this));
-            for (Node child : getChildren()) { // getChildren() should provide top-level declarations if this is root
-                if (child instanceof VariableDeclaration globalVarDecl && globalVarDecl.getName().equals(name)) {
-                    logger.debug("[SCOPE_RESOLVE_VAR] Found global variable '{}' of type '{}' in root scope@{}.", name, (globalVarDecl.getType() != null ? globalVarDecl.getType().toString() : "<null_type>"), System.identityHashCode(this));
-                    if (resolutionContext != null && globalVarDecl.getValue() == resolutionContext) {
-                        logger.debug("[SCOPE_RESOLVE_VAR] Attempt to resolve global variable '{}' in its own initializer. Denied.", name);
-                        continue; 
-                    }
-                    return globalVarDecl;
+    private VariableDeclaration resolveParameter(String name) {
+        FunctionDeclaration func = getEnclosingFunction();
+        if (func == null) {
+            return null;
+        }
+        Map<String, VariableDeclaration> parameters = parameterSymbols;
+        if (parameters == null) {
+            parameters = new HashMap<>();
+            for (Parameter param : func.getParameters()) {
+                // Parameters are not VariableDeclaration instances: expose each one through a declaration of the same name and type
+                VariableDeclaration paramVarDecl = new VariableDeclaration(param.getName(), param.getType(), null);
+                if (param instanceof AbstractNode pn) {
+                    paramVarDecl.setSourceInfo(pn.getLine(), pn.getCharPosition(), pn.getSourceFile());
                 }
+                parameters.putIfAbsent(param.getName(), paramVarDecl);
+            }
+            parameterSymbols = parameters;
+        }
+        return parameters.get(name);
+    }
+
+    private VariableDeclaration resolveGlobal(String name, Node resolutionContext) {
+        VariableDeclaration global = childSymbols().variables().get(name);
+        if (global == null || resolutionContext == null || global.getValue() != resolutionContext) {
+            return global;
+        }
+        // The first global with this name is being initialized: look for a later one
+        for (Node child : children) {
+            if (child instanceof VariableDeclaration other && other != global && other.getName().equals(name)
+                    && other.getValue() != resolutionContext) {
+                return other;
             }
         }
-        logger.debug("[SCOPE_RESOLVE_VAR] Var '{}' not found in scope@{} or any ancestors/globals.", name, System.identityHashCode(this));
         return null;
     }
 
     public FunctionDeclaration resolveFunction(String name) {
-        for (Node child : getChildren()) {
-            if (child instanceof FunctionDeclaration func && func.getName().equals(name)) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            FunctionDeclaration func = scope.childSymbols().functions().get(name);
+            if (func != null) {
                 return func;
             }
         }
-        if (parent != null) return parent.resolveFunction(name);
         return null;
     }
+
+    /**
+     * Таблицы функций и (в корневой области) глобальных переменных среди детей, перестраиваются после замены детей
+     */
+    private ChildSymbols childSymbols() {
+        ChildSymbols symbols = childSymbols;
+        if (symbols == null) {
+            Map<String, FunctionDeclaration> functions = new HashMap<>();
+            Map<String, VariableDeclaration> variables = new HashMap<>();
+            for (Node child : children) {
+                if (child instanceof FunctionDeclaration func) {
+                    functions.putIfAbsent(func.getName(), func);
+                } else if (parent == null && child instanceof VariableDeclaration variable) {
+                    variables.putIfAbsent(variable.getName(), variable);
+                }
+            }
+            symbols = new ChildSymbols(functions, variables);
+            childSymbols = symbols;
+        }
+        return symbols;
+    }
 }
@@ -0,0 +1,804 @@
+package io.github.snaill.ast;
+
+import io.github.snaill.exception.FailedCheckException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Двоичный формат проверенного AST ({@code --emit-ast}) и его чтение без копирования.
+ * <p>
+ * Узел здесь - номер: вид, флаги, код оператора, строка, позиция в строке и значение (число,
+ * логическое значение или номер строки в общем пуле имён и строковых литералов) хранятся в
+ * массивах по этому номеру. Узлы пронумерованы в прямом порядке обхода, поэтому поддерево узла -
+ * непрерывный диапазон номеров {@code [id, subtreeEnd(id))}. Дети каждого вида узла стоят на
+ * фиксированных местах (см. {@link Kind}); отсутствующий необязательный ребёнок хранится как узел
+ * {@link Kind#NONE}.
+ * <p>
+ * Массивы записываются в файл как есть ({@link #write(OutputStream)}), а {@link #read(ByteBuffer)}
+ * строит представление прямо над байтами, например над отображённым в память файлом. Таблицы
+ * символов и области видимости не хранятся: {@link #inflate()} строит дерево из объектов с теми же
+ * связями, что и {@link ASTReflectionBuilder}, и с ним работают генерация байткода,
+ * {@link SourceBuilder} и другие проходы без повторного разбора и проверки исходника.
+ * Представление неизменяемо.
+ */
+public final class SerializedAST {
+
+    /**
+     * Вид узла и порядок его детей
+     */
+    public enum Kind {
+        /** Отсутствующий необязательный ребёнок */
+        NONE,
+        /** Дети: операторы */
+        SCOPE,
+        /** Имя; дети: тип результата, тело, параметры */
+        FUNCTION,
+        /** Имя; дети: тип */
+        PARAMETER,
+        /** Имя; дети: тип, начальное значение */
+        VARIABLE,
+        /** Дети: выражение */
+        EXPRESSION_STATEMENT,
+        /** Дети: условие, тело, ветвь else */
+        IF,
+        /** Дети: условие, тело */
+        WHILE,
+        /** Дети: инициализация, условие, шаг, тело */
+        FOR,
+        /** Дети: возвращаемое выражение */
+        RETURN,
+        BREAK,
+        /** Оператор; дети: левая часть, правая часть */
+        ASSIGNMENT,
+        /** Оператор; дети: левый операнд, правый операнд */
+        BINARY,
+        /** Оператор; дети: операнд */
+        UNARY,
+        /** Дети: выражение в скобках */
+        PARENTHESIZED,
+        /** Имя функции; дети: аргументы */
+        CALL,
+        /** Дети: идентификатор массива, индексы */
+        ARRAY_ELEMENT,
+        /** Дети: элементы */
+        ARRAY_LITERAL,
+        /** Имя */
+        VARIABLE_REFERENCE,
+        /** Имя */
+        IDENTIFIER,
+        /** Значение {@link #number(int)} */
+        NUMBER,
+        /** Значение {@link #string(int)} */
+        STRING,
+        /** Значение {@link #bool(int)} */
+        BOOLEAN,
+        /** Имя типа */
+        PRIMITIVE_TYPE,
+        /** Дети: тип элемента, размер ({@link #NUMBER}) */
+        ARRAY_TYPE;
+
+        private static final Kind[] VALUES = values();
+    }
+
+    private static final String[] OPERATORS = {
+            "=", "+=", "-=", "*=", "/=",
+            "||", "&&", "==", "!=", "<", ">", "<=", ">=",
+            "+", "-", "*", "/", "%", "!"
+    };
+    private static final Map<String, Byte> OPERATOR_CODES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < OPERATORS.length; i++) {
+            OPERATOR_CODES.put(OPERATORS[i], (byte) i);
+        }
+    }
+
+    /**
+     * Флаги узла
+     */
+    private static final byte HAS_SOURCE = 1;
+    private static final byte EXPLICIT_RETURN_TYPE = 1 << 1;
+    private static final byte TRUE = 1 << 2;
+
+    private static final int MAGIC = 0x534E4154; // "SNAT"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    private final int size;
+    private final ByteBuffer kinds;
+    private final ByteBuffer flags;
+    private final ByteBuffer operators;
+    /**
+     * Номер, следующий за последним узлом поддерева
+     */
+    private final IntBuffer ends;
+    private final IntBuffer lines;
+    private final IntBuffer columns;
+    private final LongBuffer values;
+    /**
+     * Строки пула; у прочитанного представления заполняются при первом обращении
+     */
+    private final String[] strings;
+    /**
+     * Смещения строк пула в {@link #stringData}; null, если все строки уже в {@link #strings}
+     */
+    private final IntBuffer stringOffsets;
+    private final ByteBuffer stringData;
+    /**
+     * Номера имени и текста исходного файла в пуле прочитанного представления или -1
+     */
+    private final int sourceNameIndex;
+    private final int sourceTextIndex;
+    private SourceFile sourceFile;
+
+    private SerializedAST(Packer packer) {
+        this.size = packer.size;
+        this.kinds = ByteBuffer.wrap(Arrays.copyOf(packer.kinds, size));
+        this.flags = ByteBuffer.wrap(Arrays.copyOf(packer.flags, size));
+        this.operators = ByteBuffer.wrap(Arrays.copyOf(packer.operators, size));
+        this.ends = IntBuffer.wrap(Arrays.copyOf(packer.ends, size));
+        this.lines = IntBuffer.wrap(Arrays.copyOf(packer.lines, size));
+        this.columns = IntBuffer.wrap(Arrays.copyOf(packer.columns, size));
+        this.values = LongBuffer.wrap(Arrays.copyOf(packer.values, size));
+        this.strings = packer.strings.toArray(new String[0]);
+        this.stringOffsets = null;
+        this.stringData = null;
+        this.sourceNameIndex = -1;
+        this.sourceTextIndex = -1;
+        this.sourceFile = packer.sourceFile;
+    }
+
+    private SerializedAST(ByteBuffer data) {
+        if (data.remaining() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a serialized AST");
+        }
+        if (data.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported AST format version " + data.getInt(4));
+        }
+        this.size = data.getInt(8);
+        int stringCount = data.getInt(12);
+        this.sourceNameIndex = data.getInt(16);
+        this.sourceTextIndex = data.getInt(20);
+        long fixed = HEADER_SIZE + 8L * size + 4L * (3L * size + stringCount + 1) + 3L * size;
+        if (size < 1 || stringCount < 0 || fixed > data.remaining()
+                || sourceNameIndex >= stringCount || sourceTextIndex >= stringCount) {
+            throw new IllegalArgumentException("Truncated or corrupted AST: " + size + " nodes, " + stringCount + " strings, "
+                    + data.remaining() + " bytes");
+        }
+        int position = HEADER_SIZE;
+        this.values = data.slice(position, 8 * size).asLongBuffer();
+        position += 8 * size;
+        this.ends = data.slice(position, 4 * size).asIntBuffer();
+        position += 4 * size;
+        this.lines = data.slice(position, 4 * size).asIntBuffer();
+        position += 4 * size;
+        this.columns = data.slice(position, 4 * size).asIntBuffer();
+        position += 4 * size;
+        this.stringOffsets = data.slice(position, 4 * (stringCount + 1)).asIntBuffer();
+        position += 4 * (stringCount + 1);
+        this.kinds = data.slice(position, size);
+        position += size;
+        this.flags = data.slice(position, size);
+        position += size;
+        this.operators = data.slice(position, size);
+        position += size;
+        this.stringData = data.slice(position, data.remaining() - position);
+        this.strings = new String[stringCount];
+    }
+
+    /**
+     * Упаковывает программу
+     *
+     * @param program Корневая область видимости программы
+     * @throws IllegalArgumentException если в дереве есть узлы, которые не строит {@link ASTReflectionBuilder},
+     *                                  или узлы из разных исходных файлов
+     */
+    public static SerializedAST of(Scope program) {
+        Packer packer = new Packer();
+        packer.pack(Objects.requireNonNull(program));
+        return new SerializedAST(packer);
+    }
+
+    /**
+     * Представление поверх сериализованных байтов ({@link #write(OutputStream)}) без копирования:
+     * массивы узлов читаются прямо из буфера, строки декодируются при первом обращении.
+     * Буфер не должен изменяться, пока представление используется.
+     *
+     * @throws IllegalArgumentException если заголовок или размеры разделов не сходятся
+     */
+    public static SerializedAST read(ByteBuffer buffer) {
+        return new SerializedAST(buffer.slice().order(ByteOrder.BIG_ENDIAN));
+    }
+
+    /**
+     * Отображает файл в память и читает его как {@link #read(ByteBuffer)}
+     */
+    public static SerializedAST read(Path file) throws IOException {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Serialized AST is too large: " + length + " bytes");
+            }
+            // Отображение остаётся действительным после закрытия канала
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        try {
+            return read(bytes);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Записывает представление в двоичном формате. Формат (все числа big-endian):
+     * <pre>
+     * заголовок   int magic "SNAT", int версия, int число узлов N, int число строк S,
+     *             int номер имени исходного файла, int номер его текста (-1, если файла нет)
+     * long[N]     значения
+     * int[N]      концы поддеревьев, строки, позиции в строке (три массива подряд)
+     * int[S + 1]  смещения строк в данных строк
+     * byte[N]     виды, флаги, операторы (три массива подряд)
+     * byte[]      строки в UTF-8
+     * </pre>
+     * Имя и текст исходного файла хранятся последними строками пула.
+     */
+    public void write(OutputStream out) throws IOException {
+        SourceFile file = getSourceFile();
+        int poolSize = sourceNameIndex >= 0 ? sourceNameIndex : strings.length;
+        List<byte[]> encoded = new ArrayList<>(poolSize + 2);
+        for (int i = 0; i < poolSize; i++) {
+            encoded.add(poolString(i).getBytes(StandardCharsets.UTF_8));
+        }
+        if (file != null) {
+            encoded.add(file.getName().getBytes(StandardCharsets.UTF_8));
+            encoded.add(file.getText().getBytes(StandardCharsets.UTF_8));
+        }
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(size);
+        data.writeInt(encoded.size());
+        data.writeInt(file != null ? poolSize : -1);
+        data.writeInt(file != null ? poolSize + 1 : -1);
+        for (int i = 0; i < size; i++) {
+            data.writeLong(values.get(i));
+        }
+        for (IntBuffer column : List.of(ends, lines, columns)) {
+            for (int i = 0; i < size; i++) {
+                data.writeInt(column.get(i));
+            }
+        }
+        int offset = 0;
+        data.writeInt(offset);
+        for (byte[] bytes : encoded) {
+            offset += bytes.length;
+            data.writeInt(offset);
+        }
+        for (ByteBuffer column : List.of(kinds, flags, operators)) {
+            for (int i = 0; i < size; i++) {
+                data.writeByte(column.get(i));
+            }
+        }
+        for (byte[] bytes : encoded) {
+            data.write(bytes);
+        }
+        data.flush();
+    }
+
+    /**
+     * Число узлов, включая {@link Kind#NONE}
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Исходный файл, на который ссылаются узлы, или null
+     */
+    public SourceFile getSourceFile() {
+        if (sourceFile == null && sourceNameIndex >= 0 && sourceTextIndex >= 0) {
+            sourceFile = new SourceFile(poolString(sourceNameIndex), poolString(sourceTextIndex));
+        }
+        return sourceFile;
+    }
+
+    public Kind kind(int id) {
+        return Kind.VALUES[kinds.get(id)];
+    }
+
+    /**
+     * Номер, следующий за последним узлом поддерева {@code id}
+     */
+    public int subtreeEnd(int id) {
+        return ends.get(id);
+    }
+
+    public int childCount(int id) {
+        int count = 0;
+        for (int child = id + 1; child < ends.get(id); child = ends.get(child)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Номер ребёнка. Время пропорционально {@code index}; для перебора всех детей удобнее
+     * идти от {@code id + 1} по {@link #subtreeEnd(int)} до конца поддерева родителя.
+     */
+    public int child(int id, int index) {
+        int child = id + 1;
+        for (int i = 0; i < index; i++) {
+            child = ends.get(child);
+        }
+        Objects.checkIndex(child, ends.get(id));
+        return child;
+    }
+
+    public int line(int id) {
+        return lines.get(id);
+    }
+
+    public int column(int id) {
+        return columns.get(id);
+    }
+
+    /**
+     * Имя функции, параметра, переменной, вызова, идентификатора или примитивного типа
+     */
+    public String name(int id) {
+        return switch (kind(id)) {
+            case FUNCTION, PARAMETER, VARIABLE, CALL, VARIABLE_REFERENCE, IDENTIFIER, PRIMITIVE_TYPE -> poolString((int) values.get(id));
+            default -> throw new IllegalArgumentException("Node " + id + " of kind " + kind(id) + " has no name");
+        };
+    }
+
+    /**
+     * Оператор присваивания, бинарного или унарного выражения
+     */
+    public String operator(int id) {
+        return switch (kind(id)) {
+            case ASSIGNMENT, BINARY, UNARY -> OPERATORS[operators.get(id)];
+            default -> throw new IllegalArgumentException("Node " + id + " of kind " + kind(id) + " has no operator");
+        };
+    }
+
+    public long number(int id) {
+        requireKind(id, Kind.NUMBER);
+        return values.get(id);
+    }
+
+    public String string(int id) {
+        requireKind(id, Kind.STRING);
+        return poolString((int) values.get(id));
+    }
+
+    public boolean bool(int id) {
+        requireKind(id, Kind.BOOLEAN);
+        return (flags.get(id) & TRUE) != 0;
+    }
+
+    public boolean isReturnTypeExplicit(int id) {
+        requireKind(id, Kind.FUNCTION);
+        return (flags.get(id) & EXPLICIT_RETURN_TYPE) != 0;
+    }
+
+    private String poolString(int index) {
+        String value = strings[index];
+        if (value == null) {
+            int start = stringOffsets.get(index);
+            int end = stringOffsets.get(index + 1);
+            Objects.checkFromToIndex(start, end, stringData.limit());
+            byte[] bytes = new byte[end - start];
+            stringData.get(start, bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            strings[index] = value;
+        }
+        return value;
+    }
+
+    private void requireKind(int id, Kind kind) {
+        if (kinds.get(id) != kind.ordinal()) {
+            throw new IllegalArgumentException("Node " + id + " is " + kind(id) + ", expected " + kind);
+        }
+    }
+
+    /**
+     * Строит дерево из объектов с областями видимости и таблицами символов, как при разборе
+     *
+     * @return Корневая область видимости программы
+     * @throws FailedCheckException если объявления конфликтуют в области видимости
+     */
+    public Scope inflate() throws FailedCheckException {
+        return new Inflater().program();
+    }
+
+    /**
+     * Раскладывает дерево из объектов по массивам в прямом порядке обхода
+     */
+    private static final class Packer {
+        private int size;
+        private byte[] kinds = new byte[64];
+        private byte[] flags = new byte[64];
+        private byte[] operators = new byte[64];
+        private int[] ends = new int[64];
+        private int[] lines = new int[64];
+        private int[] columns = new int[64];
+        private long[] values = new long[64];
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+        private SourceFile sourceFile;
+
+        private void pack(Node node) {
+            int id = add(node);
+            switch (node) {
+                case null -> {
+                }
+                case Scope scope -> packAll(scope.getChildren());
+                case FunctionDeclaration function -> {
+                    name(id, function.getName());
+                    if (function.isReturnTypeExplicit()) {
+                        flags[id] |= EXPLICIT_RETURN_TYPE;
+                    }
+                    pack(function.getReturnType());
+                    pack(function.getBody());
+                    packAll(function.getParameters());
+                }
+                case Parameter parameter -> {
+                    name(id, parameter.getName());
+                    pack(parameter.getType());
+                }
+                case VariableDeclaration variable -> {
+                    name(id, variable.getName());
+                    pack(variable.getType());
+                    pack(variable.getValue());
+                }
+                case ExpressionStatement statement -> pack(statement.getExpression());
+                case IfStatement ifStatement -> {
+                    pack(ifStatement.getCondition());
+                    pack(ifStatement.getBody());
+                    pack(ifStatement.getElseBody());
+                }
+                case WhileLoop loop -> {
+                    pack(loop.getCondition());
+                    pack(loop.getBody());
+                }
+                case ForLoop loop -> {
+                    pack(loop.getInitialization());
+                    pack(loop.getCondition());
+                    pack(loop.getStep());
+                    pack(loop.getBody());
+                }
+                case ReturnStatement statement -> pack(statement.getReturnable());
+                case BreakStatement ignored -> {
+                }
+                case AssignmentExpression assignment -> {
+                    operator(id, assignment.getOperator());
+                    pack(assignment.getLeft());
+                    pack(assignment.getRight());
+                }
+                case BinaryExpression binary -> {
+                    operator(id, binary.getOperator());
+                    pack(binary.getLeft());
+                    pack(binary.getRight());
+                }
+                case UnaryExpression unary -> {
+                    operator(id, unary.getOperator());
+                    pack(unary.getArgument());
+                }
+                case ParenthesizedExpression parenthesized -> pack(parenthesized.getInnerExpression());
+                case FunctionCall call -> {
+                    name(id, call.getName());
+                    packAll(call.getArguments());
+                }
+                case ArrayElement element -> {
+                    pack(element.getIdentifier());
+                    packAll(element.getDims());
+                }
+                case ArrayLiteral literal -> packAll(literal.getElements());
+                case VariableReference reference -> name(id, reference.getName());
+                case Identifier identifier -> name(id, identifier.getName());
+                case NumberLiteral number -> values[id] = number.getValue();
+                case StringLiteral string -> values[id] = intern(string.getValue());
+                case BooleanLiteral bool -> {
+                    if (bool.getValue()) {
+                        flags[id] |= TRUE;
+                    }
+                }
+                case PrimitiveType type -> name(id, type.getName());
+                case ArrayType type -> {
+                    pack(type.getElementType());
+                    pack(type.getSizeLiteral() != null ? type.getSizeLiteral() : new NumberLiteral(type.getSize()));
+                }
+                default -> throw new IllegalArgumentException("Cannot pack node " + node.getClass().getSimpleName());
+            }
+            ends[id] = size;
+        }
+
+        private void packAll(List<? extends Node> nodes) {
+            for (Node node : nodes) {
+                pack(node);
+            }
+        }
+
+        private int add(Node node) {
+            if (size == kinds.length) {
+                int capacity = size * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+                operators = Arrays.copyOf(operators, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+                columns = Arrays.copyOf(columns, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            int id = size++;
+            kinds[id] = (byte) kindOf(node).ordinal();
+            operators[id] = -1;
+            lines[id] = node != null ? node.getLine() : -1;
+            columns[id] = node != null ? node.getCharPosition() : -1;
+            SourceFile file = node != null ? node.getSourceFile() : null;
+            if (file != null) {
+                if (sourceFile == null) {
+                    sourceFile = file;
+                } else if (sourceFile != file) {
+                    throw new IllegalArgumentException("Nodes from different source files: " + sourceFile + " and " + file);
+                }
+                flags[id] |= HAS_SOURCE;
+            }
+            return id;
+        }
+
+        private static Kind kindOf(Node node) {
+            return switch (node) {
+                case null -> Kind.NONE;
+                case Scope ignored -> Kind.SCOPE;
+                case FunctionDeclaration ignored -> Kind.FUNCTION;
+                case Parameter ignored -> Kind.PARAMETER;
+                case VariableDeclaration ignored -> Kind.VARIABLE;
+                case ExpressionStatement ignored -> Kind.EXPRESSION_STATEMENT;
+                case IfStatement ignored -> Kind.IF;
+                case WhileLoop ignored -> Kind.WHILE;
+                case ForLoop ignored -> Kind.FOR;
+                case ReturnStatement ignored -> Kind.RETURN;
+                case BreakStatement ignored -> Kind.BREAK;
+                case AssignmentExpression ignored -> Kind.ASSIGNMENT;
+                case BinaryExpression ignored -> Kind.BINARY;
+                case UnaryExpression ignored -> Kind.UNARY;
+                case ParenthesizedExpression ignored -> Kind.PARENTHESIZED;
+                case FunctionCall ignored -> Kind.CALL;
+                case ArrayElement ignored -> Kind.ARRAY_ELEMENT;
+                case ArrayLiteral ignored -> Kind.ARRAY_LITERAL;
+                case VariableReference ignored -> Kind.VARIABLE_REFERENCE;
+                case Identifier ignored -> Kind.IDENTIFIER;
+                case NumberLiteral ignored -> Kind.NUMBER;
+                case StringLiteral ignored -> Kind.STRING;
+                case BooleanLiteral ignored -> Kind.BOOLEAN;
+                case PrimitiveType type when !type.isCustomType() -> Kind.PRIMITIVE_TYPE;
+                case ArrayType ignored -> Kind.ARRAY_TYPE;
+                default -> throw new IllegalArgumentException("Cannot pack node " + node.getClass().getSimpleName());
+            };
+        }
+
+        private void name(int id, String name) {
+            values[id] = intern(name);
+        }
+
+        private void operator(int id, String operator) {
+            Byte code = OPERATOR_CODES.get(operator);
+            if (code == null) {
+                throw new IllegalArgumentException("Unknown operator '" + operator + "'");
+            }
+            operators[id] = code;
+        }
+
+        private int intern(String value) {
+            return stringIndex.computeIfAbsent(value, key -> {
+                strings.add(key);
+                return strings.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * Строит узлы и области видимости в том же порядке и с теми же связями, что {@link ASTReflectionBuilder}
+     */
+    private final class Inflater {
+
+        Scope program() throws FailedCheckException {
+            requireKind(0, Kind.SCOPE);
+            List<Statement> statements = new ArrayList<>();
+            Scope rootScope = new Scope(statements, null);
+            for (int child = 1; child < ends.get(0); child = ends.get(child)) {
+                switch (kind(child)) {
+                    case VARIABLE -> {
+                        VariableDeclaration global = variable(child, rootScope);
+                        rootScope.addDeclaration(global);
+                        statements.add(global);
+                    }
+                    case FUNCTION -> statements.add(function(child, rootScope));
+                    default -> throw new IllegalStateException("Unexpected " + kind(child) + " at global scope");
+                }
+            }
+            rootScope.setChildren(new ArrayList<>(statements));
+            return rootScope;
+        }
+
+        private FunctionDeclaration function(int id, Scope parent) throws FailedCheckException {
+            int returnTypeId = id + 1;
+            int bodyId = ends.get(returnTypeId);
+            List<Parameter> parameters = new ArrayList<>();
+            for (int child = ends.get(bodyId); child < ends.get(id); child = ends.get(child)) {
+                parameters.add(source(new Parameter(name(child), type(child + 1, parent)), child));
+            }
+            Type returnType = type(returnTypeId, parent);
+
+            Scope body = new Scope(new ArrayList<>(), parent, null);
+            FunctionDeclaration function = new FunctionDeclaration(name(id), parameters, returnType, body, isReturnTypeExplicit(id));
+            body.setEnclosingFunctionContext(function);
+            function.setEnclosingScope(parent);
+            for (Parameter parameter : parameters) {
+                VariableDeclaration variable = new VariableDeclaration(parameter.getName(), parameter.getType(), null);
+                variable.setSourceInfo(parameter.getLine(), parameter.getCharPosition(), parameter.getSourceFile());
+                variable.setEnclosingScope(body);
+                body.addDeclaration(variable);
+            }
+            body.setChildren(scope(bodyId, body, function).getChildren());
+            return source(function, id);
+        }
+
+        private Scope scope(int id, Scope parent, FunctionDeclaration enclosingFunction) throws FailedCheckException {
+            requireKind(id, Kind.SCOPE);
+            Scope scope = new Scope(new ArrayList<>(), parent, enclosingFunction);
+            List<Node> children = new ArrayList<>();
+            for (int child = id + 1; child < ends.get(id); child = ends.get(child)) {
+                if (kind(child) == Kind.VARIABLE) {
+                    VariableDeclaration variable = variable(child, scope);
+                    scope.addDeclaration(variable);
+                    children.add(variable);
+                } else {
+                    children.add(statement(child, scope));
+                }
+            }
+            if (!children.isEmpty()) {
+                scope.setChildren(children);
+            }
+            return source(scope, id);
+        }
+
+        private Node statement(int id, Scope parent) throws FailedCheckException {
+            return switch (kind(id)) {
+                case FOR -> {
+                    int initialization = id + 1;
+                    int condition = ends.get(initialization);
+                    int step = ends.get(condition);
+                    Scope loopScope = new Scope(new ArrayList<>(), parent, parent.getEnclosingFunction());
+                    VariableDeclaration variable = kind(initialization) == Kind.NONE ? null : variable(initialization, parent);
+                    if (variable != null) {
+                        loopScope.addDeclaration(variable);
+                    }
+                    Expression conditionNode = expression(condition, loopScope);
+                    Expression stepNode = expression(step, loopScope);
+                    Scope body = scope(ends.get(step), loopScope, null);
+                    yield source(new ForLoop(variable, conditionNode, stepNode, body), id);
+                }
+                case WHILE -> {
+                    Expression condition = expression(id + 1, parent);
+                    Scope context = new Scope(new ArrayList<>(), parent, parent.getEnclosingFunction());
+                    yield source(new WhileLoop(condition, scope(ends.get(id + 1), context, null)), id);
+                }
+                case IF -> {
+                    int bodyId = ends.get(id + 1);
+                    int elseId = ends.get(bodyId);
+                    Expression condition = expression(id + 1, parent);
+                    Scope body = scope(bodyId, new Scope(new ArrayList<>(), parent, parent.getEnclosingFunction()), null);
+                    Scope elseBody = kind(elseId) == Kind.NONE ? null
+                            : scope(elseId, new Scope(new ArrayList<>(), parent, parent.getEnclosingFunction()), null);
+                    yield source(new IfStatement(condition, body, elseBody), id);
+                }
+                case RETURN -> source(new ReturnStatement(expression(id + 1, parent)), id);
+                case BREAK -> source(new BreakStatement(), id);
+                case EXPRESSION_STATEMENT -> source(new ExpressionStatement(expression(id + 1, parent)), id);
+                case VARIABLE -> variable(id, parent);
+                default -> throw new IllegalStateException("Unexpected " + kind(id) + " in statement position");
+            };
+        }
+
+        private VariableDeclaration variable(int id, Scope parent) throws FailedCheckException {
+            int typeId = id + 1;
+            Type type = type(typeId, parent);
+            Expression value = expression(ends.get(typeId), parent);
+            return source(new VariableDeclaration(name(id), type, value), id);
+        }
+
+        private Type type(int id, Scope scope) {
+            Type type = switch (kind(id)) {
+                case NONE -> null;
+                case PRIMITIVE_TYPE -> new PrimitiveType(name(id));
+                case ARRAY_TYPE -> {
+                    Type elementType = type(id + 1, scope);
+                    int sizeId = ends.get(id + 1);
+                    NumberLiteral size = source(new NumberLiteral(number(sizeId)), sizeId);
+                    size.setEnclosingScope(scope);
+                    yield new ArrayType(elementType, size);
+                }
+                default -> throw new IllegalStateException("Unexpected " + kind(id) + " in type position");
+            };
+            if (type != null) {
+                source(type, id);
+                type.setEnclosingScope(scope);
+            }
+            return type;
+        }
+
+        private Expression expression(int id, Scope scope) {
+            return switch (kind(id)) {
+                case NONE -> null;
+                case ASSIGNMENT -> {
+                    Expression left = expression(id + 1, scope);
+                    Expression right = expression(ends.get(id + 1), scope);
+                    yield scoped(source(new AssignmentExpression(left, operator(id), right), id), scope);
+                }
+                case BINARY -> {
+                    Expression left = expression(id + 1, scope);
+                    Expression right = expression(ends.get(id + 1), scope);
+                    yield scoped(source(new BinaryExpression(left, operator(id), right), id), scope);
+                }
+                case UNARY -> scoped(source(new UnaryExpression(operator(id), expression(id + 1, scope)), id), scope);
+                // Позицию выражение в скобках берёт у вложенного выражения
+                case PARENTHESIZED -> new ParenthesizedExpression(expression(id + 1, scope));
+                case CALL -> scoped(source(new FunctionCall(name(id), expressions(id + 1, ends.get(id), scope)), id), scope);
+                case ARRAY_ELEMENT -> {
+                    Expression identifier = expression(id + 1, scope);
+                    List<Expression> dims = expressions(ends.get(id + 1), ends.get(id), scope);
+                    yield scoped(source(new ArrayElement(identifier, dims), id), scope);
+                }
+                case ARRAY_LITERAL -> source(new ArrayLiteral(expressions(id + 1, ends.get(id), scope)), id);
+                case IDENTIFIER -> scoped(source(new Identifier(name(id)), id), scope);
+                case VARIABLE_REFERENCE -> source(new VariableReference(name(id)), id);
+                case NUMBER -> source(new NumberLiteral(number(id)), id);
+                case STRING -> source(new StringLiteral(string(id)), id);
+                case BOOLEAN -> source(new BooleanLiteral(bool(id)), id);
+                default -> throw new IllegalStateException("Unexpected " + kind(id) + " in expression position");
+            };
+        }
+
+        private List<Expression> expressions(int from, int to, Scope scope) {
+            List<Expression> expressions = new ArrayList<>();
+            for (int child = from; child < to; child = ends.get(child)) {
+                expressions.add(expression(child, scope));
+            }
+            return expressions;
+        }
+
+        private <N extends AbstractNode> N scoped(N node, Scope scope) {
+            node.setEnclosingScope(scope);
+            return node;
+        }
+
+        private <N extends Node> N source(N node, int id) {
+            boolean hasSource = (flags.get(id) & HAS_SOURCE) != 0;
+            if (lines.get(id) != -1 || hasSource) {
+                node.setSourceInfo(lines.get(id), columns.get(id), hasSource ? getSourceFile() : null);
+            }
+            return node;
+        }
+    }
+}
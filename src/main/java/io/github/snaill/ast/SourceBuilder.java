@@ -106,7 +106,7 @@ public class SourceBuilder {
             case Identifier id -> prefix + id.getName();
             case PrimitiveType primType -> prefix + primType.getName();
             case ArrayType arrType -> prefix + "[" + toSourceCodeRecursive(arrType.getElementType(), false, indentLevel, 0) +
-                    "; " + toSourceCodeRecursive(arrType.getSize(), false, indentLevel, 0) + "]";
+                    "; " + arrType.getSize() + "]";
             case BinaryExpression binExpr -> {
                 int currentPrecedence = getBinaryOperatorPrecedence(binExpr.getOperator());
                 String op = binExpr.getOperator();
@@ -276,14 +276,19 @@ public class SourceBuilder {
         return String.format("[line %d:%d - %d:%d] %s", startLine, startChar, stopLine, stopChar, text);
     }
 
+    /**
+     * Строка исходного кода с указателем под фрагментом. Строка извлекается по таблице
+     * начал строк файла, а текст строится лениво, при первом выводе.
+     *
+     * @param source Исходный файл; null даёт пустую строку
+     */
+    public static CharSequence toSourceLine(SourceFile source, int line, int charPosition, int length) {
+        if (source == null || line < 1 || line > source.getLineCount()) return "";
+        return new SourceSnippet(source, line, charPosition, length);
+    }
+
     public static String toSourceLine(String source, int line, int charPosition, int length) {
         if (source == null || line < 1) return "";
-        String[] lines = source.split("\\R"); // Use \R for any Unicode linebreak sequence
-        if (line > lines.length) return "";
-        String codeLine = lines[line - 1];
-        StringBuilder pointer = new StringBuilder();
-        for (int i = 0; i < charPosition; i++) pointer.append(codeLine.charAt(i) == '\t' ? '\t' : ' ');
-        pointer.append("^".repeat(Math.max(1, length)));
-        return codeLine + System.lineSeparator() + pointer;
+        return toSourceLine(new SourceFile("", source), line, charPosition, length).toString();
     }
 }
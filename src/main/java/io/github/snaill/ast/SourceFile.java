@@ -0,0 +1,94 @@
+package io.github.snaill.ast;
+
+import org.antlr.v4.runtime.CharStream;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Исходный файл, общий для всех узлов AST одной программы.
+ * <p>
+ * Хранит текст файла и таблицу начал строк. Узлы ссылаются на один экземпляр и хранят
+ * только свою строку и позицию в ней, поэтому размер AST не зависит от размера файла.
+ * Строки считаются по {@code '\n'}, как в лексере ANTLR; завершающий {@code '\r'} в текст
+ * строки не входит.
+ */
+public final class SourceFile {
+
+    private final String name;
+    private final String text;
+    /**
+     * Смещение начала каждой строки в символах {@link #text}
+     */
+    private final int[] lineStarts;
+
+    public SourceFile(String name, String text) {
+        this.name = Objects.requireNonNull(name);
+        this.text = Objects.requireNonNull(text);
+        this.lineStarts = lineStarts(text);
+    }
+
+    /**
+     * Исходный файл потока символов. Текст извлекается из потока один раз.
+     */
+    public static SourceFile of(CharStream stream) {
+        return new SourceFile(stream.getSourceName(), stream.toString());
+    }
+
+    private static int[] lineStarts(String text) {
+        int[] starts = new int[16];
+        int count = 1;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            starts[count++] = i + 1;
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getLineCount() {
+        return lineStarts.length;
+    }
+
+    /**
+     * Смещение начала строки в тексте
+     *
+     * @param line Номер строки, начиная с 1
+     */
+    public int getLineStart(int line) {
+        Objects.checkIndex(line - 1, lineStarts.length);
+        return lineStarts[line - 1];
+    }
+
+    /**
+     * Текст строки без перевода строки
+     *
+     * @param line Номер строки, начиная с 1
+     * @return Строка или null, если строки с таким номером нет
+     */
+    public String getLine(int line) {
+        if (line < 1 || line > lineStarts.length) {
+            return null;
+        }
+        int start = lineStarts[line - 1];
+        int end = line < lineStarts.length ? lineStarts[line] - 1 : text.length();
+        if (end > start && text.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return text.substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.snaill.ast;
+
+/**
+ * Строка исходного кода с указателем на фрагмент для диагностики.
+ * <p>
+ * Текст строится при первом обращении (обычно при выводе ошибки) и запоминается: создание
+ * диагностики, которую никто не напечатает, не стоит ничего, а построение занимает время,
+ * пропорциональное длине строки, а не файла.
+ */
+public final class SourceSnippet implements CharSequence {
+
+    private static final String NEW_LINE = System.lineSeparator();
+
+    private final SourceFile source;
+    private final int line;
+    private final int charPosition;
+    private final int length;
+    private String rendered;
+
+    SourceSnippet(SourceFile source, int line, int charPosition, int length) {
+        this.source = source;
+        this.line = line;
+        this.charPosition = charPosition;
+        this.length = length;
+    }
+
+    @Override
+    public String toString() {
+        if (rendered == null) {
+            rendered = render();
+        }
+        return rendered;
+    }
+
+    private String render() {
+        String codeLine = source.getLine(line);
+        if (codeLine == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(codeLine.length() * 2 + NEW_LINE.length() + length);
+        sb.append(codeLine).append(NEW_LINE);
+        for (int i = 0; i < charPosition; i++) {
+            sb.append(i < codeLine.length() && codeLine.charAt(i) == '\t' ? '\t' : ' ');
+        }
+        sb.append("^".repeat(Math.max(1, length)));
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof SourceSnippet other && toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    @Override
+    public int length() {
+        return toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+}
@@ -2,8 +2,95 @@ package io.github.snaill.ast;
 
 import java.util.List;
 
+/**
+ * Тип в AST.
+ * <p>
+ * Равные типы имеют один канонический экземпляр в {@link Types}, поэтому {@link #equals(Object)}
+ * сравнивает ссылки на канонические экземпляры, а {@link #hashCode()} и {@link #getTypeId()}
+ * вычисляются один раз.
+ */
 public abstract class Type extends AbstractNode {
+    private Type canonical;
+    private boolean shared;
+    private byte typeId;
+    private int hash;
+
     protected Type() {
         super(List.of());
     }
-}
\ No newline at end of file
+
+    /**
+     * Канонический экземпляр этого типа
+     */
+    public final Type canonical() {
+        Type result = canonical;
+        if (result == null) {
+            result = intern();
+            canonical = result;
+        }
+        return result;
+    }
+
+    /**
+     * Находит или создаёт канонический экземпляр в {@link Types}
+     */
+    protected abstract Type intern();
+
+    /**
+     * Хеш структуры типа, вычисляется один раз для канонического экземпляра
+     */
+    protected abstract int computeHash();
+
+    /**
+     * Идентификатор типа в байткоде ({@link io.github.snaill.bytecode.BytecodeConstants.TypeId})
+     * или {@link Types#UNKNOWN}
+     */
+    public final byte getTypeId() {
+        return canonical().typeId;
+    }
+
+    /**
+     * Является ли тип общим каноническим экземпляром из {@link Types}
+     */
+    public final boolean isCanonical() {
+        return shared;
+    }
+
+    final void makeCanonical(byte typeId) {
+        this.canonical = this;
+        this.shared = true;
+        this.typeId = typeId;
+        this.hash = computeHash();
+    }
+
+    @Override
+    public final boolean equals(Object obj) {
+        return this == obj || obj instanceof Type other && canonical() == other.canonical();
+    }
+
+    @Override
+    public final int hashCode() {
+        return canonical().hash;
+    }
+
+    @Override
+    protected int localHash() {
+        return hashCode();
+    }
+
+    @Override
+    public void setSourceInfo(int line, int charPosition, SourceFile sourceFile) {
+        if (shared) {
+            throw new IllegalStateException("Canonical type '" + this + "' is shared and has no source position");
+        }
+        super.setSourceInfo(line, charPosition, sourceFile);
+    }
+
+    @Override
+    public void setEnclosingScope(Scope enclosingScope) {
+        if (shared) {
+            throw new IllegalStateException("Canonical type '" + this + "' is shared and has no enclosing scope");
+        }
+        super.setEnclosingScope(enclosingScope);
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.snaill.ast;
+
+import io.github.snaill.exception.FailedCheckException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Вычисление типов выражений.
+ * <p>
+ * Один обход дерева после связывания имён ({@link NameResolver}) в обратном порядке: сначала
+ * типизируются подвыражения, затем содержащее их выражение, которое берёт типы детей уже готовыми,
+ * поэтому глубоко вложенные выражения не разворачиваются в рекурсию. Тип сохраняется в узле, и
+ * {@link Expression#getType(Scope)} в проверках и генерации байткода возвращает его без вычисления.
+ * Выражение типизируется в своей области видимости, а если она не задана - в ближайшей
+ * охватывающей области дерева. Ошибки типизации сохраняются вместе с типом и сообщаются при
+ * проверке ({@code Check}).
+ */
+public final class TypeAttribution {
+
+    /**
+     * Узел обхода: {@code expanded} - дети уже в стеке и будут типизированы раньше узла,
+     * {@code topLevel} - выражение не вложено в другое выражение
+     */
+    private record Pending(Node node, Scope scope, boolean topLevel, boolean expanded) {
+    }
+
+    private TypeAttribution() {
+    }
+
+    /**
+     * Вычисляет типы всех выражений в поддереве
+     *
+     * @return Количество выражений верхнего уровня, тип которых не удалось вычислить
+     */
+    public static int attribute(Node root) {
+        int failed = 0;
+        Deque<Pending> pending = new ArrayDeque<>();
+        pending.push(new Pending(root, root instanceof Scope scope ? scope : null, true, false));
+        while (!pending.isEmpty()) {
+            Pending next = pending.pop();
+            Node node = next.node();
+            Scope scope = node instanceof Scope nested ? nested : next.scope();
+            if (!next.expanded() && !node.getChildren().isEmpty()) {
+                pending.push(new Pending(node, scope, next.topLevel(), true));
+                boolean nested = node instanceof Expression;
+                for (Node child : node.getChildren()) {
+                    if (child != null) {
+                        pending.push(new Pending(child, scope, !nested || child instanceof Scope, false));
+                    }
+                }
+                continue;
+            }
+            if (node instanceof Expression expression) {
+                try {
+                    expression.getType(scope);
+                } catch (FailedCheckException e) {
+                    if (next.topLevel()) {
+                        failed++;
+                    }
+                }
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.snaill.ast;
+
+import io.github.snaill.bytecode.BytecodeConstants;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Таблица канонических типов.
+ * <p>
+ * Каждый примитивный тип и каждый тип массива существует в единственном экземпляре, поэтому
+ * сравнение типов сводится к сравнению ссылок на канонические экземпляры
+ * ({@link Type#canonical()}), а идентификатор типа для байткода вычисляется один раз при
+ * создании. Канонические экземпляры общие для всех программ и потоков: у них нет позиции в
+ * исходном коде, области видимости и дочерних узлов. Узлы типов из исходного кода остаются
+ * отдельными объектами и ссылаются на свой канонический тип.
+ * <p>
+ * Примитивных типов конечное число. Типы массивов хранятся по слабым ссылкам: запись живёт,
+ * пока на канонический тип ссылается хотя бы один узел, поэтому долгоживущий процесс (сервер
+ * компиляции, режим наблюдения) не накапливает типы всех когда-либо собранных программ.
+ * Тип, на который никто не ссылается, не с чем сравнивать, и его можно создать заново.
+ */
+public final class Types {
+
+    /**
+     * Идентификатор типа, не представимого в байткоде (например, {@code any})
+     */
+    public static final byte UNKNOWN = -1;
+
+    private static final ConcurrentHashMap<String, PrimitiveType> PRIMITIVES = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<ArrayKey, CanonicalArray> ARRAYS = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<ArrayType> COLLECTED_ARRAYS = new ReferenceQueue<>();
+
+    public static final PrimitiveType VOID = primitive("void");
+    public static final PrimitiveType I32 = primitive("i32");
+    public static final PrimitiveType USIZE = primitive("usize");
+    public static final PrimitiveType STRING = primitive("string");
+    public static final PrimitiveType BOOL = primitive("bool");
+    /**
+     * Тип параметра встроенных функций, принимающих значение любого типа
+     */
+    public static final PrimitiveType ANY = primitive("any");
+
+    private record ArrayKey(Type elementType, long size) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ArrayKey other && elementType == other.elementType && size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(elementType) + Long.hashCode(size);
+        }
+    }
+
+    /**
+     * Слабая ссылка на канонический тип массива вместе с ключом своей записи
+     */
+    private static final class CanonicalArray extends WeakReference<ArrayType> {
+        private final ArrayKey key;
+
+        CanonicalArray(ArrayKey key, ArrayType type) {
+            super(type, COLLECTED_ARRAYS);
+            this.key = key;
+        }
+    }
+
+    private Types() {
+    }
+
+    /**
+     * Канонический примитивный тип с заданным именем
+     */
+    public static PrimitiveType primitive(String name) {
+        Objects.requireNonNull(name);
+        PrimitiveType type = PRIMITIVES.get(name);
+        return type != null ? type : PRIMITIVES.computeIfAbsent(name, n -> shared(new PrimitiveType(n), primitiveTypeId(n)));
+    }
+
+    /**
+     * Канонический тип массива
+     *
+     * @param elementType Тип элементов, не обязательно канонический
+     * @param size        Размер массива
+     */
+    public static ArrayType array(Type elementType, long size) {
+        expungeCollectedArrays();
+        Type element = elementType.canonical();
+        ArrayKey key = new ArrayKey(element, size);
+        while (true) {
+            CanonicalArray entry = ARRAYS.get(key);
+            ArrayType type = entry != null ? entry.get() : null;
+            if (type != null) {
+                return type;
+            }
+            type = shared(new ArrayType(element, size), BytecodeConstants.TypeId.ARRAY);
+            CanonicalArray created = new CanonicalArray(key, type);
+            if (entry == null ? ARRAYS.putIfAbsent(key, created) == null : ARRAYS.replace(key, entry, created)) {
+                return type;
+            }
+            // Другой поток успел создать тип первым
+        }
+    }
+
+    private static void expungeCollectedArrays() {
+        for (Object collected; (collected = COLLECTED_ARRAYS.poll()) != null; ) {
+            CanonicalArray entry = (CanonicalArray) collected;
+            ARRAYS.remove(entry.key, entry);
+        }
+    }
+
+    private static <T extends Type> T shared(T type, byte typeId) {
+        type.makeCanonical(typeId);
+        return type;
+    }
+
+    private static byte primitiveTypeId(String name) {
+        return switch (name) {
+            case "void" -> BytecodeConstants.TypeId.VOID;
+            case "i32" -> BytecodeConstants.TypeId.I32;
+            case "usize" -> BytecodeConstants.TypeId.USIZE;
+            case "string" -> BytecodeConstants.TypeId.STRING;
+            // В байткоде нет отдельного булевого типа
+            case "bool" -> BytecodeConstants.TypeId.I32;
+            default -> UNKNOWN;
+        };
+    }
+}
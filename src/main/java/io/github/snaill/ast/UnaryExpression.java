@@ -36,29 +36,18 @@ public class UnaryExpression extends Expression {
     }
 
     @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        emitBytecode(out, context, null);
-    }
-
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        getArgument().emitBytecode(out, context, currentFunction);
-        if (getOperator().equals("-")) {
-            out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.SUB);
-        } else if (getOperator().equals("!")) {
-            out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.NOT);
-        } else {
-            throw new io.github.snaill.exception.FailedCheckException("Unsupported unary operator: " + getOperator());
-        }
+    protected int localHash() {
+        return operator.hashCode();
     }
 
     @Override
-    public Type getType(Scope scope) throws io.github.snaill.exception.FailedCheckException {
+    protected Type computeType(Scope scope) throws io.github.snaill.exception.FailedCheckException {
         Type argType = getArgument().getType(scope);
         return switch (operator) {
             case "!" -> {
-                if (!(argType instanceof PrimitiveType pt) || !pt.getName().equals("bool")) {
-                    String before = getSource() != null ?
-                        io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), operator.length()) :
+                if (!Types.BOOL.equals(argType)) {
+                    CharSequence before = getSourceFile() != null ?
+                        io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), operator.length()) :
                         io.github.snaill.ast.SourceBuilder.toSourceCode(this);
                     throw new io.github.snaill.exception.FailedCheckException(
                         new io.github.snaill.result.CompilationError(
@@ -66,15 +55,15 @@ public class UnaryExpression extends Expression {
                             before,
                             "Operator '!' can only be applied to bool type, got " + argType,
                             ""
-                        ).toString()
+                        )
                     );
                 }
-                yield new PrimitiveType("bool");
+                yield Types.BOOL;
             }
             case "-" -> {
                 if (!(argType instanceof PrimitiveType pt) || (!pt.getName().equals("i32") && !pt.getName().equals("usize"))) {
-                    String before = getSource() != null ?
-                        io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), operator.length()) :
+                    CharSequence before = getSourceFile() != null ?
+                        io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), operator.length()) :
                         io.github.snaill.ast.SourceBuilder.toSourceCode(this);
                     throw new io.github.snaill.exception.FailedCheckException(
                         new io.github.snaill.result.CompilationError(
@@ -82,10 +71,10 @@ public class UnaryExpression extends Expression {
                             before,
                             "Operator '-' can only be applied to i32 or usize type, got " + argType,
                             ""
-                        ).toString()
+                        )
                     );
                 }
-                yield new PrimitiveType("i32");
+                yield Types.I32;
             }
             default -> throw new io.github.snaill.exception.FailedCheckException(
                 new io.github.snaill.result.CompilationError(
@@ -93,7 +82,7 @@ public class UnaryExpression extends Expression {
                     io.github.snaill.ast.SourceBuilder.toSourceCode(this),
                     "Unknown unary operator: " + operator,
                     ""
-                ).toString()
+                )
             );
         };
     }
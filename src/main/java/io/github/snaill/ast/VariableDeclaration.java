@@ -72,13 +72,13 @@ public class VariableDeclaration extends AbstractNode implements Statement {
         Expression value = getValue();
         if (value != null) {
             Type actual = value.getType(scope);
-            if (declared instanceof PrimitiveType pt && pt.getName().equals("usize") && value instanceof NumberLiteral nl && nl.isNonNegative()) {
+            if (Types.USIZE.equals(declared) && value instanceof NumberLiteral nl && nl.isNonNegative()) {
                 super.check(scope);
                 return;
             }
             if (!declared.equals(actual)) {
-                String before = getSource() != null ?
-                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), name.length()) :
+                CharSequence before = getSourceFile() != null ?
+                    io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), name.length()) :
                     io.github.snaill.ast.SourceBuilder.toSourceCode(this);
                 throw new FailedCheckException(
                     new io.github.snaill.result.CompilationError(
@@ -86,64 +86,13 @@ public class VariableDeclaration extends AbstractNode implements Statement {
                         before,
                         "Type mismatch: cannot assign " + actual + " to " + declared,
                         ""
-                    ).toString()
+                    )
                 );
             }
         }
         super.check(scope);
     }
 
-    @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        emitBytecode(out, context, null);
-    }
-
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        if (getValue() != null || (getValue() == null && getType() instanceof ArrayType)) {
-            if (getValue() != null) {
-                getValue().emitBytecode(out, context, currentFunction);
-            } else {
-                // Автоматическая инициализация массива нулями
-                ArrayType at = (ArrayType) getType();
-                int arrSize = (int) at.getSize().getValue();
-                byte elemTypeId = getElemTypeId(at);
-
-                out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.NEW_ARRAY);
-                io.github.snaill.bytecode.BytecodeUtils.writeI32(out, arrSize);
-                out.write(elemTypeId);
-            }
-            if (currentFunction != null) {
-                int localIndex = context.getLocalVarIndex(currentFunction, getName());
-                if (localIndex == -1) {
-                    throw new io.github.snaill.exception.FailedCheckException("Local variable not found: " + getName());
-                }
-                out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.STORE_LOCAL);
-                io.github.snaill.bytecode.BytecodeUtils.writeU16(out, localIndex);
-            } else {
-                int globalIndex = context.getGlobalVarIndex(getName());
-                if (globalIndex == -1) {
-                    // This should not happen if initializeContext in BytecodeEmitter works correctly.
-                    throw new FailedCheckException("Global variable '" + getName() + "' was not registered before bytecode emission.");
-                }
-                out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.STORE_GLOBAL);
-                io.github.snaill.bytecode.BytecodeUtils.writeU16(out, globalIndex);
-            }
-        }
-    }
-
-    private static byte getElemTypeId(ArrayType at) {
-        Type elemType = at.getElementType();
-        byte elemTypeId;
-        String tn = elemType.toString();
-        elemTypeId = switch (tn) {
-            case "i32" -> io.github.snaill.bytecode.BytecodeConstants.TypeId.I32;
-            case "usize" -> io.github.snaill.bytecode.BytecodeConstants.TypeId.USIZE;
-            case "string" -> io.github.snaill.bytecode.BytecodeConstants.TypeId.STRING;
-            case null, default -> io.github.snaill.bytecode.BytecodeConstants.TypeId.I32;
-        };
-        return elemTypeId;
-    }
-
     @Override
     public String toString() {
         return "let " + name + ": " + getType() + (getValue() != null ? (" = " + getValue()) : "") + ";";
@@ -24,39 +24,6 @@ public class VariableReference extends Expression {
         return visitor.visit(this);
     }
 
-    @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        emitBytecode(out, context, null);
-    }
-
-    @Override
-    public void emitBytecode(java.io.ByteArrayOutputStream out, io.github.snaill.bytecode.BytecodeContext context, FunctionDeclaration currentFunction) throws java.io.IOException, io.github.snaill.exception.FailedCheckException {
-        if (currentFunction != null) {
-            int localIndex = context.getLocalVarIndex(currentFunction, getName());
-            if (localIndex != -1) {
-                out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.PUSH_LOCAL);
-                io.github.snaill.bytecode.BytecodeUtils.writeU16(out, localIndex);
-                return;
-            }
-        }
-        int globalIndex = context.getGlobalVarIndex(getName());
-        if (globalIndex != -1) {
-            out.write(io.github.snaill.bytecode.BytecodeConstants.Opcode.PUSH_GLOBAL);
-            io.github.snaill.bytecode.BytecodeUtils.writeU16(out, globalIndex);
-        } else {
-            String before = getSource() != null ?
-                io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), getName().length()) :
-                io.github.snaill.ast.SourceBuilder.toSourceCode(this);
-            io.github.snaill.result.CompilationError err = new io.github.snaill.result.CompilationError(
-                    io.github.snaill.result.ErrorType.UNKNOWN_VARIABLE,
-                    before,
-                    "Variable not found: " + getName(),
-                    ""
-                );
-            throw new io.github.snaill.exception.FailedCheckException(java.util.List.of(err));
-        }
-    }
-
     @Override
     public void checkUnusedVariables(Set<VariableDeclaration> unused) {
         Scope enclosingScope = getEnclosingScope();
@@ -78,11 +45,11 @@ public class VariableReference extends Expression {
     }
 
     @Override
-    public Type getType(Scope scope) throws io.github.snaill.exception.FailedCheckException {
+    protected Type computeType(Scope scope) throws io.github.snaill.exception.FailedCheckException {
         VariableDeclaration decl = scope.resolveVariable(name);
         if (decl == null) {
-            String before = getSource() != null ?
-                io.github.snaill.ast.SourceBuilder.toSourceLine(getSource(), getLine(), getCharPosition(), name.length()) :
+            CharSequence before = getSourceFile() != null ?
+                io.github.snaill.ast.SourceBuilder.toSourceLine(getSourceFile(), getLine(), getCharPosition(), name.length()) :
                 io.github.snaill.ast.SourceBuilder.toSourceCode(this);
             io.github.snaill.result.CompilationError err = new io.github.snaill.result.CompilationError(
                     io.github.snaill.result.ErrorType.UNKNOWN_VARIABLE,
@@ -2,23 +2,46 @@ package io.github.snaill.bytecode;
 
 import io.github.snaill.ast.*;
 import io.github.snaill.exception.FailedCheckException;
+import io.github.snaill.jfr.CompilerEvents;
+import io.github.snaill.jfr.FunctionEmitEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
  * Фасад для генерации байткода из AST.
- * Делегирует генерацию байткода самим узлам AST через emitBytecode.
+ * Байткод функций и глобального кода генерирует {@link BytecodeGenerator}.
  */
 public class BytecodeEmitter {
     private static final Logger logger = LoggerFactory.getLogger(BytecodeEmitter.class);
     private final Scope program;
     private final BytecodeContext context;
     private final Map<String, FunctionSignature> functionSignatures;
+    /**
+     * Кэш байткода функций между сборками (null - кэш не используется)
+     */
+    private final FunctionCodeCache functionCache;
+    /**
+     * Имя исходного файла для событий JFR (может быть null)
+     */
+    private String sourceName;
+    /**
+     * Поток, в который командная строка выводит предупреждения генерации (null - предупреждения журналируются)
+     */
+    private PrintStream console;
+    /**
+     * Размеры функций, записанных последним вызовом {@link #emit()}
+     */
+    private final List<FunctionStats> functionStats = new ArrayList<>();
+    /**
+     * Размер глобального байткода (инициализация глобальных переменных) в байтах
+     */
+    private int globalInitializerSize;
 
     /**
      * Исключение, выбрасываемое при ошибках генерации байткода
@@ -37,7 +60,17 @@ public class BytecodeEmitter {
      * Конструктор без параметров для совместимости с новым интерфейсом Trail
      */
     public BytecodeEmitter() {
+        this((FunctionCodeCache) null);
+    }
+
+    /**
+     * Конструктор без программы, переиспользующий байткод функций из кэша в {@link #emitBytecode}
+     *
+     * @param functionCache Кэш байткода функций или null
+     */
+    public BytecodeEmitter(FunctionCodeCache functionCache) {
         this.program = null;
+        this.functionCache = functionCache;
         this.context = new BytecodeContext();
         this.functionSignatures = new HashMap<>();
         registerBuiltInFunctions();
@@ -49,7 +82,18 @@ public class BytecodeEmitter {
      * @param program Глобальная область видимости программы
      */
     public BytecodeEmitter(Scope program) {
+        this(program, null);
+    }
+
+    /**
+     * Конструктор с параметром Scope и кэшем байткода функций
+     *
+     * @param program       Глобальная область видимости программы
+     * @param functionCache Кэш байткода функций или null
+     */
+    public BytecodeEmitter(Scope program, FunctionCodeCache functionCache) {
         this.program = program;
+        this.functionCache = functionCache;
         this.context = new BytecodeContext();
         // Сохраняем глобальные выражения в контексте
         context.setGlobalStatements(program.getStatements());
@@ -57,6 +101,21 @@ public class BytecodeEmitter {
         registerBuiltInFunctions();
     }
 
+    /**
+     * Задаёт имя исходного файла, которое попадает в события JFR
+     */
+    public void setSourceName(String sourceName) {
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * Задаёт поток для предупреждений генерации, которые видит пользователь командной строки.
+     * Без него предупреждения только журналируются, как при компиляции в памяти.
+     */
+    public void setConsole(PrintStream console) {
+        this.console = console;
+    }
+
     /**
      * Генерирует байткод для всей программы в соответствии со спецификацией.
      * Порядок секций байткода:
@@ -108,13 +167,14 @@ public class BytecodeEmitter {
     public void emitBytecode(io.github.snaill.ast.AST ast, String outputPath) throws BytecodeEmitterException {
         try {
             // Создаем новый экземпляр BytecodeEmitter с корневым скоупом из AST
-            BytecodeEmitter emitter = new BytecodeEmitter(ast.root());
+            BytecodeEmitter emitter = new BytecodeEmitter(ast.root(), functionCache);
+            emitter.setSourceName(sourceName);
 
             // Генерируем байткод
             byte[] bytecode = emitter.emit();
 
             // Записываем байткод в файл
-            java.nio.file.Files.write(java.nio.file.Paths.get(outputPath), bytecode);
+            BytecodeUtils.writeFileAtomically(java.nio.file.Paths.get(outputPath), bytecode);
 
             logger.info("Байткод успешно сохранен в: {} ({} байт)", outputPath, bytecode.length);
         } catch (IOException e) {
@@ -292,6 +352,7 @@ public class BytecodeEmitter {
      */
     private void writeGlobalBytecode(ByteArrayOutputStream out) throws IOException {
         ByteArrayOutputStream globalOut = new ByteArrayOutputStream();
+        BytecodeGenerator generator = new BytecodeGenerator(context);
 
         // Проверяем, что программа не null
         if (program == null || program.getStatements() == null) {
@@ -304,35 +365,35 @@ public class BytecodeEmitter {
         for (Statement stmt : program.getStatements()) {
             if (stmt instanceof VariableDeclaration varDecl && (varDecl.getValue() != null || varDecl.getType() instanceof ArrayType)) {
                 try {
-                    varDecl.emitBytecode(globalOut, context);
+                    generator.emit(varDecl);
                 } catch (Exception e) {
-                    System.err.println("Ошибка при генерации байткода для глобальной переменной: " + varDecl.getName());
-                    e.printStackTrace();
+                    report("Ошибка при генерации байткода для глобальной переменной: " + varDecl.getName(), e);
                 }
             } else if (stmt instanceof ExpressionStatement exprStmt) {
                 try {
-                    exprStmt.emitBytecode(globalOut, context);
+                    generator.emit(exprStmt);
                 } catch (Exception e) {
-                    System.err.println("Ошибка при генерации байткода для глобального выражения");
-                    e.printStackTrace();
+                    report("Ошибка при генерации байткода для глобального выражения", e);
                 }
             }
         }
 
+        globalOut.write(generator.toByteArray());
+
         // Добавляем вызов функции main в конец глобального кода
         int mainFuncIdx = context.getFunctionIndex("main");
         if (mainFuncIdx >= 0) {
             globalOut.write(BytecodeConstants.Opcode.CALL);
             BytecodeUtils.writeU16(globalOut, mainFuncIdx);
         } else {
-            System.err.println("Предупреждение: функция main не найдена, вызов не будет добавлен в глобальный код");
+            report("Предупреждение: функция main не найдена, вызов не будет добавлен в глобальный код", null);
         }
 
         byte[] code = globalOut.toByteArray();
 
         // Проверка размера глобального байткода
         if (code.length > 1000000) { // Ограничиваем размер глобального байткода до 1MB
-            System.err.println("Предупреждение: очень большой размер глобального байткода: " + code.length + " байт");
+            report("Предупреждение: очень большой размер глобального байткода: " + code.length + " байт", null);
         }
 
         // Дополнительная защита от переполнения
@@ -342,6 +403,7 @@ public class BytecodeEmitter {
 
         // Записываем длину глобального кода как целое число (4 байта)
         int actualLength = code.length;
+        globalInitializerSize = actualLength;
 
         // Отладочная информация о длине глобального кода
 
@@ -401,15 +463,31 @@ public class BytecodeEmitter {
                 // Для массивов дополнительно записываем тип элементов и размер
                 if (typeId == BytecodeConstants.TypeId.ARRAY && type instanceof ArrayType arrayType) {
                     out.write(getTypeId(arrayType.getElementType()));
-                    long size = arrayType.getSize().getValue();
+                    long size = arrayType.getSize();
                     BytecodeUtils.writeI32(out, (int) size);
                 }
             } else {
                 // Если по каким-то причинам переменная не найдена, используем тип по умолчанию
                 byte typeId = BytecodeConstants.TypeId.I32;
                 out.write(typeId);
-                System.err.println("Warning: Тип глобальной переменной '" + name + "' неизвестен, используется i32");
+                report("Warning: Тип глобальной переменной '" + name + "' неизвестен, используется i32", null);
+            }
+        }
+    }
+
+    /**
+     * Выводит предупреждение или ошибку генерации в {@link #console} или в журнал
+     */
+    private void report(String message, Throwable error) {
+        if (console != null) {
+            console.println(message);
+            if (error != null) {
+                error.printStackTrace(console);
             }
+        } else if (error != null) {
+            logger.error(message, error);
+        } else {
+            logger.warn(message);
         }
     }
 
@@ -441,6 +519,10 @@ public class BytecodeEmitter {
         BytecodeUtils.writeU16(out, functions.size());
 
         for (FunctionDeclaration func : functions) {
+            FunctionEmitEvent event = CompilerEvents.isRecording() ? new FunctionEmitEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
             // Записываем имя функции
             byte[] nameBytes = func.getName().getBytes(StandardCharsets.UTF_8);
             out.write((byte) nameBytes.length);
@@ -475,15 +557,38 @@ public class BytecodeEmitter {
             BytecodeUtils.writeU16(out, localVarIndices.size());
 
             // Теперь, когда индексы переменных зарегистрированы, генерируем байткод функции
-            ByteArrayOutputStream funcOut = new ByteArrayOutputStream();
-
-            // Используем метод emitBytecode функции для генерации ее байткода
-            // Это обеспечит правильную генерацию кода в соответствии с логикой самой функции
-            func.emitBytecode(funcOut, context, func);
-
-            byte[] code = funcOut.toByteArray();
+            // (или берём его из кэша, если функция не менялась)
+            byte[] code = null;
+            String cacheKey = null;
+            if (functionCache != null) {
+                cacheKey = FunctionCodeCache.key(func, context);
+                code = functionCache.lookup(cacheKey, context);
+            }
+            boolean reused = code != null;
+            if (code == null) {
+                BytecodeGenerator generator = new BytecodeGenerator(context, functionCache != null);
+                generator.emit(func);
+                code = generator.toByteArray();
+                if (functionCache != null) {
+                    functionCache.store(cacheKey, code, generator.relocations());
+                }
+            }
             BytecodeUtils.writeI32(out, code.length);
             out.write(code);
+            functionStats.add(new FunctionStats(func.getName(), localVarIndices.size(), code.length));
+
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.file = sourceName;
+                    event.function = func.getName();
+                    event.nodeCount = CompilerEvents.countNodes(func);
+                    event.localCount = localVarIndices.size();
+                    event.bytecodeSize = code.length;
+                    event.reused = reused;
+                    event.commit();
+                }
+            }
         }
     }
 
@@ -524,37 +629,48 @@ public class BytecodeEmitter {
         if (type == null) {
             return BytecodeConstants.TypeId.VOID;
         }
-
-        // Используем toString() вместо getTypeName()
-        String typeName = type.toString();
-        if ("i32".equals(typeName)) {
-            return BytecodeConstants.TypeId.I32;
-        } else if ("usize".equals(typeName)) {
-            return BytecodeConstants.TypeId.USIZE;
-        } else if ("string".equals(typeName)) {
-            return BytecodeConstants.TypeId.STRING;
-        } else if ("bool".equals(typeName)) {
-            // Для булевого типа используем I32, так как BOOL не определен
-            return BytecodeConstants.TypeId.I32;
-        } else if ("void".equals(typeName)) {
-            return BytecodeConstants.TypeId.VOID;
-        } else if (type instanceof ArrayType) {
-            return BytecodeConstants.TypeId.ARRAY;
+        byte typeId = type.getTypeId();
+        if (typeId == Types.UNKNOWN) {
+            throw new IllegalArgumentException("Unknown type: " + type);
         }
-
-        throw new IllegalArgumentException("Unknown type: " + typeName);
+        return typeId;
     }
 
     private void registerBuiltInFunctions() {
         List<Parameter> params = new ArrayList<>();
-        params.add(new Parameter("arg", new PrimitiveType("any")));
-        registerBuiltInFunction(new FunctionSignature("println", params, new PrimitiveType("void")));
+        params.add(new Parameter("arg", Types.ANY));
+        registerBuiltInFunction(new FunctionSignature("println", params, Types.VOID));
     }
 
     private void registerBuiltInFunction(FunctionSignature signature) {
         functionSignatures.put("println", signature);
     }
 
+    /**
+     * Контекст генерации: пул констант, глобальные переменные и таблица функций
+     */
+    public BytecodeContext getContext() {
+        return context;
+    }
+
+    public List<FunctionStats> getFunctionStats() {
+        return Collections.unmodifiableList(functionStats);
+    }
+
+    public int getGlobalInitializerSize() {
+        return globalInitializerSize;
+    }
+
+    /**
+     * Размер сгенерированной функции
+     *
+     * @param name         имя функции
+     * @param localCount   число локальных слотов (включая параметры)
+     * @param bytecodeSize размер байткода функции в байтах
+     */
+    public record FunctionStats(String name, int localCount, int bytecodeSize) {
+    }
+
     // Временное определение класса FunctionSignature, если его нет в проекте
     public record FunctionSignature(String name, List<Parameter> parameters, Type returnType) {
     }
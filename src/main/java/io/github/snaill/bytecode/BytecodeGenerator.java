@@ -0,0 +1,607 @@
+package io.github.snaill.bytecode;
+
+import io.github.snaill.ast.*;
+import io.github.snaill.exception.FailedCheckException;
+import io.github.snaill.result.CompilationError;
+import io.github.snaill.result.ErrorType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Генерация байткода обходом AST посетителем.
+ * <p>
+ * Каждый вид узла обрабатывается своим методом {@code visit}, поэтому диспетчеризация - один
+ * виртуальный вызов {@link Node#accept} на узел, без рефлексии и без перегрузок в классах узлов.
+ * Байткод пишется в собственный растущий буфер; смещения переходов дописываются на месте,
+ * так что время генерации линейно по размеру программы.
+ * <p>
+ * Генератор накапливает байткод всех переданных в {@link #emit(Node)} узлов. Внутри функции
+ * переменные разрешаются как локальные, вне функции - как глобальные. Экземпляр не потокобезопасен.
+ * <pre>{@code
+ * BytecodeGenerator generator = new BytecodeGenerator(context);
+ * generator.emit(function);
+ * byte[] code = generator.toByteArray();
+ * }</pre>
+ */
+public final class BytecodeGenerator implements ASTVisitor<Void> {
+
+    private final BytecodeContext context;
+    private byte[] code = new byte[256];
+    private int size;
+    /**
+     * Функция, байткод которой генерируется (null для глобального кода)
+     */
+    private FunctionDeclaration currentFunction;
+    /**
+     * Операнды, ссылающиеся на константы, глобальные переменные и функции контекста
+     * (null, если не записываются)
+     */
+    private final List<FunctionCodeCache.Relocation> relocations;
+
+    /**
+     * Ошибка генерации: переносит {@link FailedCheckException} через методы посетителя до {@link #emit(Node)}.
+     * Служит только для передачи управления, поэтому стек вызовов не заполняется.
+     */
+    private static final class GenerationFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        GenerationFailure(FailedCheckException cause) {
+            super(null, cause, false, false);
+        }
+    }
+
+    public BytecodeGenerator(BytecodeContext context) {
+        this(context, false);
+    }
+
+    /**
+     * @param recordRelocations записывать операнды-ссылки на символы контекста для {@link FunctionCodeCache}
+     */
+    BytecodeGenerator(BytecodeContext context, boolean recordRelocations) {
+        this.context = context;
+        this.relocations = recordRelocations ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Дописывает байткод узла: функции, оператора или выражения
+     *
+     * @throws FailedCheckException если переменная, функция или оператор не найдены
+     */
+    public void emit(Node node) throws FailedCheckException {
+        try {
+            node.accept(this);
+        } catch (GenerationFailure e) {
+            throw (FailedCheckException) e.getCause();
+        }
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(code, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Записанные релокации в порядке операндов
+     */
+    List<FunctionCodeCache.Relocation> relocations() {
+        return relocations != null ? relocations : List.of();
+    }
+
+    @Override
+    public Void visit(Scope scopeNode) {
+        for (Node statement : scopeNode.getChildren()) {
+            statement.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(FunctionDeclaration funcDeclNode) {
+        FunctionDeclaration enclosing = currentFunction;
+        currentFunction = funcDeclNode;
+        try {
+            context.addFunction(funcDeclNode);
+            // Аргументы лежат на стеке слева направо, последний - на вершине:
+            // сохраняем их в локальные слоты 0..N-1 в обратном порядке
+            for (int i = funcDeclNode.getParameters().size() - 1; i >= 0; i--) {
+                u8(BytecodeConstants.Opcode.STORE_LOCAL);
+                u16(i);
+            }
+            funcDeclNode.getBody().accept(this);
+            if (!hasReturnStatement(funcDeclNode.getBody())) {
+                u8(BytecodeConstants.Opcode.RET);
+            }
+        } finally {
+            currentFunction = enclosing;
+        }
+        return null;
+    }
+
+    /**
+     * Есть ли return на любом пути, который не требует анализа потока управления
+     */
+    private static boolean hasReturnStatement(Scope scope) {
+        for (Node node : scope.getChildren()) {
+            if (node instanceof ReturnStatement) {
+                return true;
+            } else if (node instanceof Scope nested) {
+                if (hasReturnStatement(nested)) {
+                    return true;
+                }
+            } else if (node instanceof IfStatement ifStmt) {
+                if (ifStmt.getBody() != null && hasReturnStatement(ifStmt.getBody())
+                        && ifStmt.isHasElse() && ifStmt.getElseBody() != null && hasReturnStatement(ifStmt.getElseBody())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Void visit(VariableDeclaration varDeclNode) {
+        Expression value = varDeclNode.getValue();
+        if (value != null) {
+            value.accept(this);
+        } else if (varDeclNode.getType() instanceof ArrayType arrayType) {
+            // Массив без инициализатора заполняется нулями
+            u8(BytecodeConstants.Opcode.NEW_ARRAY);
+            i32((int) arrayType.getSize());
+            u8(elementTypeId(arrayType));
+        } else {
+            return null;
+        }
+        if (currentFunction != null) {
+            int localIndex = context.getLocalVarIndex(currentFunction, varDeclNode.getName());
+            if (localIndex == -1) {
+                throw fail(new FailedCheckException("Local variable not found: " + varDeclNode.getName()));
+            }
+            u8(BytecodeConstants.Opcode.STORE_LOCAL);
+            u16(localIndex);
+        } else {
+            int globalIndex = context.getGlobalVarIndex(varDeclNode.getName());
+            if (globalIndex == -1) {
+                throw fail(new FailedCheckException("Global variable '" + varDeclNode.getName() + "' was not registered before bytecode emission."));
+            }
+            u8(BytecodeConstants.Opcode.STORE_GLOBAL);
+            global(varDeclNode.getName(), globalIndex);
+        }
+        return null;
+    }
+
+    /**
+     * Тип элементов массива для NEW_ARRAY: i32 для всего, кроме usize и string
+     */
+    private static byte elementTypeId(ArrayType arrayType) {
+        byte typeId = arrayType.getElementType().getTypeId();
+        return typeId == BytecodeConstants.TypeId.USIZE || typeId == BytecodeConstants.TypeId.STRING
+                ? typeId : BytecodeConstants.TypeId.I32;
+    }
+
+    @Override
+    public Void visit(Parameter paramNode) {
+        throw new UnsupportedOperationException("Parameters are emitted by their function");
+    }
+
+    @Override
+    public Void visit(IfStatement ifStmtNode) {
+        ifStmtNode.getCondition().accept(this);
+        int jumpIfFalse = jump(BytecodeConstants.Opcode.JMP_IF_FALSE);
+        ifStmtNode.getBody().accept(this);
+        if (ifStmtNode.getElseBody() != null) {
+            int jumpOverElse = jump(BytecodeConstants.Opcode.JMP);
+            patchJump(jumpIfFalse);
+            ifStmtNode.getElseBody().accept(this);
+            patchJump(jumpOverElse);
+        } else {
+            patchJump(jumpIfFalse);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(WhileLoop whileLoopNode) {
+        int start = size;
+        whileLoopNode.getCondition().accept(this);
+        int exit = jump(BytecodeConstants.Opcode.JMP_IF_FALSE);
+        whileLoopNode.getBody().accept(this);
+        jumpBack(start);
+        patchJump(exit);
+        return null;
+    }
+
+    @Override
+    public Void visit(ForLoop forLoopNode) {
+        Statement initialization = forLoopNode.getInitialization();
+        if (initialization instanceof VariableDeclaration || initialization instanceof ExpressionStatement) {
+            initialization.accept(this);
+        }
+        int conditionStart = size;
+        forLoopNode.getCondition().accept(this);
+        int exit = jump(BytecodeConstants.Opcode.JMP_IF_FALSE);
+        forLoopNode.getBody().accept(this);
+
+        Expression step = forLoopNode.getStep();
+        step.accept(this);
+        // Значение шага, который не является присваиванием, снимается со стека.
+        // Тип шага уже вычислен в его области видимости (TypeAttribution)
+        Type stepType;
+        try {
+            stepType = step.getType(step.getEnclosingScope() != null ? step.getEnclosingScope() : forLoopNode.getBody());
+        } catch (FailedCheckException e) {
+            throw fail(e);
+        }
+        if (!Types.VOID.equals(stepType) && !(step instanceof AssignmentExpression)) {
+            u8(BytecodeConstants.Opcode.POP);
+        }
+
+        jumpBack(conditionStart);
+        patchJump(exit);
+        return null;
+    }
+
+    @Override
+    public Void visit(ReturnStatement retStmtNode) {
+        if (retStmtNode.getReturnable() != null) {
+            retStmtNode.getReturnable().accept(this);
+        }
+        u8(BytecodeConstants.Opcode.RET);
+        return null;
+    }
+
+    @Override
+    public Void visit(BreakStatement breakStmtNode) {
+        // Смещение не заполняется: break пока не поддерживается виртуальной машиной
+        u8(BytecodeConstants.Opcode.JMP);
+        u16(0);
+        return null;
+    }
+
+    @Override
+    public Void visit(AssignmentExpression assignmentExprNode) {
+        Expression left = assignmentExprNode.getLeft();
+        boolean simple = assignmentExprNode.getOperator().equals("=");
+        if (left instanceof Identifier identifier) {
+            if (simple) {
+                assignmentExprNode.getRight().accept(this);
+                store(identifier.getName());
+            } else {
+                int localIndex = localIndex(identifier.getName());
+                int globalIndex = localIndex == -1 ? context.getGlobalVarIndex(identifier.getName()) : -1;
+                if (localIndex == -1 && globalIndex == -1) {
+                    throw fail(new FailedCheckException("Unknown variable: " + identifier.getName()));
+                }
+                u8(localIndex != -1 ? BytecodeConstants.Opcode.PUSH_LOCAL : BytecodeConstants.Opcode.PUSH_GLOBAL);
+                variable(identifier.getName(), localIndex, globalIndex);
+                assignmentExprNode.getRight().accept(this);
+                u8(compoundOpcode(assignmentExprNode.getOperator()));
+                u8(localIndex != -1 ? BytecodeConstants.Opcode.STORE_LOCAL : BytecodeConstants.Opcode.STORE_GLOBAL);
+                variable(identifier.getName(), localIndex, globalIndex);
+            }
+        } else if (left instanceof ArrayElement element) {
+            // Для arr[d1]...[dn] = value стек перед SET_ARRAY: [index, value, array], index на вершине
+            element.getIdentifier().accept(this);
+            List<Expression> dims = element.getDims();
+            for (int i = 0; i < dims.size() - 1; i++) {
+                dims.get(i).accept(this);
+                u8(BytecodeConstants.Opcode.GET_ARRAY);
+            }
+            if (!simple) {
+                element.accept(this);
+            }
+            assignmentExprNode.getRight().accept(this);
+            if (!simple) {
+                u8(compoundOpcode(assignmentExprNode.getOperator()));
+            }
+            dims.getLast().accept(this);
+            u8(BytecodeConstants.Opcode.SET_ARRAY);
+        } else {
+            throw fail(new FailedCheckException(error(ErrorType.INVALID_ASSIGNMENT, assignmentExprNode,
+                    assignmentExprNode.toString().length(), "Invalid left-hand side of assignment")));
+        }
+        return null;
+    }
+
+    /**
+     * Сохраняет значение с вершины стека в локальную или глобальную переменную
+     */
+    private void store(String name) {
+        int localIndex = localIndex(name);
+        if (localIndex != -1) {
+            u8(BytecodeConstants.Opcode.STORE_LOCAL);
+            u16(localIndex);
+            return;
+        }
+        int globalIndex = context.getGlobalVarIndex(name);
+        if (globalIndex == -1) {
+            throw fail(new FailedCheckException("Unknown variable: " + name));
+        }
+        u8(BytecodeConstants.Opcode.STORE_GLOBAL);
+        global(name, globalIndex);
+    }
+
+    private static byte compoundOpcode(String operator) {
+        return switch (operator) {
+            case "+=" -> BytecodeConstants.Opcode.ADD;
+            case "-=" -> BytecodeConstants.Opcode.SUB;
+            case "*=" -> BytecodeConstants.Opcode.MUL;
+            case "/=" -> BytecodeConstants.Opcode.DIV;
+            default -> throw new IllegalArgumentException("Unsupported compound assignment operator: " + operator);
+        };
+    }
+
+    @Override
+    public Void visit(BinaryExpression binExprNode) {
+        String operator = binExprNode.getOperator();
+        switch (operator) {
+            // Короткое вычисление: левый операнд дублируется, переход снимает копию,
+            // а если вычисление продолжается, левый операнд заменяется правым
+            case "&&", "||" -> {
+                binExprNode.getLeft().accept(this);
+                u8(BytecodeConstants.Opcode.DUP);
+                int end = jump(operator.equals("&&") ? BytecodeConstants.Opcode.JMP_IF_FALSE : BytecodeConstants.Opcode.JMP_IF_TRUE);
+                u8(BytecodeConstants.Opcode.POP);
+                binExprNode.getRight().accept(this);
+                patchJump(end);
+            }
+            case "==", "!=", "<", "<=", ">", ">=", "+", "-", "*", "/", "%" -> {
+                binExprNode.getLeft().accept(this);
+                binExprNode.getRight().accept(this);
+                u8(binaryOpcode(operator));
+            }
+            default -> throw fail(new FailedCheckException(error(ErrorType.UNKNOWN_OPERATOR, binExprNode,
+                    operator.length(), "Unknown operator: " + operator)));
+        }
+        return null;
+    }
+
+    private static byte binaryOpcode(String operator) {
+        return switch (operator) {
+            case "+" -> BytecodeConstants.Opcode.ADD;
+            case "-" -> BytecodeConstants.Opcode.SUB;
+            case "*" -> BytecodeConstants.Opcode.MUL;
+            case "/" -> BytecodeConstants.Opcode.DIV;
+            case "%" -> BytecodeConstants.Opcode.MOD;
+            case "==" -> BytecodeConstants.Opcode.EQ;
+            case "!=" -> BytecodeConstants.Opcode.NEQ;
+            case "<" -> BytecodeConstants.Opcode.LT;
+            case "<=" -> BytecodeConstants.Opcode.LTE;
+            case ">" -> BytecodeConstants.Opcode.GT;
+            case ">=" -> BytecodeConstants.Opcode.GTE;
+            default -> throw new IllegalArgumentException("Unsupported binary operator: " + operator);
+        };
+    }
+
+    @Override
+    public Void visit(UnaryExpression unExprNode) {
+        unExprNode.getArgument().accept(this);
+        switch (unExprNode.getOperator()) {
+            case "-" -> u8(BytecodeConstants.Opcode.SUB);
+            case "!" -> u8(BytecodeConstants.Opcode.NOT);
+            default -> throw fail(new FailedCheckException("Unsupported unary operator: " + unExprNode.getOperator()));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(FunctionCall funcCallNode) {
+        for (Expression argument : funcCallNode.getArguments()) {
+            argument.accept(this);
+        }
+        if (funcCallNode.getName().equals("println")) {
+            u8(BytecodeConstants.Opcode.INTRINSIC_CALL);
+            u16(0);
+            return null;
+        }
+        int functionIndex = context.getFunctionIndex(funcCallNode.getName());
+        if (functionIndex == -1) {
+            throw fail(new FailedCheckException(error(ErrorType.UNKNOWN_VARIABLE, funcCallNode,
+                    funcCallNode.getName().length(), "Function not found: " + funcCallNode.getName())));
+        }
+        u8(BytecodeConstants.Opcode.CALL);
+        relocation(FunctionCodeCache.SymbolKind.FUNCTION, funcCallNode.getName());
+        u16(functionIndex);
+        return null;
+    }
+
+    @Override
+    public Void visit(Identifier idNode) {
+        if (!load(idNode.getName())) {
+            throw fail(new FailedCheckException(error(ErrorType.UNKNOWN_VARIABLE, idNode,
+                    idNode.getName().length(), "Variable not found: " + idNode.getName())));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(VariableReference variableReferenceNode) {
+        if (!load(variableReferenceNode.getName())) {
+            throw fail(new FailedCheckException(List.of(error(ErrorType.UNKNOWN_VARIABLE, variableReferenceNode,
+                    variableReferenceNode.getName().length(), "Variable not found: " + variableReferenceNode.getName()))));
+        }
+        return null;
+    }
+
+    /**
+     * Кладёт на стек значение локальной или глобальной переменной
+     *
+     * @return false, если переменная не найдена
+     */
+    private boolean load(String name) {
+        int localIndex = localIndex(name);
+        if (localIndex != -1) {
+            u8(BytecodeConstants.Opcode.PUSH_LOCAL);
+            u16(localIndex);
+            return true;
+        }
+        int globalIndex = context.getGlobalVarIndex(name);
+        if (globalIndex == -1) {
+            return false;
+        }
+        u8(BytecodeConstants.Opcode.PUSH_GLOBAL);
+        global(name, globalIndex);
+        return true;
+    }
+
+    private int localIndex(String name) {
+        return currentFunction != null ? context.getLocalVarIndex(currentFunction, name) : -1;
+    }
+
+    @Override
+    public Void visit(NumberLiteral numLitNode) {
+        return constant(numLitNode.getValue());
+    }
+
+    @Override
+    public Void visit(StringLiteral strLitNode) {
+        return constant(strLitNode.getValue());
+    }
+
+    @Override
+    public Void visit(BooleanLiteral boolLitNode) {
+        return constant(boolLitNode.getValue());
+    }
+
+    private Void constant(Object value) {
+        u8(BytecodeConstants.Opcode.PUSH_CONST);
+        relocation(FunctionCodeCache.SymbolKind.CONSTANT, value);
+        u16(context.addConstant(value));
+        return null;
+    }
+
+    @Override
+    public Void visit(ArrayLiteral arrayLitNode) {
+        List<Expression> elements = arrayLitNode.getElements();
+        u8(BytecodeConstants.Opcode.NEW_ARRAY);
+        u16(elements.size());
+        u8(!elements.isEmpty() && elements.getFirst() instanceof StringLiteral
+                ? BytecodeConstants.TypeId.STRING : BytecodeConstants.TypeId.I32);
+        for (Expression element : elements.reversed()) {
+            element.accept(this);
+        }
+        u8(BytecodeConstants.Opcode.INIT_ARRAY);
+        u16(elements.size());
+        return null;
+    }
+
+    @Override
+    public Void visit(ArrayElement arrayElNode) {
+        if (arrayElNode.getIdentifier() == null) {
+            throw fail(new FailedCheckException("ERROR:^UNKNOWN_VARIABLE" + System.lineSeparator()
+                    + "================================"
+                    + "Unknown variable: <array>" + System.lineSeparator()
+                    + "================================"));
+        }
+        arrayElNode.getIdentifier().accept(this);
+        for (Expression dim : arrayElNode.getDims()) {
+            dim.accept(this);
+            u8(BytecodeConstants.Opcode.GET_ARRAY);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(PrimitiveType primitiveTypeNode) {
+        throw new UnsupportedOperationException("Types have no bytecode: " + primitiveTypeNode);
+    }
+
+    @Override
+    public Void visit(ArrayType arrayTypeNode) {
+        throw new UnsupportedOperationException("Types have no bytecode: " + arrayTypeNode);
+    }
+
+    private static GenerationFailure fail(FailedCheckException e) {
+        return new GenerationFailure(e);
+    }
+
+    private static CompilationError error(ErrorType type, Node node, int length, String message) {
+        return new CompilationError(type, before(node, length), message, "");
+    }
+
+    private static CharSequence before(Node node, int length) {
+        return node.getSourceFile() != null
+                ? SourceBuilder.toSourceLine(node.getSourceFile(), node.getLine(), node.getCharPosition(), length)
+                : SourceBuilder.toSourceCode(node);
+    }
+
+    /**
+     * Пишет переход с незаполненным смещением
+     *
+     * @return Позиция смещения для {@link #patchJump(int)}
+     */
+    private int jump(byte opcode) {
+        u8(opcode);
+        int operand = size;
+        u16(0);
+        return operand;
+    }
+
+    /**
+     * Направляет переход на текущую позицию. Смещение отсчитывается от конца операнда.
+     */
+    private void patchJump(int operand) {
+        int offset = size - operand - 2;
+        code[operand] = (byte) (offset >> 8);
+        code[operand + 1] = (byte) offset;
+    }
+
+    private void jumpBack(int target) {
+        u8(BytecodeConstants.Opcode.JMP);
+        u16(target - size - 2);
+    }
+
+    /**
+     * Операнд локальной или глобальной переменной
+     */
+    private void variable(String name, int localIndex, int globalIndex) {
+        if (localIndex != -1) {
+            u16(localIndex);
+        } else {
+            global(name, globalIndex);
+        }
+    }
+
+    private void global(String name, int globalIndex) {
+        relocation(FunctionCodeCache.SymbolKind.GLOBAL, name);
+        u16(globalIndex);
+    }
+
+    /**
+     * Отмечает, что следующий U16-операнд ссылается на символ контекста
+     */
+    private void relocation(FunctionCodeCache.SymbolKind kind, Object symbol) {
+        if (relocations != null) {
+            relocations.add(new FunctionCodeCache.Relocation(size, kind, symbol));
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + extra));
+        }
+    }
+
+    private void u8(int value) {
+        ensureCapacity(1);
+        code[size++] = (byte) value;
+    }
+
+    private void u16(int value) {
+        ensureCapacity(2);
+        code[size++] = (byte) (value >> 8);
+        code[size++] = (byte) value;
+    }
+
+    private void i32(int value) {
+        ensureCapacity(4);
+        code[size++] = (byte) (value >> 24);
+        code[size++] = (byte) (value >> 16);
+        code[size++] = (byte) (value >> 8);
+        code[size++] = (byte) value;
+    }
+}
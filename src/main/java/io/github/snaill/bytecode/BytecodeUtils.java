@@ -4,6 +4,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 /**
  * Утилиты для работы с байткодом.
@@ -100,4 +104,23 @@ public class BytecodeUtils {
         bytes[offset] = (byte) ((value >> 8) & 0xFF);
         bytes[offset + 1] = (byte) (value & 0xFF);
     }
-}
\ No newline at end of file
+
+    /**
+     * Записывает файл атомарно: данные пишутся во временный файл в той же директории,
+     * который затем переименовывается в целевой. Читатель никогда не видит частично записанный байткод.
+     */
+    public static void writeFileAtomically(Path target, byte[] data) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        Path tmp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, data);
+            try {
+                Files.move(tmp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
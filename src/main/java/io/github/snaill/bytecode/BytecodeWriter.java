@@ -95,7 +95,7 @@ public class BytecodeWriter {
                 // Для массивов дополнительно записываем тип элементов и размер
                 if (typeId == BytecodeConstants.TypeId.ARRAY && type instanceof ArrayType arrayType) {
                     out.write(getTypeId(arrayType.getElementType()));
-                    long size = arrayType.getSize().getValue();
+                    long size = arrayType.getSize();
                     BytecodeUtils.writeI32(out, (int) size);
                 }
             } else {
@@ -169,9 +169,9 @@ public class BytecodeWriter {
             BytecodeUtils.writeU16(out, localVarCount);
             
             // Генерируем байткод функции
-            ByteArrayOutputStream funcOut = new ByteArrayOutputStream();
-            func.getBody().emitBytecode(funcOut, context);
-            byte[] code = funcOut.toByteArray();
+            BytecodeGenerator generator = new BytecodeGenerator(context);
+            generator.emit(func.getBody());
+            byte[] code = generator.toByteArray();
             
             // Проверка размера байткода
             if (code.length > Integer.MAX_VALUE - 10) { // Защита от переполнения
@@ -258,19 +258,11 @@ public class BytecodeWriter {
     }
 
     private byte getTypeId(Type type) {
-        if (type instanceof PrimitiveType prim) {
-            return switch (prim.getName()) {
-                case "void" -> BytecodeConstants.TypeId.VOID;
-                case "i32" -> BytecodeConstants.TypeId.I32;
-                case "usize" -> BytecodeConstants.TypeId.USIZE;
-                case "string" -> BytecodeConstants.TypeId.STRING;
-                case "bool" -> BytecodeConstants.TypeId.I32;
-                default -> throw new RuntimeException("Unknown type: " + prim.getName());
-            };
-        } else if (type instanceof ArrayType) {
-            return BytecodeConstants.TypeId.ARRAY;
+        byte typeId = type.getTypeId();
+        if (typeId == Types.UNKNOWN) {
+            throw new RuntimeException("Unknown type: " + type);
         }
-        throw new RuntimeException("Unsupported type: " + type.getClass().getSimpleName());
+        return typeId;
     }
 
     /**
@@ -291,7 +283,9 @@ public class BytecodeWriter {
         for (Statement stmt : program.getStatements()) {
             if (stmt instanceof VariableDeclaration varDecl) {
                 try {
-                    varDecl.emitBytecode(globalOut, context);
+                    BytecodeGenerator generator = new BytecodeGenerator(context);
+                    generator.emit(varDecl);
+                    globalOut.write(generator.toByteArray());
                 } catch (Exception e) {
                     System.err.println("Ошибка при генерации байткода для глобальной переменной: " + varDecl.getName());
                     e.printStackTrace();
@@ -0,0 +1,173 @@
+package io.github.snaill.bytecode;
+
+import io.github.snaill.ast.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш сгенерированного байткода функций между сборками.
+ * <p>
+ * Ключ - структурный хэш функции: её каноническое представление ({@link SourceBuilder})
+ * плюс сигнатуры вызываемых функций и объявленные типы глобальных переменных, от которых
+ * зависит генерация. Байткод хранится вместе с таблицей релокаций - позициями операндов
+ * PUSH_CONST, PUSH_GLOBAL, STORE_GLOBAL и CALL и символами, на которые они ссылаются.
+ * Таблицу записывает {@link BytecodeGenerator} в момент записи операнда, так что функция
+ * генерируется один раз. При повторном использовании операнды переписываются индексами
+ * текущего контекста, поэтому сдвиг пула констант, глобальных переменных или таблицы функций
+ * не делает запись недействительной.
+ * <p>
+ * Класс потокобезопасен и рассчитан на долгоживущие процессы (сервер компиляции, режим наблюдения).
+ */
+public class FunctionCodeCache {
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    enum SymbolKind { CONSTANT, GLOBAL, FUNCTION }
+
+    /**
+     * U16-операнд, ссылающийся на символ контекста: позиция операнда в байткоде функции,
+     * вид символа и сам символ (значение константы, имя переменной или функции)
+     */
+    record Relocation(int offset, SymbolKind kind, Object symbol) {
+    }
+
+    private record CachedFunction(byte[] code, List<Relocation> relocations) {
+    }
+
+    private final Map<String, CachedFunction> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public FunctionCodeCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public FunctionCodeCache(int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedFunction> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Структурный ключ функции
+     */
+    static String key(FunctionDeclaration func, BytecodeContext context) {
+        StringBuilder sb = new StringBuilder(SourceBuilder.toSourceCode(func));
+        // Генерация зависит от возвращаемых типов вызываемых функций (например, POP после шага цикла)
+        // и от объявленных типов глобальных переменных, на которые ссылается функция
+        Set<String> callees = new TreeSet<>();
+        Set<String> names = new TreeSet<>();
+        collectReferences(func.getBody(), callees, names);
+        for (String callee : callees) {
+            Type returnType = null;
+            for (FunctionDeclaration decl : context.getFunctions()) {
+                if (decl.getName().equals(callee)) {
+                    returnType = decl.getReturnType();
+                    break;
+                }
+            }
+            sb.append('\0').append(callee).append("->").append(returnType);
+        }
+        for (Statement statement : context.getGlobalStatements()) {
+            if (statement instanceof VariableDeclaration global && names.contains(global.getName())) {
+                sb.append('\0').append(global.getName()).append(':').append(global.getType());
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void collectReferences(Node node, Set<String> callees, Set<String> names) {
+        if (node == null) {
+            return;
+        }
+        switch (node) {
+            case FunctionCall call -> callees.add(call.getName());
+            case Identifier identifier -> names.add(identifier.getName());
+            case VariableReference reference -> names.add(reference.getName());
+            // Массив не входит в число детей элемента
+            case ArrayElement element -> collectReferences(element.getIdentifier(), callees, names);
+            default -> {
+            }
+        }
+        for (Node child : node.getChildren()) {
+            collectReferences(child, callees, names);
+        }
+    }
+
+    /**
+     * Возвращает байткод функции с операндами, переписанными под текущий контекст,
+     * или null, если записи нет или какой-то символ отсутствует в контексте.
+     */
+    byte[] lookup(String key, BytecodeContext context) {
+        CachedFunction cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+        }
+        if (cached == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        byte[] code = cached.code().clone();
+        // Сначала символы, которых может не быть в контексте: пул констант пополняется,
+        // только если запись подходит целиком
+        for (Relocation relocation : cached.relocations()) {
+            if (relocation.kind() == SymbolKind.CONSTANT) {
+                continue;
+            }
+            int index = relocation.kind() == SymbolKind.GLOBAL
+                    ? context.getGlobalVarIndex((String) relocation.symbol())
+                    : context.getFunctionIndex((String) relocation.symbol());
+            if (index < 0) {
+                misses.incrementAndGet();
+                return null;
+            }
+            BytecodeUtils.patchU16(code, relocation.offset(), index);
+        }
+        for (Relocation relocation : cached.relocations()) {
+            if (relocation.kind() == SymbolKind.CONSTANT) {
+                BytecodeUtils.patchU16(code, relocation.offset(), context.addConstant(relocation.symbol()));
+            }
+        }
+        hits.incrementAndGet();
+        return code;
+    }
+
+    /**
+     * Сохраняет байткод функции вместе с её релокациями ({@link BytecodeGenerator#relocations()})
+     */
+    void store(String key, byte[] code, List<Relocation> relocations) {
+        synchronized (entries) {
+            entries.put(key, new CachedFunction(code.clone(), List.copyOf(relocations)));
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
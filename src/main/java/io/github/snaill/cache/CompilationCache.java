@@ -0,0 +1,224 @@
+package io.github.snaill.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Дисковый кэш результатов компиляции с адресацией по содержимому.
+ * <p>
+ * Ключ - SHA-256 от отпечатка компилятора, параметров генерации и байтов исходника, поэтому
+ * найденная запись верна без чтения чего-либо ещё. Запись хранит готовый байткод и предупреждения
+ * компиляции. Записи пишутся атомарно, попадание обновляет время изменения записи, а когда
+ * директория превышает заданный размер, вытесняются давно не использованные записи.
+ * Одну директорию могут использовать несколько процессов.
+ */
+public class CompilationCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompilationCache.class);
+
+    private static final int ENTRY_MAGIC = 0x534E4143; // "SNAC"
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    /**
+     * Сохранённый результат одной успешной компиляции
+     *
+     * @param bytecode готовый байткод
+     * @param warnings строки предупреждений, которые компиляция вывела в поток ошибок; попадание
+     *                 выводит их снова
+     */
+    public record Entry(byte[] bytecode, List<String> warnings) {
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+    private final String compilerFingerprint;
+
+    /**
+     * @param directory           директория кэша, создаётся при первой записи
+     * @param maxBytes            верхняя граница суммарного размера записей
+     * @param compilerFingerprint сборка компилятора; записи других сборок никогда не подходят
+     */
+    public CompilationCache(Path directory, long maxBytes, String compilerFingerprint) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.compilerFingerprint = compilerFingerprint;
+    }
+
+    /**
+     * Ключ кэша для исходника, компилируемого с заданными параметрами
+     */
+    public String key(byte[] source, String emitOptions) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(compilerFingerprint.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(emitOptions.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(source);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Ищет запись. Нечитаемые и повреждённые записи считаются промахом и удаляются.
+     */
+    public Optional<Entry> get(String key) {
+        Path file = entryPath(key);
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            logger.warn("Cannot read cache entry {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+        try {
+            Entry entry = decode(data);
+            touch(file);
+            return Optional.of(entry);
+        } catch (IOException e) {
+            logger.warn("Corrupted cache entry {}, removing: {}", file, e.getMessage());
+            deleteQuietly(file);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Сохраняет запись и, если кэш превысил размер, вытесняет давно не использованные записи.
+     * Ошибки только журналируются: кэш никогда не прерывает компиляцию.
+     */
+    public void put(String key, Entry entry) {
+        Path file = entryPath(key);
+        try {
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, key, ".tmp");
+            try {
+                Files.write(tmp, encode(entry));
+                moveAtomically(tmp, file);
+            } finally {
+                deleteQuietly(tmp);
+            }
+            evict();
+        } catch (IOException e) {
+            logger.warn("Cannot write cache entry {}: {}", file, e.getMessage());
+        }
+    }
+
+    private Path entryPath(String key) {
+        return directory.resolve(key + ENTRY_SUFFIX);
+    }
+
+    private void evict() throws IOException {
+        record CachedFile(Path path, long size, FileTime lastUsed) {
+        }
+        List<CachedFile> files = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> list = Files.list(directory)) {
+            for (Path path : list.filter(p -> p.getFileName().toString().endsWith(ENTRY_SUFFIX)).toList()) {
+                try {
+                    CachedFile cached = new CachedFile(path, Files.size(path), Files.getLastModifiedTime(path));
+                    files.add(cached);
+                    total += cached.size();
+                } catch (NoSuchFileException e) {
+                    // Удалено параллельным процессом
+                }
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        files.sort(Comparator.comparing(CachedFile::lastUsed));
+        for (CachedFile file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            deleteQuietly(file.path());
+            total -= file.size();
+            logger.debug("Evicted cache entry {}", file.path());
+        }
+    }
+
+    private static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.bytecode().length + 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(ENTRY_MAGIC);
+            out.writeInt(entry.warnings().size());
+            for (String warning : entry.warnings()) {
+                out.writeUTF(warning);
+            }
+            out.writeInt(entry.bytecode().length);
+            out.write(entry.bytecode());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != ENTRY_MAGIC) {
+                throw new IOException("Bad magic");
+            }
+            int warningCount = in.readInt();
+            List<String> warnings = new ArrayList<>(warningCount);
+            for (int i = 0; i < warningCount; i++) {
+                warnings.add(in.readUTF());
+            }
+            int length = in.readInt();
+            byte[] bytecode = in.readNBytes(length);
+            if (bytecode.length != length || in.available() != 0) {
+                throw new IOException("Bad entry length");
+            }
+            return new Entry(bytecode, List.copyOf(warnings));
+        }
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Не критично: запись просто раньше будет вытеснена
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.debug("Cannot delete {}: {}", file, e.getMessage());
+        }
+    }
+}
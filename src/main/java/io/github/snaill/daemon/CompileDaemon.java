@@ -0,0 +1,203 @@
+package io.github.snaill.daemon;
+
+import io.github.snaill.Trail;
+import io.github.snaill.bytecode.FunctionCodeCache;
+import io.github.snaill.parser.SnailLexer;
+import io.github.snaill.parser.SnailParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Долгоживущий сервер компиляции на Unix-сокете.
+ * <p>
+ * Каждый запрос обслуживается в своём виртуальном потоке новым экземпляром {@link Trail},
+ * привязанным к рабочей директории и потокам вывода клиента. JVM, скомпилированный JIT код
+ * компилятора, общий кэш DFA парсера ({@code SnailParser._decisionToDFA}) и кэш байткода
+ * функций остаются прогретыми между запросами.
+ */
+public class CompileDaemon implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompileDaemon.class);
+
+    /**
+     * Небольшая программа, затрагивающая все правила парсера: при запуске десериализует ATN и заполняет кэш DFA
+     */
+    private static final String WARMUP_SOURCE = """
+            let g: [i32; 2] = [1, 2];
+            fn f(a: i32, b: usize) -> bool {
+                let s: string = "x";
+                for (let i: i32 = 0; i < a; i += 1) {
+                    if (!(i == 2) && a >= 0 || false) { break; } else { g[0] = -i * 2 / 1 - 1; }
+                }
+                while (true) { return a != 1; }
+                return a > 0 && b <= 10;
+            }
+            fn main() -> void { println(f(1, 2)); }
+            """;
+
+    /**
+     * Опции, которые не завершают компиляцию и поэтому не выполняются сервером
+     */
+    private static final List<String> UNSUPPORTED_OPTIONS = List.of("--daemon", "--watch");
+
+    private final Path socketPath;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final FunctionCodeCache functionCodeCache = new FunctionCodeCache();
+    private ServerSocketChannel server;
+
+    public CompileDaemon(Path socketPath) {
+        this.socketPath = socketPath;
+    }
+
+    /**
+     * Привязывает сокет и обслуживает запросы до вызова {@link #close()}.
+     *
+     * @throws IOException если сокет не удаётся привязать или он занят другим сервером
+     */
+    public void serve() throws IOException {
+        if (Files.exists(socketPath)) {
+            if (isAlive(socketPath)) {
+                throw new IOException("Another daemon is already listening on " + socketPath);
+            }
+            // Сокет остался от завершившегося процесса
+            Files.delete(socketPath);
+        }
+        warmUp();
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(socketPath));
+        synchronized (this) {
+            server = channel;
+        }
+        Thread cleanup = new Thread(this::close, "trail-daemon-cleanup");
+        Runtime.getRuntime().addShutdownHook(cleanup);
+        logger.info("Compile daemon listening on {}", socketPath);
+        try {
+            while (channel.isOpen()) {
+                SocketChannel client;
+                try {
+                    client = channel.accept();
+                } catch (AsynchronousCloseException e) {
+                    break;
+                }
+                executor.submit(() -> handle(client));
+            }
+        } finally {
+            close();
+            try {
+                Runtime.getRuntime().removeShutdownHook(cleanup);
+            } catch (IllegalStateException e) {
+                // JVM уже завершается
+            }
+        }
+    }
+
+    /**
+     * Принимает ли сервер подключения. Файл сокета появляется при привязке раньше,
+     * чем сервер начинает слушать, поэтому его наличие готовность не означает.
+     */
+    public synchronized boolean isListening() {
+        return server != null && server.isOpen();
+    }
+
+    private void handle(SocketChannel client) {
+        try (client) {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(client));
+            DaemonProtocol.Request request = DaemonProtocol.readRequest(in);
+            DaemonProtocol.writeResponse(out, compile(request));
+        } catch (IOException e) {
+            logger.warn("Failed to serve compile request: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Выполняет командную строку запроса так же, как {@code trail}, и перехватывает её вывод
+     */
+    DaemonProtocol.Response compile(DaemonProtocol.Request request) {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        int exitCode;
+        try (PrintStream out = new PrintStream(stdout, true, StandardCharsets.UTF_8);
+             PrintStream err = new PrintStream(stderr, true, StandardCharsets.UTF_8)) {
+            String unsupported = unsupportedOption(request.args());
+            if (unsupported != null) {
+                // --daemon запустил бы второй сервер, а --watch занял бы обработчик запроса навсегда
+                err.println("Daemon Error: " + unsupported + " requests are not supported");
+                exitCode = 2;
+            } else {
+                Trail trail = new Trail(Path.of(request.workingDirectory()), out, err, functionCodeCache);
+                CommandLine commandLine = new CommandLine(trail)
+                        .setOut(new PrintWriter(out, true))
+                        .setErr(new PrintWriter(err, true));
+                exitCode = commandLine.execute(request.args().toArray(String[]::new));
+            }
+        }
+        return new DaemonProtocol.Response(exitCode, stdout.toByteArray(), stderr.toByteArray());
+    }
+
+    private static String unsupportedOption(List<String> args) {
+        for (String arg : args) {
+            for (String option : UNSUPPORTED_OPTIONS) {
+                if (arg.equals(option) || arg.startsWith(option + "=")) {
+                    return option;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void warmUp() {
+        SnailLexer lexer = new SnailLexer(CharStreams.fromString(WARMUP_SOURCE));
+        lexer.removeErrorListeners();
+        SnailParser parser = new SnailParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        Trail.parseProgram(parser);
+    }
+
+    private static boolean isAlive(Path socketPath) {
+        try (SocketChannel probe = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            probe.connect(UnixDomainSocketAddress.of(socketPath));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server == null) {
+            return;
+        }
+        try {
+            server.close();
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            logger.warn("Failed to close daemon socket {}: {}", socketPath, e.getMessage());
+        }
+        server = null;
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.snaill.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Тонкий клиент {@link CompileDaemon}: передаёт аргументы командной строки без изменений
+ * и воспроизводит вывод и код завершения сервера.
+ * <p>
+ * На основном пути используются только классы JDK, поэтому клиент запускается без picocli,
+ * logback и рантайма ANTLR. Если к серверу не удаётся подключиться, аргументы компилируются
+ * в текущем процессе; ошибка уже после подключения сообщается как ошибка сервера.
+ */
+public final class DaemonClient {
+
+    private static final String SOCKET_OPTION = "--socket";
+
+    private DaemonClient() {
+    }
+
+    public static void main(String[] args) {
+        Path socket = socketPath(args);
+        DaemonProtocol.Request request = new DaemonProtocol.Request(Path.of("").toAbsolutePath().toString(), List.of(args));
+        SocketChannel channel;
+        try {
+            channel = connect(socket);
+        } catch (IOException e) {
+            // Сервер не запущен - компилируем в текущем процессе
+            io.github.snaill.Trail.main(args);
+            return;
+        }
+        DaemonProtocol.Response response;
+        try (channel) {
+            response = exchange(channel, request);
+        } catch (IOException e) {
+            System.err.println("Daemon Error: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.write(response.out(), 0, response.out().length);
+        System.out.flush();
+        System.err.write(response.err(), 0, response.err().length);
+        System.err.flush();
+        System.exit(response.exitCode());
+    }
+
+    /**
+     * Путь к сокету из {@code --socket PATH} или {@code --socket=PATH} среди аргументов,
+     * иначе {@link DaemonProtocol#defaultSocketPath()}
+     */
+    public static Path socketPath(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals(SOCKET_OPTION) && i + 1 < args.length) {
+                return Path.of(args[i + 1]);
+            }
+            if (args[i].startsWith(SOCKET_OPTION + "=")) {
+                return Path.of(args[i].substring(SOCKET_OPTION.length() + 1));
+            }
+        }
+        return DaemonProtocol.defaultSocketPath();
+    }
+
+    /**
+     * Отправляет один запрос на компиляцию серверу, слушающему {@code socket}.
+     *
+     * @throws IOException если сервер недоступен или соединение прервалось
+     */
+    public static DaemonProtocol.Response send(Path socket, DaemonProtocol.Request request) throws IOException {
+        try (SocketChannel channel = connect(socket)) {
+            return exchange(channel, request);
+        }
+    }
+
+    private static SocketChannel connect(Path socket) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static DaemonProtocol.Response exchange(SocketChannel channel, DaemonProtocol.Request request) throws IOException {
+        DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+        DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+        DaemonProtocol.writeRequest(out, request);
+        return DaemonProtocol.readResponse(in);
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.snaill.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Формат обмена между {@link DaemonClient} и {@link CompileDaemon}.
+ * <p>
+ * Запрос: рабочая директория (UTF), число аргументов (int), аргументы (каждый UTF).
+ * Ответ: код завершения (int), байты stdout и stderr (каждые как длина int + байты).
+ * <p>
+ * Класс намеренно не зависит от компилятора, чтобы клиент оставался тонким.
+ */
+public final class DaemonProtocol {
+
+    /**
+     * Системное свойство, переопределяющее путь к сокету
+     */
+    public static final String SOCKET_PROPERTY = "trail.socket";
+
+    /**
+     * Переменная окружения, переопределяющая путь к сокету
+     */
+    public static final String SOCKET_ENV = "TRAIL_SOCKET";
+
+    /**
+     * Наибольшее число аргументов в запросе. Число приходит из сокета, поэтому проверяется
+     * до чтения аргументов
+     */
+    public static final int MAX_ARGUMENTS = 4096;
+
+    private DaemonProtocol() {
+    }
+
+    public record Request(String workingDirectory, List<String> args) {
+    }
+
+    public record Response(int exitCode, byte[] out, byte[] err) {
+    }
+
+    /**
+     * Путь к сокету, если не заданы ни {@code --socket}, ни {@value #SOCKET_PROPERTY}, ни {@value #SOCKET_ENV}
+     */
+    public static Path defaultSocketPath() {
+        String configured = System.getProperty(SOCKET_PROPERTY, System.getenv(SOCKET_ENV));
+        if (configured != null && !configured.isEmpty()) {
+            return Path.of(configured);
+        }
+        return Path.of(System.getProperty("java.io.tmpdir"), "trail-" + System.getProperty("user.name") + ".sock");
+    }
+
+    public static void writeRequest(DataOutputStream out, Request request) throws IOException {
+        out.writeUTF(request.workingDirectory());
+        out.writeInt(request.args().size());
+        for (String arg : request.args()) {
+            out.writeUTF(arg);
+        }
+        out.flush();
+    }
+
+    public static Request readRequest(DataInputStream in) throws IOException {
+        String workingDirectory = in.readUTF();
+        int count = in.readInt();
+        if (count < 0 || count > MAX_ARGUMENTS) {
+            throw new IOException("Invalid argument count: " + count);
+        }
+        List<String> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            args.add(in.readUTF());
+        }
+        return new Request(workingDirectory, args);
+    }
+
+    public static void writeResponse(DataOutputStream out, Response response) throws IOException {
+        out.writeInt(response.exitCode());
+        writeBytes(out, response.out());
+        writeBytes(out, response.err());
+        out.flush();
+    }
+
+    public static Response readResponse(DataInputStream in) throws IOException {
+        int exitCode = in.readInt();
+        byte[] stdout = readBytes(in);
+        byte[] stderr = readBytes(in);
+        return new Response(exitCode, stdout, stderr);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid payload length: " + length);
+        }
+        return in.readNBytes(length);
+    }
+}
@@ -2,32 +2,50 @@ package io.github.snaill.exception;
 
 import io.github.snaill.result.CompilationError;
 
+import java.io.Serial;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 public class FailedCheckException extends Exception {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     private final List<CompilationError> errors = new ArrayList<>();
+    private final transient CompilationError error;
+
+    public FailedCheckException() { super(); this.error = null; }
+
+    public FailedCheckException(String message) { super(message); this.error = null; }
 
-    public FailedCheckException() { super(); }
+    public FailedCheckException(Throwable cause) { super(cause); this.error = null; }
 
-    public FailedCheckException(String message) { super(message); }
+    public FailedCheckException(String message, Throwable cause) { super(message, cause); this.error = null; }
 
-    public FailedCheckException(Throwable cause) { super(cause); }
+    /**
+     * Creates an exception describing a single failed check.
+     * The error is kept as an object and rendered (with its source snippet) only when the message
+     * is requested; it is not part of {@link #getErrors()}.
+     * @param error compilation error
+     */
+    public FailedCheckException(CompilationError error) {
+        super("Check failed");
+        this.error = error;
+    }
 
-    public FailedCheckException(String message, Throwable cause) { super(message, cause); }
-    
     /**
-     * Creates an exception with the specified list of compilation errors
+     * Creates an exception with the specified list of compilation errors.
+     * The errors are rendered only when the message is requested.
      * @param errors list of compilation errors
      */
     public FailedCheckException(List<CompilationError> errors) {
-        super(errors != null && !errors.isEmpty() ? errors.getFirst().toString() : "Check failed");
+        super("Check failed");
+        this.error = null;
         if (errors != null) {
             this.errors.addAll(errors);
         }
     }
-    
+
     /**
      * Returns the list of compilation errors
      * @return list of compilation errors
@@ -36,6 +54,14 @@ public class FailedCheckException extends Exception {
         return Collections.unmodifiableList(errors);
     }
 
+    /**
+     * Returns the error of a single failed check, if the exception was created with one
+     * @return compilation error or null
+     */
+    public CompilationError getError() {
+        return error;
+    }
+
     @Override
     public String getMessage() {
         if (!errors.isEmpty()) {
@@ -45,6 +71,9 @@ public class FailedCheckException extends Exception {
             }
             return sb.toString();
         }
+        if (error != null) {
+            return error.toString();
+        }
         return super.getMessage();
     }
 
@@ -0,0 +1,37 @@
+package io.github.snaill.jfr;
+
+import io.github.snaill.ast.Node;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Helpers for creating and filling compiler JFR events.
+ */
+public final class CompilerEvents {
+
+    private CompilerEvents() {
+    }
+
+    /**
+     * Whether compiler events can be recorded at all. Loading the first event class registers
+     * it with the JFR runtime, which costs a few hundred milliseconds on a cold start, so events
+     * are only created once the platform recorder is initialized (a recording was started on the
+     * command line or later through JMX or jcmd).
+     */
+    public static boolean isRecording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Число узлов AST в поддереве {@code node}, включая сам узел; вызывается только для событий, которые будут записаны
+     */
+    public static int countNodes(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        int count = 1;
+        for (Node child : node.getChildren()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+}
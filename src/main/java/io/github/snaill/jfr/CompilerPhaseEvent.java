@@ -0,0 +1,24 @@
+package io.github.snaill.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event covering one compiler phase (read, lex, parse, ast, check, dead-code, unused-symbols, emit, write).
+ */
+@Name("io.github.snaill.CompilerPhase")
+@Label("Compiler Phase")
+@Category({"Snail", "Compiler"})
+@Description("One phase of compiling a Snail source file")
+@StackTrace(false)
+public class CompilerPhaseEvent extends Event {
+    @Label("File")
+    public String file;
+
+    @Label("Phase")
+    public String phase;
+}
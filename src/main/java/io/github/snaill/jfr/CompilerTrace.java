@@ -0,0 +1,50 @@
+package io.github.snaill.jfr;
+
+import jdk.jfr.EventType;
+
+/**
+ * Diagnostic trace of the compiler (scope and name lookups, visitor steps), recorded as {@link TraceEvent}.
+ * <p>
+ * Callers check {@link #isEnabled()} before building a message, so with tracing off a trace point
+ * costs one branch and allocates nothing. With the event enabled in a running recording, messages go
+ * to the in-memory JFR buffers and are written to disk by the recorder thread, never by the compiler.
+ */
+public final class CompilerTrace {
+
+    private CompilerTrace() {
+    }
+
+    /**
+     * Whether trace messages are recorded. Like {@link CompilerEvents#isRecording()}, the event class
+     * is not loaded before the platform recorder is initialized.
+     */
+    public static boolean isEnabled() {
+        return CompilerEvents.isRecording() && Type.TRACE.isEnabled();
+    }
+
+    /**
+     * Records a message. Only called once {@link #isEnabled()} returned true
+     */
+    public static void trace(String source, String message) {
+        TraceEvent event = new TraceEvent();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.message = message;
+            event.commit();
+        }
+    }
+
+    /**
+     * Short identity of an object for trace messages: class name and identity hash
+     */
+    public static String id(Object object) {
+        if (object == null) {
+            return "null";
+        }
+        return object.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(object));
+    }
+
+    private static final class Type {
+        static final EventType TRACE = EventType.getEventType(TraceEvent.class);
+    }
+}
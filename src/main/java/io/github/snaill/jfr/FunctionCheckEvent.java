@@ -0,0 +1,30 @@
+package io.github.snaill.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event covering the semantic check of one function in {@code Check.visit(FunctionDeclaration)}.
+ */
+@Name("io.github.snaill.FunctionCheck")
+@Label("Function Check")
+@Category({"Snail", "Compiler"})
+@Description("Semantic check of one Snail function")
+@StackTrace(false)
+public class FunctionCheckEvent extends Event {
+    @Label("File")
+    public String file;
+
+    @Label("Function")
+    public String function;
+
+    @Label("AST Nodes")
+    public int nodeCount;
+
+    @Label("Errors")
+    public int errorCount;
+}
@@ -0,0 +1,38 @@
+package io.github.snaill.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event covering bytecode generation of one function in {@code BytecodeEmitter.writeFunctions}.
+ */
+@Name("io.github.snaill.FunctionEmit")
+@Label("Function Emit")
+@Category({"Snail", "Compiler"})
+@Description("Bytecode generation of one Snail function")
+@StackTrace(false)
+public class FunctionEmitEvent extends Event {
+    @Label("File")
+    public String file;
+
+    @Label("Function")
+    public String function;
+
+    @Label("AST Nodes")
+    public int nodeCount;
+
+    @Label("Local Slots")
+    public int localCount;
+
+    @Label("Bytecode Size")
+    @DataAmount
+    public int bytecodeSize;
+
+    @Label("Reused From Cache")
+    public boolean reused;
+}
@@ -0,0 +1,27 @@
+package io.github.snaill.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event carrying one compiler trace message (see {@link CompilerTrace}). Disabled in recordings
+ * unless requested, e.g. {@code -XX:StartFlightRecording:+io.github.snaill.Trace#enabled=true}.
+ */
+@Name("io.github.snaill.Trace")
+@Label("Compiler Trace")
+@Category({"Snail", "Compiler", "Trace"})
+@Description("Diagnostic trace message of the Snail compiler")
+@Enabled(false)
+@StackTrace(false)
+public class TraceEvent extends Event {
+    @Label("Source")
+    public String source;
+
+    @Label("Message")
+    public String message;
+}
@@ -0,0 +1,282 @@
+package io.github.snaill.lexer;
+
+import io.github.snaill.parser.SnailLexer;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.Vocabulary;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.util.Arrays;
+
+/**
+ * Рукописный табличный лексер Snail, эквивалентный сгенерированному {@link SnailLexer}.
+ * <p>
+ * Читает кодовые точки прямо из {@link CharStream} (в том числе {@link MappedCharStream}) без
+ * копирования текста и записывает токены в {@link TokenBuffer} без создания объектов на токен. Таблицы ключевых слов и операторов строятся из словаря {@link SnailLexer},
+ * поэтому номера типов токенов совпадают с грамматикой. Поведение совпадает с ANTLR, включая
+ * самое длинное совпадение, приоритет ключевых слов над идентификаторами, откат незакрытого
+ * блочного комментария к оператору {@code /}, текст и позиции ошибок распознавания.
+ * Позиции и номера колонок считаются в кодовых точках, как в {@link CharStream}.
+ */
+public final class FastLexer {
+
+    private static final byte OTHER = 0;
+    private static final byte WHITESPACE = 1;
+    private static final byte DIGIT = 2;
+    private static final byte IDENTIFIER_START = 3;
+
+    private static final byte[] CHAR_CLASS = new byte[128];
+    /**
+     * Тип односимвольного оператора или 0
+     */
+    private static final int[] SINGLE = new int[128];
+    /**
+     * Тип двухсимвольного оператора по индексу {@code first << 7 | second} или 0
+     */
+    private static final int[] DOUBLE = new int[128 * 128];
+    /**
+     * Символ начинает хотя бы один двухсимвольный оператор
+     */
+    private static final boolean[] DOUBLE_PREFIX = new boolean[128];
+    /**
+     * Ключевые слова по первому символу
+     */
+    private static final char[][][] KEYWORDS = new char[128][][];
+    private static final int[][] KEYWORD_TYPES = new int[128][];
+
+    static {
+        for (char c = '0'; c <= '9'; c++) {
+            CHAR_CLASS[c] = DIGIT;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASS[c] = IDENTIFIER_START;
+            CHAR_CLASS[Character.toUpperCase(c)] = IDENTIFIER_START;
+        }
+        CHAR_CLASS['_'] = IDENTIFIER_START;
+        for (char c : new char[]{' ', '\t', '\r', '\n'}) {
+            CHAR_CLASS[c] = WHITESPACE;
+        }
+
+        Vocabulary vocabulary = SnailLexer.VOCABULARY;
+        for (int type = 1; type <= vocabulary.getMaxTokenType(); type++) {
+            String literal = vocabulary.getLiteralName(type);
+            if (literal == null) {
+                continue;
+            }
+            String text = literal.substring(1, literal.length() - 1);
+            char first = text.charAt(0);
+            if (first < 128 && CHAR_CLASS[first] == IDENTIFIER_START) {
+                addKeyword(text, type);
+            } else if (text.length() == 1 && first < 128) {
+                SINGLE[first] = type;
+            } else if (text.length() == 2 && first < 128 && text.charAt(1) < 128) {
+                DOUBLE[first << 7 | text.charAt(1)] = type;
+                DOUBLE_PREFIX[first] = true;
+            } else {
+                throw new IllegalStateException("Unsupported literal token " + literal + " in Snail grammar");
+            }
+        }
+    }
+
+    private static void addKeyword(String keyword, int type) {
+        char first = keyword.charAt(0);
+        char[][] words = KEYWORDS[first] == null ? new char[0][] : KEYWORDS[first];
+        int[] types = KEYWORD_TYPES[first] == null ? new int[0] : KEYWORD_TYPES[first];
+        words = Arrays.copyOf(words, words.length + 1);
+        types = Arrays.copyOf(types, types.length + 1);
+        words[words.length - 1] = keyword.toCharArray();
+        types[types.length - 1] = type;
+        KEYWORDS[first] = words;
+        KEYWORD_TYPES[first] = types;
+    }
+
+    private final CharStream input;
+    private final int length;
+    private final TokenBuffer tokens;
+    /**
+     * Текст текущего идентификатора для сравнения с ключевыми словами (идентификаторы только из ASCII)
+     */
+    private char[] word = new char[32];
+    /**
+     * Индекс текущей кодовой точки; совпадает с {@code input.index()}
+     */
+    private int position;
+    private int line = 1;
+    private int column;
+
+    private FastLexer(CharStream input) {
+        this.input = input;
+        this.length = input.size();
+        // Грубая оценка числа токенов, чтобы почти никогда не расширять буфер
+        this.tokens = new TokenBuffer(length / 4);
+    }
+
+    /**
+     * Разбивает текст потока на токены, начиная с первой кодовой точки; позиция потока сдвигается в конец
+     *
+     * @param input исходный код
+     * @return токены, завершённые EOF, и ошибки распознавания
+     */
+    public static TokenBuffer tokenize(CharStream input) {
+        input.seek(0);
+        FastLexer lexer = new FastLexer(input);
+        lexer.run();
+        return lexer.tokens;
+    }
+
+    private void run() {
+        while (position < length) {
+            int c = input.LA(1);
+            byte charClass = c < 128 ? CHAR_CLASS[c] : OTHER;
+            switch (charClass) {
+                case WHITESPACE -> {
+                    while (classOf(input.LA(1)) == WHITESPACE) {
+                        advance();
+                    }
+                }
+                case DIGIT -> {
+                    int start = position;
+                    while (classOf(input.LA(1)) == DIGIT) {
+                        consume();
+                    }
+                    emit(SnailLexer.NUMBER, start, line, column);
+                    column += position - start;
+                }
+                case IDENTIFIER_START -> {
+                    int start = position;
+                    int size = 0;
+                    for (int next = input.LA(1); classOf(next) == IDENTIFIER_START || classOf(next) == DIGIT; next = input.LA(1)) {
+                        if (size == word.length) {
+                            word = Arrays.copyOf(word, size * 2);
+                        }
+                        word[size++] = (char) next;
+                        consume();
+                    }
+                    emit(keywordType(size), start, line, column);
+                    column += position - start;
+                }
+                default -> lexOther(c);
+            }
+        }
+        tokens.add(Token.EOF, position, position - 1, line, column);
+    }
+
+    private void lexOther(int c) {
+        int start = position;
+        int startLine = line;
+        int startColumn = column;
+        int next = input.LA(2);
+        if (c == '/' && next == '/') {
+            // Строчный комментарий до конца строки, сам перевод строки не включается
+            for (int k = input.LA(1); k != IntStream.EOF && k != '\n' && k != '\r'; k = input.LA(1)) {
+                advance();
+            }
+            return;
+        }
+        if (c == '/' && next == '*') {
+            advance();
+            advance();
+            while (position < length) {
+                if (input.LA(1) == '*' && input.LA(2) == '/') {
+                    advance();
+                    advance();
+                    return;
+                }
+                advance();
+            }
+            // Незакрытый комментарий: как и ANTLR, откатываемся к самому длинному токену - оператору '/'
+            input.seek(start);
+            position = start;
+            line = startLine;
+            column = startColumn;
+        }
+        if (c == '"') {
+            advance();
+            for (int k = input.LA(1); k != IntStream.EOF; k = input.LA(1)) {
+                advance();
+                if (k == '"') {
+                    emit(SnailLexer.STRING, start, startLine, startColumn);
+                    return;
+                }
+            }
+            // Строка не закрыта: ANTLR поглощает всё до конца файла и сообщает об ошибке
+            error(start, startLine, startColumn);
+            return;
+        }
+        if (c < 128 && next >= 0 && next < 128 && DOUBLE[c << 7 | next] != 0) {
+            consume();
+            consume();
+            column += 2;
+            emit(DOUBLE[c << 7 | next], start, startLine, startColumn);
+            return;
+        }
+        if (c < 128 && SINGLE[c] != 0) {
+            consume();
+            column++;
+            emit(SINGLE[c], start, startLine, startColumn);
+            return;
+        }
+        // Нераспознанный символ. Если он начинает двухсимвольный оператор, ANTLR включает в ошибку
+        // и пропускает также следующий символ
+        advance();
+        if (c < 128 && DOUBLE_PREFIX[c] && position < length) {
+            advance();
+        }
+        error(start, startLine, startColumn);
+    }
+
+    private static byte classOf(int c) {
+        return c >= 0 && c < 128 ? CHAR_CLASS[c] : OTHER;
+    }
+
+    /**
+     * Тип ключевого слова из первых {@code size} символов {@link #word} или IDENTIFIER
+     */
+    private int keywordType(int size) {
+        char[][] words = KEYWORDS[word[0]];
+        if (words != null) {
+            for (int i = 0; i < words.length; i++) {
+                if (words[i].length == size && Arrays.equals(words[i], 0, size, word, 0, size)) {
+                    return KEYWORD_TYPES[word[0]][i];
+                }
+            }
+        }
+        return SnailLexer.IDENTIFIER;
+    }
+
+    /**
+     * Добавляет токен, заканчивающийся перед текущей позицией
+     *
+     * @param startIndex индекс первой кодовой точки токена
+     */
+    private void emit(int type, int startIndex, int startLine, int startColumn) {
+        tokens.add(type, startIndex, position - 1, startLine, startColumn);
+    }
+
+    private void error(int start, int startLine, int startColumn) {
+        tokens.addError(startLine, startColumn, input.getText(Interval.of(start, position - 1)));
+    }
+
+    /**
+     * Переходит к следующей кодовой точке без учёта строк и колонок
+     */
+    private void consume() {
+        input.consume();
+        position++;
+    }
+
+    /**
+     * Переходит к следующей кодовой точке, учитывая строки и колонки
+     */
+    private void advance() {
+        int c = input.LA(1);
+        consume();
+        if (c == '\n') {
+            line++;
+            column = 0;
+        } else {
+            column++;
+        }
+    }
+}
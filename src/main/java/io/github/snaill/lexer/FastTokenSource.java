@@ -0,0 +1,125 @@
+package io.github.snaill.lexer;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Адаптер {@link FastLexer} к {@link TokenSource}, чтобы подавать его токены в {@link io.github.snaill.parser.SnailParser}.
+ * <p>
+ * Текст разбивается на токены при первом запросе прямо из потока символов, без копирования; объекты {@link Token} создаются по одному
+ * по мере чтения парсером. Ошибки распознавания передаются слушателям в тот момент, когда парсер
+ * доходит до следующего за ними токена, с тем же текстом сообщения, что у сгенерированного лексера,
+ * поэтому порядок диагностик не меняется.
+ */
+public final class FastTokenSource implements TokenSource {
+
+    private final CharStream input;
+    private final Pair<TokenSource, CharStream> source;
+    private final List<ANTLRErrorListener> listeners = new ArrayList<>(List.of(ConsoleErrorListener.INSTANCE));
+    private TokenFactory<?> factory = CommonTokenFactory.DEFAULT;
+    private TokenBuffer tokens;
+    private int next;
+    private int nextError;
+
+    public FastTokenSource(CharStream input) {
+        this.input = input;
+        this.source = new Pair<>(this, input);
+    }
+
+    public void removeErrorListeners() {
+        listeners.clear();
+    }
+
+    public void addErrorListener(ANTLRErrorListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Токены в компактной форме (текст разбивается при первом обращении)
+     */
+    public TokenBuffer getTokens() {
+        if (tokens == null) {
+            tokens = FastLexer.tokenize(input);
+        }
+        return tokens;
+    }
+
+    @Override
+    public Token nextToken() {
+        TokenBuffer buffer = getTokens();
+        while (nextError < buffer.errorCount() && buffer.error(nextError).beforeToken() <= next) {
+            reportError(buffer.error(nextError++));
+        }
+        int index = Math.min(next, buffer.size() - 1);
+        if (next < buffer.size()) {
+            next++;
+        }
+        return factory.create(source, buffer.type(index), null, Token.DEFAULT_CHANNEL,
+                buffer.start(index), buffer.stop(index), buffer.line(index), buffer.column(index));
+    }
+
+    private void reportError(TokenBuffer.LexerError error) {
+        String message = "token recognition error at: '" + errorDisplay(error.text()) + "'";
+        for (ANTLRErrorListener listener : listeners) {
+            listener.syntaxError(null, null, error.line(), error.column(), message, null);
+        }
+    }
+
+    /**
+     * Экранирование как в {@link org.antlr.v4.runtime.Lexer#getErrorDisplay(String)}
+     */
+    private static String errorDisplay(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\n' -> sb.append("\\n");
+                case '\t' -> sb.append("\\t");
+                case '\r' -> sb.append("\\r");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public int getLine() {
+        TokenBuffer buffer = getTokens();
+        return buffer.line(Math.min(next, buffer.size() - 1));
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+        TokenBuffer buffer = getTokens();
+        return buffer.column(Math.min(next, buffer.size() - 1));
+    }
+
+    @Override
+    public CharStream getInputStream() {
+        return input;
+    }
+
+    @Override
+    public String getSourceName() {
+        return input.getSourceName();
+    }
+
+    @Override
+    public void setTokenFactory(TokenFactory<?> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public TokenFactory<?> getTokenFactory() {
+        return factory;
+    }
+}
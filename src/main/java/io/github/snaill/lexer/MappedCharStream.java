@@ -0,0 +1,367 @@
+package io.github.snaill.lexer;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+/**
+ * Поток символов над отображённым в память файлом в UTF-8.
+ * <p>
+ * {@link CharStreams#fromFileName(String)} декодирует весь файл в массив кодовых точек, то есть
+ * занимает в куче около четырёх байт на байт исходника. Здесь файл отображается через
+ * {@link FileChannel#map} и читается прямо из байтов. Если файл целиком ASCII (обычный случай),
+ * индекс символа совпадает со смещением байта. Иначе при открытии строится разреженная таблица
+ * смещений каждой {@value #CHECKPOINT_INTERVAL}-й кодовой точки, и позиционирование проходит
+ * от ближайшей отметки. Индексы, {@link #size()} и текст совпадают с {@link CharStreams#fromFileName(String)};
+ * файлы с некорректным UTF-8 открываются через него же, чтобы сохранить замену на U+FFFD.
+ * <p>
+ * Отображение освобождается только сборщиком мусора, когда на поток больше никто не ссылается,
+ * а поведение при обращении к байтам файла, который усекли после отображения, не определено
+ * (см. {@link java.nio.MappedByteBuffer}). Поэтому {@link #open} подходит только для однократного
+ * запуска компилятора; долгоживущие процессы (сервер компиляции, режим наблюдения), где файлы
+ * переписываются во время работы, читают файл в кучу через {@link #read} - по байту на байт
+ * исходника. Изменение файла, которое не привело к сбою, обнаруживает {@link #checkUnchanged()}.
+ */
+public final class MappedCharStream implements CharStream {
+
+    private static final int CHECKPOINT_SHIFT = 6;
+    private static final int CHECKPOINT_INTERVAL = 1 << CHECKPOINT_SHIFT;
+    /** Размер буфера декодера, как в {@link CharStreams} */
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private final ByteBuffer bytes;
+    private final String name;
+    /**
+     * Отображённый файл и время его изменения при отображении; null для потока над байтами в куче
+     */
+    private Path file;
+    private FileTime modified;
+    /**
+     * Число кодовых точек
+     */
+    private final int size;
+    /**
+     * Смещения кодовых точек с индексами, кратными {@link #CHECKPOINT_INTERVAL}; null для ASCII
+     */
+    private final int[] checkpoints;
+    /**
+     * Текущая кодовая точка и её смещение в байтах
+     */
+    private int index;
+    private int position;
+
+    private MappedCharStream(ByteBuffer bytes, String name, int size, int[] checkpoints) {
+        this.bytes = bytes;
+        this.name = name;
+        this.size = size;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Открывает файл в UTF-8
+     *
+     * @param file       Исходный файл
+     * @param sourceName Имя источника для сообщений
+     * @return Поток над отображённым файлом или, если файл не является корректным UTF-8,
+     * обычный поток {@link CharStreams#fromPath}
+     */
+    public static CharStream open(Path file, String sourceName) throws IOException {
+        ByteBuffer bytes;
+        FileTime modified = Files.getLastModifiedTime(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Source file is too large: " + length + " bytes");
+            }
+            // Отображение остаётся действительным после закрытия канала
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        MappedCharStream stream = of(bytes, sourceName);
+        if (stream == null) {
+            return CharStreams.fromPath(file, StandardCharsets.UTF_8);
+        }
+        stream.file = file;
+        stream.modified = modified;
+        return stream;
+    }
+
+    /**
+     * Проверяет, что отображённый файл не менялся с момента открытия: иначе прочитанный текст
+     * может смешивать старое и новое содержимое. Для потока над байтами в куче ничего не делает.
+     *
+     * @throws IOException если размер или время изменения файла отличаются от отображённых
+     */
+    public void checkUnchanged() throws IOException {
+        if (file == null) {
+            return;
+        }
+        long length = Files.size(file);
+        if (length != bytes.limit() || !Files.getLastModifiedTime(file).equals(modified)) {
+            throw new IOException("Source file " + file + " changed while it was read");
+        }
+    }
+
+    /**
+     * Читает файл в UTF-8 в кучу. Поток не зависит от последующих изменений файла.
+     *
+     * @param file       Исходный файл
+     * @param sourceName Имя источника для сообщений
+     * @return Поток над прочитанными байтами или, если файл не является корректным UTF-8,
+     * обычный поток с заменой некорректных последовательностей, как в {@link CharStreams#fromPath}
+     */
+    public static CharStream read(Path file, String sourceName) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        MappedCharStream stream = of(ByteBuffer.wrap(data), sourceName);
+        if (stream != null) {
+            return stream;
+        }
+        return CharStreams.fromChannel(Channels.newChannel(new ByteArrayInputStream(data)), StandardCharsets.UTF_8,
+                READ_BUFFER_SIZE, CodingErrorAction.REPLACE, sourceName, data.length);
+    }
+
+    /**
+     * Строит поток над байтами UTF-8
+     *
+     * @return Поток или null, если байты не являются корректным UTF-8
+     */
+    static MappedCharStream of(ByteBuffer bytes, String sourceName) {
+        int length = bytes.limit();
+        int i = 0;
+        while (i < length && bytes.get(i) >= 0) {
+            i++;
+        }
+        if (i == length) {
+            return new MappedCharStream(bytes, sourceName, length, null);
+        }
+
+        // Не-ASCII: проверяем UTF-8 и запоминаем смещение каждой 64-й кодовой точки
+        int[] checkpoints = new int[16];
+        int count = 0;
+        int position = 0;
+        while (position < length) {
+            if ((count & (CHECKPOINT_INTERVAL - 1)) == 0) {
+                int slot = count >>> CHECKPOINT_SHIFT;
+                if (slot == checkpoints.length) {
+                    checkpoints = Arrays.copyOf(checkpoints, slot * 2);
+                }
+                checkpoints[slot] = position;
+            }
+            int width = validWidth(bytes, position, length);
+            if (width < 0) {
+                return null;
+            }
+            position += width;
+            count++;
+        }
+        return new MappedCharStream(bytes, sourceName, count, checkpoints);
+    }
+
+    /**
+     * Длина корректной последовательности UTF-8, начинающейся в {@code position}, или -1
+     */
+    private static int validWidth(ByteBuffer bytes, int position, int length) {
+        int lead = bytes.get(position) & 0xFF;
+        if (lead < 0x80) {
+            return 1;
+        }
+        int width;
+        int min;
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            width = 2;
+            min = 0x80;
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            width = 3;
+            min = 0x800;
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            width = 4;
+            min = 0x10000;
+        } else {
+            return -1;
+        }
+        if (position + width > length) {
+            return -1;
+        }
+        int codePoint = lead & (0xFF >>> (width + 1));
+        for (int k = 1; k < width; k++) {
+            int b = bytes.get(position + k) & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                return -1;
+            }
+            codePoint = codePoint << 6 | (b & 0x3F);
+        }
+        if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return -1;
+        }
+        return width;
+    }
+
+    private static int width(int lead) {
+        if (lead < 0x80) {
+            return 1;
+        }
+        if (lead < 0xE0) {
+            return 2;
+        }
+        return lead < 0xF0 ? 3 : 4;
+    }
+
+    /**
+     * Декодирует кодовую точку по смещению уже проверенных байтов
+     */
+    private int decode(int position) {
+        int lead = bytes.get(position) & 0xFF;
+        if (lead < 0x80) {
+            return lead;
+        }
+        int width = width(lead);
+        int codePoint = lead & (0xFF >>> (width + 1));
+        for (int k = 1; k < width; k++) {
+            codePoint = codePoint << 6 | (bytes.get(position + k) & 0x3F);
+        }
+        return codePoint;
+    }
+
+    private int next(int position) {
+        return position + width(bytes.get(position) & 0xFF);
+    }
+
+    private int previous(int position) {
+        do {
+            position--;
+        } while ((bytes.get(position) & 0xC0) == 0x80);
+        return position;
+    }
+
+    /**
+     * Смещение в байтах кодовой точки с индексом {@code target}
+     */
+    private int offsetOf(int target) {
+        if (checkpoints == null) {
+            return target;
+        }
+        int from;
+        int at;
+        if (target >= index && target - index < CHECKPOINT_INTERVAL) {
+            from = index;
+            at = position;
+        } else {
+            from = target & -CHECKPOINT_INTERVAL;
+            at = checkpoints[target >>> CHECKPOINT_SHIFT];
+        }
+        for (; from < target; from++) {
+            at = next(at);
+        }
+        return at;
+    }
+
+    @Override
+    public void consume() {
+        if (index >= size) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        position = checkpoints == null ? position + 1 : next(position);
+        index++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        if (checkpoints == null) {
+            int target = index + (i > 0 ? i - 1 : i);
+            return target < 0 || target >= size ? IntStream.EOF : bytes.get(target);
+        }
+        if (i > 0) {
+            if (index + i - 1 >= size) {
+                return IntStream.EOF;
+            }
+            int at = position;
+            for (int k = 1; k < i; k++) {
+                at = next(at);
+            }
+            return decode(at);
+        }
+        if (index + i < 0) {
+            return IntStream.EOF;
+        }
+        int at = position;
+        for (int k = 0; k > i; k--) {
+            at = previous(at);
+        }
+        return decode(at);
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public void seek(int index) {
+        int target = Math.max(0, Math.min(index, size));
+        position = target == size && checkpoints != null ? bytes.limit() : offsetOf(target);
+        this.index = target;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getSourceName() {
+        return name == null || name.isEmpty() ? UNKNOWN_SOURCE_NAME : name;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = Math.min(interval.a, size);
+        int stop = Math.min(interval.b, size - 1);
+        if (stop < start) {
+            return "";
+        }
+        if (checkpoints == null) {
+            byte[] text = new byte[stop - start + 1];
+            bytes.get(start, text);
+            return new String(text, StandardCharsets.ISO_8859_1);
+        }
+        int from = offsetOf(start);
+        int to = from;
+        for (int k = start; k <= stop; k++) {
+            to = next(to);
+        }
+        byte[] text = new byte[to - from];
+        bytes.get(from, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return getText(Interval.of(0, size - 1));
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.snaill.lexer;
+
+import java.util.Arrays;
+
+/**
+ * Компактное хранилище токенов: пять целых чисел на токен без отдельных объектов.
+ * <p>
+ * Позиции задаются в кодовых точках, как у {@link org.antlr.v4.runtime.CharStream}, поэтому
+ * токен можно превратить в {@link org.antlr.v4.runtime.CommonToken} над тем же потоком символов.
+ * Ошибки лексического анализа хранятся рядом и привязаны к индексу токена, перед которым
+ * они обнаружены. Последний токен всегда EOF.
+ */
+public final class TokenBuffer {
+
+    private static final int FIELDS = 5;
+    private static final int TYPE = 0;
+    private static final int START = 1;
+    private static final int STOP = 2;
+    private static final int LINE = 3;
+    private static final int COLUMN = 4;
+
+    /**
+     * Ошибка лексического анализа
+     *
+     * @param beforeToken индекс токена, перед которым обнаружена ошибка
+     * @param line        строка начала нераспознанного текста
+     * @param column      позиция в строке (в кодовых точках)
+     * @param text        нераспознанный текст
+     */
+    public record LexerError(int beforeToken, int line, int column, String text) {
+    }
+
+    private int[] data;
+    private int size;
+    private LexerError[] errors = new LexerError[0];
+    private int errorCount;
+
+    TokenBuffer(int expectedTokens) {
+        this.data = new int[Math.max(expectedTokens, 16) * FIELDS];
+    }
+
+    void add(int type, int start, int stop, int line, int column) {
+        int offset = size * FIELDS;
+        if (offset + FIELDS > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[offset + TYPE] = type;
+        data[offset + START] = start;
+        data[offset + STOP] = stop;
+        data[offset + LINE] = line;
+        data[offset + COLUMN] = column;
+        size++;
+    }
+
+    void addError(int line, int column, String text) {
+        if (errorCount == errors.length) {
+            errors = Arrays.copyOf(errors, Math.max(4, errorCount * 2));
+        }
+        errors[errorCount++] = new LexerError(size, line, column, text);
+    }
+
+    /**
+     * Число токенов, включая EOF
+     */
+    public int size() {
+        return size;
+    }
+
+    public int type(int index) {
+        return data[index * FIELDS + TYPE];
+    }
+
+    public int start(int index) {
+        return data[index * FIELDS + START];
+    }
+
+    public int stop(int index) {
+        return data[index * FIELDS + STOP];
+    }
+
+    public int line(int index) {
+        return data[index * FIELDS + LINE];
+    }
+
+    public int column(int index) {
+        return data[index * FIELDS + COLUMN];
+    }
+
+    public int errorCount() {
+        return errorCount;
+    }
+
+    public LexerError error(int index) {
+        return errors[index];
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.snaill.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.Configurator;
+import ch.qos.logback.classic.spi.ConfiguratorRank;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.ConsoleAppender;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.spi.ContextAwareBase;
+
+/**
+ * Программная конфигурация logback по умолчанию: консоль и файл {@code trail.log}, уровень INFO.
+ * <p>
+ * Заменяет разбор XML-конфигурации при запуске, который занимает заметную часть холодного старта
+ * коротких компиляций. Файл журнала открывается только при первой записи, а пишется в фоновом
+ * потоке из очереди в памяти; очередь дописывается при остановке JVM. Если задан
+ * {@code -Dlogback.configurationFile} или на classpath есть {@code logback-test.xml} или
+ * {@code logback.xml}, конфигурация передаётся стандартному механизму logback.
+ */
+@ConfiguratorRank(ConfiguratorRank.CUSTOM_HIGH_PRIORITY)
+public class TrailLogConfigurator extends ContextAwareBase implements Configurator {
+
+    static final String LOG_FILE = "trail.log";
+    private static final String CONSOLE_PATTERN = "%d{HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n";
+    private static final String FILE_PATTERN = "%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n";
+    private static final int ASYNC_QUEUE_SIZE = 1024;
+
+    @Override
+    public ExecutionStatus configure(LoggerContext loggerContext) {
+        if (hasExplicitConfiguration()) {
+            return ExecutionStatus.INVOKE_NEXT_IF_ANY;
+        }
+        ConsoleAppender<ILoggingEvent> console = new ConsoleAppender<>();
+        console.setContext(loggerContext);
+        console.setName("CONSOLE");
+        console.setEncoder(encoder(loggerContext, CONSOLE_PATTERN));
+        console.start();
+
+        LazyFileAppender file = new LazyFileAppender(LOG_FILE);
+        file.setContext(loggerContext);
+        file.setName("FILE");
+        file.start();
+
+        AsyncAppender asyncFile = new AsyncAppender();
+        asyncFile.setContext(loggerContext);
+        asyncFile.setName("ASYNC_FILE");
+        asyncFile.setQueueSize(ASYNC_QUEUE_SIZE);
+        // Сообщения уровня INFO не отбрасываются при заполнении очереди
+        asyncFile.setDiscardingThreshold(0);
+        asyncFile.addAppender(file);
+        asyncFile.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(loggerContext::stop, "trail-log-flush"));
+
+        Logger root = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.INFO);
+        root.addAppender(console);
+        root.addAppender(asyncFile);
+        loggerContext.getLogger("io.github.snaill").setLevel(Level.INFO);
+        return ExecutionStatus.DO_NOT_INVOKE_NEXT_IF_ANY;
+    }
+
+    private static boolean hasExplicitConfiguration() {
+        if (System.getProperty("logback.configurationFile") != null) {
+            return true;
+        }
+        ClassLoader loader = TrailLogConfigurator.class.getClassLoader();
+        return loader.getResource("logback-test.xml") != null || loader.getResource("logback.xml") != null;
+    }
+
+    private static PatternLayoutEncoder encoder(LoggerContext loggerContext, String pattern) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern(pattern);
+        encoder.start();
+        return encoder;
+    }
+
+    /**
+     * Файловый аппендер, который создаёт файл журнала только при первом событии
+     */
+    private static final class LazyFileAppender extends AppenderBase<ILoggingEvent> {
+        private final String fileName;
+        private FileAppender<ILoggingEvent> delegate;
+
+        LazyFileAppender(String fileName) {
+            this.fileName = fileName;
+        }
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            // doAppend синхронизирован, поэтому делегат создаётся один раз
+            if (delegate == null) {
+                FileAppender<ILoggingEvent> appender = new FileAppender<>();
+                appender.setContext(getContext());
+                appender.setName(getName());
+                appender.setFile(fileName);
+                appender.setAppend(true);
+                appender.setEncoder(encoder((LoggerContext) getContext(), FILE_PATTERN));
+                appender.start();
+                delegate = appender;
+            }
+            delegate.doAppend(event);
+        }
+
+        @Override
+        public void stop() {
+            if (delegate != null) {
+                delegate.stop();
+            }
+            super.stop();
+        }
+    }
+}
@@ -1,20 +1,92 @@
 package io.github.snaill.result;
 
-public record CompilationError(ErrorType type, String before, String error, String after) implements Result {
+import java.util.Objects;
+
+/**
+ * Ошибка компиляции
+ * <p>
+ * Фрагмент исходного кода можно передать лениво (см. {@link io.github.snaill.ast.SourceSnippet}):
+ * он превращается в текст при первом обращении к {@link #before()}, обычно при выводе ошибки.
+ * Равенство ошибок определяется текстом фрагмента, а не объектом, который его строит.
+ */
+public final class CompilationError implements Result {
 
     private static final String NEW_LINE = System.lineSeparator();
     private static final String SEPARATION = "=".repeat(32) + NEW_LINE;
 
+    private final ErrorType type;
+    private final CharSequence snippet;
+    private final String error;
+    private final String after;
+    private String before;
+
+    public CompilationError(ErrorType type, String before, String error, String after) {
+        this.type = type;
+        this.snippet = null;
+        this.before = before;
+        this.error = error;
+        this.after = after;
+    }
+
+    /**
+     * @param snippet Фрагмент исходного кода, который строится при первом обращении к {@link #before()}
+     */
+    public CompilationError(ErrorType type, CharSequence snippet, String error, String after) {
+        this.type = type;
+        this.snippet = snippet;
+        this.before = snippet instanceof String text ? text : null;
+        this.error = error;
+        this.after = after;
+    }
+
+    public ErrorType type() {
+        return type;
+    }
+
+    /**
+     * Фрагмент исходного кода
+     */
+    public String before() {
+        String text = before;
+        if (text == null && snippet != null) {
+            text = snippet.toString();
+            before = text;
+        }
+        return text;
+    }
+
+    public String error() {
+        return error;
+    }
+
+    public String after() {
+        return after;
+    }
+
     @Override
     public String toString() {
         return String.format(
                 "ERROR:%s%s%s",
-                before,
+                before(),
                 type == ErrorType.DEAD_CODE ? error + ";DEAD_CODE================================" : error,
                 after.isEmpty() ? "" : ";" + after + ";================================"
         );
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof CompilationError other
+                && type == other.type
+                && Objects.equals(before(), other.before())
+                && Objects.equals(error, other.error)
+                && Objects.equals(after, other.after);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, before(), error, after);
+    }
+
     @Override
     public boolean isCritical() {
         return true;
@@ -0,0 +1,30 @@
+package io.github.snaill.result;
+
+import java.util.List;
+
+/**
+ * Результат компиляции в памяти.
+ *
+ * @param bytecode байткод SnailVM или null, если компиляция завершилась ошибкой
+ * @param errors   ошибки компиляции (пусто при успехе)
+ * @param warnings предупреждения, в том числе при успешной компиляции
+ */
+public record CompilationResult(byte[] bytecode, List<CompilationError> errors, List<Warning> warnings) {
+
+    public CompilationResult {
+        errors = List.copyOf(errors);
+        warnings = List.copyOf(warnings);
+    }
+
+    public static CompilationResult success(byte[] bytecode, List<Warning> warnings) {
+        return new CompilationResult(bytecode, List.of(), warnings);
+    }
+
+    public static CompilationResult failure(List<CompilationError> errors, List<Warning> warnings) {
+        return new CompilationResult(null, errors, warnings);
+    }
+
+    public boolean isSuccess() {
+        return bytecode != null && errors.isEmpty();
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.snaill.stats;
+
+import io.github.snaill.ast.Node;
+import io.github.snaill.bytecode.BytecodeContext;
+import io.github.snaill.bytecode.BytecodeEmitter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Статистика одной компиляции для {@code --emit-stats}: число узлов AST по классам,
+ * размер пула констант по типам, число глобальных переменных, размер байткода и число
+ * локальных слотов каждой функции, размер глобального кода и время фаз.
+ * <p>
+ * Собирается после успешной генерации байткода; все величины берутся из уже построенных
+ * структур, повторной компиляции не требуется.
+ */
+public record CompilationStats(
+        String file,
+        Map<String, Integer> nodeCounts,
+        Map<String, Integer> constantCounts,
+        int globalCount,
+        List<BytecodeEmitter.FunctionStats> functions,
+        int globalInitializerSize,
+        int bytecodeSize,
+        List<PhaseTimer.PhaseTiming> phases) {
+
+    /**
+     * Собирает статистику по корню AST и отработавшему генератору байткода
+     *
+     * @param file         исходный файл
+     * @param root         корень AST
+     * @param emitter      генератор, для которого уже вызван {@link BytecodeEmitter#emit()}
+     * @param bytecodeSize размер итогового байткода в байтах
+     * @param timer        замер фаз компиляции
+     */
+    public static CompilationStats collect(String file, Node root, BytecodeEmitter emitter, int bytecodeSize, PhaseTimer timer) {
+        BytecodeContext context = emitter.getContext();
+        Map<String, Integer> constants = new TreeMap<>();
+        for (Object constant : context.getConstants()) {
+            constants.merge(constantKind(constant), 1, Integer::sum);
+        }
+        return new CompilationStats(
+                file,
+                countNodes(root),
+                constants,
+                context.getGlobalVariables().size(),
+                List.copyOf(emitter.getFunctionStats()),
+                emitter.getGlobalInitializerSize(),
+                bytecodeSize,
+                List.copyOf(timer.getTimings()));
+    }
+
+    private static String constantKind(Object constant) {
+        // Соответствует записи пула в BytecodeEmitter.writeConstantPool
+        if (constant instanceof Long) {
+            return "i32";
+        } else if (constant instanceof String) {
+            return "string";
+        }
+        return constant == null ? "null" : constant.getClass().getSimpleName();
+    }
+
+    private static Map<String, Integer> countNodes(Node root) {
+        Map<String, Integer> counts = new TreeMap<>();
+        // Обход без рекурсии: глубина AST ограничена только исходным кодом
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            counts.merge(node.getClass().getSimpleName(), 1, Integer::sum);
+            for (Node child : node.getChildren()) {
+                if (child != null) {
+                    stack.push(child);
+                }
+            }
+        }
+        return counts;
+    }
+
+    public int nodeCount() {
+        return nodeCounts.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    public int constantCount() {
+        return constantCounts.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Один JSON-объект без переводов строк
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"file\":").append(Json.quote(file));
+        sb.append(",\"ast\":{\"nodes\":").append(nodeCount()).append(",\"byClass\":");
+        appendCounts(sb, nodeCounts);
+        sb.append("},\"constantPool\":{\"size\":").append(constantCount()).append(",\"byType\":");
+        appendCounts(sb, constantCounts);
+        sb.append("},\"globals\":").append(globalCount);
+        sb.append(",\"globalInitializerBytes\":").append(globalInitializerSize);
+        sb.append(",\"bytecodeBytes\":").append(bytecodeSize);
+        sb.append(",\"functions\":[");
+        for (int i = 0; i < functions.size(); i++) {
+            BytecodeEmitter.FunctionStats function = functions.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"name\":").append(Json.quote(function.name()))
+                    .append(",\"bytecodeBytes\":").append(function.bytecodeSize())
+                    .append(",\"localSlots\":").append(function.localCount())
+                    .append('}');
+        }
+        sb.append("],\"phases\":[");
+        for (int i = 0; i < phases.size(); i++) {
+            PhaseTimer.PhaseTiming timing = phases.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"name\":").append(Json.quote(timing.name()))
+                    .append(",\"wallNanos\":").append(timing.wallNanos())
+                    .append(",\"cpuNanos\":").append(timing.cpuNanos())
+                    .append(",\"allocatedBytes\":").append(timing.allocatedBytes())
+                    .append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static void appendCounts(StringBuilder sb, Map<String, Integer> counts) {
+        sb.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append(Json.quote(entry.getKey())).append(':').append(entry.getValue());
+        }
+        sb.append('}');
+    }
+}
@@ -0,0 +1,232 @@
+package io.github.snaill.stats;
+
+import io.github.snaill.jfr.CompilerEvents;
+import io.github.snaill.jfr.CompilerPhaseEvent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Замер фаз компиляции: время по часам, процессорное время потока и объём памяти,
+ * выделенной потоком за фазу.
+ * <p>
+ * Экземпляр принадлежит одной компиляции и используется из одного потока.
+ * Независимо от замера каждая фаза записывается как {@link CompilerPhaseEvent}, если событие
+ * включено в записи JFR; {@link #untimed(String)} и {@link #disabled()} сами ничего не измеряют.
+ * <pre>{@code
+ * ProgramContext tree = timer.time("parse", parser::program);
+ * timer.run("check", () -> check.check(ast));
+ * }</pre>
+ */
+public class PhaseTimer {
+
+    /**
+     * Результат замера одной фазы. Значения -1 означают, что JVM не поддерживает соответствующий счётчик.
+     */
+    public record PhaseTiming(String name, long wallNanos, long cpuNanos, long allocatedBytes) {
+    }
+
+    /**
+     * Открытая фаза; закрытие фиксирует результат
+     */
+    public interface Phase extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Тело фазы, возвращающее результат
+     */
+    @FunctionalInterface
+    public interface Action<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Тело фазы без результата
+     */
+    @FunctionalInterface
+    public interface Task<E extends Exception> {
+        void run() throws E;
+    }
+
+    private static final Phase NO_PHASE = () -> {
+    };
+
+    private static final PhaseTimer DISABLED = new PhaseTimer(null, false);
+
+    private final String file;
+    private final boolean enabled;
+    private final List<PhaseTiming> timings = new ArrayList<>();
+
+    private PhaseTimer(String file, boolean enabled) {
+        this.file = file;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Замер фаз компиляции файла
+     */
+    public static PhaseTimer create(String file) {
+        return new PhaseTimer(file, true);
+    }
+
+    /**
+     * Без замера: только события JFR с именем файла
+     */
+    public static PhaseTimer untimed(String file) {
+        return new PhaseTimer(file, false);
+    }
+
+    /**
+     * Без замера и без имени файла
+     */
+    public static PhaseTimer disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Выполняет {@code action} как фазу с указанным именем; фаза закрывается и при исключении
+     *
+     * @return Результат {@code action}
+     */
+    public <T, E extends Exception> T time(String name, Action<T, E> action) throws E {
+        Phase phase = start(name);
+        try {
+            return action.run();
+        } finally {
+            phase.close();
+        }
+    }
+
+    /**
+     * Выполняет {@code task} как фазу с указанным именем; фаза закрывается и при исключении
+     */
+    public <E extends Exception> void run(String name, Task<E> task) throws E {
+        Phase phase = start(name);
+        try {
+            task.run();
+        } finally {
+            phase.close();
+        }
+    }
+
+    /**
+     * Начинает фазу с указанным именем; её нужно закрыть в блоке {@code finally}.
+     * Для тела фазы, которое бросает исключения не более одного проверяемого типа,
+     * удобнее {@link #time(String, Action)} и {@link #run(String, Task)}
+     */
+    public Phase start(String name) {
+        CompilerPhaseEvent event = CompilerEvents.isRecording() ? new CompilerPhaseEvent() : null;
+        if (!enabled) {
+            if (event == null || !event.isEnabled()) {
+                return NO_PHASE;
+            }
+            event.begin();
+            return () -> commit(event, name);
+        }
+        if (event != null) {
+            event.begin();
+        }
+        long wallStart = System.nanoTime();
+        long cpuStart = Counters.cpuTime();
+        long allocatedStart = Counters.allocatedBytes();
+        return () -> {
+            timings.add(new PhaseTiming(
+                    name,
+                    System.nanoTime() - wallStart,
+                    difference(cpuStart, Counters.cpuTime()),
+                    difference(allocatedStart, Counters.allocatedBytes())));
+            commit(event, name);
+        };
+    }
+
+    private void commit(CompilerPhaseEvent event, String name) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file;
+            event.phase = name;
+            event.commit();
+        }
+    }
+
+    public List<PhaseTiming> getTimings() {
+        return Collections.unmodifiableList(timings);
+    }
+
+    private static long difference(long start, long end) {
+        return start < 0 || end < 0 ? -1 : end - start;
+    }
+
+    /**
+     * Человекочитаемая таблица фаз
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder("Phase timings for ").append(file).append(':').append(System.lineSeparator());
+        sb.append(String.format("  %-16s %10s %10s %12s%n", "phase", "wall ms", "cpu ms", "alloc KB"));
+        long wall = 0, cpu = 0, allocated = 0;
+        for (PhaseTiming timing : timings) {
+            sb.append(formatRow(timing.name(), timing.wallNanos(), timing.cpuNanos(), timing.allocatedBytes()));
+            wall += timing.wallNanos();
+            cpu = cpu < 0 || timing.cpuNanos() < 0 ? -1 : cpu + timing.cpuNanos();
+            allocated = allocated < 0 || timing.allocatedBytes() < 0 ? -1 : allocated + timing.allocatedBytes();
+        }
+        sb.append(formatRow("total", wall, cpu, allocated));
+        return sb.toString();
+    }
+
+    private static String formatRow(String name, long wallNanos, long cpuNanos, long allocatedBytes) {
+        return String.format("  %-16s %10.3f %10s %12s%n", name, wallNanos / 1e6,
+                cpuNanos < 0 ? "n/a" : String.format("%.3f", cpuNanos / 1e6),
+                allocatedBytes < 0 ? "n/a" : String.format("%.1f", allocatedBytes / 1024.0));
+    }
+
+    /**
+     * Машиночитаемое представление: один JSON-объект в строке
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"file\":").append(Json.quote(file)).append(",\"phases\":[");
+        for (int i = 0; i < timings.size(); i++) {
+            PhaseTiming timing = timings.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"name\":").append(Json.quote(timing.name()))
+                    .append(",\"wallNanos\":").append(timing.wallNanos())
+                    .append(",\"cpuNanos\":").append(timing.cpuNanos())
+                    .append(",\"allocatedBytes\":").append(timing.allocatedBytes())
+                    .append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Счётчики потока; JMX загружается только при первом включённом замере
+     */
+    private static final class Counters {
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+        private static final boolean CPU_SUPPORTED = THREADS.isCurrentThreadCpuTimeSupported();
+        private static final com.sun.management.ThreadMXBean ALLOCATION =
+                THREADS instanceof com.sun.management.ThreadMXBean sun && sun.isThreadAllocatedMemorySupported()
+                        ? sun : null;
+
+        static long cpuTime() {
+            return CPU_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : -1;
+        }
+
+        static long allocatedBytes() {
+            return ALLOCATION != null && ALLOCATION.isThreadAllocatedMemoryEnabled()
+                    ? ALLOCATION.getCurrentThreadAllocatedBytes() : -1;
+        }
+    }
+}
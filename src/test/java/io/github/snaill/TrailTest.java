@@ -1,20 +1,67 @@
 package io.github.snaill;
 
 import io.github.snaill.ast.*;
+import io.github.snaill.bytecode.BytecodeConstants;
+import io.github.snaill.bytecode.BytecodeContext;
 import io.github.snaill.bytecode.BytecodeEmitter;
+import io.github.snaill.bytecode.BytecodeGenerator;
+import io.github.snaill.bytecode.FunctionCodeCache;
+import io.github.snaill.daemon.CompileDaemon;
+import io.github.snaill.daemon.DaemonClient;
+import io.github.snaill.daemon.DaemonProtocol;
 import io.github.snaill.exception.FailedCheckException;
+import io.github.snaill.jfr.CompilerTrace;
+import io.github.snaill.lexer.FastTokenSource;
+import io.github.snaill.lexer.MappedCharStream;
+import io.github.snaill.lexer.TokenBuffer;
+import io.github.snaill.parser.SnailLexer;
+import io.github.snaill.parser.SnailParser;
+import io.github.snaill.result.CompilationError;
+import io.github.snaill.result.CompilationResult;
+import io.github.snaill.result.ErrorType;
+import io.github.snaill.stats.PhaseTimer;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import picocli.CommandLine;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Stream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -198,6 +245,876 @@ public class TrailTest {
         // Пример (потребует @BeforeEach/@AfterEach для управления потоками или локального перенаправления):
     }
 
+    /**
+     * Пакетная компиляция директории: корректные файлы компилируются, ошибка в одном файле даёт код возврата 1.
+     */
+    @Test
+    public void testBatchCompilation() throws IOException {
+        Path batchDir = Files.createDirectories(tempDir.resolve("batch"));
+        for (String name : List.of("array.sn", "for.sn", "type_errors.sn")) {
+            Files.copy(SAMPLES_DIR.resolve(name), batchDir.resolve(name));
+        }
+        int exitCode = new CommandLine(new Trail()).execute("-j", "2", batchDir.toString());
+        assertEquals(1, exitCode, "Expected exit code 1 when one of the files has errors");
+        assertTrue(Files.exists(batchDir.resolve("array.snail")));
+        assertTrue(Files.exists(batchDir.resolve("for.snail")));
+        assertFalse(Files.exists(batchDir.resolve("type_errors.snail")));
+    }
+
+    /**
+     * Повторная компиляция неизменённого файла берёт байткод из кэша.
+     */
+    @Test
+    public void testCompilationCache() throws IOException {
+        Path cacheDir = tempDir.resolve("cache");
+        Path first = tempDir.resolve("cached_first.snail");
+        Path second = tempDir.resolve("cached_second.snail");
+        String source = SAMPLES_DIR.resolve("for_complex.sn").toString();
+        assertEquals(0, new CommandLine(new Trail()).execute("-f", source, "-o", first.toString(), "--cache-dir", cacheDir.toString(), "--time-phases=json"));
+        try (Stream<Path> entries = Files.list(cacheDir)) {
+            assertEquals(1, entries.count());
+        }
+        err.flush();
+        String missReport = Files.readString(errFile);
+        assertTrue(missReport.contains("{\"name\":\"check\""), missReport);
+        assertEquals(0, new CommandLine(new Trail()).execute("-f", source, "-o", second.toString(), "--cache-dir", cacheDir.toString(), "--time-phases=json"));
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+        // Попадание в кэш: разбор, проверки и генерация пропущены, выполняется только запись
+        err.flush();
+        String hitReport = Files.readString(errFile).substring(missReport.length());
+        assertTrue(hitReport.contains("{\"name\":\"write\""), hitReport);
+        for (String phase : List.of("read", "parse", "check", "emit")) {
+            assertFalse(hitReport.contains("{\"name\":\"" + phase + "\""), "Phase " + phase + " ran on a cache hit: " + hitReport);
+        }
+
+        // Попадание выводит те же предупреждения, что и компиляция без кэша
+        Path warned = tempDir.resolve("cached_warnings.sn");
+        Files.writeString(warned, "fn helper() -> void {\n    let unused: i32 = ;\n}\n");
+        List<String> reports = new ArrayList<>();
+        for (int run = 0; run < 2; run++) {
+            err.flush();
+            int before = Files.readString(errFile).length();
+            assertEquals(0, new CommandLine(new Trail()).execute("-f", warned.toString(), "-o", tempDir.resolve("cached_warnings.snail").toString(),
+                    "--cache-dir", cacheDir.toString()));
+            err.flush();
+            reports.add(Files.readString(errFile).substring(before));
+        }
+        assertTrue(reports.getFirst().contains("функция main не найдена"), reports.getFirst());
+        assertTrue(reports.getFirst().contains("line 2:22"), reports.getFirst());
+        assertEquals(reports.getFirst(), reports.get(1));
+    }
+
+    /**
+     * Байткод функций из кэша совпадает с заново сгенерированным, в том числе после сдвига пула констант.
+     */
+    @Test
+    public void testFunctionCodeCache() throws IOException, FailedCheckException {
+        String functions = """
+                fn twice(x: i32) -> i32 { return x * 2 + 7; }
+                fn main() -> void { println(twice(5)); }
+                """;
+        Path original = tempDir.resolve("fcache_original.sn");
+        Path shifted = tempDir.resolve("fcache_shifted.sn");
+        Files.writeString(original, functions);
+        Files.writeString(shifted, "let g: i32 = 42;\nlet s: string = \"s\";\n" + functions);
+
+        FunctionCodeCache cache = new FunctionCodeCache();
+        for (Path source : List.of(original, original, shifted)) {
+            byte[] expected = new BytecodeEmitter(Trail.build(source.toString()).root()).emit();
+            byte[] actual = new BytecodeEmitter(Trail.build(source.toString()).root(), cache).emit();
+            assertArrayEquals(expected, actual, "Cached bytecode differs for " + source);
+        }
+        assertEquals(4, cache.getHits(), "Both functions should be reused on the second and third build");
+
+        // Тип глобальной переменной входит в ключ: функция, которая её читает, генерируется заново
+        Path retyped = tempDir.resolve("fcache_retyped.sn");
+        Files.writeString(retyped, "let g: string = \"s\";\nlet s: string = \"s\";\n"
+                + functions.replace("println(twice(5));", "println(twice(5)); println(g);"));
+        Path reading = tempDir.resolve("fcache_global.sn");
+        Files.writeString(reading, Files.readString(shifted).replace("println(twice(5));", "println(twice(5)); println(g);"));
+        for (Path source : List.of(reading, retyped)) {
+            byte[] expected = new BytecodeEmitter(Trail.build(source.toString()).root()).emit();
+            byte[] actual = new BytecodeEmitter(Trail.build(source.toString()).root(), cache).emit();
+            assertArrayEquals(expected, actual, "Cached bytecode differs for " + source);
+        }
+        assertEquals(6, cache.getHits(), "Only twice should be reused after main started reading g");
+    }
+
+    /**
+     * Режим наблюдения компилирует директорию при запуске и перекомпилирует изменённый файл.
+     */
+    @Test
+    public void testWatchMode() throws Exception {
+        Path watchDir = Files.createDirectories(tempDir.resolve("watch"));
+        Path source = watchDir.resolve("watched.sn");
+        Path output = watchDir.resolve("watched.snail");
+        Files.copy(SAMPLES_DIR.resolve("only_main.sn"), source);
+
+        Trail trail = new Trail();
+        BatchCompiler batch = new BatchCompiler(1, trail::compileFile);
+        try (WatchCompiler watcher = new WatchCompiler(watchDir, batch, 50, System.out, System.err)) {
+            Thread thread = new Thread(() -> {
+                try {
+                    watcher.run();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            assertTrue(waitFor(() -> Files.exists(output)), "Initial build did not produce " + output);
+
+            Files.delete(output);
+            Files.copy(SAMPLES_DIR.resolve("for.sn"), source, StandardCopyOption.REPLACE_EXISTING);
+            assertTrue(waitFor(() -> Files.exists(output)), "Changed file was not recompiled");
+
+            watcher.close();
+            thread.join(5000);
+        }
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 200 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(50);
+        }
+        return condition.getAsBoolean();
+    }
+
+    /**
+     * Сервер компиляции собирает файл так же, как запуск в текущем процессе, и сообщает ошибки клиенту.
+     */
+    @Test
+    public void testDaemonRoundTrip() throws Exception {
+        Path socket = tempDir.resolve("daemon.sock");
+        Path source = SAMPLES_DIR.resolve("func_call.sn").toAbsolutePath();
+        Path expected = tempDir.resolve("daemon_expected.snail");
+        assertEquals(0, new CommandLine(new Trail()).execute("-f", source.toString(), "-o", expected.toString()));
+        assertEquals(socket, DaemonClient.socketPath(new String[]{"-f", source.toString(), "--socket", socket.toString()}));
+        assertEquals(socket, DaemonClient.socketPath(new String[]{"--socket=" + socket, "-f", source.toString()}));
+
+        try (CompileDaemon daemon = new CompileDaemon(socket)) {
+            Thread thread = new Thread(() -> {
+                try {
+                    daemon.serve();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            thread.start();
+            assertTrue(waitFor(daemon::isListening), "Daemon did not bind " + socket);
+            assertTrue(Files.exists(socket));
+
+            // Относительный путь вывода разрешается от рабочей директории клиента
+            DaemonProtocol.Response response = DaemonClient.send(socket, new DaemonProtocol.Request(tempDir.toString(),
+                    List.of("-f", source.toString(), "-o", "daemon.snail", "--socket", socket.toString())));
+            assertEquals(0, response.exitCode(), new String(response.err(), StandardCharsets.UTF_8));
+            assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(tempDir.resolve("daemon.snail")));
+
+            response = DaemonClient.send(socket, new DaemonProtocol.Request(tempDir.toString(),
+                    List.of("-f", "missing.sn", "-o", "missing.snail")));
+            assertNotEquals(0, response.exitCode());
+
+            // Диагностики запроса возвращаются клиенту, а не печатаются сервером
+            Path dead = tempDir.resolve("daemon_dead.sn");
+            Files.writeString(dead, "fn main() -> void {\n    return;\n    println(1);\n}\n");
+            response = DaemonClient.send(socket, new DaemonProtocol.Request(tempDir.toString(),
+                    List.of("-f", dead.toString(), "-o", "dead.snail")));
+            assertNotEquals(0, response.exitCode());
+            assertTrue(new String(response.err(), StandardCharsets.UTF_8).contains("Statement is unreachable."));
+
+            // Режим наблюдения не завершается, поэтому сервер отклоняет его вместо зависания клиента
+            for (List<String> watch : List.of(List.of("--watch", tempDir.toString()), List.of("--watch=" + tempDir))) {
+                DaemonProtocol.Response rejected = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                        () -> DaemonClient.send(socket, new DaemonProtocol.Request(tempDir.toString(), watch)));
+                assertEquals(2, rejected.exitCode());
+                assertTrue(new String(rejected.err(), StandardCharsets.UTF_8).contains("--watch"));
+            }
+
+            daemon.close();
+            thread.join(5000);
+        }
+        assertFalse(Files.exists(socket));
+        assertThrows(IOException.class, () -> DaemonClient.send(socket, new DaemonProtocol.Request(tempDir.toString(), List.of())));
+
+        // Число аргументов из сокета ограничено
+        ByteArrayOutputStream oversized = new ByteArrayOutputStream();
+        DataOutputStream request = new DataOutputStream(oversized);
+        request.writeUTF(tempDir.toString());
+        request.writeInt(DaemonProtocol.MAX_ARGUMENTS + 1);
+        assertThrows(IOException.class, () -> DaemonProtocol.readRequest(
+                new DataInputStream(new ByteArrayInputStream(oversized.toByteArray()))));
+    }
+
+    /**
+     * Диагностики командной строки: синтаксические ошибки в формате ANTLR, ошибки построения AST
+     * и мёртвого кода - в поток ошибок, ошибки генерации - с префиксом Bytecode Emitter Error.
+     */
+    @Test
+    public void testCliDiagnostics() throws IOException {
+        String nl = System.lineSeparator();
+        record Case(String name, String source, int exitCode, String expectedErr) {
+        }
+        List<Case> cases = List.of(
+                new Case("cli_syntax.sn", "fn main() -> void {\n    let x: i32 = ;\n}\n", 0,
+                        "line 2:17 mismatched input ';' expecting {'(', '-', '!', 'true', 'false', '[', NUMBER, STRING, IDENTIFIER}" + nl),
+                new Case("cli_redeclared.sn", "fn main() -> void {\n    let x: i32 = 1;\n    let x: i32 = 2;\n    println(x);\n}\n", 1, ""),
+                new Case("cli_self_init.sn", "fn main() -> void {\n    let x: i32 = x;\n    println(x);\n}\n", 1, ""),
+                new Case("cli_dead.sn", "fn main() -> void {\n    return;\n    println(1);\n}\n", 1,
+                        "ERROR:    println(1);" + nl + "    ^^^^^^^^^^^Statement is unreachable.;DEAD_CODE================================" + nl),
+                new Case("cli_unknown_function.sn", "fn main() -> void {\n    foo(1);\n}\n", 1,
+                        "Bytecode Emitter Error: Unexpected error during bytecode generation: ERROR:    foo(1);" + nl + "    ^^^Function not found: foo" + nl),
+                new Case("cli_no_main.sn", "fn helper() -> void { }\n", 0,
+                        "Предупреждение: функция main не найдена, вызов не будет добавлен в глобальный код" + nl));
+        for (Case c : cases) {
+            Path source = tempDir.resolve(c.name());
+            Files.writeString(source, c.source());
+            err.flush();
+            int before = Files.readString(errFile).length();
+            int exitCode = new CommandLine(new Trail()).execute("-f", source.toString(), "-o", tempDir.resolve(c.name() + ".snail").toString());
+            err.flush();
+            String printed = Files.readString(errFile).substring(before);
+            assertEquals(c.exitCode(), exitCode, c.name() + ": " + printed);
+            assertEquals(c.expectedErr(), printed, c.name());
+        }
+
+        // Ошибка чтения только журналируется
+        err.flush();
+        long before = Files.size(errFile);
+        assertEquals(1, new CommandLine(new Trail()).execute("-f", tempDir.resolve("cli_missing.sn").toString(), "-o", tempDir.resolve("cli_missing.snail").toString()));
+        err.flush();
+        assertEquals(before, Files.size(errFile));
+    }
+
+    /**
+     * --time-phases=json печатает по одной записи на каждую фазу компиляции.
+     */
+    @Test
+    public void testTimePhasesJson() throws IOException {
+        String source = SAMPLES_DIR.resolve("func_call.sn").toString();
+        int exitCode = new CommandLine(new Trail()).execute("-f", source, "-o", tempDir.resolve("timed.snail").toString(), "--time-phases=json");
+        assertEquals(0, exitCode);
+        err.flush();
+        String report = Files.readString(errFile);
+        for (String phase : List.of("read", "lex", "parse", "ast", "check", "dead-code", "unused-symbols", "emit", "write")) {
+            assertTrue(report.contains("{\"name\":\"" + phase + "\""), "Missing phase " + phase + " in " + report);
+        }
+    }
+
+    @Test
+    public void testEmitStats() throws IOException {
+        String source = SAMPLES_DIR.resolve("func_call.sn").toString();
+        Path statsFile = tempDir.resolve("stats.json");
+        int exitCode = new CommandLine(new Trail()).execute("-f", source, "-o", tempDir.resolve("stats.snail").toString(), "--emit-stats", statsFile.toString());
+        assertEquals(0, exitCode);
+        String stats = Files.readString(statsFile);
+        for (String key : List.of("\"ast\"", "\"byClass\"", "\"constantPool\"", "\"globals\"", "\"globalInitializerBytes\"", "\"localSlots\"", "\"phases\"")) {
+            assertTrue(stats.contains(key), "Missing " + key + " in " + stats);
+        }
+        assertTrue(stats.contains("\"FunctionDeclaration\""), stats);
+        assertTrue(stats.contains("{\"name\":\"main\""), stats);
+    }
+
+    /**
+     * Компиляция в памяти совпадает с компиляцией файла и безопасна при параллельных вызовах.
+     */
+    @Test
+    public void testInMemoryCompilation() throws Exception {
+        Path sourcePath = SAMPLES_DIR.resolve("func_call.sn");
+        Path output = tempDir.resolve("in_memory.snail");
+        assertEquals(0, new CommandLine(new Trail()).execute("-f", sourcePath.toString(), "-o", output.toString()));
+        byte[] expected = Files.readAllBytes(output);
+        String source = Files.readString(sourcePath);
+
+        List<Future<CompilationResult>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 32; i++) {
+                results.add(executor.submit(() -> SnailCompiler.compile(source, SnailCompiler.Options.named("func_call.sn"))));
+            }
+        }
+        for (Future<CompilationResult> result : results) {
+            assertTrue(result.get().isSuccess(), () -> "Unexpected errors: " + result.resultNow().errors());
+            assertArrayEquals(expected, result.get().bytecode());
+        }
+
+        CompilationResult invalid = SnailCompiler.compile(Files.readString(SAMPLES_DIR.resolve("invalid_syntax.sn")), SnailCompiler.Options.defaults());
+        assertFalse(invalid.isSuccess());
+        assertFalse(invalid.errors().isEmpty());
+        assertNull(invalid.bytecode());
+    }
+
+    /**
+     * Двухэтапный разбор SLL/LL выдаёт те же синтаксические ошибки, что и разбор в режиме LL.
+     */
+    @Test
+    public void testTwoStageParsingDiagnostics() throws IOException {
+        for (String sample : List.of("invalid_syntax.sn", "func_call.sn", "big.sn")) {
+            String source = Files.readString(SAMPLES_DIR.resolve(sample));
+            assertEquals(syntaxErrors(source, false), syntaxErrors(source, true), sample);
+        }
+    }
+
+    private static List<String> syntaxErrors(String source, boolean twoStage) {
+        List<String> messages = new ArrayList<>();
+        BaseErrorListener listener = new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg, RecognitionException e) {
+                messages.add(line + ":" + charPositionInLine + " " + msg);
+            }
+        };
+        SnailLexer lexer = new SnailLexer(CharStreams.fromString(source));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(listener);
+        SnailParser parser = new SnailParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.addErrorListener(listener);
+        String tree = (twoStage ? Trail.parseProgram(parser) : parser.program()).toStringTree(parser);
+        messages.add(tree);
+        return messages;
+    }
+
+    /**
+     * Рукописный лексер выдаёт те же токены и ошибки, что и сгенерированный SnailLexer.
+     */
+    @Test
+    public void testFastLexerMatchesGeneratedLexer() throws IOException {
+        List<String> sources = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(SAMPLES_DIR)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".sn")).sorted().toList()) {
+                sources.add(Files.readString(file));
+            }
+        }
+        sources.addAll(List.of(
+                "fn main() { let s: string = \"unterminated",
+                "/* unterminated comment */ /* x /= 2",
+                "a & b | c &",
+                "let x: i32 = 1 @ 2;\r\n// tail",
+                "fn f() { let s: string = \"\uD83D\uDE00\"; } \uD83D\uDE00 x",
+                "truex true i32x i32 ->-=-"));
+        assertTrue(sources.size() > 10);
+        for (String source : sources) {
+            assertEquals(lex(source, false), lex(source, true), source);
+        }
+    }
+
+    private static List<String> lex(String source, boolean fast) {
+        List<String> events = new ArrayList<>();
+        BaseErrorListener listener = new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                                    int line, int charPositionInLine, String msg, RecognitionException e) {
+                events.add("error " + line + ":" + charPositionInLine + " " + msg);
+            }
+        };
+        CharStream stream = CharStreams.fromString(source);
+        TokenSource tokens;
+        if (fast) {
+            FastTokenSource fastSource = new FastTokenSource(stream);
+            fastSource.removeErrorListeners();
+            fastSource.addErrorListener(listener);
+            tokens = fastSource;
+        } else {
+            SnailLexer lexer = new SnailLexer(stream);
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(listener);
+            tokens = lexer;
+        }
+        Token token;
+        do {
+            token = tokens.nextToken();
+            events.add(token.getType() + " " + token.getStartIndex() + ".." + token.getStopIndex() + " "
+                    + token.getLine() + ":" + token.getCharPositionInLine() + " " + token.getText());
+        } while (token.getType() != Token.EOF);
+        return events;
+    }
+
+    /**
+     * Поток над отображённым файлом даёт те же символы, позиции и токены, что и CharStreams.
+     */
+    @Test
+    public void testMappedCharStream() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> samples = Files.walk(SAMPLES_DIR)) {
+            samples.filter(f -> f.toString().endsWith(".sn")).sorted().forEach(files::add);
+        }
+        Path unicode = tempDir.resolve("mapped_unicode.sn");
+        Files.writeString(unicode, "fn main() { let s: string = \"привет \uD83D\uDE00\"; } // ё\n".repeat(20) + "ы");
+        files.add(unicode);
+        Path empty = tempDir.resolve("mapped_empty.sn");
+        Files.writeString(empty, "");
+        files.add(empty);
+
+        for (Path file : files) {
+            CharStream expected = CharStreams.fromPath(file);
+            CharStream actual = MappedCharStream.open(file, file.toString());
+            assertInstanceOf(MappedCharStream.class, actual);
+            assertEquals(expected.size(), actual.size(), file.toString());
+            assertEquals(expected.toString(), actual.toString(), file.toString());
+            assertEquals(tokens(expected), tokens(actual), file.toString());
+            // Рукописный лексер читает отображённый файл напрямую
+            assertEquals(fastTokens(expected), fastTokens(actual), file.toString());
+            // Чтение в кучу даёт тот же поток
+            CharStream read = MappedCharStream.read(file, file.toString());
+            assertEquals(expected.toString(), read.toString(), file.toString());
+            assertEquals(tokens(expected), tokens(read), file.toString());
+
+            Random random = new Random(file.toString().hashCode());
+            for (int k = 0; k < 200 && expected.size() > 0; k++) {
+                int index = random.nextInt(expected.size());
+                int stop = Math.min(expected.size() - 1, index + random.nextInt(100));
+                expected.seek(index);
+                actual.seek(index);
+                assertEquals(expected.LA(1), actual.LA(1));
+                assertEquals(expected.LA(-1), actual.LA(-1));
+                assertEquals(expected.LA(3), actual.LA(3));
+                assertEquals(expected.getText(Interval.of(index, stop)),
+                        actual.getText(Interval.of(index, stop)));
+            }
+        }
+
+        // Некорректный UTF-8 читается обычным декодером с заменой символов
+        Path invalid = tempDir.resolve("mapped_invalid.sn");
+        Files.write(invalid, new byte[]{'f', 'n', ' ', (byte) 0xC3, '(', ')'});
+        assertEquals(CharStreams.fromPath(invalid).toString(),
+                MappedCharStream.open(invalid, invalid.toString()).toString());
+        assertEquals(CharStreams.fromPath(invalid).toString(),
+                MappedCharStream.read(invalid, invalid.toString()).toString());
+
+        // Прочитанный в кучу поток не зависит от последующего усечения файла
+        Path rewritten = tempDir.resolve("mapped_rewritten.sn");
+        Files.writeString(rewritten, "fn main() { let x: i32 = 1; }\n".repeat(50));
+        CharStream before = MappedCharStream.read(rewritten, rewritten.toString());
+        String text = before.toString();
+        Files.writeString(rewritten, "fn main() {}\n");
+        assertEquals(text, before.toString());
+        assertEquals(text.length(), before.size());
+
+        // Изменение отображённого файла обнаруживается как ошибка ввода-вывода, а не сбоем JVM
+        Files.writeString(rewritten, "fn main() {}\n");
+        MappedCharStream mapped = assertInstanceOf(MappedCharStream.class, MappedCharStream.open(rewritten, rewritten.toString()));
+        mapped.checkUnchanged();
+        Files.writeString(rewritten, "fn main() { let y: i32 = 2; }\n");
+        assertThrows(IOException.class, mapped::checkUnchanged);
+        assertInstanceOf(MappedCharStream.class, before);
+        ((MappedCharStream) before).checkUnchanged();
+    }
+
+    @Test
+    public void testSharedSourceFile() throws FailedCheckException {
+        String file = SAMPLES_DIR.resolve("tree_equality.sn").toString();
+        AST ast = Trail.build(file);
+        SourceFile source = null;
+        int nodes = 0;
+        ArrayDeque<Node> pending = new ArrayDeque<>(ast.root().getChildren());
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            if (node.getSourceFile() != null) {
+                source = source != null ? source : node.getSourceFile();
+                assertSame(source, node.getSourceFile(), node.getClass().getSimpleName());
+                nodes++;
+            }
+            node.getChildren().stream().filter(Objects::nonNull).forEach(pending::push);
+        }
+        assertTrue(nodes > 1);
+        assertEquals(file, source.getName());
+
+        SourceFile text = new SourceFile("lines.sn", "fn main() {\r\n  let x = 1;\n\n}");
+        assertEquals(4, text.getLineCount());
+        assertEquals("fn main() {", text.getLine(1));
+        assertEquals("  let x = 1;", text.getLine(2));
+        assertEquals("", text.getLine(3));
+        assertEquals("}", text.getLine(4));
+        assertEquals(13, text.getLineStart(2));
+        assertNull(text.getLine(5));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"big.sn", "for.sn", "else.sn", "array.sn", "func_complex_args.sn", "global_array_type.sn",
+            "multi_dim_array_access.sn", "unary_operators.sn", "assignment_operators.sn", "short_circuit.sn", "comments.sn"})
+    public void testSerializedASTRoundTrip(String filename) throws FailedCheckException {
+        String file = SAMPLES_DIR.resolve(filename).toString();
+        Scope original = Trail.build(file).root();
+        SerializedAST serialized = SerializedAST.of(original);
+        assertEquals(SerializedAST.Kind.SCOPE, serialized.kind(0));
+        assertEquals(serialized.size(), serialized.subtreeEnd(0));
+        assertEquals(original.getChildren().size(), serialized.childCount(0));
+        int function = serialized.child(0, serialized.childCount(0) - 1);
+        assertEquals(SerializedAST.Kind.FUNCTION, serialized.kind(function));
+        assertEquals(((FunctionDeclaration) original.getChildren().getLast()).getName(), serialized.name(function));
+
+        Scope inflated = serialized.inflate();
+        assertEquals(original, inflated);
+        assertEquals(SourceBuilder.toSourceCode(original), SourceBuilder.toSourceCode(inflated));
+        assertEquals(List.of(), new Check(file).check(inflated));
+        assertArrayEquals(new BytecodeEmitter(original).emit(), new BytecodeEmitter(inflated).emit());
+        // Повторная упаковка даёт те же позиции и ссылки на исходный файл
+        SerializedAST repacked = SerializedAST.of(inflated);
+        assertSame(serialized.getSourceFile(), repacked.getSourceFile());
+        for (int id = 0; id < serialized.size(); id++) {
+            assertEquals(serialized.kind(id), repacked.kind(id));
+            assertEquals(serialized.line(id), repacked.line(id));
+            assertEquals(serialized.column(id), repacked.column(id));
+        }
+    }
+
+    @Test
+    public void testSerializedAST() throws IOException, FailedCheckException {
+        Path source = SAMPLES_DIR.resolve("big.sn");
+        Path output = tempDir.resolve("serialized.snail");
+        int exitCode = new CommandLine(new Trail()).execute("-f", source.toString(), "-o", output.toString(), "--emit-ast");
+        assertEquals(0, exitCode);
+
+        Scope original = Trail.build(source.toString()).root();
+        SerializedAST read = SerializedAST.read(Path.of(output + ".ast"));
+        assertEquals(Files.readString(source), read.getSourceFile().getText());
+        Scope inflated = read.inflate();
+        assertEquals(original, inflated);
+        assertEquals(SourceBuilder.toSourceCode(original), SourceBuilder.toSourceCode(inflated));
+        assertArrayEquals(Files.readAllBytes(output), new BytecodeEmitter(inflated).emit());
+
+        // Повторная запись прочитанного представления даёт те же байты
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        read.write(first);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        SerializedAST.read(ByteBuffer.wrap(first.toByteArray())).write(second);
+        assertArrayEquals(Files.readAllBytes(Path.of(output + ".ast")), first.toByteArray());
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+        assertThrows(IllegalArgumentException.class, () -> SerializedAST.read(ByteBuffer.wrap(first.toByteArray(), 0, 40)));
+    }
+
+    @Test
+    public void testBytecodeGeneratorPatchesDeepJumps() throws FailedCheckException {
+        // a && (a && (... && a)): каждый уровень - PUSH_CONST, DUP, JMP_IF_FALSE u16, POP
+        int depth = 1000;
+        Expression chain = new BooleanLiteral(true);
+        for (int i = 0; i < depth; i++) {
+            chain = new BinaryExpression(new BooleanLiteral(true), "&&", chain);
+        }
+        BytecodeGenerator generator = new BytecodeGenerator(new BytecodeContext());
+        generator.emit(chain);
+        byte[] code = generator.toByteArray();
+        assertEquals(8 * depth + 3, code.length);
+        assertEquals(code.length, generator.size());
+        for (int i = 0; i < depth; i++) {
+            int operand = 8 * i + 5;
+            assertEquals(BytecodeConstants.Opcode.JMP_IF_FALSE, code[operand - 1]);
+            // Все переходы ведут в конец выражения
+            assertEquals(code.length - operand - 2, ((code[operand] & 0xFF) << 8) | (code[operand + 1] & 0xFF));
+        }
+    }
+
+    @Test
+    public void testNameResolution() throws FailedCheckException {
+        String file = SAMPLES_DIR.resolve("func_complex_args.sn").toString();
+        Scope root = Trail.build(file).root();
+        assertEquals(0, NameResolver.resolve(root));
+        int identifiers = 0;
+        int calls = 0;
+        ArrayDeque<Node> pending = new ArrayDeque<>(root.getChildren());
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            if (node instanceof Identifier id) {
+                VariableDeclaration declaration = id.getDeclaration();
+                assertNotNull(declaration, id.getName());
+                assertEquals(id.getName(), declaration.getName());
+                assertSame(declaration, id.getDeclaration());
+                assertSame(declaration, id.getEnclosingScope().resolveVariable(id.getName(), id));
+                identifiers++;
+            } else if (node instanceof FunctionCall call) {
+                assertSame(root.resolveFunction(call.getName()), call.getDeclaration());
+                calls++;
+            } else if (node instanceof ArrayElement element) {
+                assertEquals("arr", element.getDeclaration().getName());
+                pending.push(element.getIdentifier());
+            }
+            node.getChildren().stream().filter(Objects::nonNull).forEach(pending::push);
+        }
+        assertTrue(identifiers > 0);
+        assertEquals(3, calls);
+
+        // Новое объявление в связанной области перекрывает связанное ранее
+        FunctionDeclaration main = root.resolveFunction("main");
+        Identifier a = (Identifier) ((BinaryExpression) ((ReturnStatement) root.resolveFunction("add").getBody().getChildren().getFirst()).getReturnable()).getLeft();
+        assertEquals("a", a.getDeclaration().getName());
+        VariableDeclaration shadow = new VariableDeclaration("x", Types.I32, null);
+        Identifier x = new Identifier("x");
+        x.setEnclosingScope(main.getBody());
+        VariableDeclaration local = x.getDeclaration();
+        assertSame(main.getBody(), local.getEnclosingScope());
+        main.getBody().removeDeclaration(local);
+        assertNull(x.getDeclaration());
+        root.addDeclaration(shadow);
+        assertSame(shadow, x.getDeclaration());
+        assertNull(root.resolveFunction("missing"));
+    }
+
+    @Test
+    public void testTypeAttribution() throws FailedCheckException {
+        String file = SAMPLES_DIR.resolve("func_complex_args.sn").toString();
+        Scope root = Trail.build(file).root();
+        assertEquals(0, TypeAttribution.attribute(root));
+        Scope body = root.resolveFunction("main").getBody();
+        FunctionCall call = (FunctionCall) ((VariableDeclaration) body.getChildren().get(3)).getValue();
+        BinaryExpression sum = (BinaryExpression) call.getArguments().getFirst();
+        Type type = sum.getType(body);
+        assertEquals(Types.I32, type);
+        assertSame(type, sum.getType(body));
+        assertEquals(Types.I32, call.getType(body));
+        // Выражение типизируется в своей области видимости: запрос из другой области не вычисляет тип заново
+        assertSame(type, sum.getType(root));
+
+        // Новое объявление уже найденного имени меняет тип выражения
+        Scope own = sum.getEnclosingScope();
+        Identifier x = (Identifier) sum.getLeft();
+        VariableDeclaration declaration = x.getDeclaration();
+        // Объявления тела функции зарегистрированы и в области тела, и в области его операторов
+        assertTrue(own.removeDeclaration(declaration));
+        assertTrue(body.removeDeclaration(declaration));
+        FailedCheckException unknown = assertThrows(FailedCheckException.class, () -> sum.getType(body));
+        // Ошибка берётся из узла, но каждый раз бросается новое исключение
+        FailedCheckException again = assertThrows(FailedCheckException.class, () -> sum.getType(body));
+        assertNotSame(unknown, again);
+        assertEquals(unknown.getMessage(), again.getMessage());
+        assertEquals(0, again.getSuppressed().length);
+        own.addDeclaration(new VariableDeclaration("x", Types.STRING, null));
+        assertEquals(Types.STRING, sum.getType(body));
+    }
+
+    @Test
+    public void testSourceLineIndex() {
+        String code = "fn main() {\n\tlet x: i32 = 1;\r\n    x = y;\n}";
+        SourceFile file = new SourceFile("snippet.sn", code);
+        String nl = System.lineSeparator();
+        List<String> expected = List.of(
+                "fn main() {" + nl + " ^^",
+                "\tlet x: i32 = 1;" + nl + "\t^^",
+                "    x = y;" + nl + " ^^",
+                "}" + nl + " ^^");
+        for (int line = 1; line <= 4; line++) {
+            assertEquals(expected.get(line - 1), SourceBuilder.toSourceLine(file, line, 1, 2).toString(), "line " + line);
+            assertEquals(expected.get(line - 1), SourceBuilder.toSourceLine(code, line, 1, 2), "line " + line);
+        }
+        assertEquals("\tlet x: i32 = 1;" + nl + "\t    ^",
+                SourceBuilder.toSourceLine(file, 2, 5, 1).toString());
+        assertEquals("", SourceBuilder.toSourceLine(file, 5, 0, 1).toString());
+        assertEquals("", SourceBuilder.toSourceLine((SourceFile) null, 1, 0, 1).toString());
+        assertEquals(SourceBuilder.toSourceLine(file, 3, 4, 1), SourceBuilder.toSourceLine(file, 3, 4, 1));
+
+        // Исключение хранит ошибку, а текст со фрагментом строится только при запросе сообщения
+        CompilationError error = new CompilationError(ErrorType.UNKNOWN_VARIABLE, SourceBuilder.toSourceLine(file, 3, 8, 1), "Unknown variable: y", "");
+        FailedCheckException exception = new FailedCheckException(error);
+        assertSame(error, exception.getError());
+        assertEquals("ERROR:    x = y;" + nl + "        ^Unknown variable: y", exception.getMessage());
+        // Ошибки сравниваются по тексту фрагмента
+        String before = error.before();
+        assertEquals("    x = y;" + nl + "        ^", before);
+        CompilationError rendered = new CompilationError(ErrorType.UNKNOWN_VARIABLE, before, "Unknown variable: y", "");
+        assertEquals(rendered, error);
+        assertEquals(rendered.hashCode(), error.hashCode());
+        assertEquals(rendered, new CompilationError(ErrorType.UNKNOWN_VARIABLE, SourceBuilder.toSourceLine(file, 3, 8, 1), "Unknown variable: y", ""));
+    }
+
+    @Test
+    public void testInternedTypes() throws FailedCheckException {
+        PrimitiveType declared = new PrimitiveType("i32");
+        assertSame(Types.I32, declared.canonical());
+        assertSame(Types.I32, Types.primitive("i32"));
+        assertEquals(Types.I32, declared);
+        assertEquals(Types.I32.hashCode(), declared.hashCode());
+        assertNotEquals(Types.I32, Types.USIZE);
+
+        ArrayType matrix = new ArrayType(new ArrayType(declared, new NumberLiteral(3)), new NumberLiteral(2));
+        assertSame(Types.array(Types.array(Types.I32, 3), 2), matrix.canonical());
+        assertNotSame(matrix.canonical(), Types.array(Types.array(Types.I32, 2), 3));
+        assertSame(Types.array(Types.STRING, 2),
+                new ArrayLiteral(List.of(new StringLiteral("a"), new StringLiteral("b"))).getType(null));
+
+        assertEquals(BytecodeConstants.TypeId.I32, Types.BOOL.getTypeId());
+        assertEquals(BytecodeConstants.TypeId.USIZE, new PrimitiveType("usize").getTypeId());
+        assertEquals(BytecodeConstants.TypeId.ARRAY, matrix.getTypeId());
+        assertEquals(Types.UNKNOWN, Types.ANY.getTypeId());
+        assertThrows(IllegalStateException.class, () -> Types.I32.setSourceInfo(1, 0, null));
+
+        // Канонический тип массива не ссылается на узлы исходного кода
+        assertEquals(2, matrix.getSize());
+        assertNotNull(matrix.getSizeLiteral());
+        assertNull(((ArrayType) matrix.canonical()).getSizeLiteral());
+
+        // Таблица не удерживает типы массивов, на которые больше никто не ссылается
+        WeakReference<ArrayType> unused = new WeakReference<>(Types.array(Types.I32, 987654321));
+        for (int i = 0; i < 50 && unused.get() != null; i++) {
+            System.gc();
+        }
+        assertNull(unused.get());
+        assertSame(Types.array(Types.I32, 987654321), Types.array(Types.I32, 987654321));
+    }
+
+    private static List<String> tokens(CharStream stream) {
+        stream.seek(0);
+        SnailLexer lexer = new SnailLexer(stream);
+        lexer.removeErrorListeners();
+        return lexer.getAllTokens().stream().map(Object::toString).toList();
+    }
+
+    private static List<String> fastTokens(CharStream stream) {
+        TokenBuffer buffer = new FastTokenSource(stream).getTokens();
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < buffer.size(); i++) {
+            tokens.add(buffer.type(i) + " " + buffer.start(i) + ".." + buffer.stop(i) + " " + buffer.line(i) + ":" + buffer.column(i));
+        }
+        return tokens;
+    }
+
+    /**
+     * Правка внутри функции разбирает заново только её, а результат совпадает с полным разбором.
+     */
+    @Test
+    public void testIncrementalReparse() throws FailedCheckException {
+        String source = """
+                let g: i32 = 1;
+                fn twice(x: i32) -> i32 {
+                    return x * 2;
+                }
+                fn main() -> void {
+                    println(twice(g));
+                }
+                """;
+        IncrementalParser parser = IncrementalParser.parse(source, "incremental.sn");
+        assertEquals(3, parser.getLastReparsed());
+        Node main = parser.root().getChild(2);
+
+        // Правка тела с переводом строки: main используется повторно, его строки сдвигаются
+        int offset = parser.text().indexOf("x * 2");
+        parser.apply(new IncrementalParser.TextEdit(offset, "x * 2".length(), "x *\n 3"));
+        assertEquals(1, parser.getLastReparsed());
+        assertSame(main, parser.root().getChild(2));
+        assertIncrementalMatchesFull(parser);
+
+        // Глобальная переменная
+        parser.apply(new IncrementalParser.TextEdit(parser.text().indexOf("1;"), 1, "42"));
+        assertEquals(1, parser.getLastReparsed());
+        assertSame(main, parser.root().getChild(2));
+        assertIncrementalMatchesFull(parser);
+
+        // Синтаксическая ошибка сообщается, следующая правка разбирает программу полностью
+        int brace = parser.text().indexOf("}");
+        assertThrows(FailedCheckException.class, () -> parser.apply(new IncrementalParser.TextEdit(brace, 1, "")));
+        parser.apply(new IncrementalParser.TextEdit(brace, 0, "}"));
+        assertEquals(3, parser.getLastReparsed());
+        assertIncrementalMatchesFull(parser);
+
+        // Вставка в начало функции разбирает только её; после этого комментарий лежит между
+        // объявлениями, и правка в нём ведёт к полному разбору
+        parser.apply(new IncrementalParser.TextEdit(parser.text().indexOf("fn main"), 0, "// main\n"));
+        assertEquals(1, parser.getLastReparsed());
+        assertIncrementalMatchesFull(parser);
+        parser.apply(new IncrementalParser.TextEdit(parser.text().indexOf("// main") + 3, 4, "entry"));
+        assertEquals(3, parser.getLastReparsed());
+        assertIncrementalMatchesFull(parser);
+
+        // Нарушение порядка объявлений
+        int mainBody = parser.text().indexOf("println");
+        assertThrows(FailedCheckException.class, () -> parser.apply(new IncrementalParser.TextEdit(mainBody - 1, 0, "} let h: i32 = 2; fn other() {")));
+    }
+
+    private static void assertIncrementalMatchesFull(IncrementalParser parser) throws FailedCheckException {
+        Scope expected = IncrementalParser.parse(parser.text(), "full.sn").root();
+        assertEquals(expected, parser.root());
+        assertEquals(sourceLines(expected), sourceLines(parser.root()));
+        assertArrayEquals(new BytecodeEmitter(expected).emit(), new BytecodeEmitter(parser.root()).emit());
+    }
+
+    private static List<Integer> sourceLines(Node node) {
+        List<Integer> lines = new ArrayList<>(List.of(node.getLine()));
+        for (Node child : node.getChildren()) {
+            if (child != null) {
+                lines.addAll(sourceLines(child));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Потоковый разбор строит AST, дающее тот же байткод, и сохраняет проверки структуры программы.
+     */
+    @Test
+    public void testStreamingBuild() throws IOException, FailedCheckException {
+        int compiled = 0;
+        try (Stream<Path> files = Files.walk(SAMPLES_DIR)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".sn")).sorted().toList()) {
+                byte[] expected;
+                try {
+                    expected = new BytecodeEmitter(Trail.build(file.toString()).root()).emit();
+                } catch (FailedCheckException | BytecodeEmitter.BytecodeEmitterException e) {
+                    continue;
+                }
+                byte[] actual = new BytecodeEmitter(Trail.buildStreaming(file.toString(), PhaseTimer.untimed(file.toString())).root()).emit();
+                assertArrayEquals(expected, actual, "Streaming build differs for " + file);
+                compiled++;
+            }
+        }
+        assertTrue(compiled > 5);
+
+        for (String source : List.of("let x: i32 = 1;", "fn main() -> void {} let x: i32 = 1;", "return 1;")) {
+            Path file = tempDir.resolve("streaming_invalid.sn");
+            Files.writeString(file, source);
+            assertThrows(FailedCheckException.class, () -> Trail.buildStreaming(file.toString(), PhaseTimer.untimed(file.toString())), source);
+        }
+
+        // Без текста исходника узлы сохраняют позиции, а диагностики показывают позицию и текст узла
+        String sample = SAMPLES_DIR.resolve("func_complex_args.sn").toString();
+        assertEquals(9, Trail.buildStreaming(sample, PhaseTimer.untimed(sample)).root().resolveFunction("main").getLine());
+        Path mismatch = tempDir.resolve("streaming_mismatch.sn");
+        Files.writeString(mismatch, "fn main() -> void {\n    let flag: i32 = true;\n}\n");
+        FailedCheckException error = assertThrows(FailedCheckException.class,
+                () -> Trail.buildStreaming(mismatch.toString(), PhaseTimer.untimed(mismatch.toString())));
+        assertTrue(error.getMessage().contains("line 2"), error.getMessage());
+        assertTrue(error.getMessage().contains("let flag"), error.getMessage());
+    }
+
+    /**
+     * Трассировка компилятора пишется событиями JFR только при включённом событии и не пишется без него.
+     */
+    @Test
+    public void testCompilerTrace() throws IOException, FailedCheckException {
+        Path source = tempDir.resolve("trace.sn");
+        Files.writeString(source, "fn main() -> void {\n    let used: i32 = 1;\n    let unused: i32 = used;\n}\n");
+
+        Path disabledDump = tempDir.resolve("trace_disabled.jfr");
+        try (Recording recording = new Recording()) {
+            recording.start();
+            assertFalse(CompilerTrace.isEnabled());
+            Trail.build(source.toString()).root().getUnusedSymbolWarnings();
+            recording.stop();
+            recording.dump(disabledDump);
+        }
+        assertTrue(traceMessages(disabledDump).isEmpty());
+
+        Path enabledDump = tempDir.resolve("trace_enabled.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("io.github.snaill.Trace");
+            recording.start();
+            assertTrue(CompilerTrace.isEnabled());
+            Trail.build(source.toString()).root().getUnusedSymbolWarnings();
+            recording.stop();
+            recording.dump(enabledDump);
+        }
+        assertFalse(CompilerTrace.isEnabled());
+        List<String> messages = traceMessages(enabledDump);
+        assertTrue(messages.contains("Trail: semantic checks of " + source + " found 0 errors"), messages.toString());
+        assertTrue(messages.stream().anyMatch(m -> m.startsWith("Scope: Scope@") && m.endsWith(" unused locals [unused]")), messages.toString());
+        assertTrue(messages.stream().anyMatch(m -> m.startsWith("Identifier: 'used' uses VariableDeclaration@") && m.endsWith(", no longer unused")), messages.toString());
+    }
+
+    private static List<String> traceMessages(Path dump) throws IOException {
+        List<String> messages = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+            if (event.getEventType().getName().equals("io.github.snaill.Trace")) {
+                messages.add(event.getString("source") + ": " + event.getString("message"));
+            }
+        }
+        return messages;
+    }
+
     @Test
     public void testNonExistentFile() {
         String nonExistentFilePath = "non_existent_file.sn";
@@ -292,6 +1209,30 @@ public class TrailTest {
         assertTrue(Files.exists(sourcePath), "Test file tree_equality.sn does not exist: " + sourcePath);
         AST actualAst = Trail.build(sourcePath.toString());
         assertEquals(expectedAst, actualAst.root());
+        assertEquals(expectedAst.structuralHash(), actualAst.structuralHash());
+    }
+
+    @Test
+    public void testStructuralHash() throws FailedCheckException {
+        String file = SAMPLES_DIR.resolve("big.sn").toString();
+        Scope first = Trail.build(file).root();
+        Scope second = Trail.build(file).root();
+        assertEquals(first.structuralHash(), second.structuralHash());
+        assertEquals(first, second);
+
+        Node function = second.getChild(second.getChildCount() - 1);
+        Scope body = ((FunctionDeclaration) function).getBody();
+        Statement original = (Statement) body.getChild(0);
+        body.setChild(0, new ExpressionStatement(new NumberLiteral(42)));
+        assertNotEquals(first.structuralHash(), second.structuralHash());
+        assertNotEquals(first, second);
+        // Хеши сбрасываются только у предков изменённого узла и пересчитываются при обращении
+        body.setChild(0, original);
+        assertEquals(first.structuralHash(), second.structuralHash());
+        assertEquals(first, second);
+
+        assertNotEquals(new BinaryExpression(new NumberLiteral(1), "+", new NumberLiteral(2)).structuralHash(),
+                new BinaryExpression(new NumberLiteral(1), "-", new NumberLiteral(2)).structuralHash());
     }
 
 